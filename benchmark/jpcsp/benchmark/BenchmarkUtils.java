@@ -0,0 +1,235 @@
+/*
+This file is part of jpcsp.
+
+Jpcsp is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Jpcsp is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with Jpcsp.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package jpcsp.benchmark;
+
+import java.io.File;
+
+import org.apache.log4j.BasicConfigurator;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.apache.log4j.xml.DOMConfigurator;
+
+import jpcsp.Emulator;
+import jpcsp.Memory;
+import jpcsp.MemoryMap;
+import jpcsp.Processor;
+import jpcsp.Allegrex.compiler.Compiler;
+import jpcsp.Allegrex.compiler.IExecutable;
+import jpcsp.Allegrex.compiler.RuntimeContext;
+
+/**
+ * Common setup for the benchmarks: initialize the emulator without
+ * loading any application and load synthetic MIPS code snippets into memory.
+ */
+public class BenchmarkUtils {
+	// The code snippets are returning to this address, it is never executed
+	public static final int returnAddress = MemoryMap.START_USERSPACE;
+	public static final int codeAddress = MemoryMap.START_USERSPACE + 0x00010000;
+	public static final int dataAddress = MemoryMap.START_USERSPACE + 0x00100000;
+	public static final int dataAddress2 = MemoryMap.START_USERSPACE + 0x00200000;
+	private static boolean initialized;
+	private static boolean compilerInitialized;
+
+	/**
+	 * Sum of the integers from $a0 down to 1, returned in $v0.
+	 * $a0 must be greater than 0.
+	 */
+	public static final int[] loopSnippet = {
+		0x24020000, // addiu  $v0, $zr, 0
+		0x00804025, // move   $t0, $a0
+		0x00481021, // addu   $v0, $v0, $t0
+		0x2508FFFF, // addiu  $t0, $t0, -1
+		0x1500FFFD, // bne    $t0, $zr, -3
+		0x00000000, // nop
+		0x03E00008, // jr     $ra
+		0x00000000  // nop
+	};
+
+	/**
+	 * Running sum of the $a1 words at address $a0,
+	 * each word being replaced by the running sum.
+	 * $a1 must be greater than 0.
+	 */
+	public static final int[] memoryLoopSnippet = {
+		0x24020000, // addiu  $v0, $zr, 0
+		0x8C880000, // lw     $t0, 0($a0)
+		0x24A5FFFF, // addiu  $a1, $a1, -1
+		0x00481021, // addu   $v0, $v0, $t0
+		0xAC820000, // sw     $v0, 0($a0)
+		0x14A0FFFB, // bne    $a1, $zr, -5
+		0x24840004, // addiu  $a0, $a0, 4
+		0x03E00008, // jr     $ra
+		0x00000000  // nop
+	};
+
+	/**
+	 * Byte-per-byte memcpy($a0, $a1, $a2), matching a "memcpy" NativeCodeSequence
+	 * defined in Compiler.xml.
+	 */
+	public static final int[] memcpySnippet = {
+		0x00803825, // move   $a3, $a0
+		0x00801025, // move   $v0, $a0
+		0x00C04025, // move   $t0, $a2
+		0x24C4FFFF, // addiu  $a0, $a2, -1
+		0x11000009, // beq    $t0, $zr, +9
+		0x00803025, // move   $a2, $a0
+		0x80A80000, // lb     $t0, 0($a1)
+		0x24A50001, // addiu  $a1, $a1, 1
+		0xA0E80000, // sb     $t0, 0($a3)
+		0x00804025, // move   $t0, $a0
+		0x24C4FFFF, // addiu  $a0, $a2, -1
+		0x24E70001, // addiu  $a3, $a3, 1
+		0x1500FFF9, // bne    $t0, $zr, -7
+		0x00803025, // move   $a2, $a0
+		0x03E00008, // jr     $ra
+		0x00000000  // nop
+	};
+
+	/**
+	 * Byte-per-byte memset($a0, $a1, $a2), matching a "memset" NativeCodeSequence
+	 * defined in Compiler.xml.
+	 */
+	public static final int[] memsetSnippet = {
+		0x00C04825, // move   $t1, $a2
+		0x24C7FFFF, // addiu  $a3, $a2, -1
+		0x00804025, // move   $t0, $a0
+		0x11200007, // beq    $t1, $zr, +7
+		0x00E03025, // move   $a2, $a3
+		0x00E04825, // move   $t1, $a3
+		0xA1050000, // sb     $a1, 0($t0)
+		0x24C7FFFF, // addiu  $a3, $a2, -1
+		0x25080001, // addiu  $t0, $t0, 1
+		0x1520FFFB, // bne    $t1, $zr, -5
+		0x00E03025, // move   $a2, $a3
+		0x03E00008, // jr     $ra
+		0x00801025  // move   $v0, $a0
+	};
+
+	/**
+	 * Initialize the emulator without loading any application.
+	 */
+	public static synchronized void init() {
+		if (initialized) {
+			return;
+		}
+
+		if (new File("LogSettings.xml").canRead()) {
+			DOMConfigurator.configure("LogSettings.xml");
+		} else {
+			BasicConfigurator.configure();
+		}
+		// Keep the logging out of the measurements
+		Logger.getRootLogger().setLevel(Level.WARN);
+
+		new Emulator(null);
+		Memory.getInstance();
+
+		initialized = true;
+	}
+
+	/**
+	 * Initialize the emulator and the runtime context
+	 * so that compiled code can be executed.
+	 */
+	public static synchronized void initCompiler() {
+		init();
+
+		if (!compilerInitialized) {
+			RuntimeContext.start();
+			if (!RuntimeContext.initialise()) {
+				throw new IllegalStateException("The compiler is disabled (option emu.compiler)");
+			}
+			RuntimeContext.update();
+			compilerInitialized = true;
+		}
+	}
+
+	/**
+	 * Load a code snippet into memory.
+	 *
+	 * @param address  the address where to load the code
+	 * @param opcodes  the code snippet
+	 */
+	public static void loadCode(int address, int[] opcodes) {
+		Memory mem = Memory.getInstance();
+		for (int i = 0; i < opcodes.length; i++) {
+			mem.write32(address + (i << 2), opcodes[i]);
+		}
+
+		if (compilerInitialized) {
+			RuntimeContext.invalidateRange(address, opcodes.length << 2);
+		}
+	}
+
+	/**
+	 * Compile the code loaded at the given address.
+	 *
+	 * @param address  the start address of the code
+	 * @return         the compiled executable
+	 */
+	public static IExecutable compile(int address) {
+		IExecutable executable = Compiler.getInstance().compile(address);
+		if (executable == null) {
+			throw new IllegalStateException(String.format("Cannot compile the code at 0x%08X", address));
+		}
+
+		return executable;
+	}
+
+	/**
+	 * Interpret the code at the given address until it returns.
+	 *
+	 * @param processor  the processor used to interpret the code
+	 * @param address    the start address of the code
+	 */
+	public static void interpret(Processor processor, int address) {
+		processor.cpu.pc = address;
+		processor.cpu.npc = address + 4;
+		processor.cpu._ra = returnAddress;
+		while (processor.cpu.pc != returnAddress) {
+			processor.interpret();
+		}
+	}
+
+	/**
+	 * Execute the compiled code until it returns.
+	 *
+	 * @param executable  the compiled code
+	 * @return            the return address
+	 */
+	public static int execute(IExecutable executable) throws Exception {
+		Emulator.getProcessor().cpu._ra = returnAddress;
+
+		return executable.exec();
+	}
+
+	/**
+	 * Fill a memory area with pseudo-random values.
+	 *
+	 * @param address  the start address of the area
+	 * @param length   the length in bytes of the area
+	 */
+	public static void fillMemory(int address, int length) {
+		Memory mem = Memory.getInstance();
+		int value = 0x12345678;
+		for (int i = 0; i < length; i += 4) {
+			// Simple LCG, the values just need to be non-uniform
+			value = value * 1103515245 + 12345;
+			mem.write32(address + i, value);
+		}
+	}
+}
@@ -0,0 +1,99 @@
+/*
+This file is part of jpcsp.
+
+Jpcsp is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Jpcsp is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with Jpcsp.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package jpcsp.benchmark;
+
+import static jpcsp.HLE.modules.sceAudiocodec.PSP_CODEC_MP3;
+import static jpcsp.benchmark.BenchmarkUtils.dataAddress;
+import static jpcsp.benchmark.BenchmarkUtils.dataAddress2;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import jpcsp.Memory;
+import jpcsp.media.codec.CodecFactory;
+import jpcsp.media.codec.ICodec;
+import jpcsp.media.codec.util.FFT;
+
+/**
+ * Audio decoding: a synthetic MP3 frame and the inverse MDCT
+ * shared by the ATRAC3, ATRAC3plus and AAC decoders.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CodecBenchmark {
+	// MPEG-1 Layer III, 128kbps, 44100Hz, mono
+	private static final int mp3Header = 0xFFFB90C4;
+	private static final int mp3FrameSize = 417;
+	// 256 is the ATRAC3plus IMDCT size, 2048 the AAC one
+	@Param({"8", "11"})
+	public int imdctBits;
+	private ICodec mp3Codec;
+	private FFT fft;
+	private float[] imdctInput;
+	private float[] imdctOutput;
+
+	@Setup
+	public void setup() {
+		BenchmarkUtils.init();
+
+		// A frame with empty side information: decoded as silence,
+		// but going through the complete synthesis.
+		Memory mem = Memory.getInstance();
+		mem.memset(dataAddress, (byte) 0, mp3FrameSize);
+		mem.write32(dataAddress, Integer.reverseBytes(mp3Header));
+		mp3Codec = CodecFactory.getCodec(PSP_CODEC_MP3);
+		mp3Codec.init(0, 1, 2, 0);
+
+		int n = 1 << imdctBits;
+		fft = new FFT();
+		fft.mdctInit(imdctBits, true, 1.0 / 32768.0);
+		imdctInput = new float[n / 2];
+		imdctOutput = new float[n];
+		Random random = new Random(0);
+		for (int i = 0; i < imdctInput.length; i++) {
+			imdctInput[i] = random.nextFloat() * 2f - 1f;
+		}
+	}
+
+	@Benchmark
+	public int mp3Decode() {
+		return mp3Codec.decode(dataAddress, mp3FrameSize, dataAddress2);
+	}
+
+	@Benchmark
+	public float[] imdct() {
+		fft.imdctCalc(imdctOutput, 0, imdctInput, 0);
+
+		return imdctOutput;
+	}
+}
@@ -0,0 +1,116 @@
+/*
+This file is part of jpcsp.
+
+Jpcsp is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Jpcsp is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with Jpcsp.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package jpcsp.benchmark;
+
+import static jpcsp.benchmark.BenchmarkUtils.codeAddress;
+import static jpcsp.benchmark.BenchmarkUtils.dataAddress;
+import static jpcsp.benchmark.BenchmarkUtils.dataAddress2;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import jpcsp.Emulator;
+import jpcsp.Allegrex.CpuState;
+import jpcsp.Allegrex.compiler.IExecutable;
+
+/**
+ * Execution of the CodeBlocks compiled from synthetic MIPS code snippets.
+ * The memcpy and memset snippets are matching NativeCodeSequences
+ * and are executed by the Memcpy and Memset native implementations.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CompilerBenchmark {
+	private static final int loopAddress = codeAddress + 0x1000;
+	private static final int memoryLoopAddress = codeAddress + 0x1100;
+	private static final int memcpyAddress = codeAddress + 0x1200;
+	private static final int memsetAddress = codeAddress + 0x1300;
+	@Param({"1000"})
+	public int count;
+	private CpuState cpu;
+	private IExecutable loop;
+	private IExecutable memoryLoop;
+	private IExecutable memcpy;
+	private IExecutable memset;
+
+	@Setup
+	public void setup() {
+		BenchmarkUtils.initCompiler();
+		BenchmarkUtils.loadCode(loopAddress, BenchmarkUtils.loopSnippet);
+		BenchmarkUtils.loadCode(memoryLoopAddress, BenchmarkUtils.memoryLoopSnippet);
+		BenchmarkUtils.loadCode(memcpyAddress, BenchmarkUtils.memcpySnippet);
+		BenchmarkUtils.loadCode(memsetAddress, BenchmarkUtils.memsetSnippet);
+		BenchmarkUtils.fillMemory(dataAddress, count << 2);
+		loop = BenchmarkUtils.compile(loopAddress);
+		memoryLoop = BenchmarkUtils.compile(memoryLoopAddress);
+		memcpy = BenchmarkUtils.compile(memcpyAddress);
+		memset = BenchmarkUtils.compile(memsetAddress);
+		cpu = Emulator.getProcessor().cpu;
+	}
+
+	@Benchmark
+	public int loop() throws Exception {
+		cpu._a0 = count;
+		BenchmarkUtils.execute(loop);
+
+		return cpu._v0;
+	}
+
+	@Benchmark
+	public int memoryLoop() throws Exception {
+		cpu._a0 = dataAddress;
+		cpu._a1 = count;
+		BenchmarkUtils.execute(memoryLoop);
+
+		return cpu._v0;
+	}
+
+	@Benchmark
+	public int memcpy() throws Exception {
+		cpu._a0 = dataAddress2;
+		cpu._a1 = dataAddress;
+		cpu._a2 = count;
+		BenchmarkUtils.execute(memcpy);
+
+		return cpu._v0;
+	}
+
+	@Benchmark
+	public int memset() throws Exception {
+		cpu._a0 = dataAddress2;
+		cpu._a1 = 0x5A;
+		cpu._a2 = count;
+		BenchmarkUtils.execute(memset);
+
+		return cpu._v0;
+	}
+}
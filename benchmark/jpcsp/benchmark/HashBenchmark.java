@@ -0,0 +1,70 @@
+/*
+This file is part of jpcsp.
+
+Jpcsp is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Jpcsp is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with Jpcsp.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package jpcsp.benchmark;
+
+import static jpcsp.benchmark.BenchmarkUtils.dataAddress;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import jpcsp.util.Hash;
+
+/**
+ * Hashing of memory areas, as used by the texture and vertex caches.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HashBenchmark {
+	@Param({"4096", "262144"})
+	public int length;
+
+	@Setup
+	public void setup() {
+		BenchmarkUtils.init();
+		BenchmarkUtils.fillMemory(dataAddress, length);
+	}
+
+	@Benchmark
+	public int getHashCode() {
+		return Hash.getHashCode(0, dataAddress, length);
+	}
+
+	@Benchmark
+	public int getHashCodeStride() {
+		return Hash.getHashCode(0, dataAddress, length, 16);
+	}
+
+	@Benchmark
+	public int getHashCodeComplex() {
+		return Hash.getHashCodeComplex(0, dataAddress, length);
+	}
+}
@@ -0,0 +1,106 @@
+/*
+This file is part of jpcsp.
+
+Jpcsp is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Jpcsp is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with Jpcsp.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package jpcsp.benchmark;
+
+import static jpcsp.benchmark.BenchmarkUtils.codeAddress;
+import static jpcsp.benchmark.BenchmarkUtils.dataAddress;
+import static jpcsp.benchmark.BenchmarkUtils.dataAddress2;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import jpcsp.Emulator;
+import jpcsp.Processor;
+
+/**
+ * Interpretation of synthetic MIPS code snippets
+ * (decoding and execution of the Allegrex Instructions).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InterpreterBenchmark {
+	private static final int loopAddress = codeAddress;
+	private static final int memoryLoopAddress = codeAddress + 0x100;
+	private static final int memcpyAddress = codeAddress + 0x200;
+	private static final int memsetAddress = codeAddress + 0x300;
+	@Param({"1000"})
+	public int count;
+	private Processor processor;
+
+	@Setup
+	public void setup() {
+		BenchmarkUtils.init();
+		BenchmarkUtils.loadCode(loopAddress, BenchmarkUtils.loopSnippet);
+		BenchmarkUtils.loadCode(memoryLoopAddress, BenchmarkUtils.memoryLoopSnippet);
+		BenchmarkUtils.loadCode(memcpyAddress, BenchmarkUtils.memcpySnippet);
+		BenchmarkUtils.loadCode(memsetAddress, BenchmarkUtils.memsetSnippet);
+		BenchmarkUtils.fillMemory(dataAddress, count << 2);
+		processor = Emulator.getProcessor();
+	}
+
+	@Benchmark
+	public int loop() {
+		processor.cpu._a0 = count;
+		BenchmarkUtils.interpret(processor, loopAddress);
+
+		return processor.cpu._v0;
+	}
+
+	@Benchmark
+	public int memoryLoop() {
+		processor.cpu._a0 = dataAddress;
+		processor.cpu._a1 = count;
+		BenchmarkUtils.interpret(processor, memoryLoopAddress);
+
+		return processor.cpu._v0;
+	}
+
+	@Benchmark
+	public int memcpy() {
+		processor.cpu._a0 = dataAddress2;
+		processor.cpu._a1 = dataAddress;
+		processor.cpu._a2 = count;
+		BenchmarkUtils.interpret(processor, memcpyAddress);
+
+		return processor.cpu._v0;
+	}
+
+	@Benchmark
+	public int memset() {
+		processor.cpu._a0 = dataAddress2;
+		processor.cpu._a1 = 0x5A;
+		processor.cpu._a2 = count;
+		BenchmarkUtils.interpret(processor, memsetAddress);
+
+		return processor.cpu._v0;
+	}
+}
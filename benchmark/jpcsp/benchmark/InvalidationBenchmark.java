@@ -0,0 +1,114 @@
+/*
+This file is part of jpcsp.
+
+Jpcsp is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Jpcsp is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with Jpcsp.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package jpcsp.benchmark;
+
+import static jpcsp.benchmark.BenchmarkUtils.codeAddress;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import jpcsp.Allegrex.compiler.CodeBlock;
+import jpcsp.Allegrex.compiler.IExecutable;
+import jpcsp.Allegrex.compiler.InvalidatedExecutable;
+import jpcsp.Allegrex.compiler.RuntimeContext;
+
+/**
+ * Invalidation of the compiled CodeBlocks when a module overlay
+ * is loaded over previously compiled code (self-modifying code).
+ * The code blocks are compiled in a resident area and in an overlay area,
+ * only the code blocks of the overlay area are invalidated and replaced.
+ * The invalidation of the previous invocation is undone before each invocation,
+ * so that each invocation has valid code blocks to invalidate.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InvalidationBenchmark {
+	private static final int blockSize = BenchmarkUtils.loopSnippet.length << 2;
+	private static final int residentAddress = codeAddress + 0x00300000;
+	private static final int overlayAddress = codeAddress + 0x00020000;
+	@Param({"500", "2000"})
+	public int count;
+	private int[] overlayCode;
+	private CodeBlock[] overlayCodeBlocks;
+
+	@Setup
+	public void setup() {
+		BenchmarkUtils.initCompiler();
+		overlayCode = new int[count * BenchmarkUtils.loopSnippet.length];
+		for (int i = 0; i < count; i++) {
+			System.arraycopy(BenchmarkUtils.loopSnippet, 0, overlayCode, i * BenchmarkUtils.loopSnippet.length, BenchmarkUtils.loopSnippet.length);
+		}
+		BenchmarkUtils.loadCode(residentAddress, overlayCode);
+		BenchmarkUtils.loadCode(overlayAddress, overlayCode);
+
+		overlayCodeBlocks = new CodeBlock[count];
+		for (int i = 0; i < count; i++) {
+			BenchmarkUtils.compile(residentAddress + i * blockSize);
+			BenchmarkUtils.compile(overlayAddress + i * blockSize);
+			overlayCodeBlocks[i] = RuntimeContext.getCodeBlock(overlayAddress + i * blockSize);
+		}
+	}
+
+	@Setup(Level.Invocation)
+	public void revalidate() {
+		// Restore the executables, as done by CheckChangedExecutable
+		// when the opcodes have not been changed
+		for (CodeBlock codeBlock : overlayCodeBlocks) {
+			IExecutable executable = codeBlock.getExecutable();
+			IExecutable currentExecutable = executable.getExecutable();
+			if (currentExecutable instanceof InvalidatedExecutable) {
+				executable.setExecutable(currentExecutable.getExecutable());
+			}
+		}
+	}
+
+	@Benchmark
+	public void overlayChurn() {
+		// Load the overlay code and replace its code blocks
+		BenchmarkUtils.loadCode(overlayAddress, overlayCode);
+		for (int i = 0; i < count; i++) {
+			RuntimeContext.addCodeBlock(overlayCodeBlocks[i].getStartAddress(), overlayCodeBlocks[i]);
+		}
+	}
+
+	@Benchmark
+	public void invalidateOverlay() {
+		RuntimeContext.invalidateRange(overlayAddress, count * blockSize);
+	}
+
+	@Benchmark
+	public void invalidateCacheLine() {
+		// Matching the size used by the Allegrex instruction ICACHE HIT INVALIDATE
+		RuntimeContext.invalidateRange(overlayAddress + (count >> 1) * blockSize, 64);
+	}
+}
@@ -0,0 +1,138 @@
+/*
+This file is part of jpcsp.
+
+Jpcsp is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Jpcsp is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with Jpcsp.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package jpcsp.benchmark;
+
+import static jpcsp.benchmark.BenchmarkUtils.dataAddress;
+import static jpcsp.benchmark.BenchmarkUtils.dataAddress2;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import jpcsp.Memory;
+import jpcsp.memory.FastMemory;
+import jpcsp.memory.NativeMemory;
+import jpcsp.memory.OffHeapMemory;
+import jpcsp.memory.SafeFastMemory;
+
+/**
+ * Read and write paths of the memory implementations.
+ * The NativeMemory requires the native "memory" library
+ * to be available in the java.library.path.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MemoryBenchmark {
+	@Param({"FastMemory", "SafeFastMemory", "NativeMemory", "OffHeapMemory"})
+	public String memoryType;
+	@Param({"65536"})
+	public int length;
+	private Memory mem;
+
+	@Setup
+	public void setup() {
+		// The memory write hooks require the HLE modules
+		BenchmarkUtils.init();
+
+		if ("FastMemory".equals(memoryType)) {
+			mem = new FastMemory();
+		} else if ("SafeFastMemory".equals(memoryType)) {
+			mem = new SafeFastMemory();
+		} else if ("NativeMemory".equals(memoryType)) {
+			mem = new NativeMemory();
+		} else if ("OffHeapMemory".equals(memoryType)) {
+			mem = new OffHeapMemory();
+		} else {
+			throw new IllegalArgumentException(String.format("Unknown memory type '%s'", memoryType));
+		}
+
+		if (!mem.allocate()) {
+			throw new IllegalStateException(String.format("Cannot allocate %s", memoryType));
+		}
+		mem.Initialise();
+	}
+
+	@TearDown
+	public void tearDown() {
+		// Release the memory before allocating the next implementation
+		mem = null;
+	}
+
+	@Benchmark
+	public int read32() {
+		int sum = 0;
+		for (int i = 0; i < length; i += 4) {
+			sum += mem.read32(dataAddress + i);
+		}
+
+		return sum;
+	}
+
+	@Benchmark
+	public void write32() {
+		for (int i = 0; i < length; i += 4) {
+			mem.write32(dataAddress + i, i);
+		}
+	}
+
+	@Benchmark
+	public int read8() {
+		int sum = 0;
+		for (int i = 0; i < length; i++) {
+			sum += mem.read8(dataAddress + i);
+		}
+
+		return sum;
+	}
+
+	@Benchmark
+	public void write8() {
+		for (int i = 0; i < length; i++) {
+			mem.write8(dataAddress + i, (byte) i);
+		}
+	}
+
+	@Benchmark
+	public void memcpy() {
+		mem.memcpy(dataAddress2, dataAddress, length);
+	}
+
+	@Benchmark
+	public void memcpyUnaligned() {
+		mem.memcpy(dataAddress2 + 1, dataAddress + 2, length);
+	}
+
+	@Benchmark
+	public void memset() {
+		mem.memset(dataAddress, (byte) 0x5A, length);
+	}
+}
@@ -0,0 +1,75 @@
+/*
+This file is part of jpcsp.
+
+Jpcsp is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Jpcsp is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with Jpcsp.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package jpcsp.benchmark;
+
+import static jpcsp.benchmark.BenchmarkUtils.dataAddress;
+
+import java.nio.Buffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import jpcsp.graphics.VertexInfo;
+import jpcsp.graphics.VertexInfoReader;
+
+/**
+ * Decoding of vertices which cannot be passed natively to the rendering engine
+ * (the vertex types with only float values are not decoded at all).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class VertexInfoReaderBenchmark {
+	// 0x0000D5: 8-bit texture, color 4444, 16-bit normal, 8-bit position
+	// 0x000132: 16-bit texture, color 5650, 8-bit normal, 16-bit position
+	@Param({"0x0000D5", "0x000132"})
+	public String vtype;
+	@Param({"1024"})
+	public int numberOfVertex;
+	private VertexInfo vertexInfo;
+	private VertexInfoReader vertexInfoReader;
+
+	@Setup
+	public void setup() {
+		BenchmarkUtils.init();
+
+		vertexInfo = new VertexInfo();
+		vertexInfo.processType(Integer.decode(vtype));
+		vertexInfo.ptr_vertex = dataAddress;
+		BenchmarkUtils.fillMemory(dataAddress, numberOfVertex * vertexInfo.vertexSize);
+
+		vertexInfoReader = new VertexInfoReader();
+	}
+
+	@Benchmark
+	public Buffer read() {
+		return vertexInfoReader.read(vertexInfo, vertexInfo.ptr_vertex, 0, numberOfVertex, false);
+	}
+}
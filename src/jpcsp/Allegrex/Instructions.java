@@ -9501,7 +9501,7 @@ public String disasm(int address, int insn) {
 return Common.disasmVDMVSMVTM("VMMUL", 1+one+(two<<1), vd, vs ^ 32, vt);
 }
 };
-public static final Instruction VHTFM2 = new Instruction(234, FLAG_USES_VFPU_PFXS | FLAG_USES_VFPU_PFXT | FLAG_USES_VFPU_PFXD) {
+public static final Instruction VHTFM2 = new Instruction(234, FLAG_USES_VFPU_PFXS | FLAG_USES_VFPU_PFXT | FLAG_USES_VFPU_PFXD | FLAG_COMPILED_PFX) {
 
 @Override
 public final String name() { return "VHTFM2"; }
@@ -9521,7 +9521,20 @@ public void interpret(Processor processor, int insn) {
 }
 @Override
 public void compile(ICompilerContext context, int insn) {
-	super.compile(context, insn);
+	final int vsize = 2;
+	final int vs = context.getVsRegisterIndex();
+	MethodVisitor mv = context.getMethodVisitor();
+	context.loadVt(1, 0);
+	context.storeFTmp1();
+	for (int n = 0; n < vsize; n++) {
+		context.prepareVdForStore(vsize, n);
+		context.loadVs(vsize, vs + n, 0);
+		context.loadFTmp1();
+		mv.visitInsn(Opcodes.FMUL);
+		context.loadVs(vsize, vs + n, 1);
+		mv.visitInsn(Opcodes.FADD);
+		context.storeVd(vsize, n);
+	}
 }
 @Override
 public String disasm(int address, int insn) {
@@ -9532,7 +9545,7 @@ public String disasm(int address, int insn) {
 	return Common.disasmVDVSMVT("VHTFM2", 2, vd, vs, vt);
 }
 };
-public static final Instruction VTFM2 = new Instruction(235, FLAG_USES_VFPU_PFXS | FLAG_USES_VFPU_PFXT | FLAG_USES_VFPU_PFXD) {
+public static final Instruction VTFM2 = new Instruction(235, FLAG_USES_VFPU_PFXS | FLAG_USES_VFPU_PFXT | FLAG_USES_VFPU_PFXD | FLAG_COMPILED_PFX) {
 
 @Override
 public final String name() { return "VTFM2"; }
@@ -9552,7 +9565,24 @@ public void interpret(Processor processor, int insn) {
 }
 @Override
 public void compile(ICompilerContext context, int insn) {
-	super.compile(context, insn);
+	final int vsize = 2;
+	final int vs = context.getVsRegisterIndex();
+	MethodVisitor mv = context.getMethodVisitor();
+	context.loadVt(2, 0);
+	context.storeFTmp1();
+	context.loadVt(2, 1);
+	context.storeFTmp2();
+	for (int n = 0; n < vsize; n++) {
+		context.prepareVdForStore(vsize, n);
+		context.loadVs(vsize, vs + n, 0);
+		context.loadFTmp1();
+		mv.visitInsn(Opcodes.FMUL);
+		context.loadVs(vsize, vs + n, 1);
+		context.loadFTmp2();
+		mv.visitInsn(Opcodes.FMUL);
+		mv.visitInsn(Opcodes.FADD);
+		context.storeVd(vsize, n);
+	}
 }
 @Override
 public String disasm(int address, int insn) {
@@ -9563,7 +9593,7 @@ public String disasm(int address, int insn) {
 	return Common.disasmVDVSMVT("VTFM2", 2, vd, vs, vt);
 }
 };
-public static final Instruction VHTFM3 = new Instruction(236, FLAG_USES_VFPU_PFXS | FLAG_USES_VFPU_PFXT | FLAG_USES_VFPU_PFXD) {
+public static final Instruction VHTFM3 = new Instruction(236, FLAG_USES_VFPU_PFXS | FLAG_USES_VFPU_PFXT | FLAG_USES_VFPU_PFXD | FLAG_COMPILED_PFX) {
 
 @Override
 public final String name() { return "VHTFM3"; }
@@ -9583,7 +9613,26 @@ public void interpret(Processor processor, int insn) {
 }
 @Override
 public void compile(ICompilerContext context, int insn) {
-	super.compile(context, insn);
+	final int vsize = 3;
+	final int vs = context.getVsRegisterIndex();
+	MethodVisitor mv = context.getMethodVisitor();
+	context.loadVt(2, 0);
+	context.storeFTmp1();
+	context.loadVt(2, 1);
+	context.storeFTmp2();
+	for (int n = 0; n < vsize; n++) {
+		context.prepareVdForStore(vsize, n);
+		context.loadVs(vsize, vs + n, 0);
+		context.loadFTmp1();
+		mv.visitInsn(Opcodes.FMUL);
+		context.loadVs(vsize, vs + n, 1);
+		context.loadFTmp2();
+		mv.visitInsn(Opcodes.FMUL);
+		mv.visitInsn(Opcodes.FADD);
+		context.loadVs(vsize, vs + n, 2);
+		mv.visitInsn(Opcodes.FADD);
+		context.storeVd(vsize, n);
+	}
 }
 @Override
 public String disasm(int address, int insn) {
@@ -0,0 +1,174 @@
+/*
+This file is part of jpcsp.
+
+Jpcsp is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Jpcsp is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with Jpcsp.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package jpcsp.Allegrex.compiler;
+
+import java.util.concurrent.LinkedBlockingDeque;
+
+import jpcsp.settings.AbstractBoolSettingsListener;
+import jpcsp.settings.AbstractIntSettingsListener;
+import jpcsp.settings.Settings;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Tiered compilation: the code blocks are first interpreted
+ * (see TieredExecutable) and are compiled on a background thread
+ * once they have been called often enough.
+ *
+ * The compilation itself is serialized on the CompilerClassLoader
+ * (the compiler state is not thread-safe), this is why only one
+ * background thread is used.
+ * A background compilation is executed while holding the lock on the
+ * BackgroundCompiler instance: the RuntimeContext reset is holding the same
+ * lock, so that a compilation running during a reset cannot add its
+ * code block after the reset.
+ */
+public class BackgroundCompiler {
+	private static Logger log = Compiler.log;
+	private static BackgroundCompiler instance;
+	private static final int defaultCallThreshold = 10;
+	private boolean enabled;
+	private int callThreshold = defaultCallThreshold;
+	private final LinkedBlockingDeque<TieredExecutable> queue = new LinkedBlockingDeque<TieredExecutable>();
+	private BackgroundCompilerThread thread;
+
+	private class BackgroundCompilationSettingsListerner extends AbstractBoolSettingsListener {
+		@Override
+		protected void settingsValueChanged(boolean value) {
+			setEnabled(value);
+		}
+	}
+
+	private class CallThresholdSettingsListerner extends AbstractIntSettingsListener {
+		@Override
+		protected void settingsValueChanged(int value) {
+			setCallThreshold(value);
+		}
+	}
+
+	private class BackgroundCompilerThread extends Thread {
+		@Override
+		public void run() {
+			while (true) {
+				try {
+					compileRequest(queue.take());
+				} catch (InterruptedException e) {
+					// Ignore Exception
+				} catch (Exception e) {
+					log.error("BackgroundCompiler", e);
+				}
+			}
+		}
+	}
+
+	public static BackgroundCompiler getInstance() {
+		if (instance == null) {
+			instance = new BackgroundCompiler();
+		}
+
+		return instance;
+	}
+
+	private BackgroundCompiler() {
+		Settings.getInstance().registerSettingsListener("BackgroundCompiler", "emu.compiler.backgroundCompilation", new BackgroundCompilationSettingsListerner());
+		Settings.getInstance().registerSettingsListener("BackgroundCompiler", "emu.compiler.backgroundCompilationThreshold", new CallThresholdSettingsListerner());
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	private void setEnabled(boolean enabled) {
+		this.enabled = enabled;
+
+		if (enabled && thread == null) {
+			thread = new BackgroundCompilerThread();
+			thread.setName("Background Compiler");
+			thread.setDaemon(true);
+			thread.start();
+		}
+	}
+
+	public int getCallThreshold() {
+		return callThreshold;
+	}
+
+	private void setCallThreshold(int callThreshold) {
+		if (callThreshold > 0) {
+			this.callThreshold = callThreshold;
+		} else {
+			this.callThreshold = defaultCallThreshold;
+		}
+	}
+
+	public synchronized void reset() {
+		queue.clear();
+	}
+
+	/**
+	 * Request the background compilation of a TieredExecutable.
+	 *
+	 * @param tieredExecutable  the executable to be compiled
+	 */
+	public void compile(TieredExecutable tieredExecutable) {
+		if (log.isDebugEnabled()) {
+			log.debug(String.format("BackgroundCompiler request 0x%08X", tieredExecutable.getStartAddress()));
+		}
+		queue.offer(tieredExecutable);
+	}
+
+	/**
+	 * Request the background compilation of a TieredExecutable
+	 * before all the other pending requests, because
+	 * the emulation is waiting for it.
+	 *
+	 * @param tieredExecutable  the executable to be compiled
+	 */
+	public void compileUrgent(TieredExecutable tieredExecutable) {
+		if (log.isDebugEnabled()) {
+			log.debug(String.format("BackgroundCompiler urgent request 0x%08X", tieredExecutable.getStartAddress()));
+		}
+		queue.offerFirst(tieredExecutable);
+	}
+
+	private synchronized void compileRequest(TieredExecutable tieredExecutable) {
+		// Ignore requests issued before the last reset
+		if (tieredExecutable.getResetCount() != Compiler.getResetCount()) {
+			return;
+		}
+
+		int address = tieredExecutable.getStartAddress();
+		IExecutable executable;
+		CodeBlock codeBlock = RuntimeContext.getCodeBlock(address);
+		if (codeBlock != null && codeBlock.getExecutable() != null) {
+			// Already compiled in the meantime
+			executable = codeBlock.getExecutable();
+		} else {
+			executable = Compiler.getInstance().compileInBackground(address);
+		}
+
+		if (executable != null && tieredExecutable.getResetCount() == Compiler.getResetCount()) {
+			if (log.isDebugEnabled()) {
+				log.debug(String.format("BackgroundCompiler compiled 0x%08X", address));
+			}
+			tieredExecutable.setCompiledExecutable(executable);
+			RuntimeContext.replaceExecutable(address, tieredExecutable, executable);
+		} else if (executable == null) {
+			tieredExecutable.setCompilationFailed();
+		}
+	}
+}
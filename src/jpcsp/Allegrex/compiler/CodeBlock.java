@@ -27,6 +27,8 @@ import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.ListIterator;
+import java.util.Set;
+import java.util.TreeSet;
 
 import jpcsp.Allegrex.Common.Instruction;
 import jpcsp.Allegrex.compiler.nativeCode.HookCodeInstruction;
@@ -70,6 +72,13 @@ public class CodeBlock {
 	private int flags;
 	private HLEModuleFunction hleFunction;
 	private IAction updateOpcodesAction;
+	private byte[] classBytes;
+	private boolean cacheable = true;
+	// Addresses of the "jal" instructions whose called function
+	// has been analysed as part of this CodeBlock (trace formation)
+	private Set<Integer> inlinedCalls = new TreeSet<Integer>();
+	// Last lookup having returned this code block, see CodeBlockLookup
+	private long lookupGeneration;
 
 	public CodeBlock(int startAddress, int instanceCount) {
 		this.startAddress = startAddress;
@@ -342,6 +351,10 @@ public class CodeBlock {
     		CodeInstruction codeInstruction = lit.next();
     		NativeCodeSequence nativeCodeSequence = nativeCodeManager.getNativeCodeSequence(codeInstruction, this);
     		if (nativeCodeSequence != null) {
+    			// The native code sequences are registered in the NativeCodeManager
+    			// during the compilation, do not store such code blocks in the CompilerCache.
+    			setCacheable(false);
+
     			if (nativeCodeSequence.isHook()) {
     				HookCodeInstruction hookCodeInstruction = new HookCodeInstruction(nativeCodeSequence, codeInstruction);
 
@@ -416,10 +429,19 @@ public class CodeBlock {
                     context.skipInstructions(0, false);
             	}
             } else {
+            	context.prepareRegisterCache(codeInstruction);
+            	context.prepareVfpuRegisterCache(codeInstruction);
                 codeInstruction.compile(context, mv);
                 numberInstructionsToBeSkipped = context.getNumberInstructionsToBeSkipped();
+                if (numberInstructionsToBeSkipped > 0) {
+                	// The skipped instructions might be branch targets
+                	context.flushRegisterCache();
+                	context.flushVfpuRegisterCache();
+                }
             }
         }
+        context.flushRegisterCache();
+        context.flushVfpuRegisterCache();
     }
 
     private Class<IExecutable> interpret(CompilerContext context) {
@@ -551,8 +573,14 @@ public class CodeBlock {
     	    log.trace(debugOutput.toString());
     	}
 
+    	byte[] bytes = cw.toByteArray();
+    	if (Compiler.getInstance().getCompilerCache().isEnabled()) {
+    		// Keep the class bytes so that they can be stored in the CompilerCache
+    		classBytes = bytes;
+    	}
+
     	try {
-    		compiledClass = loadExecutable(context, className, cw.toByteArray());
+    		compiledClass = loadExecutable(context, className, bytes);
     	} catch (NullPointerException e) {
     		log.error("Error while compiling " + className + ": " + e);
     	}
@@ -581,6 +609,28 @@ public class CodeBlock {
 	    return executable;
 	}
 
+    @SuppressWarnings("unchecked")
+    public synchronized IExecutable getCachedExecutable(CompilerClassLoader classLoader, byte[] bytes) {
+    	if (executable == null) {
+    		memoryRanges.updateValues();
+
+    		Class<IExecutable> classExecutable = (Class<IExecutable>) classLoader.defineClass(getInternalClassName(), bytes);
+    		try {
+    			executable = classExecutable.newInstance();
+    		} catch (InstantiationException e) {
+    			log.error(e);
+    		} catch (IllegalAccessException e) {
+    			log.error(e);
+    		}
+
+    		if (executable != null) {
+    			addCodeBlock();
+    		}
+    	}
+
+    	return executable;
+    }
+
     public synchronized IExecutable getInterpretedExecutable(CompilerContext context) {
     	if (executable == null) {
 	        Class<IExecutable> classExecutable = interpret(context);
@@ -631,6 +681,35 @@ public class CodeBlock {
 		return memoryRanges.isOverlappingWithAddressRange(address, size);
 	}
 
+	/**
+	 * Mark this code block as returned by a CodeBlockLookup.
+	 *
+	 * @param lookupGeneration  the generation of the lookup
+	 * @return                  false if this code block has already been
+	 *                          returned by the same lookup
+	 */
+	boolean setLookupGeneration(long lookupGeneration) {
+		if (this.lookupGeneration == lookupGeneration) {
+			return false;
+		}
+		this.lookupGeneration = lookupGeneration;
+
+		return true;
+	}
+
+	public MemoryRanges getMemoryRanges() {
+		return memoryRanges;
+	}
+
+	public void addCachedMemoryRange(int address, int length) {
+		for (int i = 0; i < length; i += 4) {
+			memoryRanges.addAddress(address + i);
+		}
+
+		lowestAddress = Math.min(lowestAddress, address);
+		highestAddress = Math.max(highestAddress, address + length - 4);
+	}
+
 	public boolean isInternal() {
     	int addr = getStartAddress();
     	return addr < INTERNAL_THREAD_ADDRESS_END && addr >= INTERNAL_THREAD_ADDRESS_START;
@@ -640,6 +719,10 @@ public class CodeBlock {
         return flags;
     }
 
+    public void setFlags(int flags) {
+    	this.flags = flags;
+    }
+
     public boolean hasFlags(int testFlags) {
         return (flags & testFlags) == testFlags;
     }
@@ -668,6 +751,57 @@ public class CodeBlock {
 		this.updateOpcodesAction = updateOpcodesAction;
 	}
 
+	public byte[] getClassBytes() {
+		return classBytes;
+	}
+
+	public void setClassBytes(byte[] classBytes) {
+		this.classBytes = classBytes;
+	}
+
+	public boolean isCacheable() {
+		if (!cacheable || isInternal() || isHLEFunction() || hasFlags(Instruction.FLAG_SYSCALL)) {
+			return false;
+		}
+
+		for (CodeInstruction codeInstruction : codeInstructions) {
+			if (codeInstruction.useMMIO()) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	public void setCacheable(boolean cacheable) {
+		this.cacheable = cacheable;
+	}
+
+	public void addInlinedCall(int address) {
+		inlinedCalls.add(address);
+	}
+
+	public boolean isInlinedCall(int address) {
+		return inlinedCalls.contains(address);
+	}
+
+	public boolean hasInlinedCalls() {
+		return !inlinedCalls.isEmpty();
+	}
+
+	/**
+	 * @return the return addresses of the inlined calls, in increasing order
+	 */
+	public int[] getInlinedReturnAddresses() {
+		int[] returnAddresses = new int[inlinedCalls.size()];
+		int i = 0;
+		for (int address : inlinedCalls) {
+			returnAddresses[i++] = address + 8;
+		}
+
+		return returnAddresses;
+	}
+
 	@Override
 	public String toString() {
 		return String.format("CodeBlock 0x%08X[0x%08X-0x%08X]", getStartAddress(), getLowestAddress(), getHighestAddress());
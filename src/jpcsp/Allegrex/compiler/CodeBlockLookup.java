@@ -0,0 +1,135 @@
+/*
+This file is part of jpcsp.
+
+Jpcsp is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Jpcsp is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with Jpcsp.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package jpcsp.Allegrex.compiler;
+
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+
+import jpcsp.Memory;
+import jpcsp.MemoryMap;
+
+/**
+ * An index of the code blocks overlapping each RAM page, used to find
+ * the code blocks to be invalidated without checking all of them.
+ *
+ * A code block is only listed in the pages overlapped by its memory ranges.
+ * These ranges are not always contiguous (e.g. when a called function
+ * has been inlined), so a code block is not necessarily listed in all
+ * the pages between its lowest and highest addresses.
+ */
+class CodeBlockLookup {
+	private static final int pageShift = 8;
+	private final List<CodeBlock>[] pages;
+	// The code blocks not completely located in the RAM are not in the pages
+	private final List<CodeBlock> outsideRamCodeBlocks = new LinkedList<CodeBlock>();
+	// Incremented by each lookup, to return a code block listed in several pages only once
+	private long generation;
+
+	@SuppressWarnings("unchecked")
+	public CodeBlockLookup() {
+		pages = new List[MemoryMap.SIZE_RAM >> pageShift];
+	}
+
+	private static int getPageIndex(int address) {
+		return ((address & Memory.addressMask) - MemoryMap.START_RAM) >> pageShift;
+	}
+
+	private static int getPageAddress(int index) {
+		return (index << pageShift) + MemoryMap.START_RAM;
+	}
+
+	private boolean isInsidePages(CodeBlock codeBlock) {
+		int startIndex = getPageIndex(codeBlock.getLowestAddress());
+		int endIndex = getPageIndex(codeBlock.getHighestAddress());
+
+		return startIndex >= 0 && startIndex <= endIndex && endIndex < pages.length;
+	}
+
+	public void add(CodeBlock codeBlock) {
+		if (!isInsidePages(codeBlock)) {
+			outsideRamCodeBlocks.add(codeBlock);
+			return;
+		}
+
+		int startIndex = getPageIndex(codeBlock.getLowestAddress());
+		int endIndex = getPageIndex(codeBlock.getHighestAddress());
+		int size = 1 << pageShift;
+		for (int i = startIndex; i <= endIndex; i++) {
+			if (codeBlock.isOverlappingWithAddressRange(getPageAddress(i), size)) {
+				List<CodeBlock> page = pages[i];
+				if (page == null) {
+					page = new LinkedList<CodeBlock>();
+					pages[i] = page;
+				}
+				page.add(codeBlock);
+			}
+		}
+	}
+
+	public void remove(CodeBlock codeBlock) {
+		if (!isInsidePages(codeBlock)) {
+			outsideRamCodeBlocks.remove(codeBlock);
+			return;
+		}
+
+		int startIndex = getPageIndex(codeBlock.getLowestAddress());
+		int endIndex = getPageIndex(codeBlock.getHighestAddress());
+		for (int i = startIndex; i <= endIndex; i++) {
+			List<CodeBlock> page = pages[i];
+			if (page != null) {
+				page.remove(codeBlock);
+				if (page.isEmpty()) {
+					pages[i] = null;
+				}
+			}
+		}
+	}
+
+	public void clear() {
+		Arrays.fill(pages, null);
+		outsideRamCodeBlocks.clear();
+	}
+
+	/**
+	 * Collect the code blocks listed in the pages of an address range,
+	 * and the code blocks located outside the RAM.
+	 * Each code block is collected only once.
+	 *
+	 * @param startAddress  the first address of the range
+	 * @param endAddress    the last address of the range
+	 * @param codeBlocks    the list where the code blocks are added
+	 */
+	public void getCodeBlocks(int startAddress, int endAddress, List<CodeBlock> codeBlocks) {
+		generation++;
+
+		int startIndex = Math.max(getPageIndex(startAddress), 0);
+		int endIndex = Math.min(getPageIndex(endAddress), pages.length - 1);
+		for (int i = startIndex; i <= endIndex; i++) {
+			List<CodeBlock> page = pages[i];
+			if (page != null) {
+				for (CodeBlock codeBlock : page) {
+					if (codeBlock.setLookupGeneration(generation)) {
+						codeBlocks.add(codeBlock);
+					}
+				}
+			}
+		}
+
+		codeBlocks.addAll(outsideRamCodeBlocks);
+	}
+}
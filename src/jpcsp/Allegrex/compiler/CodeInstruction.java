@@ -201,12 +201,18 @@ public class CodeInstruction {
     }
 
     private void compileJr(CompilerContext context, MethodVisitor mv) {
+        boolean isInlinedReturn = context.getRsRegisterIndex() == _ra && context.getCodeBlock().hasInlinedCalls();
+
     	// Retrieve the call address from the Rs register before executing
     	// the delay slot instruction, as it might theoretically modify the
     	// content of the Rs register.
         context.loadRs();
         compileDelaySlot(context, mv);
-        context.visitJump();
+        if (isInlinedReturn) {
+        	context.visitInlinedReturn();
+        } else {
+        	context.visitJump();
+        }
     }
 
     private void compileJalr(CompilerContext context, MethodVisitor mv) {
@@ -347,6 +353,15 @@ public class CodeInstruction {
     }
 
     private int getBranchingOpcodeCall0(CompilerContext context, MethodVisitor mv) {
+    	if (context.getCodeBlock().isInlinedCall(getAddress())) {
+    		// The called function is part of the current CodeBlock,
+    		// just jump to it after having set the return address.
+    		context.storeRegister(_ra, getAddress() + 8);
+    		compileDelaySlot(context, mv);
+
+    		return Opcodes.GOTO;
+    	}
+
         context.prepareCall(getBranchingTo(), getAddress() + 8, _ra);
         compileDelaySlot(context, mv);
         context.visitCall(getBranchingTo(), getAddress() + 8, _ra, isDelaySlotWritingRegister(context, _ra), false);
@@ -24,7 +24,9 @@ import static jpcsp.Allegrex.Common.Instruction.FLAG_SYSCALL;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
 import java.util.Stack;
 
@@ -147,9 +149,16 @@ public class Compiler implements ICompiler {
 	public static CpuDurationStatistics compileDuration = new CpuDurationStatistics("Compilation Time");
 	private Document configuration;
 	private NativeCodeManager nativeCodeManager;
+	private CompilerCache compilerCache;
     private boolean ignoreInvalidMemory = false;
+    private boolean hotSyscallStubs = false;
+    private boolean registerCaching = false;
+    private boolean traceFormation = false;
+    private boolean vfpuFusion = false;
     public int defaultMethodMaxInstructions = 3000;
     private static final int maxRecompileExecutable = 50;
+    // Trace formation: maximum size of a leaf function to be inlined
+    private static final int maxInlinedLeafInstructions = 64;
     private CompilerTypeManager compilerTypeManager;
     private HashSet<Integer> interpretedAddresses = new HashSet<Integer>();
     private Set<Integer> useMMIOAddresses = new HashSet<Integer>();
@@ -161,6 +170,34 @@ public class Compiler implements ICompiler {
 		}
 	}
 
+	private class HotSyscallStubsSettingsListerner extends AbstractBoolSettingsListener {
+		@Override
+		protected void settingsValueChanged(boolean value) {
+			setHotSyscallStubs(value);
+		}
+	}
+
+	private class RegisterCachingSettingsListerner extends AbstractBoolSettingsListener {
+		@Override
+		protected void settingsValueChanged(boolean value) {
+			setRegisterCaching(value);
+		}
+	}
+
+	private class TraceFormationSettingsListerner extends AbstractBoolSettingsListener {
+		@Override
+		protected void settingsValueChanged(boolean value) {
+			setTraceFormation(value);
+		}
+	}
+
+	private class VfpuFusionSettingsListerner extends AbstractBoolSettingsListener {
+		@Override
+		protected void settingsValueChanged(boolean value) {
+			setVfpuFusion(value);
+		}
+	}
+
 	private class MethodMaxInstructionsSettingsListerner extends AbstractIntSettingsListener {
 		@Override
 		protected void settingsValueChanged(int value) {
@@ -168,7 +205,7 @@ public class Compiler implements ICompiler {
 		}
 	}
 
-    private boolean isIgnoreInvalidMemory() {
+    public boolean isIgnoreInvalidMemory() {
         return ignoreInvalidMemory;
     }
 
@@ -176,6 +213,55 @@ public class Compiler implements ICompiler {
         ignoreInvalidMemory = enable;
     }
 
+    /**
+     * @return true if specialized calls have to be generated
+     *         for the functions annotated with HLEHotFunction
+     */
+    public boolean isHotSyscallStubs() {
+        return hotSyscallStubs;
+    }
+
+    private void setHotSyscallStubs(boolean enable) {
+        hotSyscallStubs = enable;
+    }
+
+    /**
+     * @return true if the GPRs have to be kept in local variables
+     *         of the generated methods along straight-line sequences
+     */
+    public boolean isRegisterCaching() {
+        return registerCaching;
+    }
+
+    private void setRegisterCaching(boolean enable) {
+        registerCaching = enable;
+    }
+
+    /**
+     * @return true if the small leaf functions have to be inlined
+     *         into the CodeBlocks calling them
+     */
+    public boolean isTraceFormation() {
+        return traceFormation;
+    }
+
+    private void setTraceFormation(boolean enable) {
+        traceFormation = enable;
+    }
+
+    /**
+     * @return true if the consecutive VFPU instructions have to be
+     *         compiled as a single sequence keeping the VFPU registers
+     *         in local variables
+     */
+    public boolean isVfpuFusion() {
+        return vfpuFusion;
+    }
+
+    private void setVfpuFusion(boolean enable) {
+        vfpuFusion = enable;
+    }
+
 	public static Compiler getInstance() {
 		if (instance == null) {
 			instance = new Compiler();
@@ -201,6 +287,7 @@ public class Compiler implements ICompiler {
 		classLoader = new CompilerClassLoader(this);
 		compileDuration.reset();
 		nativeCodeManager.reset();
+		compilerCache.reset();
 	}
 
     public void invalidateAll() {
@@ -314,7 +401,12 @@ public class Compiler implements ICompiler {
     private void Initialise() {
     	Settings.getInstance().registerSettingsListener("Compiler", "emu.ignoreInvalidMemoryAccess", new IgnoreInvalidMemoryAccessSettingsListerner());
     	Settings.getInstance().registerSettingsListener("Compiler", "emu.compiler.methodMaxInstructions", new MethodMaxInstructionsSettingsListerner());
+    	Settings.getInstance().registerSettingsListener("Compiler", "emu.compiler.hotSyscallStubs", new HotSyscallStubsSettingsListerner());
+    	Settings.getInstance().registerSettingsListener("Compiler", "emu.compiler.registerCaching", new RegisterCachingSettingsListerner());
+    	Settings.getInstance().registerSettingsListener("Compiler", "emu.compiler.traceFormation", new TraceFormationSettingsListerner());
+    	Settings.getInstance().registerSettingsListener("Compiler", "emu.compiler.vfpuFusion", new VfpuFusionSettingsListerner());
 
+    	File configurationFile = new File("Compiler.xml");
     	DocumentBuilderFactory documentBuilderFactory = DocumentBuilderFactory.newInstance();
 		documentBuilderFactory.setIgnoringElementContentWhitespace(true);
 		documentBuilderFactory.setIgnoringComments(true);
@@ -322,7 +414,7 @@ public class Compiler implements ICompiler {
 		configuration = null;
 		try {
 			DocumentBuilder documentBuilder = documentBuilderFactory.newDocumentBuilder();
-			configuration = documentBuilder.parse(new File("Compiler.xml"));
+			configuration = documentBuilder.parse(configurationFile);
 		} catch (ParserConfigurationException e) {
 			log.error(e);
 		} catch (SAXException e) {
@@ -338,6 +430,7 @@ public class Compiler implements ICompiler {
 		}
 
 		compilerTypeManager = new CompilerTypeManager();
+		compilerCache = new CompilerCache(configurationFile);
 
 		reset();
 	}
@@ -390,6 +483,85 @@ public class Compiler implements ICompiler {
         return false;
 	}
 
+	/**
+	 * Check if the code at the given address is a small leaf function:
+	 * no call, no syscall and no jump, only branches staying inside the
+	 * function, up to a single "jr $ra" at its end.
+	 *
+	 * @param address  the address of the function
+	 * @return         true if the function can be inlined in its callers
+	 */
+	private boolean isInlinableLeaf(int address) {
+		if (!isAddressGood(address)) {
+			return false;
+		}
+
+		int opcodeJrRa = AllegrexOpcodes.JR | (Common._ra << 21); // jr $ra
+		int notLeafFlags = FLAG_IS_JUMPING | FLAG_STARTS_NEW_BLOCK | FLAG_SYSCALL;
+		int highestBranchingTo = address;
+		IMemoryReader memoryReader = MemoryReader.getMemoryReader(address, 4);
+		for (int i = 0; i < maxInlinedLeafInstructions; i++) {
+			int pc = address + (i << 2);
+			int opcode = memoryReader.readNext();
+
+			if (opcode == opcodeJrRa) {
+				// No branch is allowed after the end of the function
+				return highestBranchingTo <= pc;
+			}
+
+			Instruction insn = Decoder.instruction(opcode);
+			if ((insn.getFlags() & notLeafFlags) != 0 || insn == Instructions.JR || insn == Instructions.JALR || insn == Instructions.ERET) {
+				return false;
+			}
+
+			if (insn.hasFlags(FLAG_IS_BRANCHING)) {
+				int branchingTo = branchTarget(pc + 4, opcode);
+				if (branchingTo < address) {
+					return false;
+				}
+				highestBranchingTo = Math.max(highestBranchingTo, branchingTo);
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * Check if the given instruction is reading or writing the $ra register.
+	 * The inlined call is loading $ra with the return address before
+	 * executing its delay slot, which is only correct when the delay slot
+	 * is not using $ra. Conservatively check all the register fields.
+	 *
+	 * @param opcode  the instruction opcode
+	 * @return        true if the instruction might use the $ra register
+	 */
+	private static boolean isUsingRa(int opcode) {
+		int rs = (opcode >> 21) & 0x1F;
+		int rt = (opcode >> 16) & 0x1F;
+		int rd = (opcode >> 11) & 0x1F;
+
+		return rs == Common._ra || rt == Common._ra || rd == Common._ra;
+	}
+
+	private boolean isInlinableCall(int callAddress, int address) {
+		if (!isTraceFormation()) {
+			return false;
+		}
+
+		// The delay slot of the call must not be using $ra
+		int delaySlotOpcode = MemoryReader.getMemoryReader(callAddress + 4, 4).readNext();
+		if (isUsingRa(delaySlotOpcode)) {
+			return false;
+		}
+
+		// Prefer the native code sequence when available
+		if (nativeCodeManager.getCompiledNativeCodeBlock(address) != null) {
+			return false;
+		}
+
+		return isInlinableLeaf(address);
+	}
+
 	private IExecutable analyse(CompilerContext context, int startAddress, boolean recursive, int instanceIndex) throws ClassFormatError {
         if (log.isTraceEnabled()) {
             log.trace(String.format("Compiler.analyse Block 0x%08X", startAddress));
@@ -401,6 +573,7 @@ public class Compiler implements ICompiler {
         pendingBlockAddresses.clear();
         pendingBlockAddresses.push(startAddress);
         Set<Integer> branchingToAddresses = new HashSet<Integer>();
+        Map<Integer, Integer> inlinedCalls = new HashMap<Integer, Integer>();
         while (!pendingBlockAddresses.isEmpty()) {
             int pc = pendingBlockAddresses.pop();
             if (!isAddressGood(pc)) {
@@ -454,6 +627,11 @@ public class Compiler implements ICompiler {
                     if (insn.hasFlags(Instruction.FLAG_STARTS_NEW_BLOCK)) {
                         if (recursive) {
                             context.blocksToBeAnalysed.push(branchingTo);
+                        } else if (insn == Instructions.JAL && isInlinableCall(pc, branchingTo)) {
+                        	// Trace formation: analyse the called function
+                        	// as part of this CodeBlock
+                        	inlinedCalls.put(pc, branchingTo);
+                        	pendingBlockAddresses.push(branchingTo);
                         }
                     } else if (isBranching) {
                         if (branchingTo != 0) {  // Ignore "J 0x00000000" instruction
@@ -494,6 +672,20 @@ public class Compiler implements ICompiler {
             }
         }
 
+        for (Map.Entry<Integer, Integer> inlinedCall : inlinedCalls.entrySet()) {
+        	int callAddress = inlinedCall.getKey();
+        	int returnAddress = callAddress + 8;
+        	int address = inlinedCall.getValue();
+        	if (codeBlock.getCodeInstruction(address) != null && codeBlock.getCodeInstruction(returnAddress) != null) {
+        		if (log.isDebugEnabled()) {
+        			log.debug(String.format("Inlining call at 0x%08X to 0x%08X", callAddress, address));
+        		}
+        		codeBlock.addInlinedCall(callAddress);
+        		codeBlock.setIsBranchTarget(address);
+        		codeBlock.setIsBranchTarget(returnAddress);
+        	}
+        }
+
         codeBlock.addCodeBlock();
 
         IExecutable executable;
@@ -566,19 +758,40 @@ public class Compiler implements ICompiler {
     }
 
     public IExecutable compile(int address, int instanceIndex) {
+    	// The compiler state is not thread-safe: serialize the compilations
+    	// with the ones executed by the BackgroundCompiler.
+    	// The class loader is used as lock as it is also locked by the JVM
+    	// when loading the classes referenced by the compiled code.
+    	synchronized (classLoader) {
+    		return compile(address, instanceIndex, false);
+    	}
+    }
+
+    public IExecutable compileInBackground(int address) {
+    	synchronized (classLoader) {
+    		return compile(address, getResetCount(), true);
+    	}
+    }
+
+    private IExecutable compile(int address, int instanceIndex, boolean inBackground) {
     	if (!isAddressGood(address)) {
             if (isIgnoreInvalidMemory()) {
                 log.warn(String.format("IGNORING: Trying to compile an invalid address 0x%08X", address));
             } else {
                 log.error(String.format("Trying to compile an invalid address 0x%08X", address));
-                Emulator.PauseEmu();
+                if (!inBackground) {
+                	Emulator.PauseEmu();
+                }
             }
     		return null;
     	}
 
     	// Disable the PSP clock while compiling. This could cause timing problems
     	// in some applications while compiling large MIPS functions.
-    	Emulator.getClock().pause();
+    	// A compilation in the background is not blocking the application.
+    	if (!inBackground) {
+    		Emulator.getClock().pause();
+    	}
 
     	long compilationStartMicros = 0;
     	if (Profiler.isProfilerEnabled()) {
@@ -598,11 +811,16 @@ public class Compiler implements ICompiler {
         	}
     	} else {
 	    	compileDuration.start();
+	    	// Try first to reuse a class generated during a previous run
+	    	executable = compilerCache.load(classLoader, address, instanceIndex);
 	        context = new CompilerContext(classLoader, instanceIndex);
-	        for (int retries = 2; retries > 0; retries--) {
+	        for (int retries = 2; retries > 0 && executable == null; retries--) {
 	            try {
 	            	lastContext = context;
 	                executable = analyse(context, address, false, instanceIndex);
+	                if (executable != null && context.getCodeBlock() != null) {
+	                	compilerCache.store(context.getCodeBlock());
+	                }
 	                break;
 	            } catch (ClassFormatError e) {
 	                // Catch exception
@@ -631,6 +849,9 @@ public class Compiler implements ICompiler {
         if (Profiler.isProfilerEnabled()) {
         	long compilationEndMicros = System.nanoTime() / 1000;
         	Profiler.addCompilation(compilationEndMicros - compilationStartMicros);
+        	if (context != null) {
+        		Profiler.addRegisterAccesses(context.getRegisterFieldAccesses(), context.getRegisterLocalAccesses());
+        	}
         }
 
         if (executable == null) {
@@ -657,7 +878,9 @@ public class Compiler implements ICompiler {
         }
 
         // Resume the PSP clock after compilation
-        Emulator.getClock().resume();
+        if (!inBackground) {
+        	Emulator.getClock().resume();
+        }
 
         return executable;
     }
@@ -694,6 +917,10 @@ public class Compiler implements ICompiler {
 		}
 	}
 
+	public CompilerCache getCompilerCache() {
+		return compilerCache;
+	}
+
 	public CompilerTypeManager getCompilerTypeManager() {
 		return compilerTypeManager;
 	}
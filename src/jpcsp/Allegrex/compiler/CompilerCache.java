@@ -0,0 +1,366 @@
+/*
+This file is part of jpcsp.
+
+Jpcsp is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Jpcsp is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with Jpcsp.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package jpcsp.Allegrex.compiler;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import jpcsp.Memory;
+import jpcsp.memory.IMemoryReader;
+import jpcsp.memory.MemoryReader;
+import jpcsp.memory.MemoryWriteTracker;
+import jpcsp.settings.AbstractBoolSettingsListener;
+import jpcsp.settings.Settings;
+import jpcsp.util.DurationStatistics;
+import jpcsp.util.Utilities;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Persistent on-disk cache of the classes generated by the compiler.
+ *
+ * Each entry is content-addressed: its file name is built from the class name
+ * (i.e. the start address and instance index of the CodeBlock) and
+ * from a hash of the MIPS opcodes covered by the CodeBlock.
+ * All the entries are stored in a directory whose name is a signature
+ * of the compiler options having an impact on the generated code
+ * (Compiler.xml content, memory type, profiler...).
+ *
+ * The opcodes are stored together with the class bytes and are compared
+ * to the current memory content before reusing an entry, so that an entry
+ * is never reused for self-modifying or relocated code.
+ */
+public class CompilerCache {
+	public static Logger log = Compiler.log;
+	private static final int CACHE_MAGIC = 0x4343504A; // "JPCC"
+	private static final int CACHE_VERSION = 1;
+	private static final String CACHE_DIRECTORY_NAME = "Compiler";
+	private static final String CACHE_FILE_EXTENSION = ".cache";
+	private boolean enabled;
+	private int configurationHash;
+	private File cacheDirectory;
+	// Entries available on disk, indexed by their class name
+	private Map<String, List<File>> entries;
+	private int hitCount;
+	private int missCount;
+	private int storeCount;
+
+	private class CompilerCacheSettingsListerner extends AbstractBoolSettingsListener {
+		@Override
+		protected void settingsValueChanged(boolean value) {
+			setEnabled(value);
+		}
+	}
+
+	public CompilerCache(File configurationFile) {
+		configurationHash = getFileHash(configurationFile);
+		Settings.getInstance().registerSettingsListener("CompilerCache", "emu.compiler.persistentCache", new CompilerCacheSettingsListerner());
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	public void setEnabled(boolean enabled) {
+		this.enabled = enabled;
+		reset();
+	}
+
+	public void reset() {
+		if (entries != null && log.isInfoEnabled()) {
+			log.info(String.format("Compiler cache: %d hits, %d misses, %d stored", hitCount, missCount, storeCount));
+		}
+
+		// The cache directory will be recomputed at the next access,
+		// the compiler options might have been changed.
+		cacheDirectory = null;
+		entries = null;
+		hitCount = 0;
+		missCount = 0;
+		storeCount = 0;
+	}
+
+	private static int getFileHash(File file) {
+		int hash = 0;
+		if (file.canRead()) {
+			InputStream is = null;
+			try {
+				is = new BufferedInputStream(new FileInputStream(file));
+				for (int b = is.read(); b >= 0; b = is.read()) {
+					hash = hash * 31 + b;
+				}
+			} catch (IOException e) {
+				log.error("getFileHash", e);
+			} finally {
+				Utilities.close(is);
+			}
+		}
+
+		return hash;
+	}
+
+	/**
+	 * Compute a signature of all the options having an impact on the
+	 * generated code. Classes generated with different options are stored in
+	 * different directories and will never be mixed.
+	 *
+	 * @return the options signature
+	 */
+	private int getOptionsSignature() {
+		Compiler compiler = Compiler.getInstance();
+		int signature = CACHE_VERSION;
+		signature = signature * 31 + configurationHash;
+		signature = signature * 31 + compiler.getDefaultMethodMaxInstructions();
+		signature = signature * 31 + (compiler.isIgnoreInvalidMemory() ? 1 : 0);
+		signature = signature * 31 + (compiler.isHotSyscallStubs() ? 1 : 0);
+		signature = signature * 31 + (compiler.isRegisterCaching() ? 1 : 0);
+		signature = signature * 31 + (compiler.isTraceFormation() ? 1 : 0);
+		signature = signature * 31 + (compiler.isVfpuFusion() ? 1 : 0);
+		signature = signature * 31 + (Profiler.isProfilerEnabled() ? 1 : 0);
+		signature = signature * 31 + (DurationStatistics.collectStatistics ? 1 : 0);
+		signature = signature * 31 + (RuntimeContext.enableDebugger ? 1 : 0);
+		signature = signature * 31 + (RuntimeContext.enableDaemonThreadSync ? 1 : 0);
+		signature = signature * 31 + (RuntimeContext.hasMemoryInt() ? 1 : 0);
+		signature = signature * 31 + (MemoryWriteTracker.isEnabled() ? 1 : 0);
+		signature = signature * 31 + (BackgroundCompiler.getInstance().isEnabled() ? 1 : 0);
+		if (RuntimeContext.memory != null) {
+			signature = signature * 31 + RuntimeContext.memory.getClass().getName().hashCode();
+		}
+
+		return signature;
+	}
+
+	private boolean init() {
+		if (!enabled || RuntimeContextLLE.isLLEActive()) {
+			return false;
+		}
+
+		if (entries == null) {
+			String directoryName = String.format("%s%s%c%08X", Settings.getInstance().getTmpDirectory(), CACHE_DIRECTORY_NAME, File.separatorChar, getOptionsSignature());
+			cacheDirectory = new File(directoryName);
+			cacheDirectory.mkdirs();
+
+			entries = new HashMap<String, List<File>>();
+			File[] files = cacheDirectory.listFiles();
+			if (files != null) {
+				for (File file : files) {
+					String fileName = file.getName();
+					int separatorIndex = fileName.lastIndexOf('-');
+					if (separatorIndex > 0 && fileName.endsWith(CACHE_FILE_EXTENSION)) {
+						addEntry(fileName.substring(0, separatorIndex), file);
+					}
+				}
+			}
+
+			if (log.isDebugEnabled()) {
+				log.debug(String.format("Compiler cache %s: %d entries", cacheDirectory, entries.size()));
+			}
+		}
+
+		return true;
+	}
+
+	private void addEntry(String className, File file) {
+		List<File> classEntries = entries.get(className);
+		if (classEntries == null) {
+			classEntries = new LinkedList<File>();
+			entries.put(className, classEntries);
+		}
+		classEntries.add(file);
+	}
+
+	private static int getOpcodesHash(List<MemoryRange> ranges) {
+		int hash = 0;
+		for (MemoryRange memoryRange : ranges) {
+			hash = hash * 31 + memoryRange.getRawAddress();
+			int[] values = memoryRange.getValues();
+			for (int i = 0; i < values.length; i++) {
+				hash = hash * 31 + values[i];
+			}
+		}
+
+		return hash;
+	}
+
+	private static String getFileName(String className, int opcodesHash) {
+		return String.format("%s-%08X%s", className, opcodesHash, CACHE_FILE_EXTENSION);
+	}
+
+	private static boolean areOpcodesMatching(int address, int[] values) {
+		if (!Memory.isAddressGood(address) || !Memory.isAddressGood(address + (values.length << 2) - 4)) {
+			return false;
+		}
+
+		IMemoryReader memoryReader = MemoryReader.getMemoryReader(address, values.length << 2, 4);
+		for (int i = 0; i < values.length; i++) {
+			if (memoryReader.readNext() != values[i]) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	private IExecutable load(CompilerClassLoader classLoader, int address, int instanceIndex, File file) throws IOException {
+		DataInputStream is = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+		try {
+			if (is.readInt() != CACHE_MAGIC || is.readInt() != CACHE_VERSION) {
+				return null;
+			}
+			if (is.readInt() != address || is.readInt() != instanceIndex) {
+				return null;
+			}
+			int flags = is.readInt();
+
+			int numberRanges = is.readInt();
+			int[] rangeAddresses = new int[numberRanges];
+			int[] rangeLengths = new int[numberRanges];
+			for (int i = 0; i < numberRanges; i++) {
+				rangeAddresses[i] = is.readInt();
+				rangeLengths[i] = is.readInt();
+				int[] values = new int[rangeLengths[i] >> 2];
+				for (int j = 0; j < values.length; j++) {
+					values[j] = is.readInt();
+				}
+
+				// Validate the entry against the current memory content
+				if (!areOpcodesMatching(rangeAddresses[i], values)) {
+					if (log.isDebugEnabled()) {
+						log.debug(String.format("Compiler cache %s: opcodes changed at 0x%08X", file.getName(), rangeAddresses[i]));
+					}
+					return null;
+				}
+			}
+
+			byte[] classBytes = new byte[is.readInt()];
+			is.readFully(classBytes);
+
+			CodeBlock codeBlock = new CodeBlock(address, instanceIndex);
+			for (int i = 0; i < numberRanges; i++) {
+				codeBlock.addCachedMemoryRange(rangeAddresses[i], rangeLengths[i]);
+			}
+			codeBlock.setFlags(flags);
+
+			return codeBlock.getCachedExecutable(classLoader, classBytes);
+		} finally {
+			is.close();
+		}
+	}
+
+	/**
+	 * Try to load from the cache the executable for a given address.
+	 *
+	 * @param classLoader    the class loader used to define the cached class
+	 * @param address        the start address of the CodeBlock
+	 * @param instanceIndex  the instance index of the CodeBlock
+	 * @return the cached executable,
+	 *         or null if no valid entry is available in the cache.
+	 */
+	public IExecutable load(CompilerClassLoader classLoader, int address, int instanceIndex) {
+		if (!init()) {
+			return null;
+		}
+
+		String className = CompilerContext.getClassName(address, instanceIndex);
+		List<File> classEntries = entries.get(className);
+		if (classEntries != null) {
+			for (File file : classEntries) {
+				try {
+					IExecutable executable = load(classLoader, address, instanceIndex, file);
+					if (executable != null) {
+						if (log.isDebugEnabled()) {
+							log.debug(String.format("Compiler cache hit %s", file.getName()));
+						}
+						hitCount++;
+						return executable;
+					}
+				} catch (IOException e) {
+					log.error(String.format("Compiler cache %s", file.getName()), e);
+				} catch (LinkageError e) {
+					log.error(String.format("Compiler cache %s", file.getName()), e);
+				}
+			}
+		}
+
+		missCount++;
+
+		return null;
+	}
+
+	/**
+	 * Store the class generated for a CodeBlock into the cache.
+	 *
+	 * @param codeBlock  the compiled CodeBlock
+	 */
+	public void store(CodeBlock codeBlock) {
+		byte[] classBytes = codeBlock.getClassBytes();
+		// Release the class bytes, they are no longer needed
+		codeBlock.setClassBytes(null);
+
+		if (classBytes == null || !codeBlock.isCacheable() || !init()) {
+			return;
+		}
+
+		List<MemoryRange> ranges = codeBlock.getMemoryRanges().getRanges();
+		String className = codeBlock.getClassName();
+		File file = new File(cacheDirectory, getFileName(className, getOpcodesHash(ranges)));
+		if (file.exists()) {
+			return;
+		}
+
+		DataOutputStream os = null;
+		try {
+			os = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+			os.writeInt(CACHE_MAGIC);
+			os.writeInt(CACHE_VERSION);
+			os.writeInt(codeBlock.getStartAddress());
+			os.writeInt(codeBlock.getInstanceIndex());
+			os.writeInt(codeBlock.getFlags());
+			os.writeInt(ranges.size());
+			for (MemoryRange memoryRange : ranges) {
+				int[] values = memoryRange.getValues();
+				os.writeInt(memoryRange.getRawAddress());
+				os.writeInt(values.length << 2);
+				for (int j = 0; j < values.length; j++) {
+					os.writeInt(values[j]);
+				}
+			}
+			os.writeInt(classBytes.length);
+			os.write(classBytes);
+			os.close();
+			os = null;
+
+			addEntry(className, file);
+			storeCount++;
+		} catch (IOException e) {
+			log.error(String.format("Compiler cache %s", file.getName()), e);
+			Utilities.close(os);
+			file.delete();
+		}
+	}
+}
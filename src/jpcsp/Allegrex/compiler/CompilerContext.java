@@ -45,6 +45,7 @@ import static jpcsp.HLE.SyscallHandler.syscallLoadCoreUnmappedImport;
 import java.lang.annotation.Annotation;
 import java.lang.reflect.Method;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
@@ -101,6 +102,7 @@ import jpcsp.HLE.kernel.types.pspAbstractMemoryMappedStructure;
 import jpcsp.HLE.modules.ThreadManForUser;
 import jpcsp.memory.DebuggerMemory;
 import jpcsp.memory.FastMemory;
+import jpcsp.memory.MemoryWriteTracker;
 import jpcsp.memory.SafeFastMemory;
 import jpcsp.util.ClassAnalyzer;
 import jpcsp.util.DurationStatistics;
@@ -142,6 +144,11 @@ public class CompilerContext implements ICompilerContext {
     private static final int LOCAL_FIRST_SAVED_PARAMETER = LOCAL_MAX;
     private static final int LOCAL_NUMBER_SAVED_PARAMETERS = 8;
     private static final int LOCAL_MAX_WITH_SAVED_PARAMETERS = LOCAL_FIRST_SAVED_PARAMETER + LOCAL_NUMBER_SAVED_PARAMETERS;
+    private static final int LOCAL_FIRST_CACHED_REGISTER = LOCAL_MAX_WITH_SAVED_PARAMETERS;
+    private static final int LOCAL_MAX_WITH_CACHED_REGISTERS = LOCAL_FIRST_CACHED_REGISTER + GprState.NUMBER_REGISTERS;
+    private static final int NUMBER_VPR_REGISTERS = 128;
+    private static final int LOCAL_FIRST_CACHED_VPR = LOCAL_MAX_WITH_CACHED_REGISTERS;
+    private static final int LOCAL_MAX_WITH_CACHED_VPRS = LOCAL_FIRST_CACHED_VPR + NUMBER_VPR_REGISTERS;
     private static final int DEFAULT_MAX_STACK_SIZE = 11;
     private static final int SYSCALL_MAX_STACK_SIZE = 100;
     private static final int LOCAL_ERROR_POINTER = LOCAL_TMP3;
@@ -172,6 +179,7 @@ public class CompilerContext implements ICompilerContext {
     private static final String stringDescriptor = Type.getDescriptor(String.class);
     private static final String memoryDescriptor = Type.getDescriptor(Memory.class);
     private static final String memoryInternalName = Type.getInternalName(Memory.class);
+    private static final String memoryWriteTrackerInternalName = Type.getInternalName(MemoryWriteTracker.class);
     private static final String profilerInternalName = Type.getInternalName(Profiler.class);
 	public  static final String executableDescriptor = Type.getDescriptor(IExecutable.class);
 	public  static final String executableInternalName = Type.getInternalName(IExecutable.class);
@@ -182,7 +190,29 @@ public class CompilerContext implements ICompilerContext {
 	private int maxStackSize = DEFAULT_MAX_STACK_SIZE;
 	private int maxLocalSize = LOCAL_MAX;
 	private boolean parametersSavedToLocals;
+	private ClassVisitor cv;
+	private int numberReusablePointers;
 	private CompilerTypeManager compilerTypeManager;
+	// Instructions which can be compiled while keeping the GPRs in local variables
+	private static Set<Instruction> registerCacheableInstructions;
+	// Instructions which can raise an exception (e.g. invalid memory access)
+	private static Set<Instruction> registerCacheWriteBackInstructions;
+	private boolean registerCacheActive;
+	// Bit masks of the GPRs having their value in a local variable,
+	// and of those whose value has not yet been stored back into the CpuState
+	private int cachedRegisters;
+	private int dirtyRegisters;
+	private int registerFieldAccesses;
+	private int registerLocalAccesses;
+	// VFPU instructions which can be fused together while keeping
+	// the VFPU registers in local variables
+	private static Set<Instruction> vfpuFusableInstructions;
+	private boolean vfpuCacheActive;
+	// Indexes into vprFloat/vprInt of the VFPU registers having their value
+	// in a local variable, and of those not yet stored back
+	private final BitSet cachedVprs = new BitSet(NUMBER_VPR_REGISTERS);
+	private final BitSet dirtyVprs = new BitSet(NUMBER_VPR_REGISTERS);
+	private int preparedVprForStore = -1;
 
 	public CompilerContext(CompilerClassLoader classLoader, int instanceIndex) {
     	Compiler compiler = Compiler.getInstance();
@@ -216,6 +246,53 @@ public class CompilerContext implements ICompilerContext {
 	        addFastSyscall(0x74AE582A); // __sceSasGetEnvelopeHeight
 	        addFastSyscall(0x68A46B95); // __sceSasGetEndFlag
         }
+
+        if (registerCacheableInstructions == null) {
+        	initRegisterCacheableInstructions();
+        }
+        if (vfpuFusableInstructions == null) {
+        	initVfpuFusableInstructions();
+        }
+    }
+
+    private static void initVfpuFusableInstructions() {
+    	// Only VFPU instructions accessing the VFPU registers as float values,
+    	// on a straight path (i.e. all the loads and stores are executed),
+    	// and never falling back to the interpreter for a known prefix state.
+    	Instruction[] fusableInstructions = {
+    			Instructions.VMMUL, Instructions.VMSCL, Instructions.VTFM2, Instructions.VTFM3,
+    			Instructions.VTFM4, Instructions.VHTFM2, Instructions.VHTFM3, Instructions.VHTFM4,
+    			Instructions.VDOT, Instructions.VHDP, Instructions.VSCL, Instructions.VCRSP,
+    			Instructions.VADD, Instructions.VSUB, Instructions.VMUL, Instructions.VROT
+    	};
+
+    	vfpuFusableInstructions = new HashSet<Instruction>(Arrays.asList(fusableInstructions));
+    }
+
+    private static void initRegisterCacheableInstructions() {
+    	// Only instructions without any internal branch or with branches
+    	// merging before the result is stored: the GPRs are then always
+    	// loaded and stored on a straight path.
+    	Instruction[] arithmeticInstructions = {
+    			Instructions.NOP, Instructions.ADD, Instructions.ADDU, Instructions.ADDI, Instructions.ADDIU,
+    			Instructions.SUB, Instructions.SUBU, Instructions.AND, Instructions.ANDI, Instructions.OR,
+    			Instructions.ORI, Instructions.XOR, Instructions.XORI, Instructions.NOR, Instructions.LUI,
+    			Instructions.SLL, Instructions.SRL, Instructions.SRA, Instructions.SLLV, Instructions.SRLV,
+    			Instructions.SRAV, Instructions.ROTR, Instructions.ROTRV, Instructions.SEB, Instructions.SEH,
+    			Instructions.EXT, Instructions.INS, Instructions.WSBH, Instructions.WSBW, Instructions.SLT,
+    			Instructions.SLTU, Instructions.SLTI, Instructions.SLTIU
+    	};
+    	Instruction[] memoryInstructions = {
+    			Instructions.LW, Instructions.LH, Instructions.LHU, Instructions.LB, Instructions.LBU,
+    			Instructions.SW, Instructions.SH, Instructions.SB
+    	};
+
+    	Set<Instruction> writeBackInstructions = new HashSet<Instruction>(Arrays.asList(memoryInstructions));
+    	Set<Instruction> cacheableInstructions = new HashSet<Instruction>(Arrays.asList(arithmeticInstructions));
+    	cacheableInstructions.addAll(writeBackInstructions);
+
+    	registerCacheWriteBackInstructions = writeBackInstructions;
+    	registerCacheableInstructions = cacheableInstructions;
     }
 
     private void addFastSyscall(int nid) {
@@ -286,9 +363,19 @@ public class CompilerContext implements ICompilerContext {
     public void loadRegister(int reg) {
     	if (reg == _zr) {
     		loadImm(0);
+    	} else if (registerCacheActive && isCachedRegister(reg)) {
+    		loadLocalVar(getCachedRegisterLocal(reg));
+    		registerLocalAccesses++;
     	} else {
 	    	loadCpu();
 	        mv.visitFieldInsn(Opcodes.GETFIELD, cpuInternalName, getGprFieldName(reg), "I");
+	        registerFieldAccesses++;
+	        if (registerCacheActive) {
+	        	// Keep the value in a local variable for the next accesses
+	        	mv.visitInsn(Opcodes.DUP);
+	        	storeLocalVar(getCachedRegisterLocal(reg));
+	        	setCachedRegister(reg);
+	        }
     	}
     }
 
@@ -391,7 +478,12 @@ public class CompilerContext implements ICompilerContext {
 
     private void loadVRegister(int m, int c, int r, boolean isFloat) {
     	int index = VfpuState.getVprIndex(m, c, r);
-    	if (isFloat) {
+    	if (vfpuCacheActive) {
+    		loadCachedVpr(index);
+    		if (!isFloat) {
+    			convertVFloatToInt();
+    		}
+    	} else if (isFloat) {
     		loadVprFloat();
     		loadImm(index);
             mv.visitInsn(Opcodes.FALOAD);
@@ -482,6 +574,11 @@ public class CompilerContext implements ICompilerContext {
     }
 
     public void prepareRegisterForStore(int reg) {
+    	if (registerCacheActive) {
+    		// The value will be stored into a local variable, no need for the cpu
+    		return;
+    	}
+
     	if (preparedRegisterForStore < 0) {
         	loadCpu();
     		preparedRegisterForStore = reg;
@@ -493,18 +590,29 @@ public class CompilerContext implements ICompilerContext {
     }
 
     public void storeRegister(int reg) {
-    	if (preparedRegisterForStore == reg) {
+    	if (registerCacheActive) {
+    		storeCachedRegister(reg);
+    	} else if (preparedRegisterForStore == reg) {
 	        mv.visitFieldInsn(Opcodes.PUTFIELD, cpuInternalName, getGprFieldName(reg), "I");
 	        preparedRegisterForStore = -1;
+	        registerFieldAccesses++;
     	} else {
 	    	loadCpu();
 	        mv.visitInsn(Opcodes.SWAP);
 	        mv.visitFieldInsn(Opcodes.PUTFIELD, cpuInternalName, getGprFieldName(reg), "I");
+	        registerFieldAccesses++;
     	}
     }
 
     @Override
     public void storeRegister(int reg, int constantValue) {
+    	if (registerCacheActive) {
+    		loadImm(constantValue);
+    		storeCachedRegister(reg);
+    		return;
+    	}
+
+    	registerFieldAccesses++;
     	if (preparedRegisterForStore == reg) {
     		preparedRegisterForStore = -1;
     	} else {
@@ -514,6 +622,227 @@ public class CompilerContext implements ICompilerContext {
         mv.visitFieldInsn(Opcodes.PUTFIELD, cpuInternalName, getGprFieldName(reg), "I");
     }
 
+    private boolean isCachedRegister(int reg) {
+    	return (cachedRegisters & (1 << reg)) != 0;
+    }
+
+    private int getCachedRegisterLocal(int reg) {
+    	return LOCAL_FIRST_CACHED_REGISTER + reg;
+    }
+
+    private void setCachedRegister(int reg) {
+    	cachedRegisters |= 1 << reg;
+    	maxLocalSize = Math.max(maxLocalSize, LOCAL_MAX_WITH_CACHED_REGISTERS);
+    }
+
+    private void storeCachedRegister(int reg) {
+    	storeLocalVar(getCachedRegisterLocal(reg));
+    	setCachedRegister(reg);
+    	dirtyRegisters |= 1 << reg;
+    	registerLocalAccesses++;
+    }
+
+    /**
+     * Store back into the CpuState the GPRs modified while being
+     * kept in local variables. The local variables are still valid
+     * after this call.
+     */
+    private void writeBackRegisterCache() {
+    	for (int reg = 0; dirtyRegisters != 0; reg++) {
+    		if ((dirtyRegisters & (1 << reg)) != 0) {
+    			loadCpu();
+    			loadLocalVar(getCachedRegisterLocal(reg));
+    	        mv.visitFieldInsn(Opcodes.PUTFIELD, cpuInternalName, getGprFieldName(reg), "I");
+    	        registerFieldAccesses++;
+    	        dirtyRegisters &= ~(1 << reg);
+    		}
+    	}
+    }
+
+    /**
+     * Store back the modified GPRs into the CpuState and stop
+     * using the local variables. This has to be called before any code
+     * which could leave the current straight-line sequence:
+     * label, branch, syscall, call to the interpreter...
+     */
+    public void flushRegisterCache() {
+    	writeBackRegisterCache();
+    	cachedRegisters = 0;
+    	registerCacheActive = false;
+    }
+
+    private boolean isRegisterCachingPossible() {
+    	return isRegisterCachingPossible(Compiler.getInstance().isRegisterCaching());
+    }
+
+    private boolean isRegisterCachingPossible(boolean enabled) {
+    	if (!enabled) {
+    		return false;
+    	}
+
+    	// The debugging features and the LLE need the GPRs
+    	// to be up-to-date in the CpuState after each instruction.
+    	if (RuntimeContext.enableDebugger || RuntimeContext.debugCodeInstruction || RuntimeContext.checkCodeModification) {
+    		return false;
+    	}
+    	if (Memory.getInstance() instanceof DebuggerMemory || RuntimeContextLLE.isLLEActive()) {
+    		return false;
+    	}
+
+    	return true;
+    }
+
+    private boolean isOnStraightPath(CodeInstruction codeInstruction) {
+    	// Only the plain instructions, not the native code sequences
+    	if (codeInstruction.getClass() != CodeInstruction.class) {
+    		return false;
+    	}
+    	// The cached values are only valid on a straight path,
+    	// i.e. they cannot be used after a label being the target of a jump.
+    	if (codeInstruction.isBranchTarget() || codeInstruction.isBranching()) {
+    		return false;
+    	}
+    	// The block start can be reached by a jump from the method start
+    	if (codeInstruction.getAddress() == getCodeBlock().getStartAddress()) {
+    		return false;
+    	}
+
+    	return true;
+    }
+
+    private boolean isRegisterCacheable(CodeInstruction codeInstruction) {
+    	return isOnStraightPath(codeInstruction) && registerCacheableInstructions.contains(codeInstruction.getInsn());
+    }
+
+    /**
+     * Decide if the GPRs accessed by the given instruction can be kept
+     * in local variables.
+     * This has to be called before compiling each instruction
+     * of a sequence, i.e. before its label is visited.
+     *
+     * @param codeInstruction  the instruction about to be compiled
+     */
+    public void prepareRegisterCache(CodeInstruction codeInstruction) {
+    	if (isRegisterCachingPossible() && isRegisterCacheable(codeInstruction)) {
+    		if (registerCacheWriteBackInstructions.contains(codeInstruction.getInsn())) {
+    			// The CpuState has to be up-to-date in case of an exception
+    			writeBackRegisterCache();
+    		}
+    		registerCacheActive = true;
+    	} else {
+    		flushRegisterCache();
+    	}
+    }
+
+    private int getCachedVprLocal(int index) {
+    	return LOCAL_FIRST_CACHED_VPR + index;
+    }
+
+    private void loadCachedVpr(int index) {
+    	if (cachedVprs.get(index)) {
+    		mv.visitVarInsn(Opcodes.FLOAD, getCachedVprLocal(index));
+    	} else {
+    		loadVprFloat();
+    		loadImm(index);
+    		mv.visitInsn(Opcodes.FALOAD);
+    		// Keep the value in a local variable for the next accesses
+    		mv.visitInsn(Opcodes.DUP);
+    		mv.visitVarInsn(Opcodes.FSTORE, getCachedVprLocal(index));
+    		setCachedVpr(index);
+    	}
+    }
+
+    private void setCachedVpr(int index) {
+    	cachedVprs.set(index);
+    	maxLocalSize = Math.max(maxLocalSize, LOCAL_MAX_WITH_CACHED_VPRS);
+    }
+
+    private void storeCachedVpr(int index) {
+    	mv.visitVarInsn(Opcodes.FSTORE, getCachedVprLocal(index));
+    	setCachedVpr(index);
+    	dirtyVprs.set(index);
+    }
+
+    /**
+     * Store back into vprFloat and vprInt the VFPU registers modified
+     * by the fused VFPU instructions and stop using the local variables.
+     * This has to be called before any code which is not part of the
+     * current sequence of fused VFPU instructions.
+     */
+    public void flushVfpuRegisterCache() {
+    	for (int index = dirtyVprs.nextSetBit(0); index >= 0; index = dirtyVprs.nextSetBit(index + 1)) {
+    		loadVprFloat();
+    		loadImm(index);
+    		mv.visitVarInsn(Opcodes.FLOAD, getCachedVprLocal(index));
+    		mv.visitInsn(Opcodes.FASTORE);
+    		loadVprInt();
+    		loadImm(index);
+    		mv.visitVarInsn(Opcodes.FLOAD, getCachedVprLocal(index));
+    		convertVFloatToInt();
+    		mv.visitInsn(Opcodes.IASTORE);
+    	}
+    	dirtyVprs.clear();
+    	cachedVprs.clear();
+    	vfpuCacheActive = false;
+    }
+
+    private boolean isVfpuFusable(CodeInstruction codeInstruction) {
+    	if (!isOnStraightPath(codeInstruction)) {
+    		return false;
+    	}
+
+    	Instruction insn = codeInstruction.getInsn();
+    	if (!vfpuFusableInstructions.contains(insn)) {
+    		return false;
+    	}
+
+    	// The .S versions are executed by the interpreter
+    	if (codeInstruction.getVsize() == 1 && insn != Instructions.VADD && insn != Instructions.VSUB && insn != Instructions.VMUL && insn != Instructions.VROT) {
+    		return false;
+    	}
+
+    	// With an unknown prefix state, the instruction falls back
+    	// to the interpreter when a prefix is enabled at runtime
+    	if (codeInstruction.hasFlags(Instruction.FLAG_USES_VFPU_PFXS) && vfpuPfxsState.isUnknown()) {
+    		return false;
+    	}
+    	if (codeInstruction.hasFlags(Instruction.FLAG_USES_VFPU_PFXT) && vfpuPfxtState.isUnknown()) {
+    		return false;
+    	}
+    	if (codeInstruction.hasFlags(Instruction.FLAG_USES_VFPU_PFXD) && vfpuPfxdState.isUnknown()) {
+    		return false;
+    	}
+
+    	return true;
+    }
+
+    /**
+     * Decide if the given instruction can be fused with the previous
+     * VFPU instructions, i.e. if the VFPU registers it accesses can be
+     * kept in local variables. A sequence of fused VFPU instructions
+     * (e.g. vmmul, vtfm, vdot/vscl chains) is then compiled as a single
+     * float computation, storing back its results only once at the end.
+     * This has to be called before compiling each instruction
+     * of a sequence, i.e. before its label is visited.
+     *
+     * @param codeInstruction  the instruction about to be compiled
+     */
+    public void prepareVfpuRegisterCache(CodeInstruction codeInstruction) {
+    	if (isRegisterCachingPossible(Compiler.getInstance().isVfpuFusion()) && isVfpuFusable(codeInstruction)) {
+    		vfpuCacheActive = true;
+    	} else {
+    		flushVfpuRegisterCache();
+    	}
+    }
+
+    public int getRegisterFieldAccesses() {
+    	return registerFieldAccesses;
+    }
+
+    public int getRegisterLocalAccesses() {
+    	return registerLocalAccesses;
+    }
+
     public void prepareFRegisterForStore(int reg) {
     	if (preparedRegisterForStore < 0) {
         	loadFpr();
@@ -588,7 +917,10 @@ public class CompilerContext implements ICompilerContext {
 
     private void prepareVRegisterForStore(int m, int c, int r, boolean isFloat) {
     	int index = VfpuState.getVprIndex(m, c, r);
-    	if (isFloat) {
+    	if (vfpuCacheActive) {
+    		// The value will be stored into a local variable, no need for the arrays
+    		preparedVprForStore = index;
+    	} else if (isFloat) {
     		// Prepare the array and index for the int value
     		loadVprInt();
     		loadImm(index);
@@ -664,6 +996,12 @@ public class CompilerContext implements ICompilerContext {
 				}
 
                 mv.visitInsn(Opcodes.POP);
+            } else if (vfpuCacheActive) {
+                applyPfxDstPostfix(pfxDstState, n, isFloat);
+                if (!isFloat) {
+                	convertVIntToFloat();
+                }
+                storeCachedVpr(preparedVprForStore);
             } else {
                 applyPfxDstPostfix(pfxDstState, n, isFloat);
                 if (isFloat) {
@@ -827,6 +1165,37 @@ public class CompilerContext implements ICompilerContext {
     	mv.visitInsn(Opcodes.IRETURN);
     }
 
+    /**
+     * Return from a function inlined in the current CodeBlock (trace formation).
+     * Continue directly after the matching inlined call or leave
+     * the CodeBlock as for any other jump:
+     *      switch (x) {
+     *          case returnAddress1: goto returnAddress1;
+     *          ...
+     *          default: return x;
+     *      }
+     */
+    public void visitInlinedReturn() {
+    	int[] returnAddresses = getCodeBlock().getInlinedReturnAddresses();
+    	Label[] returnLabels = new Label[returnAddresses.length];
+    	for (int i = 0; i < returnLabels.length; i++) {
+    		returnLabels[i] = new Label();
+    	}
+    	Label notInlinedReturn = new Label();
+
+    	flushInstructionCount(true, false);
+    	mv.visitInsn(Opcodes.DUP);
+    	mv.visitLookupSwitchInsn(notInlinedReturn, returnAddresses, returnLabels);
+    	for (int i = 0; i < returnLabels.length; i++) {
+    		mv.visitLabel(returnLabels[i]);
+    		mv.visitInsn(Opcodes.POP);
+    		mv.visitJumpInsn(Opcodes.GOTO, getCodeBlock().getCodeInstruction(returnAddresses[i]).getLabel());
+    	}
+
+    	mv.visitLabel(notInlinedReturn);
+    	visitJump();
+    }
+
     public void prepareCall(int address, int returnAddress, int returnRegister) {
     	preparedCallNativeCodeBlock = null;
 
@@ -863,12 +1232,21 @@ public class CompilerContext implements ICompilerContext {
         		// NativeCodeSequence Nop means nothing to do!
     		} else {
     			// Call NativeCodeSequence
+    			// (the inlined code is depending on another CodeBlock, do not cache this one)
+    			getCodeBlock().setCacheable(false);
     			if (log.isDebugEnabled()) {
     				log.debug(String.format("Inlining call at 0x%08X to %s", getCodeInstruction().getAddress(), preparedCallNativeCodeBlock));
     			}
 
     			visitNativeCodeSequence(preparedCallNativeCodeBlock, address, null);
     		}
+    	} else if (BackgroundCompiler.getInstance().isEnabled() && !RuntimeContext.hasCodeBlock(address)) {
+    		// The called code has not been compiled yet: do not reference its class
+    		// (this would force its compilation) but call it through the RuntimeContext
+    		// so that it can be interpreted until it is compiled in the background.
+    		loadImm(address);
+	        mv.visitMethodInsn(Opcodes.INVOKESTATIC, runtimeContextInternalName, "call", "(I)I");
+	        visitContinueToAddress(returnAddress, returnOnUnknownAddress);
     	} else {
 	        mv.visitMethodInsn(Opcodes.INVOKESTATIC, getClassName(address, instanceIndex), getStaticExecMethodName(), getStaticExecMethodDesc());
 	        visitContinueToAddress(returnAddress, returnOnUnknownAddress);
@@ -902,6 +1280,59 @@ public class CompilerContext implements ICompilerContext {
 		return fastSyscalls.contains(code);
 	}
 
+    private boolean isHotSyscallStub(HLEModuleFunction func) {
+    	return func.isHot() && Compiler.getInstance().isHotSyscallStubs() && cv != null;
+    }
+
+    private boolean hasCheckArgument(HLEModuleFunction func) {
+    	for (Annotation[] parameterAnnotations : func.getHLEModuleMethod().getParameterAnnotations()) {
+    		for (Annotation parameterAnnotation : parameterAnnotations) {
+    			if (parameterAnnotation instanceof CheckArgument) {
+    				return true;
+    			}
+    		}
+    	}
+
+    	return false;
+    }
+
+    /**
+     * Generate the required Java code to load a pointer instance
+     * reused by all the calls from the current syscall instruction.
+     * The instance is stored in a static field of the generated class:
+     *     if (pointerField == null) {
+     *         pointerField = new <parameterType>(RuntimeContext.memory, 0);
+     *     }
+     *     push pointerField on stack
+     *
+     * @param parameterType  the type of the pointer
+     * @param canBeNull      the pointer has the CanBeNull annotation
+     */
+    private void loadReusablePointer(Class<?> parameterType, boolean canBeNull) {
+    	String fieldName = String.format("pointer%d", numberReusablePointers++);
+    	String fieldDescriptor = Type.getDescriptor(parameterType);
+        cv.visitField(Opcodes.ACC_PRIVATE | Opcodes.ACC_STATIC, fieldName, fieldDescriptor, null, null).visitEnd();
+
+        mv.visitFieldInsn(Opcodes.GETSTATIC, codeBlock.getClassName(), fieldName, fieldDescriptor);
+        mv.visitInsn(Opcodes.DUP);
+        Label pointerAllocated = new Label();
+        mv.visitJumpInsn(Opcodes.IFNONNULL, pointerAllocated);
+        mv.visitInsn(Opcodes.POP);
+		mv.visitTypeInsn(Opcodes.NEW, Type.getInternalName(parameterType));
+		mv.visitInsn(Opcodes.DUP);
+		loadMemory();
+		loadImm(0);
+		if (parameterType == TPointer8.class || parameterType == TPointer16.class || parameterType == TPointer32.class || parameterType == TPointer64.class) {
+			loadImm(canBeNull);
+			mv.visitMethodInsn(Opcodes.INVOKESPECIAL, Type.getInternalName(parameterType), "<init>", "(" + memoryDescriptor + "IZ)V");
+		} else {
+			mv.visitMethodInsn(Opcodes.INVOKESPECIAL, Type.getInternalName(parameterType), "<init>", "(" + memoryDescriptor + "I)V");
+		}
+		mv.visitInsn(Opcodes.DUP);
+        mv.visitFieldInsn(Opcodes.PUTSTATIC, codeBlock.getClassName(), fieldName, fieldDescriptor);
+        mv.visitLabel(pointerAllocated);
+    }
+
     /**
      * Generate the required Java code to load one parameter for
      * the syscall function from the CPU registers.
@@ -931,6 +1362,8 @@ public class CompilerContext implements ICompilerContext {
      *                addressGood:
      *            }
      *            <parameterType> pointer = new <parameterType>(address);
+     *            or, for a hot syscall stub:
+     *            <parameterType> pointer = reusable pointer; pointer.setAddress(address);
      *            if (parameterType == TErrorPointer32.class) {
      *                parameterReader.setHasErrorPointer(true);
      *                localVar[LOCAL_ERROR_POINTER] = pointer;
@@ -1036,11 +1469,6 @@ public class CompilerContext implements ICompilerContext {
     		//     parameterReader.setHasErrorPointer(true);
     		//     localVar[LOCAL_ERROR_POINTER] = pointer;
     		// }
-    		mv.visitTypeInsn(Opcodes.NEW, Type.getInternalName(parameterType));
-    		mv.visitInsn(Opcodes.DUP);
-    		loadMemory();
-    		parameterReader.loadNextInt();
-
     		boolean canBeNull = false;
     		for (Annotation parameterAnnotation : parameterAnnotations) {
     			if (parameterAnnotation instanceof CanBeNull) {
@@ -1049,6 +1477,19 @@ public class CompilerContext implements ICompilerContext {
     			}
     		}
 
+    		// A hot function is not keeping a reference to its pointers,
+    		// the same instance can be reused for each call.
+    		boolean reusePointer = afterSyscallLabel != null && isHotSyscallStub(func);
+    		if (reusePointer) {
+    			loadReusablePointer(parameterType, canBeNull);
+    			mv.visitInsn(Opcodes.DUP);
+    		} else {
+    			mv.visitTypeInsn(Opcodes.NEW, Type.getInternalName(parameterType));
+    			mv.visitInsn(Opcodes.DUP);
+    			loadMemory();
+    		}
+    		parameterReader.loadNextInt();
+
     		if (checkMemoryAccess() && afterSyscallLabel != null) {
     			Label addressGood = new Label();
     			if (canBeNull) {
@@ -1059,11 +1500,13 @@ public class CompilerContext implements ICompilerContext {
                 mv.visitMethodInsn(Opcodes.INVOKESTATIC, runtimeContextInternalName, "checkMemoryPointer", "(I)Z");
     			mv.visitJumpInsn(Opcodes.IFNE, addressGood);
     			storeRegister(_v0, SceKernelErrors.ERROR_INVALID_POINTER);
-    			parameterReader.popAllStack(4);
+    			parameterReader.popAllStack(reusePointer ? 3 : 4);
     			mv.visitJumpInsn(Opcodes.GOTO, afterSyscallLabel);
     			mv.visitLabel(addressGood);
     		}
-    		if (parameterType == TPointer8.class || parameterType == TPointer16.class || parameterType == TPointer32.class || parameterType == TPointer64.class) {
+    		if (reusePointer) {
+    			mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, Type.getInternalName(parameterType), "setAddress", "(I)V");
+    		} else if (parameterType == TPointer8.class || parameterType == TPointer16.class || parameterType == TPointer32.class || parameterType == TPointer64.class) {
     			loadImm(canBeNull);
     			mv.visitMethodInsn(Opcodes.INVOKESPECIAL, Type.getInternalName(parameterType), "<init>", "(" + memoryDescriptor + "IZ)V");
     		} else {
@@ -1888,10 +2331,17 @@ public class CompilerContext implements ICompilerContext {
     	loadModule(func.getModuleName());
     	parameterReader.incrementCurrentStackSize();
 
+    	// No exception handler is required for a hot function declared as
+    	// not throwing any SceKernelErrorException (unless one of its
+    	// parameters has to be checked, which could throw one).
+    	boolean hasExceptionHandler = !isHotSyscallStub(func) || func.canThrowError() || hasCheckArgument(func);
+
     	Label tryStart = new Label();
     	Label tryEnd = new Label();
     	Label catchSceKernelErrorException = new Label();
-    	mv.visitTryCatchBlock(tryStart, tryEnd, catchSceKernelErrorException, Type.getInternalName(SceKernelErrorException.class));
+    	if (hasExceptionHandler) {
+    		mv.visitTryCatchBlock(tryStart, tryEnd, catchSceKernelErrorException, Type.getInternalName(SceKernelErrorException.class));
+    	}
 
         Class<?>[] parameterTypes = func.getHLEModuleMethod().getParameterTypes();
         Class<?> returnType = func.getHLEModuleMethod().getReturnType();
@@ -1926,8 +2376,42 @@ public class CompilerContext implements ICompilerContext {
         mv.visitInsn(Opcodes.POP);
 
         mv.visitLabel(tryEnd);
-        mv.visitJumpInsn(Opcodes.GOTO, afterSyscallLabel);
+        if (hasExceptionHandler) {
+        	mv.visitJumpInsn(Opcodes.GOTO, afterSyscallLabel);
+        	visitSyscallExceptionHandler(func, parameterReader, catchSceKernelErrorException);
+        }
+
+    	mv.visitLabel(afterSyscallLabel);
 
+        if (fastSyscall) {
+    		mv.visitMethodInsn(Opcodes.INVOKESTATIC, runtimeContextInternalName, "postSyscallFast", "()V");
+        } else {
+    		mv.visitMethodInsn(Opcodes.INVOKESTATIC, runtimeContextInternalName, "postSyscall", "()V");
+        }
+
+        if (needFirmwareVersionCheck) {
+        	Label afterVersionCheckLabel = new Label();
+        	mv.visitJumpInsn(Opcodes.GOTO, afterVersionCheckLabel);
+
+        	mv.visitLabel(unsupportedVersionLabel);
+        	loadModuleLoggger(func);
+        	mv.visitLdcInsn(String.format("%s is not supported in firmware version %d, it requires at least firmware version %d", func.getFunctionName(), RuntimeContext.firmwareVersion, func.getFirmwareVersion()));
+        	mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, Type.getInternalName(Logger.class), "warn", "(" + Type.getDescriptor(Object.class) + ")V");
+        	storeRegister(_v0, -1);
+
+        	mv.visitLabel(afterVersionCheckLabel);
+        }
+    }
+
+    /**
+     * Generate the SceKernelErrorException handler for a syscall function,
+     * see visitSyscall().
+     *
+     * @param func                          the syscall function
+     * @param parameterReader               the parameters state after the call
+     * @param catchSceKernelErrorException  the Label of the handler
+     */
+    private void visitSyscallExceptionHandler(HLEModuleFunction func, CompilerParameterReader parameterReader, Label catchSceKernelErrorException) {
         // catch (SceKernelErrorException e) {
         //     errorCode = e.errorCode;
         //     if (Modules.log.isDebugEnabled()) {
@@ -1961,27 +2445,6 @@ public class CompilerContext implements ICompilerContext {
         	int jumpRegister = (previousInstruction.getOpcode() >> 21) & 0x1F;
         	loadRegister(jumpRegister);
         }
-
-    	mv.visitLabel(afterSyscallLabel);
-
-        if (fastSyscall) {
-    		mv.visitMethodInsn(Opcodes.INVOKESTATIC, runtimeContextInternalName, "postSyscallFast", "()V");
-        } else {
-    		mv.visitMethodInsn(Opcodes.INVOKESTATIC, runtimeContextInternalName, "postSyscall", "()V");
-        }
-
-        if (needFirmwareVersionCheck) {
-        	Label afterVersionCheckLabel = new Label();
-        	mv.visitJumpInsn(Opcodes.GOTO, afterVersionCheckLabel);
-
-        	mv.visitLabel(unsupportedVersionLabel);
-        	loadModuleLoggger(func);
-        	mv.visitLdcInsn(String.format("%s is not supported in firmware version %d, it requires at least firmware version %d", func.getFunctionName(), RuntimeContext.firmwareVersion, func.getFirmwareVersion()));
-        	mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, Type.getInternalName(Logger.class), "warn", "(" + Type.getDescriptor(Object.class) + ")V");
-        	storeRegister(_v0, -1);
-
-        	mv.visitLabel(afterVersionCheckLabel);
-        }
     }
 
     /**
@@ -2002,6 +2465,12 @@ public class CompilerContext implements ICompilerContext {
     	flushInstructionCount(false, false);
 
     	int code = (opcode >> 6) & 0x000FFFFF;
+
+    	if (Profiler.isProfilerEnabled()) {
+    		loadImm(code);
+    		mv.visitMethodInsn(Opcodes.INVOKESTATIC, profilerInternalName, "addSyscall", "(I)V");
+    	}
+
     	int syscallAddr = NIDMapper.getInstance().getAddressBySyscall(code);
     	// Call the HLE method only when it has not been overwritten
     	if (syscallAddr != 0) {
@@ -2092,6 +2561,10 @@ public class CompilerContext implements ICompilerContext {
     }
 
     public void startClass(ClassVisitor cv) {
+    	// The class visitor is used to add the fields of the reusable pointers
+    	this.cv = cv;
+    	numberReusablePointers = 0;
+
     	if (RuntimeContext.enableLineNumbers) {
     		cv.visitSource(getCodeBlock().getClassName() + ".java", null);
     	}
@@ -2139,7 +2612,7 @@ public class CompilerContext implements ICompilerContext {
         	loadRegister(_a0 + i);
     		storeLocalVar(LOCAL_FIRST_SAVED_PARAMETER + i);
     	}
-    	maxLocalSize = LOCAL_MAX_WITH_SAVED_PARAMETERS;
+    	maxLocalSize = Math.max(maxLocalSize, LOCAL_MAX_WITH_SAVED_PARAMETERS);
     	parametersSavedToLocals = true;
     }
 
@@ -2869,6 +3342,10 @@ public class CompilerContext implements ICompilerContext {
 			mv.visitInsn(Opcodes.IADD);
 		}
 
+		if (!isRead) {
+			trackMemoryWrite();
+		}
+
 		if (RuntimeContext.debugMemoryRead && isRead) {
 			if (!RuntimeContext.debugMemoryReadWriteNoSP || registerIndex != _sp) {
 				mv.visitInsn(Opcodes.DUP);
@@ -2942,6 +3419,7 @@ public class CompilerContext implements ICompilerContext {
 				loadImm(offset);
 				mv.visitInsn(Opcodes.IADD);
 			}
+			trackMemoryWrite();
             if (checkMemoryAccess()) {
                 loadImm(codeInstruction.getAddress());
                 mv.visitMethodInsn(Opcodes.INVOKESTATIC, runtimeContextInternalName, "checkMemoryWrite32", "(II)I");
@@ -2987,6 +3465,7 @@ public class CompilerContext implements ICompilerContext {
 			loadImm(offset);
 			mv.visitInsn(Opcodes.IADD);
 		}
+		trackMemoryWrite();
 
 		if (!useMMIO() && RuntimeContext.hasMemoryInt()) {
 			if (checkMemoryAccess()) {
@@ -3015,6 +3494,7 @@ public class CompilerContext implements ICompilerContext {
 				loadImm(offset);
 				mv.visitInsn(Opcodes.IADD);
 			}
+			trackMemoryWrite();
 
 			if (RuntimeContext.hasMemoryInt()) {
 				if (checkMemoryAccess()) {
@@ -3082,6 +3562,7 @@ public class CompilerContext implements ICompilerContext {
 			loadImm(offset);
 			mv.visitInsn(Opcodes.IADD);
 		}
+		trackMemoryWrite();
 
 		if (!useMMIO() && RuntimeContext.hasMemoryInt()) {
 			if (checkMemoryAccess()) {
@@ -3110,6 +3591,7 @@ public class CompilerContext implements ICompilerContext {
 				loadImm(offset);
 				mv.visitInsn(Opcodes.IADD);
 			}
+			trackMemoryWrite();
 
 			if (RuntimeContext.hasMemoryInt()) {
 				if (checkMemoryAccess()) {
@@ -3177,6 +3659,7 @@ public class CompilerContext implements ICompilerContext {
 			loadImm(offset);
 			mv.visitInsn(Opcodes.IADD);
 		}
+		trackMemoryWrite();
 
 		if (RuntimeContext.hasMemoryInt()) {
 			if (checkMemoryAccess()) {
@@ -3238,6 +3721,35 @@ public class CompilerContext implements ICompilerContext {
         this.methodMaxInstructions = methodMaxInstructions;
     }
 
+    private boolean trackMemoryWrites() {
+    	return !useMMIO() && RuntimeContext.hasMemoryInt() && MemoryWriteTracker.isEnabled();
+    }
+
+    /**
+     * Record a memory write into the MemoryWriteTracker.
+     * The address to be written is on the top of the stack and is left unchanged.
+     * Only required when writing directly to memoryInt,
+     * the Memory implementations are tracking their writes.
+     */
+    private void trackMemoryWrite() {
+    	if (trackMemoryWrites()) {
+    		mv.visitInsn(Opcodes.DUP);
+    		mv.visitMethodInsn(Opcodes.INVOKESTATIC, memoryWriteTrackerInternalName, "write", "(I)V");
+    	}
+    }
+
+    private void trackMemoryWrite(int registerIndex, int offset, int length) {
+    	if (trackMemoryWrites()) {
+    		loadRegister(registerIndex);
+    		if (offset != 0) {
+    			loadImm(offset);
+    			mv.visitInsn(Opcodes.IADD);
+    		}
+    		loadImm(length);
+    		mv.visitMethodInsn(Opcodes.INVOKESTATIC, memoryWriteTrackerInternalName, "write", "(II)V");
+    	}
+    }
+
     private boolean checkMemoryAccess() {
         if (!RuntimeContext.hasMemoryInt()) {
             return false;
@@ -4211,6 +4723,7 @@ public class CompilerContext implements ICompilerContext {
     	//                     RuntimeContext.memoryInt,
     	//                     RuntimeContext.checkMemoryWrite32(rs + simm14, pc) >>> 2,
     	//                     countSequence * 4);
+    	trackMemoryWrite(registerIndex, offset, count << 2);
     	loadVprInt();
     	int vprIndex = VfpuState.getVprIndex((vt >> 2) & 7, vt & 3, (vt & 64) >> 6);
     	loadImm(vprIndex);
@@ -4498,6 +5011,15 @@ public class CompilerContext implements ICompilerContext {
 		}
 
 		if (!isLW) {
+			// The sequence might be crossing a page boundary
+			int minOffset = offsets[0];
+			int maxOffset = offsets[0];
+			for (int i = 1; i < offsets.length; i++) {
+				minOffset = Math.min(minOffset, offsets[i]);
+				maxOffset = Math.max(maxOffset, offsets[i]);
+			}
+			trackMemoryWrite(baseRegister, minOffset, maxOffset - minOffset + 4);
+
 			if (compileSWsequenceZR(baseRegister, offsets, registers)) {
 				return true;
 			}
@@ -44,6 +44,10 @@ public class MemoryRange {
 		rawAddress = address;
 	}
 
+	public int getRawAddress() {
+		return rawAddress;
+	}
+
 	public int getLength() {
 		return length;
 	}
@@ -65,6 +69,10 @@ public class MemoryRange {
 		}
 	}
 
+	public int[] getValues() {
+		return values;
+	}
+
 	public boolean isOverlappingWithAddress(int address) {
 		return this.address <= address && address < this.address + length;
 	}
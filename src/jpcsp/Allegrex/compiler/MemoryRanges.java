@@ -48,6 +48,10 @@ public class MemoryRanges {
 		ranges.add(memoryRange);
 	}
 
+	public List<MemoryRange> getRanges() {
+		return ranges;
+	}
+
 	public void updateValues() {
 		for (MemoryRange memoryRange : ranges) {
 			memoryRange.updateValues();
@@ -0,0 +1,326 @@
+/*
+This file is part of jpcsp.
+
+Jpcsp is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Jpcsp is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with Jpcsp.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package jpcsp.Allegrex.compiler;
+
+import static jpcsp.Allegrex.Common._ra;
+import static jpcsp.Allegrex.Common._zr;
+import static jpcsp.Allegrex.Common.Instruction.FLAG_IS_JUMPING;
+import static jpcsp.Allegrex.Common.Instruction.FLAG_STARTS_NEW_BLOCK;
+import static jpcsp.Allegrex.Common.Instruction.FLAG_SYSCALL;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import jpcsp.Allegrex.Instructions;
+import jpcsp.Allegrex.Common.Instruction;
+import jpcsp.Allegrex.compiler.nativeCode.NativeCodeInstruction;
+import jpcsp.Allegrex.compiler.nativeCode.NativeCodeManager;
+import jpcsp.Allegrex.compiler.nativeCode.Memchr;
+import jpcsp.Allegrex.compiler.nativeCode.Memcmp;
+import jpcsp.Allegrex.compiler.nativeCode.Memcpy;
+import jpcsp.Allegrex.compiler.nativeCode.Memset;
+import jpcsp.Allegrex.compiler.nativeCode.Strchr;
+import jpcsp.Allegrex.compiler.nativeCode.Strcmp;
+import jpcsp.Allegrex.compiler.nativeCode.Strcpy;
+import jpcsp.Allegrex.compiler.nativeCode.Strlen;
+
+/**
+ * Search, in the profiled CodeBlocks, for candidates to new native code sequences.
+ *
+ * The hottest leaf functions are grouped by their normalized opcode shape
+ * (instruction names and relative branch offsets, without registers and
+ * immediate values). The loop of each group is then matched against
+ * the loops implemented by the existing native code sequences
+ * (byte/copy/compare loops) and a Compiler.xml entry is logged for review.
+ */
+public class NativeCodeCandidates {
+	private static final int maxCandidateCodeBlocks = 100;
+	private static final int maxCandidateInstructions = 64;
+	// Ignore the CodeBlocks using less than 0.1% of the total cycles
+	private static final double minCyclesPercentage = 0.1;
+
+	private static class Candidate {
+		public final String shape;
+		public final List<CodeBlock> codeBlocks = new ArrayList<CodeBlock>();
+		public Class<?> nativeClass;
+		public long instructionCount;
+		public long callCount;
+
+		public Candidate(String shape) {
+			this.shape = shape;
+		}
+	}
+
+	private static boolean isLoad(Instruction insn) {
+		return insn == Instructions.LB || insn == Instructions.LBU || insn == Instructions.LH || insn == Instructions.LHU || insn == Instructions.LW;
+	}
+
+	private static boolean isStore(Instruction insn) {
+		return insn == Instructions.SB || insn == Instructions.SH || insn == Instructions.SW;
+	}
+
+	private static boolean isCompareBranch(Instruction insn) {
+		return insn == Instructions.BEQ || insn == Instructions.BEQL || insn == Instructions.BNE || insn == Instructions.BNEL;
+	}
+
+	/**
+	 * Check if the CodeBlock is a small leaf function that could be replaced
+	 * as a whole by a native code sequence.
+	 *
+	 * @param codeBlock the CodeBlock
+	 * @return the list of the CodeBlock instructions, or null if the CodeBlock is not a candidate.
+	 */
+	private static List<CodeInstruction> getLeafInstructions(CodeBlock codeBlock) {
+		int length = codeBlock.getLength();
+		if (length <= 0 || length > maxCandidateInstructions) {
+			return null;
+		}
+
+		List<CodeInstruction> codeInstructions = new ArrayList<CodeInstruction>(length);
+		boolean hasReturn = false;
+		for (int address = codeBlock.getLowestAddress(); address <= codeBlock.getHighestAddress(); address += 4) {
+			CodeInstruction codeInstruction = codeBlock.getCodeInstruction(address);
+			// Only contiguous CodeBlocks, without native code sequences
+			if (codeInstruction == null || codeInstruction.getAddress() != address || codeInstruction instanceof NativeCodeInstruction || codeInstruction instanceof SequenceCodeInstruction) {
+				return null;
+			}
+
+			Instruction insn = codeInstruction.getInsn();
+			if (insn == Instructions.JR && codeInstruction.getRsRegisterIndex() == _ra) {
+				hasReturn = true;
+			} else if (insn.hasFlags(FLAG_IS_JUMPING | FLAG_STARTS_NEW_BLOCK | FLAG_SYSCALL)) {
+				return null;
+			}
+			codeInstructions.add(codeInstruction);
+		}
+
+		if (!hasReturn) {
+			return null;
+		}
+
+		return codeInstructions;
+	}
+
+	/**
+	 * The shape of a CodeBlock is the sequence of its instruction names,
+	 * the branches being represented by their relative offset.
+	 */
+	private static String getShape(List<CodeInstruction> codeInstructions) {
+		StringBuilder shape = new StringBuilder();
+		for (CodeInstruction codeInstruction : codeInstructions) {
+			if (shape.length() > 0) {
+				shape.append(' ');
+			}
+			shape.append(codeInstruction.getInsn().name());
+			if (codeInstruction.isBranching() && !codeInstruction.getInsn().hasFlags(FLAG_IS_JUMPING)) {
+				shape.append(String.format("%+d", (codeInstruction.getBranchingTo() - codeInstruction.getAddress()) >> 2));
+			}
+		}
+
+		return shape.toString();
+	}
+
+	/**
+	 * Match the loops of the CodeBlock against the loops implemented
+	 * by the existing native code sequences.
+	 *
+	 * @return the matching native code sequence class, or null if none is matching.
+	 */
+	private static Class<?> getNativeClass(List<CodeInstruction> codeInstructions) {
+		for (int i = 0; i < codeInstructions.size(); i++) {
+			CodeInstruction backBranch = codeInstructions.get(i);
+			if (!backBranch.isBranching() || backBranch.getInsn().hasFlags(FLAG_IS_JUMPING) || backBranch.getBranchingTo() > backBranch.getAddress()) {
+				continue;
+			}
+
+			int loopStart = (backBranch.getBranchingTo() - codeInstructions.get(0).getAddress()) >> 2;
+			// Include the delay slot of the back branch
+			int loopEnd = Math.min(i + 1, codeInstructions.size() - 1);
+			if (loopStart < 0) {
+				continue;
+			}
+
+			Class<?> nativeClass = getNativeClassForLoop(codeInstructions.subList(loopStart, loopEnd + 1));
+			if (nativeClass != null) {
+				return nativeClass;
+			}
+		}
+
+		return null;
+	}
+
+	private static Class<?> getNativeClassForLoop(List<CodeInstruction> loop) {
+		Set<Integer> loadedRegisters = new HashSet<Integer>();
+		Set<Integer> differenceRegisters = new HashSet<Integer>();
+		int loads = 0;
+		int stores = 0;
+		boolean byteAccess = true;
+		boolean zeroTest = false;
+		boolean compareLoaded = false;
+		boolean compareRegister = false;
+
+		for (CodeInstruction codeInstruction : loop) {
+			Instruction insn = codeInstruction.getInsn();
+			int rs = codeInstruction.getRsRegisterIndex();
+			int rt = codeInstruction.getRtRegisterIndex();
+			if (isLoad(insn)) {
+				loads++;
+				loadedRegisters.add(rt);
+				if (insn != Instructions.LB && insn != Instructions.LBU) {
+					byteAccess = false;
+				}
+			} else if (isStore(insn)) {
+				stores++;
+				if (insn != Instructions.SB) {
+					byteAccess = false;
+				}
+			} else if (insn == Instructions.SUBU || insn == Instructions.XOR) {
+				if (loadedRegisters.contains(rs) && loadedRegisters.contains(rt)) {
+					differenceRegisters.add(codeInstruction.getRdRegisterIndex());
+				}
+			} else if (isCompareBranch(insn)) {
+				boolean rsLoaded = loadedRegisters.contains(rs);
+				boolean rtLoaded = loadedRegisters.contains(rt);
+				if ((rsLoaded && rt == _zr) || (rtLoaded && rs == _zr)) {
+					zeroTest = true;
+				} else if (rsLoaded && rtLoaded) {
+					compareLoaded = true;
+				} else if (differenceRegisters.contains(rs) || differenceRegisters.contains(rt)) {
+					compareLoaded = true;
+				} else if (rsLoaded || rtLoaded) {
+					compareRegister = true;
+				}
+			}
+		}
+
+		if (stores > 0) {
+			if (loads == 0) {
+				return Memset.class;
+			}
+			if (loads == stores) {
+				return zeroTest && byteAccess ? Strcpy.class : Memcpy.class;
+			}
+		} else if (loads >= 2 && compareLoaded) {
+			return zeroTest && byteAccess ? Strcmp.class : Memcmp.class;
+		} else if (loads == 1 && byteAccess) {
+			if (compareRegister) {
+				return zeroTest ? Strchr.class : Memchr.class;
+			}
+			if (zeroTest) {
+				return Strlen.class;
+			}
+		}
+
+		return null;
+	}
+
+	private static void logCandidate(Candidate candidate, long allCycles) {
+		CodeBlock codeBlock = candidate.codeBlocks.get(0);
+		// The native code sequence is executing a single call instead of all
+		// the instructions of the CodeBlock.
+		long savedCycles = Math.max(candidate.instructionCount - candidate.callCount, 0L);
+		Profiler.log.info(String.format("%s candidate: %d CodeBlock(s) at %s, %,d calls, %,d cycles, potential saving %,d cycles (%2.2f%%)", candidate.nativeClass.getSimpleName(), candidate.codeBlocks.size(), getAddresses(candidate), candidate.callCount, candidate.instructionCount, savedCycles, savedCycles * 100.0 / allCycles));
+
+		StringBuilder entry = new StringBuilder();
+		entry.append(String.format("<!-- Review the Parameters and IsReturning before adding to Compiler.xml, shape: %s -->%n", candidate.shape));
+		entry.append(String.format("<NativeCodeSequence name=\"%s_%08X\"><Class>%s</Class><IsReturning>true</IsReturning><CodeInstructions><![CDATA[%n", candidate.nativeClass.getSimpleName().toLowerCase(), codeBlock.getStartAddress(), candidate.nativeClass.getName()));
+		for (int address = codeBlock.getLowestAddress(); address <= codeBlock.getHighestAddress(); address += 4) {
+			CodeInstruction codeInstruction = codeBlock.getCodeInstruction(address);
+			int opcode = codeInstruction.getOpcode();
+			entry.append(String.format("%08X:[%08X]: %s%n", address, opcode, codeInstruction.disasm(address, opcode)));
+		}
+		entry.append("]]></CodeInstructions></NativeCodeSequence>");
+		Profiler.log.info(entry.toString());
+	}
+
+	private static String getAddresses(Candidate candidate) {
+		StringBuilder addresses = new StringBuilder();
+		for (CodeBlock codeBlock : candidate.codeBlocks) {
+			if (addresses.length() > 0) {
+				addresses.append(", ");
+			}
+			addresses.append(String.format("0x%08X", codeBlock.getStartAddress()));
+		}
+
+		return addresses.toString();
+	}
+
+	/**
+	 * Log the native code sequence candidates found in the profiled CodeBlocks.
+	 *
+	 * @param sortedCodeBlocks the CodeBlocks, sorted by decreasing instruction count
+	 * @param allCycles        the total number of profiled cycles
+	 */
+	public static void logCandidates(List<CodeBlock> sortedCodeBlocks, long allCycles) {
+		if (allCycles <= 0) {
+			return;
+		}
+
+		NativeCodeManager nativeCodeManager = Compiler.getInstance().getNativeCodeManager();
+		Map<String, Candidate> candidates = new LinkedHashMap<String, Candidate>();
+		int count = 0;
+		for (CodeBlock codeBlock : sortedCodeBlocks) {
+			if (count >= maxCandidateCodeBlocks) {
+				break;
+			}
+			count++;
+
+			long instructionCount = Profiler.getInstructionCount(codeBlock);
+			if (instructionCount * 100.0 / allCycles < minCyclesPercentage) {
+				// This and the following CodeBlocks are not hot enough
+				break;
+			}
+
+			if (nativeCodeManager != null && nativeCodeManager.getCompiledNativeCodeBlock(codeBlock.getStartAddress()) != null) {
+				continue;
+			}
+
+			List<CodeInstruction> codeInstructions = getLeafInstructions(codeBlock);
+			if (codeInstructions == null) {
+				continue;
+			}
+
+			String shape = getShape(codeInstructions);
+			Candidate candidate = candidates.get(shape);
+			if (candidate == null) {
+				Class<?> nativeClass = getNativeClass(codeInstructions);
+				if (nativeClass == null) {
+					continue;
+				}
+				candidate = new Candidate(shape);
+				candidate.nativeClass = nativeClass;
+				candidates.put(shape, candidate);
+			}
+			candidate.codeBlocks.add(codeBlock);
+			candidate.instructionCount += instructionCount;
+			candidate.callCount += Profiler.getCallCount(codeBlock.getStartAddress());
+		}
+
+		if (candidates.isEmpty()) {
+			return;
+		}
+
+		Profiler.log.info(String.format("Native code sequence candidates (%d):", candidates.size()));
+		for (Candidate candidate : candidates.values()) {
+			logCandidate(candidate, allCycles);
+		}
+	}
+}
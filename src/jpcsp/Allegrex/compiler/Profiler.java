@@ -24,6 +24,8 @@ import java.util.List;
 
 import jpcsp.Allegrex.compiler.nativeCode.NativeCodeManager;
 import jpcsp.Allegrex.compiler.nativeCode.NativeCodeSequence;
+import jpcsp.HLE.HLEModuleFunction;
+import jpcsp.HLE.HLEModuleManager;
 import jpcsp.settings.AbstractBoolSettingsListener;
 import jpcsp.settings.Settings;
 
@@ -40,6 +42,7 @@ public class Profiler {
     private static final HashMap<Integer, Long> callCounts = new HashMap<Integer, Long>();
     private static final HashMap<Integer, Long> instructionCounts = new HashMap<Integer, Long>();
     private static final HashMap<Integer, Long> backBranchCounts = new HashMap<Integer, Long>();
+    private static final HashMap<Integer, Long> syscallCounts = new HashMap<Integer, Long>();
     private static final Long zero = new Long(0);
     private static final int detailedCodeBlockLogThreshold = 50;
     private static final int codeLogMaxLength = 700;
@@ -47,9 +50,13 @@ public class Profiler {
     private static final int backBranchContextBefore = 5;
     private static final int backBranchContextAfter = 3;
     private static ProfilerEnabledSettingsListerner profilerEnabledSettingsListerner;
+    private static NativeCodeCandidatesSettingsListerner nativeCodeCandidatesSettingsListerner;
+    private static boolean nativeCodeCandidates = false;
     private static int compilationCount;
     private static long compilationTimeMicros;
     private static long longestCompilationTimeMicros;
+    private static long registerFieldAccesses;
+    private static long registerLocalAccesses;
 
 	private static class ProfilerEnabledSettingsListerner extends AbstractBoolSettingsListener {
 		@Override
@@ -58,11 +65,22 @@ public class Profiler {
 		}
 	}
 
+	private static class NativeCodeCandidatesSettingsListerner extends AbstractBoolSettingsListener {
+		@Override
+		protected void settingsValueChanged(boolean value) {
+			nativeCodeCandidates = value;
+		}
+	}
+
     public static void initialise() {
     	if (profilerEnabledSettingsListerner == null) {
     		profilerEnabledSettingsListerner = new ProfilerEnabledSettingsListerner();
     		Settings.getInstance().registerSettingsListener("Profiler", "emu.profiler", profilerEnabledSettingsListerner);
     	}
+    	if (nativeCodeCandidatesSettingsListerner == null) {
+    		nativeCodeCandidatesSettingsListerner = new NativeCodeCandidatesSettingsListerner();
+    		Settings.getInstance().registerSettingsListener("Profiler", "emu.profiler.nativeCodeCandidates", nativeCodeCandidatesSettingsListerner);
+    	}
 
     	reset();
     }
@@ -83,9 +101,12 @@ public class Profiler {
         callCounts.clear();
         instructionCounts.clear();
         backBranchCounts.clear();
+        syscallCounts.clear();
         compilationCount = 0;
         compilationTimeMicros = 0;
         longestCompilationTimeMicros = 0;
+        registerFieldAccesses = 0;
+        registerLocalAccesses = 0;
     }
 
     public static void exit() {
@@ -106,6 +127,10 @@ public class Profiler {
         int count = 0;
         double avg = compilationCount == 0 ? 0.0 : compilationTimeMicros / (double) compilationCount / 1000;
         log.info(String.format("Compilation time %dms, %d calls, average %.1fms, longest %dms", compilationTimeMicros / 1000, compilationCount, avg, longestCompilationTimeMicros / 1000));
+        long registerAccesses = registerFieldAccesses + registerLocalAccesses;
+        if (registerAccesses > 0) {
+        	log.info(String.format("Generated GPR accesses: %,d to CpuState fields, %,d to local variables (%.1f%% field accesses saved)", registerFieldAccesses, registerLocalAccesses, registerLocalAccesses * 100.0 / registerAccesses));
+        }
         log.info(String.format("CodeBlocks profiling information (%,d total cycles):", allCycles));
         for (CodeBlock codeBlock : sortedCodeBlocks) {
             long callCount = getCallCount(codeBlock);
@@ -119,6 +144,28 @@ public class Profiler {
             logCodeBlock(codeBlock, allCycles, instructionCount, callCount, count, sortedBackBranches);
             count++;
         }
+
+        logSyscalls();
+
+        if (nativeCodeCandidates) {
+        	NativeCodeCandidates.logCandidates(sortedCodeBlocks, allCycles);
+        }
+    }
+
+    private static void logSyscalls() {
+        List<Integer> sortedSyscalls = new ArrayList<Integer>(syscallCounts.keySet());
+        Collections.sort(sortedSyscalls, new SyscallComparator());
+
+        log.info("Syscalls profiling information:");
+        for (int code : sortedSyscalls) {
+            HLEModuleFunction func = HLEModuleManager.getInstance().getFunctionFromSyscallCode(code);
+            if (func == null) {
+                log.info(String.format("syscall 0x%05X %,d calls", code, syscallCounts.get(code)));
+            } else {
+                // Hot functions are already compiled with a specialized call
+                log.info(String.format("%s %,d calls%s", func.getFunctionName(), syscallCounts.get(code), func.isHot() ? " (hot)" : ""));
+            }
+        }
     }
 
     private static void logCodeBlock(CodeBlock codeBlock, long allCycles, long instructionCount, long callCount, int count, List<Integer> sortedBackBranches) {
@@ -198,7 +245,11 @@ public class Profiler {
     }
 
     private static long getCallCount(CodeBlock codeBlock) {
-        Long callCount = callCounts.get(codeBlock.getStartAddress());
+        return getCallCount(codeBlock.getStartAddress());
+    }
+
+    public static long getCallCount(int address) {
+        Long callCount = callCounts.get(address);
         if (callCount == null) {
             return 0;
         }
@@ -206,7 +257,7 @@ public class Profiler {
         return callCount;
     }
 
-    private static long getInstructionCount(CodeBlock codeBlock) {
+    static long getInstructionCount(CodeBlock codeBlock) {
         Long instructionCount = instructionCounts.get(codeBlock.getStartAddress());
         if (instructionCount == null) {
             return 0;
@@ -242,6 +293,15 @@ public class Profiler {
         backBranchCounts.put(address, backBranchCount + 1);
     }
 
+    public static void addSyscall(int code) {
+        Long syscallCount = syscallCounts.get(code);
+        if (syscallCount == null) {
+            syscallCount = zero;
+        }
+
+        syscallCounts.put(code, syscallCount + 1);
+    }
+
     private static class BackBranchComparator implements Comparator<Integer> {
 
         @Override
@@ -256,6 +316,20 @@ public class Profiler {
         }
     }
 
+    private static class SyscallComparator implements Comparator<Integer> {
+
+        @Override
+        public int compare(Integer code1, Integer code2) {
+            long count1 = syscallCounts.get(code1);
+            long count2 = syscallCounts.get(code2);
+
+            if (count1 == count2) {
+            	return code1 - code2;
+            }
+            return (count2 > count1 ? 1 : -1);
+        }
+    }
+
     private static class CodeBlockComparator implements Comparator<CodeBlock> {
 
         @Override
@@ -278,6 +352,11 @@ public class Profiler {
         }
     }
 
+    public static void addRegisterAccesses(int fieldAccesses, int localAccesses) {
+    	registerFieldAccesses += fieldAccesses;
+    	registerLocalAccesses += localAccesses;
+    }
+
     public static void addCompilation(long compilationTimeMicros) {
     	compilationCount++;
     	Profiler.compilationTimeMicros += compilationTimeMicros;
@@ -49,6 +49,7 @@ import jpcsp.HLE.modules.sceDisplay;
 import jpcsp.mediaengine.MEProcessor;
 import jpcsp.memory.DebuggerMemory;
 import jpcsp.memory.FastMemory;
+import jpcsp.memory.MemoryWriteTracker;
 import jpcsp.memory.mmio.MMIOHandlerDisplayController;
 import jpcsp.scheduler.Scheduler;
 import jpcsp.settings.AbstractBoolSettingsListener;
@@ -98,10 +99,10 @@ public class RuntimeContext {
 	private static int codeBlocksHighestAddress = Integer.MIN_VALUE;
 	// A fast lookup array for executables (to improve the performance of the Allegrex instruction jalr)
 	private static IExecutable[] fastExecutableLookup;
-	// A fast lookup for the Allegrex instruction ICACHE HIT INVALIDATE
-	private static CodeBlockList[] fastCodeBlockLookup;
-	private static final int fastCodeBlockLookupShift = 8;
-	private static final int fastCodeBlockSize = 64; // Matching the size used by the Allegrex instruction ICACHE HIT INVALIDATE
+	// An index of the code blocks overlapping each RAM page.
+	// It is kept up-to-date when adding or replacing a code block.
+	private static CodeBlockLookup codeBlockLookup;
+	private static final List<CodeBlock> invalidateRangeCodeBlocks = new ArrayList<CodeBlock>();
 	private static final Map<SceKernelThreadInfo, RuntimeThread> threads = Collections.synchronizedMap(new HashMap<SceKernelThreadInfo, RuntimeThread>());
 	private static final Map<SceKernelThreadInfo, RuntimeThread> toBeStoppedThreads = Collections.synchronizedMap(new HashMap<SceKernelThreadInfo, RuntimeThread>());
 	private static final Map<SceKernelThreadInfo, RuntimeThread> alreadyStoppedThreads = Collections.synchronizedMap(new HashMap<SceKernelThreadInfo, RuntimeThread>());
@@ -132,10 +133,6 @@ public class RuntimeContext {
 		}
 	}
 
-	private static class CodeBlockList extends LinkedList<CodeBlock> {
-		private static final long serialVersionUID = 7370950118403866860L;
-	}
-
 	private static void setCompilerEnabled(boolean enabled) {
 		compilerEnabled = enabled;
 	}
@@ -148,7 +145,7 @@ public class RuntimeContext {
 		insn.interpret(processor, opcode);
 	}
 
-	private static int jumpCall(int address) throws Exception {
+	static int jumpCall(int address) throws Exception {
         IExecutable executable = getExecutable(address);
         if (executable == null) {
             // TODO Return to interpreter
@@ -332,7 +329,14 @@ public class RuntimeContext {
     	}
     }
 
-    private static boolean initialise() {
+    /**
+     * Initialise the runtime context before executing compiled code.
+     * This is called when starting the emulation, but can also be called
+     * to execute compiled code without running an application (e.g. benchmarks).
+     *
+     * @return true if the compiler is enabled
+     */
+    public static boolean initialise() {
         if (!compilerEnabled) {
             return false;
         }
@@ -357,7 +361,7 @@ public class RuntimeContext {
         sceDisplayModule = Modules.sceDisplayModule;
 
         fastExecutableLookup = new IExecutable[MemoryMap.SIZE_RAM >> 2];
-        fastCodeBlockLookup = new CodeBlockList[MemoryMap.SIZE_RAM >> fastCodeBlockLookupShift];
+        codeBlockLookup = new CodeBlockLookup();
 
 		return true;
     }
@@ -868,52 +872,40 @@ public class RuntimeContext {
 		}
     }
 
-    private static void computeCodeBlocksRange() {
+    private static void clearFastCodeBlockLookup() {
+    	if (codeBlockLookup != null) {
+    		codeBlockLookup.clear();
+    	}
     	codeBlocksLowestAddress = Integer.MAX_VALUE;
     	codeBlocksHighestAddress = Integer.MIN_VALUE;
-    	for (CodeBlock codeBlock : codeBlocks.values()) {
-    		if (!codeBlock.isInternal()) {
-	    		codeBlocksLowestAddress = Math.min(codeBlocksLowestAddress, codeBlock.getLowestAddress());
-	    		codeBlocksHighestAddress = Math.max(codeBlocksHighestAddress, codeBlock.getHighestAddress());
-    		}
-    	}
     }
 
     public static void addCodeBlock(int address, CodeBlock codeBlock) {
+    	// Code blocks can also be added by the BackgroundCompiler thread
+    	synchronized (codeBlocks) {
+    		addCodeBlockSynchronized(address, codeBlock);
+    	}
+    }
+
+    private static void addCodeBlockSynchronized(int address, CodeBlock codeBlock) {
     	CodeBlock previousCodeBlock = codeBlocks.put(address, codeBlock);
 
     	if (!codeBlock.isInternal()) {
 	    	if (previousCodeBlock != null) {
-	    		// One code block has been deleted, recompute the whole code blocks range
-	    		computeCodeBlocksRange();
+	    		codeBlockLookup.remove(previousCodeBlock);
 
 	    		int fastExecutableLoopukIndex = (address - MemoryMap.START_RAM) >> 2;
 	    		if (fastExecutableLoopukIndex >= 0 && fastExecutableLoopukIndex < fastExecutableLookup.length) {
 	    			fastExecutableLookup[fastExecutableLoopukIndex] = null;
 	    		}
-	    	} else {
-	    		// One new code block has been added, update the code blocks range
-	    		codeBlocksLowestAddress = Math.min(codeBlocksLowestAddress, codeBlock.getLowestAddress());
-	    		codeBlocksHighestAddress = Math.max(codeBlocksHighestAddress, codeBlock.getHighestAddress());
 	    	}
 
-	    	int startIndex = (codeBlock.getLowestAddress() - MemoryMap.START_RAM) >> fastCodeBlockLookupShift;
-    		int endIndex = (codeBlock.getHighestAddress() - MemoryMap.START_RAM) >> fastCodeBlockLookupShift;
-    		for (int i = startIndex; i <= endIndex; i++) {
-    			if (i >= 0 && i < fastCodeBlockLookup.length) {
-    				CodeBlockList codeBlockList = fastCodeBlockLookup[i];
-    				if (codeBlockList != null) {
-    					if (previousCodeBlock != null) {
-    						codeBlockList.remove(previousCodeBlock);
-    					}
-    					int addr = (i << fastCodeBlockLookupShift) + MemoryMap.START_RAM;
-    					int size = 1 << fastCodeBlockLookupShift;
-    					if (codeBlock.isOverlappingWithAddressRange(addr, size)) {
-    						codeBlockList.add(codeBlock);
-    					}
-    				}
-    			}
-    		}
+	    	// The code blocks range is only used for a fast check:
+	    	// it does not need to be reduced when a code block is replaced.
+    		codeBlocksLowestAddress = Math.min(codeBlocksLowestAddress, codeBlock.getLowestAddress());
+    		codeBlocksHighestAddress = Math.max(codeBlocksHighestAddress, codeBlock.getHighestAddress());
+
+    		codeBlockLookup.add(codeBlock);
     	}
     }
 
@@ -942,10 +934,14 @@ public class RuntimeContext {
 
 		if (executable == null) {
 	        CodeBlock codeBlock = getCodeBlock(maskedAddress);
-	        if (codeBlock == null) {
-	            executable = Compiler.getInstance().compile(address);
-	        } else {
+	        if (codeBlock != null) {
 	            executable = codeBlock.getExecutable();
+	        } else if (BackgroundCompiler.getInstance().isEnabled() && fastExecutableLoopukIndex >= 0 && fastExecutableLoopukIndex < fastExecutableLookup.length) {
+	        	// Interpret first, the code will be compiled in the background
+	        	// when it is called often enough.
+	        	executable = new TieredExecutable(address);
+	        } else {
+	            executable = Compiler.getInstance().compile(address);
 	        }
 
 	        // Store the executable in the fastExecutableLookup array
@@ -957,6 +953,25 @@ public class RuntimeContext {
         return executable;
     }
 
+    /**
+     * Replace an executable in the fast lookup array,
+     * only if it is still the expected executable.
+     *
+     * @param address             the start address of the code
+     * @param expectedExecutable  the executable to be replaced
+     * @param executable          the new executable
+     */
+    public static void replaceExecutable(int address, IExecutable expectedExecutable, IExecutable executable) {
+		int fastExecutableLoopukIndex = ((address & addressMask) - MemoryMap.START_RAM) >> 2;
+		if (fastExecutableLoopukIndex >= 0 && fastExecutableLoopukIndex < fastExecutableLookup.length) {
+			synchronized (codeBlocks) {
+				if (fastExecutableLookup[fastExecutableLoopukIndex] == expectedExecutable) {
+					fastExecutableLookup[fastExecutableLoopukIndex] = executable;
+				}
+			}
+		}
+    }
+
     public static void start() {
     	Settings.getInstance().registerSettingsListener("RuntimeContext", "emu.compiler", new CompilerEnabledSettingsListerner());
     }
@@ -1135,15 +1150,25 @@ public class RuntimeContext {
     }
 
     public static void reset() {
+    	// The compiled code will be regenerated,
+    	// the memory write tracking settings can now be applied.
+    	MemoryWriteTracker.reset();
+
     	if (compilerEnabled) {
     		log.debug("RuntimeContext.reset");
-    		Compiler.getInstance().reset();
-    		codeBlocks.clear();
-    		if (fastExecutableLookup != null) {
-    			Arrays.fill(fastExecutableLookup, null);
-    		}
-    		if (fastCodeBlockLookup != null) {
-    			Arrays.fill(fastCodeBlockLookup, null);
+    		BackgroundCompiler backgroundCompiler = BackgroundCompiler.getInstance();
+    		// Wait for the end of a compilation running in the background:
+    		// it would otherwise add its code block after the reset.
+    		synchronized (backgroundCompiler) {
+	    		backgroundCompiler.reset();
+	    		Compiler.getInstance().reset();
+	    		synchronized (codeBlocks) {
+		    		codeBlocks.clear();
+		    		if (fastExecutableLookup != null) {
+		    			Arrays.fill(fastExecutableLookup, null);
+		    		}
+		    		clearFastCodeBlockLookup();
+	    		}
     		}
     		currentThread = null;
     		currentRuntimeThread = null;
@@ -1163,7 +1188,7 @@ public class RuntimeContext {
         		log.debug("RuntimeContext.invalidateAll simple");
                 codeBlocks.clear();
         		Arrays.fill(fastExecutableLookup, null);
-    			Arrays.fill(fastCodeBlockLookup, null);
+        		clearFastCodeBlockLookup();
                 Compiler.getInstance().invalidateAll();
     		} else {
     			// Advanced method: check all the code blocks for a modification
@@ -1171,51 +1196,41 @@ public class RuntimeContext {
     			// have been modified.
         		log.debug("RuntimeContext.invalidateAll advanced");
         		Compiler compiler = Compiler.getInstance();
-	    		for (CodeBlock codeBlock : codeBlocks.values()) {
-	    			if (log.isDebugEnabled()) {
-	    				log.debug(String.format("invalidateAll %s: opcodes changed %b", codeBlock, codeBlock.areOpcodesChanged()));
-	    			}
-
-	    			if (codeBlock.areOpcodesChanged()) {
-	    				compiler.invalidateCodeBlock(codeBlock);
-	    			}
-	    		}
-    		}
-    	}
-    }
-
-    private static void invalidateRangeFullCheck(int addr, int size) {
-		Compiler compiler = Compiler.getInstance();
-    	for (CodeBlock codeBlock : codeBlocks.values()) {
-			if (size == 0x4000 && codeBlock.getHighestAddress() >= addr) {
-    			// Some applications do not clear more than 16KB as this is the size of the complete Instruction Cache.
-    			// Be conservative in this case and check any code block above the given address.
-				compiler.checkCodeBlockValidity(codeBlock);
-			} else if (codeBlock.isOverlappingWithAddressRange(addr, size)) {
-				compiler.checkCodeBlockValidity(codeBlock);
+        		synchronized (codeBlocks) {
+		    		for (CodeBlock codeBlock : codeBlocks.values()) {
+		    			if (log.isDebugEnabled()) {
+		    				log.debug(String.format("invalidateAll %s: opcodes changed %b", codeBlock, codeBlock.areOpcodesChanged()));
+		    			}
+
+		    			if (codeBlock.areOpcodesChanged()) {
+		    				compiler.invalidateCodeBlock(codeBlock);
+		    			}
+		    		}
+        		}
     		}
     	}
     }
 
-    private static CodeBlockList fillFastCodeBlockList(int index) {
-		int startAddr = (index << fastCodeBlockLookupShift)  + MemoryMap.START_RAM;
-		int size = 1 << fastCodeBlockLookupShift;
-		if (log.isDebugEnabled()) {
-			log.debug(String.format("Creating new fastCodeBlockList for 0x%08X", startAddr));
-		}
-
-		CodeBlockList codeBlockList = new CodeBlockList();
-		for (CodeBlock codeBlock : codeBlocks.values()) {
-			if (codeBlock.isOverlappingWithAddressRange(startAddr, size)) {
-				codeBlockList.add(codeBlock);
+    private static void checkCodeBlockValidity(CodeBlock codeBlock, int addr, int size) {
+		if (size == 0x4000) {
+			// Some applications do not clear more than 16KB as this is the size of the complete Instruction Cache.
+			// Be conservative in this case and check any code block above the given address.
+			if (codeBlock.getHighestAddress() >= addr) {
+				Compiler.getInstance().checkCodeBlockValidity(codeBlock);
 			}
+		} else if (codeBlock.isOverlappingWithAddressRange(addr, size)) {
+			Compiler.getInstance().checkCodeBlockValidity(codeBlock);
 		}
-		fastCodeBlockLookup[index] = codeBlockList;
-
-		return codeBlockList;
     }
 
     public static void invalidateRange(int addr, int size) {
+    	// Code blocks can also be added by the BackgroundCompiler thread
+    	synchronized (codeBlocks) {
+    		invalidateRangeSynchronized(addr, size);
+    	}
+    }
+
+    private static void invalidateRangeSynchronized(int addr, int size) {
         if (compilerEnabled) {
         	addr &= Memory.addressMask;
 
@@ -1229,35 +1244,18 @@ public class RuntimeContext {
         		return;
         	}
 
-        	// Check if the code blocks located in the given range have to be invalidated
-        	if (size == fastCodeBlockSize) {
-        		// This is a fast track to avoid checking all the code blocks
-        		int startIndex = (addr - MemoryMap.START_RAM) >> fastCodeBlockLookupShift;
-				int endIndex = (addr + size - MemoryMap.START_RAM) >> fastCodeBlockLookupShift;
-				if (startIndex >= 0 && endIndex <= fastCodeBlockLookup.length) {
-					for (int index = startIndex; index <= endIndex; index++) {
-	        			CodeBlockList codeBlockList = fastCodeBlockLookup[index];
-	        			if (codeBlockList == null) {
-	        				codeBlockList = fillFastCodeBlockList(index);
-	        			} else {
-	        				if (log.isDebugEnabled()) {
-	        					log.debug(String.format("Reusing fastCodeBlockList for 0x%08X (size=%d)", addr, codeBlockList.size()));
-	        				}
-	        			}
-
-	            		Compiler compiler = Compiler.getInstance();
-	            		for (CodeBlock codeBlock : codeBlockList) {
-	            			if (codeBlock.isOverlappingWithAddressRange(addr, size)) {
-	            				compiler.checkCodeBlockValidity(codeBlock);
-	            			}
-	            		}
-					}
-        		} else {
-            		invalidateRangeFullCheck(addr, size);
-        		}
-        	} else {
-        		invalidateRangeFullCheck(addr, size);
+        	// Check if the code blocks located in the given range have to be invalidated.
+        	// Only the code blocks listed in the pages of the range have to be checked.
+        	int endAddr = addr + size - 1;
+        	if (size == 0x4000) {
+        		// Check any code block above the given address, see checkCodeBlockValidity()
+        		endAddr = Math.max(endAddr, codeBlocksHighestAddress & Memory.addressMask);
+        	}
+        	codeBlockLookup.getCodeBlocks(addr, endAddr, invalidateRangeCodeBlocks);
+        	for (CodeBlock codeBlock : invalidateRangeCodeBlocks) {
+        		checkCodeBlockValidity(codeBlock, addr, size);
         	}
+        	invalidateRangeCodeBlocks.clear();
     	}
     }
 
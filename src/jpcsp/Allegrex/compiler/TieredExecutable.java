@@ -0,0 +1,245 @@
+/*
+This file is part of jpcsp.
+
+Jpcsp is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Jpcsp is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with Jpcsp.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package jpcsp.Allegrex.compiler;
+
+import jpcsp.Emulator;
+import jpcsp.Memory;
+import jpcsp.Allegrex.CpuState;
+import jpcsp.Allegrex.Decoder;
+import jpcsp.Allegrex.Common.Instruction;
+
+/**
+ * Executable used when the background compilation is enabled:
+ * the code is first interpreted and, once it has been called often enough,
+ * it is compiled by the BackgroundCompiler. The compiled executable
+ * is then used for all the following calls.
+ *
+ * The code is never compiled by the emulation thread:
+ * - a long-running interpretation (e.g. a loop) requests the compilation
+ *   of the code at the current address and continues to interpret until
+ *   it reaches this address again with the compiled code available;
+ * - a syscall cannot be interpreted, the emulation waits for the
+ *   compilation of the code at the syscall by the BackgroundCompiler.
+ *   This is mainly the case for the HLE import stubs, which are
+ *   only 2 instructions long.
+ */
+public class TieredExecutable implements IExecutable {
+	// Maximum number of instructions interpreted in one call
+	// before requesting the compilation of the current address (e.g. for long loops)
+	private static final int maxInterpretedInstructions = 10000;
+	// Delay between 2 checks of the compilation state while waiting for it
+	private static final int waitMillis = 10;
+	private final int startAddress;
+	private final int resetCount;
+	private volatile IExecutable compiledExecutable;
+	private volatile boolean compilationFailed;
+	private int callCount;
+	private boolean compileRequested;
+
+	public TieredExecutable(int startAddress) {
+		this.startAddress = startAddress;
+		resetCount = Compiler.getResetCount();
+	}
+
+	public int getStartAddress() {
+		return startAddress;
+	}
+
+	public int getResetCount() {
+		return resetCount;
+	}
+
+	public IExecutable getCompiledExecutable() {
+		return compiledExecutable;
+	}
+
+	public synchronized void setCompiledExecutable(IExecutable compiledExecutable) {
+		this.compiledExecutable = compiledExecutable;
+		notifyAll();
+	}
+
+	public synchronized void setCompilationFailed() {
+		compilationFailed = true;
+		notifyAll();
+	}
+
+	/**
+	 * Check if the instruction at the given address can be interpreted.
+	 * Syscalls can only be executed from compiled code as they might
+	 * switch the current thread.
+	 *
+	 * @param address  the instruction address
+	 * @return         true if the instruction can be interpreted
+	 *                 false if the instruction has to be executed from compiled code
+	 */
+	public static boolean canInterpret(int address) {
+		if (!Memory.isAddressGood(address)) {
+			return false;
+		}
+
+		int opcode = RuntimeContext.memory.read32(address);
+		Instruction insn = Decoder.instruction(opcode);
+		if (insn.hasFlags(Instruction.FLAG_SYSCALL)) {
+			return false;
+		}
+
+		// Check also the delay slot, it will be interpreted together with the branch
+		if (insn.hasFlags(Instruction.FLAG_HAS_DELAY_SLOT)) {
+			int delaySlotOpcode = RuntimeContext.memory.read32(address + 4);
+			if (Decoder.instruction(delaySlotOpcode).hasFlags(Instruction.FLAG_SYSCALL)) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	private void requestCompilation() {
+		if (!compileRequested) {
+			compileRequested = true;
+			BackgroundCompiler.getInstance().compile(this);
+		}
+	}
+
+	/**
+	 * Wait for the compilation of this executable by the BackgroundCompiler.
+	 * The PSP clock is paused while waiting, as for a compilation
+	 * by the emulation thread.
+	 *
+	 * @return   the compiled executable
+	 */
+	private synchronized IExecutable waitForCompiledExecutable() throws Exception {
+		if (compiledExecutable == null) {
+			BackgroundCompiler.getInstance().compileUrgent(this);
+			compileRequested = true;
+
+			Emulator.getClock().pause();
+			try {
+				while (compiledExecutable == null && !compilationFailed) {
+					if (resetCount != Compiler.getResetCount()) {
+						throw new StopThreadException(String.format("Reset while waiting for the compilation of 0x%08X", startAddress));
+					}
+					try {
+						wait(waitMillis);
+					} catch (InterruptedException e) {
+						// Ignore Exception
+					}
+				}
+			} finally {
+				Emulator.getClock().resume();
+			}
+
+			if (compiledExecutable == null) {
+				throw new RuntimeException(String.format("Cannot compile the code at 0x%08X", startAddress));
+			}
+		}
+
+		return compiledExecutable;
+	}
+
+	/**
+	 * Return the executable for the code at the given address,
+	 * waiting for its compilation if required.
+	 *
+	 * @param address  the start address of the code
+	 * @return         the compiled executable
+	 */
+	private static IExecutable getCompiledExecutable(int address) throws Exception {
+		IExecutable executable = RuntimeContext.getExecutable(address);
+		if (executable instanceof TieredExecutable) {
+			executable = ((TieredExecutable) executable).waitForCompiledExecutable();
+		}
+
+		return executable;
+	}
+
+	@Override
+	public int exec() throws Exception {
+		IExecutable executable = compiledExecutable;
+		if (executable != null) {
+			return executable.exec();
+		}
+
+		callCount++;
+		if (callCount >= BackgroundCompiler.getInstance().getCallThreshold()) {
+			requestCompilation();
+		}
+
+		// The code is starting with a syscall, e.g. a HLE import stub
+		if (!canInterpret(startAddress)) {
+			return waitForCompiledExecutable().exec();
+		}
+
+		// Interpret the code as RuntimeContext.executeInterpreter() would,
+		// but continue with compiled code when reaching an instruction
+		// that cannot be interpreted.
+		final CpuState cpu = RuntimeContext.cpu;
+		cpu.pc = startAddress;
+		int instructionCount = 0;
+		// The code whose compilation has been requested after a long-running interpretation
+		TieredExecutable loopExecutable = null;
+		while (true) {
+			int pc = cpu.pc;
+			if (loopExecutable != null && pc == loopExecutable.getStartAddress()) {
+				IExecutable loopCompiledExecutable = loopExecutable.getCompiledExecutable();
+				if (loopCompiledExecutable != null) {
+					return loopCompiledExecutable.exec();
+				}
+			}
+
+			if (!canInterpret(pc)) {
+				// A syscall in the middle of the code
+				return getCompiledExecutable(pc).exec();
+			}
+
+			if (instructionCount == maxInterpretedInstructions) {
+				requestCompilation();
+				IExecutable pcExecutable = RuntimeContext.getExecutable(pc);
+				if (pcExecutable instanceof TieredExecutable) {
+					loopExecutable = (TieredExecutable) pcExecutable;
+					loopExecutable.requestCompilation();
+				} else if (pcExecutable != null) {
+					// Already compiled
+					return pcExecutable.exec();
+				}
+			}
+
+			Instruction insn = RuntimeContext.processor.interpret();
+			instructionCount++;
+			if (insn.hasFlags(Instruction.FLAG_STARTS_NEW_BLOCK)) {
+				cpu.pc = RuntimeContext.jumpCall(cpu.pc);
+			} else if (insn.hasFlags(Instruction.FLAG_ENDS_BLOCK) && !insn.hasFlags(Instruction.FLAG_IS_CONDITIONAL)) {
+				return cpu.pc;
+			}
+		}
+	}
+
+	@Override
+	public void setExecutable(IExecutable e) {
+		// Nothing to do
+	}
+
+	@Override
+	public IExecutable getExecutable() {
+		return null;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("TieredExecutable 0x%08X", startAddress);
+	}
+}
@@ -23,6 +23,7 @@ import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.TreeMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -47,17 +48,18 @@ public class NativeCodeManager {
 	private static int defaultOpcodeMask = 0xFFFFFFFF;
 	private HashMap<Integer, List<NativeCodeSequence>> nativeCodeSequencesByFirstOpcode;
 	private List<NativeCodeSequence> nativeCodeSequenceWithMaskInFirstOpcode;
-	private HashMap<Integer, NativeCodeSequence> compiledNativeCodeBlocks;
+	// Sorted by address to find the blocks of an address range
+	private TreeMap<Integer, NativeCodeSequence> compiledNativeCodeBlocks;
 
 	public NativeCodeManager(Element configuration) {
-		compiledNativeCodeBlocks = new HashMap<Integer, NativeCodeSequence>();
+		compiledNativeCodeBlocks = new TreeMap<Integer, NativeCodeSequence>();
 		nativeCodeSequencesByFirstOpcode = new HashMap<Integer, List<NativeCodeSequence>>();
 		nativeCodeSequenceWithMaskInFirstOpcode = new LinkedList<NativeCodeSequence>();
 
 		load(configuration);
 	}
 
-	public void reset() {
+	public synchronized void reset() {
 		compiledNativeCodeBlocks.clear();
 	}
 
@@ -326,39 +328,25 @@ public class NativeCodeManager {
 		}
 	}
 
-	public void setCompiledNativeCodeBlock(int address, NativeCodeSequence nativeCodeBlock) {
+	public synchronized void setCompiledNativeCodeBlock(int address, NativeCodeSequence nativeCodeBlock) {
 		compiledNativeCodeBlocks.put(address, nativeCodeBlock);
 	}
 
-	public NativeCodeSequence getCompiledNativeCodeBlock(int address) {
+	public synchronized NativeCodeSequence getCompiledNativeCodeBlock(int address) {
 		return compiledNativeCodeBlocks.get(address);
 	}
 
-	public void invalidateCompiledNativeCodeBlocks(int startAddress, int endAddress) {
+	public synchronized void invalidateCompiledNativeCodeBlocks(int startAddress, int endAddress) {
 		// Most common case: nothing to do.
 		if (compiledNativeCodeBlocks.size() == 0) {
 			return;
 		}
 
-		// What is the most efficient?
-		// To scan all the addressed between startAddress and endAddres or
-		// to scan all the compiledNativeCodeBlocks?
-		if ((endAddress - startAddress) >>> 2 < compiledNativeCodeBlocks.size()) {
-			for (int address = startAddress; address <= endAddress; address += 4) {
-				compiledNativeCodeBlocks.remove(address);
-			}
-		} else {
-			List<Integer> toBeRemoved = new LinkedList<Integer>();
-			for (Integer address : compiledNativeCodeBlocks.keySet()) {
-				if (startAddress >= address.intValue() && address.intValue() <= endAddress) {
-					toBeRemoved.add(address);
-				}
-			}
-			for (Integer address : toBeRemoved) {
-				compiledNativeCodeBlocks.remove(address);
-			}
-			toBeRemoved.clear();
+		if (startAddress > endAddress) {
+			return;
 		}
+
+		compiledNativeCodeBlocks.subMap(startAddress, true, endAddress, true).clear();
 	}
 
 	private boolean isNativeCodeSequence(NativeCodeSequence nativeCodeSequence, CodeInstruction codeInstruction, CodeBlock codeBlock) {
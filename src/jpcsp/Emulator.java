@@ -37,6 +37,7 @@ import jpcsp.HLE.kernel.types.SceModule;
 import jpcsp.HLE.modules.SysMemUserForUser;
 import jpcsp.HLE.modules.SysMemUserForUser.SysMemInfo;
 import jpcsp.graphics.GEProfiler;
+import jpcsp.graphics.GeListDecoder;
 import jpcsp.graphics.VertexCache;
 import jpcsp.graphics.VideoEngine;
 import jpcsp.graphics.RE.externalge.ExternalGE;
@@ -46,6 +47,7 @@ import jpcsp.graphics.RE.software.RendererExecutor;
 import jpcsp.graphics.textures.TextureCache;
 import jpcsp.hardware.Battery;
 import jpcsp.hardware.Wlan;
+import jpcsp.media.codec.DecodedFrameCache;
 import jpcsp.memory.MemorySections;
 import jpcsp.network.proonline.ProOnlineNetworkAdapter;
 import jpcsp.scheduler.Scheduler;
@@ -101,6 +103,8 @@ public class Emulator implements Runnable {
         }
         RendererExecutor.exit();
         VertexCache.getInstance().exit();
+        GeListDecoder.exit();
+        DecodedFrameCache.exit();
         Compiler.exit();
         RuntimeContext.exit();
         Profiler.exit();
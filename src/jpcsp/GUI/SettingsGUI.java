@@ -114,6 +114,7 @@ public class SettingsGUI extends javax.swing.JFrame {
         setBoolFromSettings(onlyGEGraphicsCheck, "emu.onlyGEGraphics");
         setBoolFromSettings(useDebugFont, "emu.useDebugFont");
         setBoolFromSettings(useDebugMemory, "emu.useDebuggerMemory");
+        setBoolFromSettings(useOffHeapMemory, "emu.useOffHeapMemory");
         setBoolFromSettings(useVertexCache, "emu.useVertexCache");
         setBoolFromSettings(invalidMemoryCheck, "emu.ignoreInvalidMemoryAccess");
         setBoolFromSettings(ignoreUnmappedImports, "emu.ignoreUnmappedImports");
@@ -237,6 +238,7 @@ public class SettingsGUI extends javax.swing.JFrame {
         setBoolToSettings(onlyGEGraphicsCheck, "emu.onlyGEGraphics");
         setBoolToSettings(useDebugFont, "emu.useDebugFont");
         setBoolToSettings(useDebugMemory, "emu.useDebuggerMemory");
+        setBoolToSettings(useOffHeapMemory, "emu.useOffHeapMemory");
         setBoolToSettings(useVertexCache, "emu.useVertexCache");
         setBoolToSettings(invalidMemoryCheck, "emu.ignoreInvalidMemoryAccess");
         setBoolToSettings(ignoreUnmappedImports, "emu.ignoreUnmappedImports");
@@ -487,6 +489,7 @@ public class SettingsGUI extends javax.swing.JFrame {
         invalidMemoryCheck = new javax.swing.JCheckBox();
         ignoreUnmappedImports = new javax.swing.JCheckBox();
         useDebugMemory = new javax.swing.JCheckBox();
+        useOffHeapMemory = new javax.swing.JCheckBox();
         CompilerPanel = new javax.swing.JPanel();
         useCompiler = new javax.swing.JCheckBox();
         methodMaxInstructionsBox = new javax.swing.JComboBox();
@@ -965,6 +968,8 @@ public class SettingsGUI extends javax.swing.JFrame {
 
         useDebugMemory.setText(bundle.getString("SettingsGUI.useDebugMemory.text")); // NOI18N
 
+        useOffHeapMemory.setText(bundle.getString("SettingsGUI.useOffHeapMemory.text")); // NOI18N
+
         javax.swing.GroupLayout MemoryPanelLayout = new javax.swing.GroupLayout(MemoryPanel);
         MemoryPanel.setLayout(MemoryPanelLayout);
         MemoryPanelLayout.setHorizontalGroup(
@@ -974,7 +979,8 @@ public class SettingsGUI extends javax.swing.JFrame {
                 .addGroup(MemoryPanelLayout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING)
                     .addComponent(invalidMemoryCheck, javax.swing.GroupLayout.DEFAULT_SIZE, 1535, Short.MAX_VALUE)
                     .addComponent(ignoreUnmappedImports, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, Short.MAX_VALUE)
-                    .addComponent(useDebugMemory, javax.swing.GroupLayout.Alignment.TRAILING, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, Short.MAX_VALUE))
+                    .addComponent(useDebugMemory, javax.swing.GroupLayout.Alignment.TRAILING, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, Short.MAX_VALUE)
+                    .addComponent(useOffHeapMemory, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, Short.MAX_VALUE))
                 .addContainerGap())
         );
         MemoryPanelLayout.setVerticalGroup(
@@ -986,7 +992,9 @@ public class SettingsGUI extends javax.swing.JFrame {
                 .addComponent(ignoreUnmappedImports)
                 .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
                 .addComponent(useDebugMemory)
-                .addContainerGap(414, Short.MAX_VALUE))
+                .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                .addComponent(useOffHeapMemory)
+                .addContainerGap(391, Short.MAX_VALUE))
         );
 
         jTabbedPane1.addTab(bundle.getString("SettingsGUI.MemoryPanel.title"), MemoryPanel); // NOI18N
@@ -1437,6 +1445,7 @@ public class SettingsGUI extends javax.swing.JFrame {
     private javax.swing.JCheckBox useDebugFont;
     private javax.swing.JCheckBox useDebugMemory;
     private javax.swing.JRadioButton useExternalSoftwareRenderer;
+    private javax.swing.JCheckBox useOffHeapMemory;
     private javax.swing.JRadioButton useOpenglRenderer;
     private javax.swing.JRadioButton useSoftwareRenderer;
     private javax.swing.JCheckBox useVertexCache;
@@ -0,0 +1,44 @@
+/*
+This file is part of jpcsp.
+
+Jpcsp is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Jpcsp is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with Jpcsp.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package jpcsp.HLE;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * This annotation tells the compiler that the kernel function is called
+ * very often and that a specialized call can be generated for it
+ * when "emu.compiler.hotSyscallStubs" is enabled:
+ * - the TPointer parameters are not allocated for each call,
+ *   one instance per call site is reused. The function must not keep
+ *   a reference to its pointer parameters after returning.
+ * - no SceKernelErrorException handler is generated when the function
+ *   is declared with canThrowError = false.
+ *
+ * The Profiler is logging the number of calls of each syscall,
+ * this can be used to find the functions worth being annotated.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface HLEHotFunction {
+	/**
+	 * @return false if the function is never throwing a SceKernelErrorException
+	 */
+	public boolean canThrowError() default true;
+}
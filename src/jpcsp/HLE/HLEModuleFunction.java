@@ -29,6 +29,8 @@ public class HLEModuleFunction {
     private final String functionName;
     private int nid;
     private boolean unimplemented;
+    private boolean hot;
+    private boolean canThrowError = true;
     private String loggingLevel;
 	private Method hleModuleMethod;
 	private boolean checkInsideInterrupt;
@@ -81,6 +83,19 @@ public class HLEModuleFunction {
         return unimplemented;
     }
 
+    public final void setHot(boolean hot, boolean canThrowError) {
+        this.hot = hot;
+        this.canThrowError = canThrowError;
+    }
+
+    public final boolean isHot() {
+        return hot;
+    }
+
+    public final boolean canThrowError() {
+        return canThrowError;
+    }
+
 	public String getLoggingLevel() {
 		return loggingLevel;
 	}
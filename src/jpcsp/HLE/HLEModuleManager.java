@@ -557,6 +557,7 @@ public class HLEModuleManager {
 	private void installFunctionWithAnnotations(HLEFunction hleFunction, Method method, HLEModule hleModule) {
 		HLEUnimplemented hleUnimplemented = method.getAnnotation(HLEUnimplemented.class);
 		HLELogging hleLogging = method.getAnnotation(HLELogging.class);
+		HLEHotFunction hleHotFunction = method.getAnnotation(HLEHotFunction.class);
 
 		// Take the module default logging if no HLELogging has been
 		// defined at the function level and if the function is not
@@ -594,6 +595,10 @@ public class HLEModuleManager {
 			hleModuleFunction.setUnimplemented(true);
 		}
 
+		if (hleHotFunction != null) {
+			hleModuleFunction.setHot(true, hleHotFunction.canThrowError());
+		}
+
 		if (hleLogging != null) {
 			hleModuleFunction.setLoggingLevel(hleLogging.level());
 		}
@@ -52,6 +52,10 @@ abstract public class TPointerBase implements ITPointerBase {
 		return pointer.isNotNull();
 	}
 
+	public void setAddress(int address) {
+		pointer.setAddress(address);
+	}
+
 	@Override
 	public Memory getMemory() {
 		return pointer.getMemory();
@@ -74,7 +74,7 @@ public abstract class AbstractVirtualFile implements IVirtualFile {
 		return 0;
 	}
 
-	private int getReadLength(int outputLength) {
+	protected int getReadLength(int outputLength) {
 		int readLength = outputLength;
 		long restLength = length() - getPosition();
 		if (restLength < readLength) {
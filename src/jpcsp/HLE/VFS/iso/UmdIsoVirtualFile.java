@@ -187,7 +187,7 @@ public class UmdIsoVirtualFile extends AbstractVirtualFile {
 	            	if (length > 0) {
 	            		if (outputPointer.isAddressGood() && outputLength >= length) {
 	            			try {
-								Utilities.readFully(file, outputPointer.getAddress(), length);
+								file.readFully(outputPointer.getAddress(), length);
 								setPosition(getPosition() + length);
 	                            result = length;
 	    					} catch (IOException e) {
@@ -213,7 +213,7 @@ public class UmdIsoVirtualFile extends AbstractVirtualFile {
 	            		if (outputPointer.isAddressGood() && outputLength >= numberOfSectors) {
 	            			try {
 	                        	int length = numberOfSectors * UmdIsoFile.sectorLength;
-								Utilities.readFully(file, outputPointer.getAddress(), length);
+								file.readFully(outputPointer.getAddress(), length);
 								setPosition(getPosition() + length);
 	                            result = length / UmdIsoFile.sectorLength;
 	    					} catch (IOException e) {
@@ -272,6 +272,21 @@ public class UmdIsoVirtualFile extends AbstractVirtualFile {
 		return result;
 	}
 
+	@Override
+	public int ioRead(TPointer outputPointer, int outputLength) {
+		int readLength = getReadLength(outputLength);
+		if (readLength > 0) {
+			try {
+				file.readFully(outputPointer.getAddress(), readLength);
+			} catch (IOException e) {
+				log.error("ioRead", e);
+				return ERROR_KERNEL_FILE_READ_ERROR;
+			}
+		}
+
+		return readLength;
+	}
+
 	@Override
 	public IVirtualFile duplicate() {
 		IVirtualFile duplicate = null;
@@ -0,0 +1,173 @@
+/*
+This file is part of jpcsp.
+
+Jpcsp is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Jpcsp is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with Jpcsp.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package jpcsp.HLE.kernel.managers;
+
+import jpcsp.HLE.kernel.types.SceKernelThreadInfo;
+
+/**
+ * Queue of the threads in status PSP_THREAD_READY,
+ * implemented like in the PSP kernel: one FIFO list per priority
+ * and a bitmap of the non-empty priorities.
+ *
+ * Adding, removing and finding the thread having the highest priority
+ * are all performed in constant time.
+ * The FIFO lists are linked through the thread themselves
+ * (see SceKernelThreadInfo.readyPrevious/readyNext).
+ *
+ * The priority used to queue a thread is stored in the thread
+ * (SceKernelThreadInfo.readyPriority), so that the thread can still
+ * be removed after its currentPriority has been changed.
+ *
+ * This class is not thread-safe, the caller has to synchronize the accesses.
+ */
+public class ReadyThreadQueue {
+	public static final int NUMBER_PRIORITIES = 128;
+	private final SceKernelThreadInfo[] heads = new SceKernelThreadInfo[NUMBER_PRIORITIES];
+	private final SceKernelThreadInfo[] tails = new SceKernelThreadInfo[NUMBER_PRIORITIES];
+	// Bit n is set when the list of priority n is not empty
+	private final long[] bitmap = new long[NUMBER_PRIORITIES / 64];
+	private int size;
+
+	private static int getPriorityIndex(int priority) {
+		return Math.max(0, Math.min(priority, NUMBER_PRIORITIES - 1));
+	}
+
+	public boolean contains(SceKernelThreadInfo thread) {
+		return thread.readyPriority >= 0;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * Add a thread to the queue of its current priority.
+	 * A thread already present in the queue is not added a second time.
+	 *
+	 * @param thread    the thread to be added
+	 * @param addFirst  true if the thread has to be added in front of the
+	 *                  threads having the same priority,
+	 *                  false if it has to be added after them.
+	 */
+	public void add(SceKernelThreadInfo thread, boolean addFirst) {
+		if (contains(thread)) {
+			return;
+		}
+
+		int priority = getPriorityIndex(thread.currentPriority);
+		thread.readyPriority = priority;
+		if (heads[priority] == null) {
+			thread.readyPrevious = null;
+			thread.readyNext = null;
+			heads[priority] = thread;
+			tails[priority] = thread;
+			bitmap[priority >> 6] |= 1L << priority;
+		} else if (addFirst) {
+			thread.readyPrevious = null;
+			thread.readyNext = heads[priority];
+			heads[priority].readyPrevious = thread;
+			heads[priority] = thread;
+		} else {
+			thread.readyPrevious = tails[priority];
+			thread.readyNext = null;
+			tails[priority].readyNext = thread;
+			tails[priority] = thread;
+		}
+		size++;
+	}
+
+	/**
+	 * Remove a thread from the queue.
+	 * Nothing is done if the thread is not present in the queue.
+	 *
+	 * @param thread   the thread to be removed
+	 * @return         true if the thread has been removed,
+	 *                 false if the thread was not present in the queue.
+	 */
+	public boolean remove(SceKernelThreadInfo thread) {
+		if (!contains(thread)) {
+			return false;
+		}
+
+		int priority = thread.readyPriority;
+		if (thread.readyPrevious == null) {
+			heads[priority] = thread.readyNext;
+		} else {
+			thread.readyPrevious.readyNext = thread.readyNext;
+		}
+		if (thread.readyNext == null) {
+			tails[priority] = thread.readyPrevious;
+		} else {
+			thread.readyNext.readyPrevious = thread.readyPrevious;
+		}
+		if (heads[priority] == null) {
+			bitmap[priority >> 6] &= ~(1L << priority);
+		}
+
+		thread.readyPrevious = null;
+		thread.readyNext = null;
+		thread.readyPriority = -1;
+		size--;
+
+		return true;
+	}
+
+	/**
+	 * @return the first thread having the highest priority (i.e. the lowest
+	 *         priority value), or null if the queue is empty.
+	 */
+	public SceKernelThreadInfo getFirst() {
+		for (int i = 0; i < bitmap.length; i++) {
+			if (bitmap[i] != 0L) {
+				return heads[(i << 6) + Long.numberOfTrailingZeros(bitmap[i])];
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * @param priority  the priority
+	 * @return          the first thread queued with the given priority,
+	 *                  or null if no thread is queued with this priority.
+	 */
+	public SceKernelThreadInfo getFirst(int priority) {
+		return heads[getPriorityIndex(priority)];
+	}
+
+	public void clear() {
+		for (int priority = 0; priority < NUMBER_PRIORITIES; priority++) {
+			for (SceKernelThreadInfo thread = heads[priority]; thread != null; ) {
+				SceKernelThreadInfo next = thread.readyNext;
+				thread.readyPrevious = null;
+				thread.readyNext = null;
+				thread.readyPriority = -1;
+				thread = next;
+			}
+			heads[priority] = null;
+			tails[priority] = null;
+		}
+		for (int i = 0; i < bitmap.length; i++) {
+			bitmap[i] = 0L;
+		}
+		size = 0;
+	}
+}
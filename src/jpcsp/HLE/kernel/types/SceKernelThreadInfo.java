@@ -128,6 +128,10 @@ public class SceKernelThreadInfo extends pspAbstractMemoryMappedStructureVariabl
     public int displayLastWaitVcount;
     public long javaThreadId = -1;
     public long javaThreadCpuTimeNanos = -1;
+    // Used by the ReadyThreadQueue
+    public SceKernelThreadInfo readyPrevious;
+    public SceKernelThreadInfo readyNext;
+    public int readyPriority = -1;
     // Callbacks, only 1 of each type can be registered per thread.
     public final static int THREAD_CALLBACK_UMD = 0;
     public final static int THREAD_CALLBACK_IO = 1;
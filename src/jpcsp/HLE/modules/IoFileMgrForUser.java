@@ -60,6 +60,12 @@ import java.nio.ByteBuffer;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 import java.util.regex.Pattern;
 
 import jpcsp.Emulator;
@@ -77,6 +83,7 @@ import jpcsp.HLE.VFS.crypto.PGDVirtualFile;
 import jpcsp.HLE.VFS.emulator.EmulatorVirtualFileSystem;
 import jpcsp.HLE.VFS.iso.UmdIsoVirtualFile;
 import jpcsp.HLE.VFS.iso.UmdIsoVirtualFileSystem;
+import jpcsp.HLE.VFS.local.LocalVirtualFile;
 import jpcsp.HLE.VFS.local.LocalVirtualFileSystem;
 import jpcsp.HLE.VFS.memoryStick.MemoryStickStorageVirtualFileSystem;
 import jpcsp.HLE.VFS.memoryStick.MemoryStickVirtualFileSystem;
@@ -245,6 +252,11 @@ public class IoFileMgrForUser extends HLEModule {
 
     private boolean allowExtractPGD;
 
+    // Execute the host reads of the async read operations in the background
+    private boolean asyncHostReads;
+    private static ExecutorService asyncHostReadExecutor;
+    private static final int asyncHostReadThreads = 2;
+
     // Implement the list of IIoListener as an array to improve the performance
     // when iterating over all the entries (most common action).
     private IIoListener[] ioListeners;
@@ -350,6 +362,10 @@ public class IoFileMgrForUser extends HLEModule {
         public int getAsyncRestMillis() {
             long now = Emulator.getClock().currentTimeMillis();
             if (now >= asyncDoneMillis) {
+            	if (asyncAction instanceof IOAsyncReadAction && !((IOAsyncReadAction) asyncAction).isHostReadDone()) {
+            		// The host read is still in progress, check again a little bit later
+            		return 1;
+            	}
                 return 0;
             }
 
@@ -554,11 +570,22 @@ public class IoFileMgrForUser extends HLEModule {
         }
     }
 
-    private class IOAsyncReadAction implements IAction {
+    /**
+     * Read action executed when an async read operation is completed.
+     *
+     * When possible, the data is read from the host file in the background
+     * as soon as the async read is started (see startHostRead()),
+     * while the emulation is going on. Only the copy of the data
+     * into the PSP memory is then performed when completing the operation.
+     * The async operation is not completed before the host read is done.
+     */
+    private class IOAsyncReadAction implements IAction, Callable<Integer> {
     	private IoInfo info;
     	private int address;
     	private int size;
     	private int requestedSize;
+    	private byte[] hostBuffer;
+    	private Future<Integer> hostRead;
 
     	public IOAsyncReadAction(IoInfo info, int address, int requestedSize, int size) {
     		this.info = info;
@@ -567,36 +594,100 @@ public class IoFileMgrForUser extends HLEModule {
     		this.size = size;
     	}
 
+    	private boolean canReadOnHost() {
+    		if (size <= 0) {
+    			return false;
+    		}
+
+    		// Only the files having their own host file can be read in the background,
+    		// the other virtual files might be sharing their state with the emulator.
+    		if (info.vFile != null) {
+    			return info.vFile instanceof UmdIsoVirtualFile || info.vFile instanceof LocalVirtualFile;
+    		}
+
+    		return info.readOnlyFile != null;
+    	}
+
+    	/**
+    	 * Start the host read in the background, if possible.
+    	 */
+    	public void startHostRead() {
+    		if (canReadOnHost()) {
+    			hostBuffer = new byte[size];
+    			hostRead = getAsyncHostReadExecutor().submit(this);
+    		}
+    	}
+
+    	public boolean isHostReadDone() {
+    		return hostRead == null || hostRead.isDone();
+    	}
+
+    	/**
+    	 * Executed in the background by the asyncHostReadExecutor.
+    	 * 
+    	 * @return the number of bytes read or an error code
+    	 */
+		@Override
+		public Integer call() throws Exception {
+			if (info.vFile != null) {
+				return info.vFile.ioRead(hostBuffer, 0, size);
+			}
+
+			info.readOnlyFile.readFully(hostBuffer, 0, size);
+
+			return size;
+		}
+
+		private int getHostReadResult() {
+			int result;
+			try {
+				result = hostRead.get().intValue();
+			} catch (InterruptedException e) {
+				log.error(e);
+				result = ERROR_KERNEL_FILE_READ_ERROR;
+			} catch (ExecutionException e) {
+				log.error(e.getCause());
+				result = ERROR_KERNEL_FILE_READ_ERROR;
+			}
+
+			if (result > 0) {
+				Memory.getInstance().copyToMemory(address, ByteBuffer.wrap(hostBuffer, 0, result), result);
+			}
+			hostBuffer = null;
+			hostRead = null;
+
+			return result;
+		}
+
         @Override
         public void execute() {
             long position = info.position;
             int result = 0;
 
-            if (info.vFile != null) {
+            if (hostRead != null) {
+            	result = getHostReadResult();
+            } else if (info.vFile != null) {
             	result = info.vFile.ioRead(new TPointer(Memory.getInstance(), address), size);
-            	if (result >= 0) {
-            		info.position += result;
-            		size = result;
-	            	if (info.sectorBlockMode) {
-	            		result /= UmdIsoFile.sectorLength;
-	            	}
-            	} else {
-            		size = 0;
-            	}
             } else {
 	            try {
 	            	Utilities.readFully(info.readOnlyFile, address, size);
-	            	info.position += size;
 	            	result = size;
-	            	if (info.sectorBlockMode) {
-	            		result /= UmdIsoFile.sectorLength;
-	            	}
 	            } catch (IOException e) {
 	            	log.error(e);
 	            	result = ERROR_KERNEL_FILE_READ_ERROR;
 	            }
             }
 
+        	if (result >= 0) {
+        		info.position += result;
+        		size = result;
+            	if (info.sectorBlockMode) {
+            		result /= UmdIsoFile.sectorLength;
+            	}
+        	} else {
+        		size = 0;
+        	}
+
             info.result = result;
 
             // Invalidate any compiled code in the read range
@@ -615,6 +706,24 @@ public class IoFileMgrForUser extends HLEModule {
 		}
 	}
 
+	private class AsyncHostReadsSettingsListerner extends AbstractBoolSettingsListener {
+		@Override
+		protected void settingsValueChanged(boolean value) {
+			setAsyncHostReads(value);
+		}
+	}
+
+	private static class AsyncHostReadThreadFactory implements ThreadFactory {
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, "Async IO Host Read");
+			// Do not prevent the JVM from exiting
+			thread.setDaemon(true);
+
+			return thread;
+		}
+	}
+
     public void registerUmdIso() {
     	if (vfsManager != null && useVirtualFileSystem) {
     		if (iso != null && Modules.sceUmdUserModule.isUmdActivated()) {
@@ -696,6 +805,7 @@ public class IoFileMgrForUser extends HLEModule {
         assignedDevices = new HashMap<String, String>();
 
         setSettingsListener("emu.extractPGD", new ExtractPGDSettingsListerner());
+        setSettingsListener("emu.io.asyncHostReads", new AsyncHostReadsSettingsListerner());
 
 		defaultTimings.put(IoOperation.open, new IoFileMgrForUser.IoOperationTiming(5));
 		defaultTimings.put(IoOperation.close, new IoFileMgrForUser.IoOperationTiming(1));
@@ -730,6 +840,22 @@ public class IoFileMgrForUser extends HLEModule {
     	host0Path = path;
     }
 
+    public boolean isAsyncHostReads() {
+    	return asyncHostReads;
+    }
+
+    public void setAsyncHostReads(boolean asyncHostReads) {
+    	this.asyncHostReads = asyncHostReads;
+    }
+
+    private static synchronized ExecutorService getAsyncHostReadExecutor() {
+    	if (asyncHostReadExecutor == null) {
+    		asyncHostReadExecutor = Executors.newFixedThreadPool(asyncHostReadThreads, new AsyncHostReadThreadFactory());
+    	}
+
+    	return asyncHostReadExecutor;
+    }
+
     public void setAllowExtractPGDStatus(boolean status) {
         allowExtractPGD = status;
     }
@@ -1359,6 +1485,10 @@ public class IoFileMgrForUser extends HLEModule {
         long now = Emulator.getClock().currentTimeMillis();
         info.asyncDoneMillis = now + ioOperationTiming.getDelayMillis(size);
         info.asyncAction = asyncAction;
+        if (asyncHostReads && asyncAction instanceof IOAsyncReadAction) {
+        	// Overlap the host read with the emulation until the async operation is completed
+        	((IOAsyncReadAction) asyncAction).startHostRead();
+        }
         info.result = result;
         if (info.asyncThread == null) {
             ThreadManForUser threadMan = Modules.ThreadManForUserModule;
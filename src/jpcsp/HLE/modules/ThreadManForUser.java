@@ -102,6 +102,7 @@ import jpcsp.HLE.BufferInfo.LengthInfo;
 import jpcsp.HLE.BufferInfo.Usage;
 import jpcsp.HLE.CanBeNull;
 import jpcsp.HLE.HLEFunction;
+import jpcsp.HLE.HLEHotFunction;
 import jpcsp.HLE.HLEModule;
 import jpcsp.HLE.HLEModuleFunction;
 import jpcsp.HLE.HLEUnimplemented;
@@ -115,6 +116,7 @@ import jpcsp.HLE.TPointer32;
 import jpcsp.HLE.TPointer64;
 import jpcsp.HLE.kernel.Managers;
 import jpcsp.HLE.kernel.managers.IntrManager;
+import jpcsp.HLE.kernel.managers.ReadyThreadQueue;
 import jpcsp.HLE.kernel.managers.SceUidManager;
 import jpcsp.HLE.kernel.managers.SystemTimeManager;
 import jpcsp.HLE.kernel.types.IAction;
@@ -182,7 +184,7 @@ public class ThreadManForUser extends HLEModule {
 
     private HashMap<Integer, SceKernelThreadInfo> threadMap;
     private HashMap<Integer, SceKernelThreadEventHandlerInfo> threadEventHandlers;
-    private LinkedList<SceKernelThreadInfo> readyThreads;
+    private ReadyThreadQueue readyThreads;
     private SceKernelThreadInfo currentThread;
     private SceKernelThreadInfo idle0, idle1;
     public Statistics statistics;
@@ -648,7 +650,7 @@ public class ThreadManForUser extends HLEModule {
     	currentThread = null;
         threadMap = new HashMap<Integer, SceKernelThreadInfo>();
         threadEventHandlers = new HashMap<Integer, SceKernelThreadEventHandlerInfo>();
-        readyThreads = new LinkedList<SceKernelThreadInfo>();
+        readyThreads = new ReadyThreadQueue();
         statistics = new Statistics();
 
         callbackMap = new HashMap<Integer, pspBaseCallback>();
@@ -1235,16 +1237,10 @@ public class ThreadManForUser extends HLEModule {
     private SceKernelThreadInfo nextThread() {
         // Find the thread with status PSP_THREAD_READY and the highest priority.
         // In this implementation low priority threads can get starved.
-        // Remark: the currentThread is not present in the readyThreads List.
-        SceKernelThreadInfo found = null;
+        // Remark: the currentThread is not present in the readyThreads queue.
         synchronized (readyThreads) {
-            for (SceKernelThreadInfo thread : readyThreads) {
-                if (found == null || thread.currentPriority < found.currentPriority) {
-                    found = thread;
-                }
-            }
+            return readyThreads.getFirst();
         }
-        return found;
     }
 
     /**
@@ -1706,11 +1702,7 @@ public class ThreadManForUser extends HLEModule {
 
     private void addToReadyThreads(SceKernelThreadInfo thread, boolean addFirst) {
         synchronized (readyThreads) {
-        	if (addFirst) {
-        		readyThreads.addFirst(thread);
-        	} else {
-        		readyThreads.addLast(thread);
-        	}
+        	readyThreads.add(thread, addFirst);
         	needThreadReschedule = true;
         }
     }
@@ -1739,6 +1731,23 @@ public class ThreadManForUser extends HLEModule {
     	}
     }
 
+    /**
+     * Change the priority of a thread without rescheduling.
+     * A ready thread is moved to the end of the ready queue of its new priority.
+     *
+     * @param thread       the thread
+     * @param newPriority  the new priority of the thread
+     */
+    public void hleSetThreadPriority(SceKernelThreadInfo thread, int newPriority) {
+        synchronized (readyThreads) {
+        	boolean isQueued = readyThreads.remove(thread);
+        	thread.currentPriority = newPriority;
+        	if (isQueued) {
+        		addToReadyThreads(thread, false);
+        	}
+        }
+    }
+
     public void hleKernelChangeThreadPriority(SceKernelThreadInfo thread, int newPriority) {
     	if (thread == null) {
     		return;
@@ -3141,6 +3150,7 @@ public class ThreadManForUser extends HLEModule {
 
     /** wait the current thread for a certain number of microseconds */
     @HLEFunction(nid = 0xCEADEB47, version = 150, checkInsideInterrupt = true, checkDispatchThreadEnabled = true)
+    @HLEHotFunction(canThrowError = false)
     public int sceKernelDelayThread(int micros) {
         hleKernelDelayThread(micros, /* doCallbacks = */ false);
         return 0;
@@ -3471,11 +3481,13 @@ public class ThreadManForUser extends HLEModule {
     }
 
     @HLEFunction(nid = 0x82BC5777, version = 150)
+    @HLEHotFunction(canThrowError = false)
     public long sceKernelGetSystemTimeWide() {
         return Managers.systime.sceKernelGetSystemTimeWide();
     }
 
     @HLEFunction(nid = 0x369ED59D, version = 150)
+    @HLEHotFunction(canThrowError = false)
     public int sceKernelGetSystemTimeLow() {
         return Managers.systime.sceKernelGetSystemTimeLow();
     }
@@ -4078,22 +4090,20 @@ public class ThreadManForUser extends HLEModule {
     @HLEFunction(nid = 0x912354A7, version = 150)
     public int sceKernelRotateThreadReadyQueue(@CheckArgument("checkThreadPriority") int priority) {
         synchronized (readyThreads) {
-            for (SceKernelThreadInfo thread : readyThreads) {
-                if (thread.currentPriority == priority) {
-                	// When rotating the ready queue of the current thread,
-                	// the current thread yields and is moved to the end of its
-                	// ready queue.
-                	if (priority == currentThread.currentPriority) {
-                		thread = currentThread;
-                		// The current thread will be moved to the front of the ready queue
-                		hleChangeThreadState(thread, PSP_THREAD_READY);
-                	}
-                    // Move the thread to the end of the ready queue
-                	removeFromReadyThreads(thread);
-                    addToReadyThreads(thread, false);
-                    hleRescheduleCurrentThread();
-                    break;
-                }
+        	SceKernelThreadInfo thread = readyThreads.getFirst(priority);
+            if (thread != null) {
+            	// When rotating the ready queue of the current thread,
+            	// the current thread yields and is moved to the end of its
+            	// ready queue.
+            	if (priority == currentThread.currentPriority) {
+            		thread = currentThread;
+            		// The current thread will be moved to the front of the ready queue
+            		hleChangeThreadState(thread, PSP_THREAD_READY);
+            	}
+                // Move the thread to the end of the ready queue
+            	removeFromReadyThreads(thread);
+                addToReadyThreads(thread, false);
+                hleRescheduleCurrentThread();
             }
         }
         
@@ -52,6 +52,7 @@ import jpcsp.HLE.kernel.types.SceKernelErrors;
 import jpcsp.HLE.kernel.types.pspFileBuffer;
 import jpcsp.HLE.modules.SysMemUserForUser.SysMemInfo;
 import jpcsp.HLE.modules.sceAudiocodec.AudiocodecInfo;
+import jpcsp.media.codec.DecodedFrameCache;
 import jpcsp.media.codec.ICodec;
 import jpcsp.media.codec.atrac3.Atrac3Decoder;
 import jpcsp.media.codec.atrac3plus.Atrac3plusDecoder;
@@ -82,6 +83,10 @@ public class sceAtrac3plus extends HLEModule {
     		Modules.SysMemUserForUserModule.free(temporaryDecodeArea);
     		temporaryDecodeArea = null;
     	}
+    	if (replayDecodeArea != null) {
+    		Modules.SysMemUserForUserModule.free(replayDecodeArea);
+    		replayDecodeArea = null;
+    	}
 
     	super.stop();
     }
@@ -126,6 +131,7 @@ public class sceAtrac3plus extends HLEModule {
     protected AtracID atracIDs[] = new AtracID[6];
 
     private static SysMemInfo temporaryDecodeArea;
+    private static SysMemInfo replayDecodeArea;
 
     protected static class LoopInfo {
     	protected int cuePointID;
@@ -192,6 +198,8 @@ public class sceAtrac3plus extends HLEModule {
         protected int sourceBufferLength;
         // AddStreamData
         protected int getStreamDataInfoCurrentSample;
+        // Frames decoded by decodeData, when using the DecodedFrameCache
+        protected DecodedFrameCache.Stream decodedFrames;
 
         public AtracID(int id) {
         	super(id);
@@ -226,9 +234,77 @@ public class sceAtrac3plus extends HLEModule {
 
         	setCodecInitialized();
 
+        	if (DecodedFrameCache.getInstance().isEnabled()) {
+        		if (decodedFrames == null) {
+        			decodedFrames = new DecodedFrameCache.Stream();
+        		}
+        		decodedFrames.reset(codecType, info.atracBytesPerFrame, channels, outputChannels, info.atracCodingMode);
+        	} else {
+        		decodedFrames = null;
+        	}
+
         	return 0;
         }
 
+        /**
+         * Decode again the previous frames that have been served by the
+         * DecodedFrameCache, so that the codec state is matching
+         * the frame about to be decoded.
+         *
+         * @param samplesAddr  a buffer for the decoded samples, its content will be overwritten
+         */
+        private void replayCachedFrames(int samplesAddr) {
+        	int numberFrames = decodedFrames.getNumberFramesToReplay();
+        	if (numberFrames <= 0) {
+        		return;
+        	}
+
+        	int frameLength = decodedFrames.getMaxFrameLength();
+        	if (replayDecodeArea == null || replayDecodeArea.allocatedSize < frameLength) {
+        		if (replayDecodeArea != null) {
+        			Modules.SysMemUserForUserModule.free(replayDecodeArea);
+        		}
+        		replayDecodeArea = Modules.SysMemUserForUserModule.malloc(KERNEL_PARTITION_ID, "Temporary-sceAtrac3plus-ReplayFrames", PSP_SMEM_Low, frameLength, 0);
+        		if (replayDecodeArea == null) {
+        			log.warn(String.format("decodeData cannot allocate required replay buffer of size=0x%X", frameLength));
+        			return;
+        		}
+        	}
+
+        	if (log.isDebugEnabled()) {
+        		log.debug(String.format("decodeData replaying %d frames served by the cache", numberFrames));
+        	}
+
+        	for (int i = numberFrames; i >= 1; i--) {
+        		int length = decodedFrames.writeFrame(i, replayDecodeArea.addr);
+        		codec.decode(replayDecodeArea.addr, length, samplesAddr);
+        	}
+        }
+
+        private int decodeFrame(int readAddr, int samplesAddr) {
+        	if (decodedFrames == null) {
+        		return codec.decode(readAddr, info.atracBytesPerFrame, samplesAddr);
+        	}
+
+        	DecodedFrameCache decodedFrameCache = DecodedFrameCache.getInstance();
+        	long key = decodedFrames.readFrame(readAddr, info.atracBytesPerFrame);
+        	DecodedFrameCache.Entry entry = decodedFrameCache.get(key, decodedFrames);
+        	if (entry != null) {
+        		entry.write(samplesAddr);
+        		decodedFrames.nextFrame(true);
+        		return entry.getResult();
+        	}
+
+        	replayCachedFrames(samplesAddr);
+        	int result = codec.decode(readAddr, info.atracBytesPerFrame, samplesAddr);
+        	if (result > 0) {
+        		decodedFrameCache.put(key, decodedFrames, samplesAddr, codec.getNumberOfSamples() * 2 * getOutputChannels(), result);
+        		decodedFrames.nextFrame(false);
+        	}
+
+        	return result;
+        }
+
         public int decodeData(int samplesAddr, TPointer32 outEndAddr) {
         	skippedEndSamples = 0;
 
@@ -305,7 +381,7 @@ public class sceAtrac3plus extends HLEModule {
         		log.debug(String.format("decodeData from 0x%08X(0x%X) to 0x%08X(0x%X), skippedSamples=0x%X, currentSample=0x%X, outputChannels=%d", readAddr, info.atracBytesPerFrame, decodedSamplesAddr, maxSamples, skippedSamples, currentSample, outputChannels));
         	}
 
-        	int result = codec.decode(readAddr, info.atracBytesPerFrame, decodedSamplesAddr);
+        	int result = decodeFrame(readAddr, decodedSamplesAddr);
         	if (result < 0) {
         		if (log.isDebugEnabled()) {
         			log.debug(String.format("decodeData received codec decode error 0x%08X", result));
@@ -19,6 +19,7 @@ package jpcsp.HLE.modules;
 import jpcsp.HLE.CanBeNull;
 import jpcsp.HLE.CheckArgument;
 import jpcsp.HLE.HLEFunction;
+import jpcsp.HLE.HLEHotFunction;
 import jpcsp.HLE.HLEModule;
 import jpcsp.HLE.HLEUnimplemented;
 import jpcsp.HLE.SceKernelErrorException;
@@ -454,11 +455,13 @@ public class sceCtrl extends HLEModule {
     }
 
     @HLEFunction(nid = 0x3A622550, version = 150)
+    @HLEHotFunction(canThrowError = false)
     public int sceCtrlPeekBufferPositive(TPointer dataAddr, int numBuf) {
         return hleCtrlReadBufferImmediately(dataAddr.getAddress(), numBuf, true, true);
     }
 
     @HLEFunction(nid = 0xC152080A, version = 150)
+    @HLEHotFunction(canThrowError = false)
     public int sceCtrlPeekBufferNegative(TPointer dataAddr, int numBuf) {
         return hleCtrlReadBufferImmediately(dataAddr.getAddress(), numBuf, false, true);
     }
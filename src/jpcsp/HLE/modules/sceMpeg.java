@@ -44,6 +44,10 @@ import jpcsp.HLE.SceKernelErrorException;
 import jpcsp.HLE.TPointer;
 import jpcsp.HLE.TPointer32;
 
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
 import java.util.Arrays;
 import java.util.Date;
 import java.util.HashMap;
@@ -78,9 +82,11 @@ import jpcsp.media.codec.h264.H264Utils;
 import jpcsp.memory.IMemoryReader;
 import jpcsp.memory.IMemoryWriter;
 import jpcsp.memory.MemoryReader;
+import jpcsp.memory.MemoryWriteTracker;
 import jpcsp.memory.MemoryWriter;
 import jpcsp.scheduler.DelayThreadAction;
 import jpcsp.scheduler.UnblockThreadAction;
+import jpcsp.settings.AbstractIntSettingsListener;
 import jpcsp.util.Debug;
 import jpcsp.util.Utilities;
 
@@ -108,8 +114,18 @@ public class sceMpeg extends HLEModule {
 		return 0xC000;
 	}
 
+	private class VideoDecodeLookAheadSettingsListerner extends AbstractIntSettingsListener {
+		@Override
+		protected void settingsValueChanged(int value) {
+			setVideoDecodeLookAhead(value);
+		}
+	}
+
 	@Override
     public void start() {
+    	setVideoDecodeLookAhead(DEFAULT_VIDEO_DECODE_LOOK_AHEAD);
+    	setSettingsListener("emu.mpeg.videoDecodeLookAhead", new VideoDecodeLookAheadSettingsListerner());
+
         mpegHandle = 0;
         mpegRingbuffer = null;
         mpegRingbufferAddr = null;
@@ -121,7 +137,9 @@ public class sceMpeg extends HLEModule {
         psmfHeader = null;
 
         intBuffers = new HashSet<int[]>();
-        lastFrameABGR = null;
+        lastFrameLuma = null;
+        lastFrameCb = null;
+        lastFrameCr = null;
 
         audioDecodeBuffer = new byte[MPEG_ATRAC_ES_OUTPUT_SIZE];
         allocatedEsBuffers = new boolean[2];
@@ -248,13 +266,25 @@ public class sceMpeg extends HLEModule {
     private IVideoCodec videoCodec;
     private int videoCodecExtraData[];
     private static final int MAX_INT_BUFFERS_SIZE = 12;
+    // Number of int buffers (luma, cb and cr) used by each decoded image
+    private static final int INT_BUFFERS_PER_IMAGE = 3;
+    private static final int DEFAULT_VIDEO_DECODE_LOOK_AHEAD = 2;
+    private static int maxIntBuffersSize = MAX_INT_BUFFERS_SIZE;
+    // Number of additional images decoded in advance by the VideoDecoderThread,
+    // 0 to only decode the next image in advance
+    private int videoDecodeLookAhead = DEFAULT_VIDEO_DECODE_LOOK_AHEAD;
     private static Set<int[]> intBuffers;
     private PesHeader audioPesHeader;
     private PesHeader videoPesHeader;
+    // PES header of a video frame only partially available when decoding in advance
+    private PesHeader pendingVideoPesHeader;
     private final PesHeader dummyPesHeader = new PesHeader(0);
     private VideoDecoderThread videoDecoderThread;
     private LinkedList<DecodedImageInfo> decodedImages;
-    private int lastFrameABGR[];
+    // The YCbCr components of the last decoded frame
+    private int lastFrameLuma[];
+    private int lastFrameCb[];
+    private int lastFrameCr[];
     private int lastFrameWidth;
     private int lastFrameHeight;
     private PesHeader userDataPesHeader;
@@ -274,7 +304,6 @@ public class sceMpeg extends HLEModule {
     	public int luma[];
     	public int cr[];
     	public int cb[];
-    	public int abgr[];
 
     	@Override
 		public String toString() {
@@ -1069,8 +1098,9 @@ public class sceMpeg extends HLEModule {
     }
 
     /**
-     * Always decode one frame in advance so that sceMpegAvcDecode
-     * can be timed like on a real PSP.
+     * Always decode frames in advance (see videoDecodeLookAhead)
+     * so that sceMpegAvcDecode can be timed like on a real PSP
+     * and is only copying an already decoded image.
      */
     private class VideoDecoderThread extends Thread {
     	private volatile boolean exit = false;
@@ -1193,20 +1223,21 @@ public class sceMpeg extends HLEModule {
     	}
     }
 
-    private void rememberLastFrame(int imageWidth, int imageHeight, int abgr[]) {
-    	if (abgr != null) {
-    		releaseIntBuffer(lastFrameABGR);
-    		int length = imageWidth * imageHeight;
-    		lastFrameABGR = getIntBuffer(length);
-    		System.arraycopy(abgr, 0, lastFrameABGR, 0, length);
-    		lastFrameWidth = imageWidth;
-    		lastFrameHeight = imageHeight;
-    	}
+    private void rememberLastFrame(DecodedImageInfo decodedImageInfo) {
+    	// Take over the buffers of the decoded image, no copy is needed
+    	releaseIntBuffer(lastFrameLuma);
+    	releaseIntBuffer(lastFrameCb);
+    	releaseIntBuffer(lastFrameCr);
+    	lastFrameLuma = decodedImageInfo.luma;
+    	lastFrameCb = decodedImageInfo.cb;
+    	lastFrameCr = decodedImageInfo.cr;
+    	lastFrameWidth = decodedImageInfo.imageWidth;
+    	lastFrameHeight = decodedImageInfo.imageHeight;
     }
 
     public void writeLastFrameABGR(int buffer, int frameWidth, int pixelMode) {
-    	if (lastFrameABGR != null) {
-    		writeImageABGR(buffer, frameWidth, lastFrameWidth, lastFrameHeight, pixelMode, lastFrameABGR);
+    	if (lastFrameLuma != null) {
+    		writeImageABGR(buffer, frameWidth, lastFrameWidth, lastFrameHeight, pixelMode, lastFrameLuma, lastFrameCb, lastFrameCr);
     	}
     }
 
@@ -1290,22 +1321,17 @@ public class sceMpeg extends HLEModule {
     			addr += size2 >> 1;
     		} else {
 	    		if (writeAbgr) {
-	    			writeImageABGR(buffer, frameWidth, decodedImageInfo.imageWidth, decodedImageInfo.imageHeight, pixelMode, decodedImageInfo.abgr);
+	    			writeImageABGR(buffer, frameWidth, decodedImageInfo.imageWidth, decodedImageInfo.imageHeight, pixelMode, decodedImageInfo.luma, decodedImageInfo.cb, decodedImageInfo.cr);
 	    		} else {
 	    			writeImageYCbCr(buffer, decodedImageInfo.imageWidth, decodedImageInfo.imageHeight, decodedImageInfo.luma, decodedImageInfo.cb, decodedImageInfo.cr);
 	    		}
     		}
 
-    		rememberLastFrame(decodedImageInfo.imageWidth, decodedImageInfo.imageHeight, decodedImageInfo.abgr);
+    		rememberLastFrame(decodedImageInfo);
 
-    		releaseIntBuffer(decodedImageInfo.luma);
-    		releaseIntBuffer(decodedImageInfo.cb);
-    		releaseIntBuffer(decodedImageInfo.cr);
-    		releaseIntBuffer(decodedImageInfo.abgr);
     		decodedImageInfo.luma = null;
     		decodedImageInfo.cb = null;
     		decodedImageInfo.cr = null;
-    		decodedImageInfo.abgr = null;
 
     		videoFrameCount++;
     	}
@@ -1369,17 +1395,49 @@ public class sceMpeg extends HLEModule {
     	}
     }
 
-    private void decodeNextImage(TPointer auAddr) {
-		PesHeader pesHeader = new PesHeader(getRegisteredVideoChannel());
-		pesHeader.setDtsPts(UNKNOWN_TIMESTAMP);
+    /**
+     * Decode the next video frame and add it to the decodedImages.
+     *
+     * @param auAddr     the Au to be updated when decoding in low level mode
+     * @param lookAhead  true if the image is decoded in advance:
+     *                   no error image is added when the next frame
+     *                   is not yet completely available.
+     * @return           true if an image has been decoded
+     *                   false if no image or an error image has been added
+     */
+    private boolean decodeNextImage(TPointer auAddr, boolean lookAhead) {
+		PesHeader pesHeader = pendingVideoPesHeader;
+		pendingVideoPesHeader = null;
+		PesHeader framePesHeader;
+		if (pesHeader != null && pesHeader.getPts() != UNKNOWN_TIMESTAMP) {
+			// The frame has already been started with a known timestamp,
+			// ignore the next PES headers for this frame
+			framePesHeader = dummyPesHeader;
+		} else {
+			if (pesHeader == null) {
+				pesHeader = new PesHeader(getRegisteredVideoChannel());
+				pesHeader.setDtsPts(UNKNOWN_TIMESTAMP);
+			}
+			framePesHeader = pesHeader;
+		}
 
 		DecodedImageInfo decodedImageInfo = new DecodedImageInfo();
-    	decodedImageInfo.frameEnd = readNextVideoFrame(pesHeader, auAddr);
+    	decodedImageInfo.frameEnd = readNextVideoFrame(framePesHeader, auAddr);
+
+    	if (lookAhead && decodedImageInfo.frameEnd < 0) {
+    		// The frame is not yet completely available in the ringbuffer,
+    		// retry at the next trigger
+    		pendingVideoPesHeader = pesHeader;
+    		return false;
+    	}
 
 		if (decodedImageInfo.frameEnd >= 0) {
 			if (videoBuffer.getLength() < decodedImageInfo.frameEnd) {
 				// The content of the frame is not yet completely available in the videoBuffer
-				return;
+				if (lookAhead) {
+					pendingVideoPesHeader = pesHeader;
+				}
+				return false;
 			}
 
 			if (videoCodec == null) {
@@ -1413,14 +1471,14 @@ public class sceMpeg extends HLEModule {
 						decodedImageInfo.imageWidth = videoCodec.getImageWidth();
 						decodedImageInfo.imageHeight = videoCodec.getImageHeight();
 						if (!getImage(decodedImageInfo)) {
-							return;
+							return false;
 						}
 					}
 				}
 			}
     	} else if (mpegRingbuffer != null && mpegRingbuffer.getPacketSize() == 0) {
     		// Do not add a new decoded image when we are decoding in low level mode
-    		return;
+    		return false;
     	}
 
     	if (videoPesHeader == null) {
@@ -1442,6 +1500,8 @@ public class sceMpeg extends HLEModule {
     	synchronized (decodedImages) {
     		decodedImages.add(decodedImageInfo);
     	}
+
+    	return decodedImageInfo.frameEnd >= 0;
     }
 
     private void hleVideoDecoderStep(int threadUid, int buffer, int frameWidth, int pixelMode, TPointer32 gotFrameAddr, boolean writeAbgr, TPointer auAddr, long threadWakeupMicroTime) {
@@ -1454,17 +1514,34 @@ public class sceMpeg extends HLEModule {
     	}
 
     	if (buffer == 0) {
-    		decodeNextImage(auAddr);
+    		decodeNextImage(auAddr, false);
     	}
 
     	restartThread(threadUid, buffer, frameWidth, pixelMode, gotFrameAddr, writeAbgr, threadWakeupMicroTime);
 
-    	// Always decode one frame in advance
+    	// Always decode at least one frame in advance
 		if (decodedImages.size() <= 1 || isDecoderInErrorCondition()) {
-			decodeNextImage(auAddr);
+			if (decodeNextImage(auAddr, false)) {
+				// Continue decoding in advance while the next frames
+				// are completely available in the ringbuffer
+				while (decodedImages.size() <= videoDecodeLookAhead && decodeNextImage(auAddr, true)) {
+					// Decode the next frame
+				}
+			}
 		}
     }
 
+    private void setVideoDecodeLookAhead(int videoDecodeLookAhead) {
+    	if (videoDecodeLookAhead < 0) {
+    		videoDecodeLookAhead = DEFAULT_VIDEO_DECODE_LOOK_AHEAD;
+    	}
+    	this.videoDecodeLookAhead = videoDecodeLookAhead;
+
+    	// Keep enough int buffers in the pool for the images decoded in advance
+    	// and for the image currently being decoded
+    	maxIntBuffersSize = Math.max(MAX_INT_BUFFERS_SIZE, (videoDecodeLookAhead + 2) * INT_BUFFERS_PER_IMAGE);
+    }
+
     private int read32(Memory mem, pspFileBuffer buffer) {
     	if (buffer.getCurrentSize() < 4) {
     		return 0;
@@ -1965,7 +2042,45 @@ public class sceMpeg extends HLEModule {
 		return frameHeight;
     }
 
-    private void writeImageABGR(int addr, int frameWidth, int imageWidth, int imageHeight, int pixelMode, int[] abgr) {
+    /**
+     * Convert an area of a YCbCr image into ABGR8888 and write it directly
+     * into memory, without going through an intermediate ABGR image.
+     *
+     * @return true if the image has been written,
+     *         false if the memory cannot be accessed directly.
+     */
+    public static boolean writeImageABGR8888(int addr, int frameWidth, int imageWidth, int x, int y, int width, int height, int[] luma, int[] cb, int[] cr) {
+    	if (width <= 0 || height <= 0) {
+    		return true;
+    	}
+
+    	int length = ((height - 1) * frameWidth + width) << 2;
+    	if (hasMemoryInt()) {
+    		MemoryWriteTracker.write(addr, length);
+    		H264Utils.YUV2ABGR(imageWidth, x, y, width, height, luma, cb, cr, getMemoryInt(), addr >> 2, frameWidth);
+    		return true;
+    	}
+
+    	IntBuffer intBuffer = null;
+    	Buffer buffer = Memory.getInstance().getBuffer(addr, length);
+    	if (buffer instanceof IntBuffer) {
+    		intBuffer = (IntBuffer) buffer;
+    	} else if (buffer instanceof ByteBuffer && ((ByteBuffer) buffer).order() == ByteOrder.LITTLE_ENDIAN) {
+    		intBuffer = ((ByteBuffer) buffer).asIntBuffer();
+    	}
+
+    	if (intBuffer == null || intBuffer.remaining() < (length >> 2)) {
+    		// E.g. the area is spanning several native memory pages
+    		return false;
+    	}
+
+    	MemoryWriteTracker.write(addr, length);
+    	H264Utils.YUV2ABGR(imageWidth, x, y, width, height, luma, cb, cr, intBuffer, intBuffer.position(), frameWidth);
+
+    	return true;
+    }
+
+    private void writeImageABGR(int addr, int frameWidth, int imageWidth, int imageHeight, int pixelMode, int[] luma, int[] cb, int[] cr) {
     	int frameHeight = getFrameHeight(imageHeight);
 		int bytesPerPixel = sceDisplay.getPixelFormatBytes(pixelMode);
 
@@ -1975,29 +2090,27 @@ public class sceMpeg extends HLEModule {
 
 		int lineWidth = Math.min(imageWidth, frameWidth);
 
-		if (pixelMode == TPSM_PIXEL_STORAGE_MODE_32BIT_ABGR8888 && hasMemoryInt()) {
-			// Optimize the most common case
-			int offset = 0;
-			int memoryIntOffset = addr >> 2;
-			for (int y = 0; y < frameHeight; y++) {
-				System.arraycopy(abgr, offset, getMemoryInt(), memoryIntOffset, lineWidth);
-				memoryIntOffset += frameWidth;
-				offset += imageWidth;
-			}
-		} else {
-			// The general case with color format transformation
-			int lineSkip = frameWidth - lineWidth;
-			IMemoryWriter memoryWriter = MemoryWriter.getMemoryWriter(addr, frameWidth * frameHeight * bytesPerPixel, bytesPerPixel);
-			for (int y = 0; y < frameHeight; y++) {
-				int offset = y * imageWidth;
-				for (int x = 0; x < lineWidth; x++, offset++) {
-	                int pixelColor = Debug.getPixelColor(abgr[offset], pixelMode);
-					memoryWriter.writeNext(pixelColor);
-				}
-				memoryWriter.skip(lineSkip);
+		// Optimize the most common case
+		if (pixelMode == TPSM_PIXEL_STORAGE_MODE_32BIT_ABGR8888 && writeImageABGR8888(addr, frameWidth, imageWidth, 0, 0, lineWidth, frameHeight, luma, cb, cr)) {
+			return;
+		}
+
+		// The general case with color format transformation
+		int[] abgr = getIntBuffer(lineWidth * frameHeight);
+		H264Utils.YUV2ABGR(imageWidth, 0, 0, lineWidth, frameHeight, luma, cb, cr, abgr, 0, lineWidth);
+
+		int lineSkip = frameWidth - lineWidth;
+		IMemoryWriter memoryWriter = MemoryWriter.getMemoryWriter(addr, frameWidth * frameHeight * bytesPerPixel, bytesPerPixel);
+		for (int y = 0, offset = 0; y < frameHeight; y++) {
+			for (int x = 0; x < lineWidth; x++, offset++) {
+                int pixelColor = Debug.getPixelColor(abgr[offset], pixelMode);
+				memoryWriter.writeNext(pixelColor);
 			}
-			memoryWriter.flush();
+			memoryWriter.skip(lineSkip);
 		}
+		memoryWriter.flush();
+
+		releaseIntBuffer(abgr);
     }
 
     private void writeImageYCbCr(int addr, int imageWidth, int imageHeight, int[] luma, int[] cb, int[] cr) {
@@ -2055,7 +2168,7 @@ public class sceMpeg extends HLEModule {
     	synchronized (intBuffers) {
         	intBuffers.add(intBuffer);
 
-	    	if (intBuffers.size() > MAX_INT_BUFFERS_SIZE) {
+	    	if (intBuffers.size() > maxIntBuffersSize) {
 	    		// Remove the smallest int buffer
 	    		int[] smallestIntBuffer = null;
 	    		for (int[] buffer : intBuffers) {
@@ -2087,8 +2200,8 @@ public class sceMpeg extends HLEModule {
 			return false;
 		}
 
-		decodedImageInfo.abgr = getIntBuffer(length);
-		H264Utils.YUV2ABGR(width, height, decodedImageInfo.luma, decodedImageInfo.cb, decodedImageInfo.cr, decodedImageInfo.abgr);
+		// The YCbCr image will be converted to ABGR directly
+		// into its destination by writeImageABGR().
 
 		return true;
     }
@@ -2108,6 +2221,7 @@ public class sceMpeg extends HLEModule {
         userDataBuffer = null;
         audioPesHeader = null;
         videoPesHeader = null;
+        pendingVideoPesHeader = null;
         userDataPesHeader = null;
         audioFrameLength = 0;
         frameHeaderLength = 0;
@@ -3737,33 +3851,21 @@ public class sceMpeg extends HLEModule {
 	        }
         }
 
-        // Convert YCbCr to ABGR
-        int[] abgr = getIntBuffer(length);
-        H264Utils.YUV2ABGR(width, height, luma, cb, cr, abgr);
-
-        releaseIntBuffer(luma);
-        releaseIntBuffer(cb);
-        releaseIntBuffer(cr);
-
         final int bytesPerPixel = sceDisplay.getPixelFormatBytes(videoPixelMode);
 
 		// Do not cache the video image as a texture in the VideoEngine to allow fluid rendering
         VideoEngine.getInstance().addVideoTexture(destAddr.getAddress(), destAddr.getAddress() + (rangeY + rangeHeight) * frameWidth * bytesPerPixel);
 
-        // Write the ABGR image
-		if (videoPixelMode == TPSM_PIXEL_STORAGE_MODE_32BIT_ABGR8888 && hasMemoryInt()) {
-			// Optimize the most common case
-			int pixelIndex = rangeY * width + rangeX;
-	        for (int i = 0; i < rangeHeight; i++) {
-	        	int addr = destAddr.getAddress() + (i * frameWidth) * bytesPerPixel;
-	        	System.arraycopy(abgr, pixelIndex, getMemoryInt(), addr >> 2, rangeWidth);
-	        	pixelIndex += width;
-	        }
-		} else {
+        // Convert YCbCr to ABGR and write the ABGR image
+		if (videoPixelMode != TPSM_PIXEL_STORAGE_MODE_32BIT_ABGR8888 || !writeImageABGR8888(destAddr.getAddress(), frameWidth, width, rangeX, rangeY, rangeWidth, rangeHeight, luma, cb, cr)) {
+			// The general case with color format transformation
+	        int[] abgr = getIntBuffer(rangeWidth * rangeHeight);
+	        H264Utils.YUV2ABGR(width, rangeX, rangeY, rangeWidth, rangeHeight, luma, cb, cr, abgr, 0, rangeWidth);
+
         	int addr = destAddr.getAddress();
+        	int pixelIndex = 0;
 	        for (int i = 0; i < rangeHeight; i++) {
 	        	IMemoryWriter memoryWriter = MemoryWriter.getMemoryWriter(addr, rangeWidth * bytesPerPixel, bytesPerPixel);
-	        	int pixelIndex = (i + rangeY) * width + rangeX;
 	        	for (int j = 0; j < rangeWidth; j++, pixelIndex++) {
 	        		int abgr8888 = abgr[pixelIndex];
 	        		int pixelColor = Debug.getPixelColor(abgr8888, videoPixelMode);
@@ -3772,8 +3874,12 @@ public class sceMpeg extends HLEModule {
 	        	memoryWriter.flush();
 	        	addr += frameWidth * bytesPerPixel;
 	        }
+			releaseIntBuffer(abgr);
 		}
-		releaseIntBuffer(abgr);
+
+        releaseIntBuffer(luma);
+        releaseIntBuffer(cb);
+        releaseIntBuffer(cr);
 
         if (log.isDebugEnabled()) {
         	log.debug(String.format("sceMpegAvcCsc writing to 0x%08X-0x%08X, vcount=%d", destAddr.getAddress(), destAddr.getAddress() + (rangeY + rangeHeight) * frameWidth * bytesPerPixel, Modules.sceDisplayModule.getVcount()));
@@ -18,6 +18,7 @@ package jpcsp.HLE.modules;
 
 import static jpcsp.HLE.modules.sceMpeg.getIntBuffer;
 import static jpcsp.HLE.modules.sceMpeg.releaseIntBuffer;
+import static jpcsp.HLE.modules.sceMpeg.writeImageABGR8888;
 import static jpcsp.graphics.GeCommands.TPSM_PIXEL_STORAGE_MODE_32BIT_ABGR8888;
 
 import org.apache.log4j.Logger;
@@ -182,32 +183,19 @@ public class sceMpegbase extends HLEModule {
         releaseIntBuffer(bufferCrCb1);
         releaseIntBuffer(bufferCrCb2);
 
-        // Convert YCbCr to ABGR
-        int[] abgr = getIntBuffer(length);
-        H264Utils.YUV2ABGR(width, height, luma, cb, cr, abgr);
-
-        releaseIntBuffer(luma);
-        releaseIntBuffer(cb);
-        releaseIntBuffer(cr);
-
 		// Do not cache the video image as a texture in the VideoEngine to allow fluid rendering
         VideoEngine.getInstance().addVideoTexture(destAddr, destAddr + (rangeY + rangeHeight) * bufferWidth * bytesPerPixel);
 
-        // Write the ABGR image
-		if (videoPixelMode == TPSM_PIXEL_STORAGE_MODE_32BIT_ABGR8888 && RuntimeContext.hasMemoryInt()) {
-			// Optimize the most common case
-			int pixelIndex = rangeY * width + rangeX;
-        	int addr = destAddr;
-	        for (int i = 0; i < rangeHeight; i++) {
-	        	System.arraycopy(abgr, pixelIndex, RuntimeContext.getMemoryInt(), addr >> 2, rangeWidth);
-	        	pixelIndex += width;
-	        	addr += bufferWidth * bytesPerPixel;
-	        }
-		} else {
+        // Convert YCbCr to ABGR and write the ABGR image
+		if (videoPixelMode != TPSM_PIXEL_STORAGE_MODE_32BIT_ABGR8888 || !writeImageABGR8888(destAddr, bufferWidth, width, rangeX, rangeY, rangeWidth, rangeHeight, luma, cb, cr)) {
+			// The general case with color format transformation
+	        int[] abgr = getIntBuffer(rangeWidth * rangeHeight);
+	        H264Utils.YUV2ABGR(width, rangeX, rangeY, rangeWidth, rangeHeight, luma, cb, cr, abgr, 0, rangeWidth);
+
         	int addr = destAddr;
+        	int pixelIndex = 0;
 	        for (int i = 0; i < rangeHeight; i++) {
 	        	IMemoryWriter memoryWriter = MemoryWriter.getMemoryWriter(addr, rangeWidth * bytesPerPixel, bytesPerPixel);
-	        	int pixelIndex = (i + rangeY) * width + rangeX;
 	        	for (int j = 0; j < rangeWidth; j++, pixelIndex++) {
 	        		int abgr8888 = abgr[pixelIndex];
 	        		int pixelColor = Debug.getPixelColor(abgr8888, videoPixelMode);
@@ -216,8 +204,12 @@ public class sceMpegbase extends HLEModule {
 	        	memoryWriter.flush();
 	        	addr += bufferWidth * bytesPerPixel;
 	        }
+			releaseIntBuffer(abgr);
 		}
-		releaseIntBuffer(abgr);
+
+        releaseIntBuffer(luma);
+        releaseIntBuffer(cb);
+        releaseIntBuffer(cr);
 
 		return 0;
     }
@@ -340,31 +332,19 @@ public class sceMpegbase extends HLEModule {
         read(sceMpegYCrCbBuffer.bufferCb, length2, cb, 0);
         read(sceMpegYCrCbBuffer.bufferCr, length2, cr, 0);
 
-        // Convert YCbCr to ABGR
-        int[] abgr = getIntBuffer(length);
-        H264Utils.YUV2ABGR(width, height, luma, cb, cr, abgr);
-
-        releaseIntBuffer(luma);
-        releaseIntBuffer(cb);
-        releaseIntBuffer(cr);
-
 		// Do not cache the video image as a texture in the VideoEngine to allow fluid rendering
         VideoEngine.getInstance().addVideoTexture(destAddr, destAddr + (rangeY + rangeHeight) * bufferWidth * bytesPerPixel);
 
-        // Write the ABGR image
-		if (videoPixelMode == TPSM_PIXEL_STORAGE_MODE_32BIT_ABGR8888 && RuntimeContext.hasMemoryInt()) {
-			// Optimize the most common case
-			int pixelIndex = rangeY * width + rangeX;
-	        for (int i = 0; i < rangeHeight; i++) {
-	        	int addr = destAddr + (i * bufferWidth) * bytesPerPixel;
-	        	System.arraycopy(abgr, pixelIndex, RuntimeContext.getMemoryInt(), addr >> 2, rangeWidth);
-	        	pixelIndex += width;
-	        }
-		} else {
+        // Convert YCbCr to ABGR and write the ABGR image
+		if (videoPixelMode != TPSM_PIXEL_STORAGE_MODE_32BIT_ABGR8888 || !writeImageABGR8888(destAddr, bufferWidth, width, rangeX, rangeY, rangeWidth, rangeHeight, luma, cb, cr)) {
+			// The general case with color format transformation
+	        int[] abgr = getIntBuffer(rangeWidth * rangeHeight);
+	        H264Utils.YUV2ABGR(width, rangeX, rangeY, rangeWidth, rangeHeight, luma, cb, cr, abgr, 0, rangeWidth);
+
         	int addr = destAddr;
+        	int pixelIndex = 0;
 	        for (int i = 0; i < rangeHeight; i++) {
 	        	IMemoryWriter memoryWriter = MemoryWriter.getMemoryWriter(addr, rangeWidth * bytesPerPixel, bytesPerPixel);
-	        	int pixelIndex = (i + rangeY) * width + rangeX;
 	        	for (int j = 0; j < rangeWidth; j++, pixelIndex++) {
 	        		int abgr8888 = abgr[pixelIndex];
 	        		int pixelColor = Debug.getPixelColor(abgr8888, videoPixelMode);
@@ -373,8 +353,12 @@ public class sceMpegbase extends HLEModule {
 	        	memoryWriter.flush();
 	        	addr += bufferWidth * bytesPerPixel;
 	        }
+			releaseIntBuffer(abgr);
 		}
-		releaseIntBuffer(abgr);
+
+        releaseIntBuffer(luma);
+        releaseIntBuffer(cb);
+        releaseIntBuffer(cr);
 
 		return 0;
     }
@@ -78,6 +78,7 @@ import jpcsp.memory.IMemoryReader;
 import jpcsp.memory.MemoryReader;
 import jpcsp.memory.MemorySection;
 import jpcsp.memory.MemorySections;
+import jpcsp.memory.MemoryWriteTracker;
 import jpcsp.settings.Settings;
 import jpcsp.util.Utilities;
 
@@ -576,6 +577,7 @@ public class Loader {
                 		// Optimize the most common case
                 		if (RuntimeContext.hasMemoryInt()) {
                 			intBuffer.get(RuntimeContext.getMemoryInt(), (memOffset & addressMask) >> 2, fileLen >> 2);
+                			MemoryWriteTracker.write(memOffset, fileLen);
                 		} else {
                 			int[] buffer = new int[fileLen >> 2];
                 			intBuffer.get(buffer);
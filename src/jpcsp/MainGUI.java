@@ -2967,7 +2967,7 @@ private void threeTimesResizeActionPerformed(java.awt.event.ActionEvent evt) {//
             	// The VSH root thread is running in KERNEL mode.
             	SceKernelThreadInfo rootThread = Modules.ThreadManForUserModule.getRootThread(null);
             	if (rootThread != null) {
-            		rootThread.currentPriority = 0x7E;
+            		Modules.ThreadManForUserModule.hleSetThreadPriority(rootThread, 0x7E);
             		rootThread.attr |= SceKernelThreadInfo.PSP_THREAD_ATTR_KERNEL;
             		rootThread.attr &= ~SceKernelThreadInfo.PSP_THREAD_ATTR_USER;
             	}
@@ -29,9 +29,11 @@ import jpcsp.memory.DebuggerMemory;
 import jpcsp.memory.DirectBufferMemory;
 import jpcsp.memory.FastMemory;
 import jpcsp.memory.NativeMemory;
+import jpcsp.memory.OffHeapMemory;
 import jpcsp.memory.SafeDirectBufferMemory;
 import jpcsp.memory.SafeFastMemory;
 import jpcsp.memory.SafeNativeMemory;
+import jpcsp.memory.SafeOffHeapMemory;
 import jpcsp.memory.SafeSparseNativeMemory;
 import jpcsp.memory.SparseNativeMemory;
 import jpcsp.memory.StandardMemory;
@@ -45,6 +47,7 @@ public abstract class Memory {
     private static Memory instance = null;
     public static boolean useNativeMemory = false;
     public static boolean useDirectBufferMemory = false;
+    public static boolean useOffHeapMemory = false;
     public static boolean useSafeMemory = true;
     public static final int addressMask = 0x1FFFFFFF;
     private boolean ignoreInvalidMemoryAccess = false;
@@ -63,6 +66,8 @@ public abstract class Memory {
             // - FastMemory            : high memory requirements, no address checking, very fast
             // - SafeDirectBufferMemory: high memory requirements, performs address checking, moderate
             // - DirectBufferMemory    : high memory requirements, no address checking, fast
+            // - SafeOffHeapMemory     : high memory requirements, performs address checking, fast, off-heap
+            // - OffHeapMemory         : high memory requirements, no address checking, very fast, off-heap
             //
             // Best choices are currently
             // 1) SafeFastMemory (address check is useful when debugging programs)
@@ -82,6 +87,11 @@ public abstract class Memory {
                 useSafeMemory = false;
             }
 
+            // The off-heap memory can be selected from the settings
+            if (Settings.getInstance().readBool("emu.useOffHeapMemory")) {
+            	useOffHeapMemory = true;
+            }
+
         	if (useNativeMemory) {
         		try {
         			System.loadLibrary("memory");
@@ -97,6 +107,12 @@ public abstract class Memory {
         		} else {
         			instance = new NativeMemory();
         		}
+        	} else if (useOffHeapMemory) {
+        		if (useSafeMemory) {
+        			instance = new SafeOffHeapMemory();
+        		} else {
+        			instance = new OffHeapMemory();
+        		}
         	} else if (useDirectBufferMemory) {
         		if (useSafeMemory) {
         			instance = new SafeDirectBufferMemory();
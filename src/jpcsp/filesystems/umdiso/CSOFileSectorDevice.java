@@ -16,23 +16,141 @@ along with Jpcsp.  If not, see <http://www.gnu.org/licenses/>.
  */
 package jpcsp.filesystems.umdiso;
 
-import jpcsp.util.FileUtil;
-
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.zip.DataFormatException;
 import java.util.zip.Inflater;
-import java.util.zip.InflaterInputStream;
+
+import jpcsp.settings.Settings;
+import jpcsp.util.CacheStatistics;
 
 public class CSOFileSectorDevice extends AbstractFileSectorDevice {
 	protected int offsetShift;
 	protected int numSectors;
 	protected long[] sectorOffsets;
 	private static final long sectorOffsetMask = 0x7FFFFFFFL;
+	// Maximum number of decompressed sectors kept in the LRU cache
+	private static final int cacheMaxSize = 256;
+	// Number of sectors read in advance when reading sequentially
+	private static final int readAheadSectors = 32;
+	// Maximum number of compressed bytes read in one I/O
+	private static final int maxReadLength = 64 * sectorLength;
+	private final LinkedHashMap<Integer, byte[]> cache;
+	private final LinkedList<byte[]> freeCacheBuffers = new LinkedList<byte[]>();
+	private final CacheStatistics statistics = new CacheStatistics("CSO", cacheMaxSize);
+	// All the Decompressor instances created by the threads using this device,
+	// their native resources are released when closing the device
+	private final List<Decompressor> decompressors = new LinkedList<Decompressor>();
+	private final ThreadLocal<Decompressor> decompressor = new ThreadLocal<Decompressor>() {
+		@Override
+		protected Decompressor initialValue() {
+			Decompressor decompressor = new Decompressor();
+			synchronized (decompressors) {
+				decompressors.add(decompressor);
+			}
+			return decompressor;
+		}
+	};
+	private ReadAheadThread readAheadThread;
+	private int nextSequentialSectorNumber = -1;
+	private int readAheadSectorNumber;
+
+	/**
+	 * The Inflater and the buffers used for the decompression.
+	 * One instance is used per thread, so that the decompression can be
+	 * performed in parallel to the file access (see ReadAheadThread).
+	 */
+	private static class Decompressor {
+		private final Inflater inflater = new Inflater(true);
+		private byte[] compressedData = new byte[maxReadLength];
+
+		public byte[] getCompressedData(int length) {
+			if (compressedData.length < length) {
+				compressedData = new byte[length];
+			}
+			return compressedData;
+		}
+
+		public void inflate(int sectorNumber, int compressedOffset, int compressedLength, byte[] buffer, int offset) throws IOException {
+			inflater.reset();
+			inflater.setInput(compressedData, compressedOffset, compressedLength);
+			int length = 0;
+			try {
+				while (length < sectorLength) {
+					int inflatedLength = inflater.inflate(buffer, offset + length, sectorLength - length);
+					if (inflatedLength <= 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())) {
+						break;
+					}
+					length += inflatedLength;
+				}
+			} catch (DataFormatException e) {
+				throw new IOException(String.format("Exception while uncompressing sector %d", sectorNumber));
+			}
+
+			if (length < sectorLength) {
+				Arrays.fill(buffer, offset + length, offset + sectorLength, (byte) 0);
+			}
+		}
+
+		public void end() {
+			inflater.end();
+		}
+	}
+
+	private class ReadAheadThread extends Thread {
+		private final LinkedBlockingQueue<Integer> requests = new LinkedBlockingQueue<Integer>();
+		private volatile boolean exit;
+
+		public void readAhead(int sectorNumber) {
+			requests.offer(sectorNumber);
+		}
+
+		public void exit() {
+			exit = true;
+			interrupt();
+		}
+
+		@Override
+		public void run() {
+			byte[] buffer = new byte[readAheadSectors * sectorLength];
+			while (!exit) {
+				try {
+					int sectorNumber = requests.take();
+					readAhead(sectorNumber, buffer);
+				} catch (InterruptedException e) {
+					// Ignore exception
+				} catch (IOException e) {
+					log.debug("CSO read ahead", e);
+				}
+			}
+		}
+
+		private void readAhead(int sectorNumber, byte[] buffer) throws IOException {
+			int numberSectors = Math.min(readAheadSectors, numSectors - sectorNumber);
+			// Do not read again the sectors already present in the cache
+			while (numberSectors > 0 && isCached(sectorNumber)) {
+				sectorNumber++;
+				numberSectors--;
+			}
+			if (numberSectors <= 0 || fileAccess == null) {
+				return;
+			}
+
+			int count = readSectorsFromFile(sectorNumber, numberSectors, buffer, 0);
+			for (int i = 0; i < count; i++) {
+				addToCache(sectorNumber + i, buffer, i * sectorLength);
+			}
+		}
+	}
 
 	public CSOFileSectorDevice(RandomAccessFile fileAccess, byte[] header) throws IOException {
 		super(fileAccess);
@@ -64,6 +182,16 @@ public class CSOFileSectorDevice extends AbstractFileSectorDevice {
 				}
 			}
 		}
+
+		// The LinkedHashMap is based on access-order for LRU
+		cache = new LinkedHashMap<Integer, byte[]>(cacheMaxSize * 2, 0.75f, true);
+
+		if (Settings.getInstance().readBool("emu.umdReadAhead")) {
+			readAheadThread = new ReadAheadThread();
+			readAheadThread.setName("CSO Read Ahead");
+			readAheadThread.setDaemon(true);
+			readAheadThread.start();
+		}
 	}
 
 	@Override
@@ -71,36 +199,218 @@ public class CSOFileSectorDevice extends AbstractFileSectorDevice {
 		return numSectors;
 	}
 
+	private long getSectorFileOffset(int sectorNumber) {
+		return (sectorOffsets[sectorNumber] & sectorOffsetMask) << offsetShift;
+	}
+
+	private boolean isCompressed(int sectorNumber) {
+		return (sectorOffsets[sectorNumber] & 0x80000000L) == 0;
+	}
+
+	private boolean isCached(int sectorNumber) {
+		synchronized (cache) {
+			return cache.containsKey(sectorNumber);
+		}
+	}
+
+	private boolean readFromCache(int sectorNumber, byte[] buffer, int offset) {
+		synchronized (cache) {
+			statistics.totalHits++;
+			byte[] data = cache.get(sectorNumber);
+			if (data == null) {
+				statistics.notPresentHits++;
+				return false;
+			}
+			statistics.successfulHits++;
+			System.arraycopy(data, 0, buffer, offset, sectorLength);
+		}
+
+		return true;
+	}
+
+	private void addToCache(int sectorNumber, byte[] buffer, int offset) {
+		synchronized (cache) {
+			byte[] data = cache.get(sectorNumber);
+			if (data == null) {
+				if (cache.size() >= cacheMaxSize) {
+					// Remove the LRU cache entry and reuse its buffer
+					Iterator<Map.Entry<Integer, byte[]>> it = cache.entrySet().iterator();
+					freeCacheBuffers.add(it.next().getValue());
+					it.remove();
+					statistics.entriesRemoved++;
+				}
+				data = freeCacheBuffers.isEmpty() ? new byte[sectorLength] : freeCacheBuffers.removeFirst();
+				cache.put(sectorNumber, data);
+				if (cache.size() > statistics.maxSizeUsed) {
+					statistics.maxSizeUsed = cache.size();
+				}
+			}
+			System.arraycopy(buffer, offset, data, 0, sectorLength);
+		}
+	}
+
+	private int readFile(long position, byte[] buffer, int length) throws IOException {
+		int readLength = 0;
+		synchronized (this) {
+			if (fileAccess == null) {
+				return 0;
+			}
+			fileAccess.seek(position);
+			while (readLength < length) {
+				int n = fileAccess.read(buffer, readLength, length - readLength);
+				if (n < 0) {
+					break;
+				}
+				readLength += n;
+			}
+		}
+
+		return readLength;
+	}
+
+	/**
+	 * Read contiguous sectors from the file, the compressed data of
+	 * consecutive sectors being read using one single I/O.
+	 *
+	 * @param sectorNumber   the first sector to be read
+	 * @param numberSectors  the number of sectors to be read
+	 * @param buffer         the buffer where to store the decompressed sectors
+	 * @param offset         the offset inside the buffer
+	 * @return               the number of sectors read
+	 * @throws IOException
+	 */
+	private int readSectorsFromFile(int sectorNumber, int numberSectors, byte[] buffer, int offset) throws IOException {
+		Decompressor decompressor = this.decompressor.get();
+
+		int count = 0;
+		while (count < numberSectors) {
+			int firstSectorNumber = sectorNumber + count;
+			long startPosition = getSectorFileOffset(firstSectorNumber);
+
+			// Collect as many sectors as possible for one read
+			int runSectors = 1;
+			while (count + runSectors < numberSectors && getSectorFileOffset(firstSectorNumber + runSectors + 1) - startPosition <= maxReadLength) {
+				runSectors++;
+			}
+			long endPosition = getSectorFileOffset(firstSectorNumber + runSectors);
+			// Stored sectors are always sectorLength bytes long
+			if (!isCompressed(firstSectorNumber + runSectors - 1)) {
+				endPosition = Math.max(endPosition, getSectorFileOffset(firstSectorNumber + runSectors - 1) + sectorLength);
+			}
+			int readLength = (int) Math.max(0L, endPosition - startPosition);
+
+			byte[] compressedData = decompressor.getCompressedData(readLength);
+			int length = readFile(startPosition, compressedData, readLength);
+
+			for (int i = 0; i < runSectors; i++) {
+				int currentSectorNumber = firstSectorNumber + i;
+				int currentOffset = offset + (count + i) * sectorLength;
+				int compressedOffset = (int) (getSectorFileOffset(currentSectorNumber) - startPosition);
+				if (!isCompressed(currentSectorNumber)) {
+					int storedLength = Math.max(0, Math.min(sectorLength, length - compressedOffset));
+					System.arraycopy(compressedData, compressedOffset, buffer, currentOffset, storedLength);
+					if (storedLength < sectorLength) {
+						Arrays.fill(buffer, currentOffset + storedLength, currentOffset + sectorLength, (byte) 0);
+					}
+				} else {
+					int compressedLength = (int) (getSectorFileOffset(currentSectorNumber + 1) - getSectorFileOffset(currentSectorNumber));
+					compressedLength = Math.min(compressedLength, length - compressedOffset);
+					if (compressedLength < 0) {
+						Arrays.fill(buffer, currentOffset, currentOffset + sectorLength, (byte) 0);
+					} else {
+						decompressor.inflate(currentSectorNumber, compressedOffset, compressedLength, buffer, currentOffset);
+					}
+				}
+			}
+
+			count += runSectors;
+		}
+
+		return count;
+	}
+
+	private void checkReadAhead(int sectorNumber, int numberSectors) {
+		if (readAheadThread == null) {
+			return;
+		}
+
+		int nextSectorNumber = sectorNumber + numberSectors;
+		if (sectorNumber == nextSequentialSectorNumber) {
+			// Sequential reading: request the next sectors once half of the
+			// previously read ahead sectors have been consumed
+			if (nextSectorNumber + readAheadSectors / 2 >= readAheadSectorNumber && nextSectorNumber < numSectors) {
+				readAheadSectorNumber = Math.max(readAheadSectorNumber, nextSectorNumber);
+				if (readAheadSectorNumber < numSectors) {
+					readAheadThread.readAhead(readAheadSectorNumber);
+					readAheadSectorNumber += readAheadSectors;
+				}
+			}
+		} else {
+			readAheadSectorNumber = nextSectorNumber;
+		}
+		nextSequentialSectorNumber = nextSectorNumber;
+	}
+
 	@Override
 	public void readSector(int sectorNumber, byte[] buffer, int offset) throws IOException {
-		long sectorOffset = sectorOffsets[sectorNumber];
-        long sectorEnd = sectorOffsets[sectorNumber + 1];
-
-        if ((sectorOffset & 0x80000000) != 0) {
-            long realOffset = (sectorOffset & sectorOffsetMask) << offsetShift;
-            fileAccess.seek(realOffset);
-            fileAccess.read(buffer, offset, sectorLength);
-        } else {
-	        sectorEnd = (sectorEnd & sectorOffsetMask) << offsetShift;
-	        sectorOffset = (sectorOffset & sectorOffsetMask) << offsetShift;
-
-	        int compressedLength = (int) (sectorEnd - sectorOffset);
-	        if (compressedLength < 0) {
-	        	Arrays.fill(buffer, offset, offset + sectorLength, (byte) 0);
-	        } else {
-		        byte[] compressedData = new byte[compressedLength];
-		        fileAccess.seek(sectorOffset);
-		        fileAccess.read(compressedData);
-
-		        try {
-		            Inflater inf = new Inflater(true);
-					try (InputStream s = new InflaterInputStream(new ByteArrayInputStream(compressedData), inf)) {
-						FileUtil.readAll(s, buffer, offset, sectorLength);
-					}
-		        } catch (IOException e) {
-		            throw new IOException(String.format("Exception while uncompressing sector %d", sectorNumber));
-		        }
-	        }
-        }
+		if (!readFromCache(sectorNumber, buffer, offset)) {
+			readSectorsFromFile(sectorNumber, 1, buffer, offset);
+			addToCache(sectorNumber, buffer, offset);
+		}
+
+		checkReadAhead(sectorNumber, 1);
+	}
+
+	@Override
+	public int readSectors(int sectorNumber, int numberSectors, byte[] buffer, int offset) throws IOException {
+		int count = 0;
+		while (count < numberSectors) {
+			if (readFromCache(sectorNumber + count, buffer, offset + count * sectorLength)) {
+				count++;
+			} else {
+				// Read all the following sectors not present in the cache
+				int uncachedSectors = 1;
+				while (count + uncachedSectors < numberSectors && !isCached(sectorNumber + count + uncachedSectors)) {
+					uncachedSectors++;
+				}
+				readSectorsFromFile(sectorNumber + count, uncachedSectors, buffer, offset + count * sectorLength);
+				count += uncachedSectors;
+			}
+		}
+
+		checkReadAhead(sectorNumber, numberSectors);
+
+		return numberSectors;
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (readAheadThread != null) {
+			readAheadThread.exit();
+			// Wait for the end of a read ahead still using its Decompressor
+			try {
+				readAheadThread.join();
+			} catch (InterruptedException e) {
+				// Ignore exception
+			}
+			readAheadThread = null;
+		}
+
+		synchronized (this) {
+			super.close();
+		}
+
+		// Release the native memory used by the Inflaters
+		synchronized (decompressors) {
+			for (Decompressor decompressor : decompressors) {
+				decompressor.end();
+			}
+			decompressors.clear();
+		}
+		decompressor.remove();
+
+		if (log.isDebugEnabled()) {
+			log.debug(statistics);
+		}
 	}
 }
@@ -0,0 +1,238 @@
+/*
+This file is part of jpcsp.
+
+Jpcsp is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Jpcsp is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with Jpcsp.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package jpcsp.filesystems.umdiso;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+import jpcsp.Emulator;
+import jpcsp.Memory;
+
+/**
+ * Sector device for an ISO file, using a memory mapping of the file
+ * instead of seek/read operations.
+ * The file is mapped in chunks as one mapping is limited to 2GB.
+ *
+ * The mappings are released when closing the device, and not only
+ * when the buffers are garbage collected, so that the file can be
+ * deleted or replaced (e.g. when swapping the UMD) right after closing it.
+ * The reads and the close are therefore synchronized: a read after
+ * the release of the mappings would access unmapped memory.
+ */
+public class MappedFileSectorDevice extends AbstractFileSectorDevice {
+	// Size of one mapped chunk, must be a multiple of the sector length
+	private static final int chunkSectors = 512 * 1024; // 1GB
+	private static final long chunkLength = ((long) chunkSectors) * sectorLength;
+	private final long fileLength;
+	private final int numSectors;
+	private ByteBuffer[] chunks;
+
+	public MappedFileSectorDevice(RandomAccessFile fileAccess) throws IOException {
+		super(fileAccess);
+
+		fileLength = fileAccess.length();
+		numSectors = getNumSectors(fileLength, sectorLength);
+
+		FileChannel channel = fileAccess.getChannel();
+		int numberChunks = (int) ((fileLength + chunkLength - 1) / chunkLength);
+		chunks = new ByteBuffer[numberChunks];
+		for (int i = 0; i < numberChunks; i++) {
+			long position = i * chunkLength;
+			long length = Math.min(chunkLength, fileLength - position);
+			chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+		}
+	}
+
+	@Override
+	public int getNumSectors() {
+		return numSectors;
+	}
+
+	/**
+	 * Check the sectors to be read against the mapped file.
+	 *
+	 * @param sectorNumber   the first sector to be read
+	 * @param numberSectors  the number of sectors to be read
+	 * @return               the number of sectors available in the file
+	 * @throws IOException   the first sector is outside the file
+	 */
+	private int getAvailableSectors(int sectorNumber, int numberSectors) throws IOException {
+		if (sectorNumber < 0 || sectorNumber >= numSectors || numberSectors < 0) {
+			throw new IOException(String.format("Invalid sector read sectorNumber=%d, numberSectors=%d, numSectors=%d", sectorNumber, numberSectors, numSectors));
+		}
+
+		return Math.min(numberSectors, numSectors - sectorNumber);
+	}
+
+	/**
+	 * Return a buffer on the given sectors, limited to the end of the chunk.
+	 *
+	 * @param sectorNumber   the first sector
+	 * @param numberSectors  the number of sectors
+	 * @return               the buffer, positioned on the first sector
+	 *                       and limited to the requested sectors or to
+	 *                       the end of the chunk, whichever comes first.
+	 */
+	private ByteBuffer getBuffer(int sectorNumber, int numberSectors) {
+		ByteBuffer chunk = chunks[sectorNumber / chunkSectors];
+		int position = (sectorNumber % chunkSectors) * sectorLength;
+		int length = (int) Math.min(((long) numberSectors) * sectorLength, chunk.capacity() - position);
+
+		ByteBuffer buffer = chunk.duplicate();
+		buffer.limit(position + length);
+		buffer.position(position);
+
+		return buffer;
+	}
+
+	@Override
+	public void readSector(int sectorNumber, byte[] buffer, int offset) throws IOException {
+		readSectors(sectorNumber, 1, buffer, offset);
+	}
+
+	@Override
+	public synchronized int readSectors(int sectorNumber, int numberSectors, byte[] buffer, int offset) throws IOException {
+		if (chunks == null) {
+			return 0;
+		}
+		numberSectors = getAvailableSectors(sectorNumber, numberSectors);
+
+		int count = 0;
+		while (count < numberSectors) {
+			ByteBuffer source = getBuffer(sectorNumber + count, numberSectors - count);
+			int length = source.remaining();
+			source.get(buffer, offset, length);
+			if (length < (numberSectors - count) * sectorLength && (length % sectorLength) != 0) {
+				// Last sector only partially available in the file
+				int gap = sectorLength - (length % sectorLength);
+				Arrays.fill(buffer, offset + length, offset + length + gap, (byte) 0);
+				length += gap;
+			}
+			if (length <= 0) {
+				break;
+			}
+			offset += length;
+			count += length / sectorLength;
+		}
+
+		return count;
+	}
+
+	/**
+	 * Copy sectors directly from the mapped file into the PSP memory,
+	 * without going through an intermediate byte array.
+	 *
+	 * @param sectorNumber   the first sector to be read
+	 * @param numberSectors  the number of sectors to be read
+	 * @param address        the PSP memory address where to copy the sectors
+	 * @return               the number of bytes copied
+	 * @throws IOException
+	 */
+	public synchronized int readSectorsToMemory(int sectorNumber, int numberSectors, int address) throws IOException {
+		if (chunks == null) {
+			return 0;
+		}
+		numberSectors = getAvailableSectors(sectorNumber, numberSectors);
+
+		Memory mem = Memory.getInstance();
+		int totalLength = 0;
+		int count = 0;
+		while (count < numberSectors) {
+			ByteBuffer source = getBuffer(sectorNumber + count, numberSectors - count);
+			int length = source.remaining();
+			if (length <= 0) {
+				break;
+			}
+
+			Buffer destination = (address & 3) == 0 && (length & 3) == 0 ? mem.getBuffer(address, length) : null;
+			if (destination instanceof IntBuffer) {
+				// Fast path for memory implementations based on an int array
+				((IntBuffer) destination).put(source.order(ByteOrder.LITTLE_ENDIAN).asIntBuffer());
+			} else {
+				mem.copyToMemory(address, source, length);
+			}
+
+			address += length;
+			totalLength += length;
+			count += (length + sectorLength - 1) / sectorLength;
+		}
+
+		return totalLength;
+	}
+
+	/**
+	 * Release the mapping of a buffer without waiting for its garbage collection.
+	 * The buffer must no longer be accessed after this call.
+	 *
+	 * @param buffer   the mapped buffer
+	 */
+	private static void unmap(ByteBuffer buffer) {
+		try {
+			Field f = Class.forName("sun.misc.Unsafe").getDeclaredField("theUnsafe");
+			f.setAccessible(true);
+			Object unsafe = f.get(null);
+			try {
+				// Java 9 and later
+				Method invokeCleaner = unsafe.getClass().getMethod("invokeCleaner", ByteBuffer.class);
+				invokeCleaner.invoke(unsafe, buffer);
+			} catch (NoSuchMethodException e) {
+				// Java 8
+				Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+				cleanerMethod.setAccessible(true);
+				Object cleaner = cleanerMethod.invoke(buffer);
+				if (cleaner != null) {
+					cleaner.getClass().getMethod("clean").invoke(cleaner);
+				}
+			}
+		} catch (ClassNotFoundException e) {
+			Emulator.log.warn("Cannot unmap the UMD file", e);
+		} catch (NoSuchFieldException e) {
+			Emulator.log.warn("Cannot unmap the UMD file", e);
+		} catch (NoSuchMethodException e) {
+			Emulator.log.warn("Cannot unmap the UMD file", e);
+		} catch (IllegalAccessException e) {
+			Emulator.log.warn("Cannot unmap the UMD file", e);
+		} catch (InvocationTargetException e) {
+			Emulator.log.warn("Cannot unmap the UMD file", e);
+		} catch (RuntimeException e) {
+			// E.g. SecurityException or InaccessibleObjectException:
+			// the mapping will be released by the garbage collection
+			Emulator.log.warn("Cannot unmap the UMD file", e);
+		}
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		if (chunks != null) {
+			for (int i = 0; i < chunks.length; i++) {
+				unmap(chunks[i]);
+			}
+			chunks = null;
+		}
+
+		super.close();
+	}
+}
@@ -19,8 +19,10 @@ package jpcsp.filesystems.umdiso;
 import java.io.DataInputStream;
 import java.io.EOFException;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.Date;
 
+import jpcsp.Memory;
 import jpcsp.filesystems.SeekableInputStream;
 
 /**
@@ -257,6 +259,18 @@ public class UmdIsoFile extends SeekableInputStream {
     	return len;
     }
 
+    private int readInternal(int address, int len) {
+        if (len > 0) {
+            if (len > (maxOffset - currentOffset)) {
+    			len = (int) (maxOffset - currentOffset);
+    		}
+            Memory.getInstance().copyToMemory(address, ByteBuffer.wrap(currentSector, sectorOffset, len), len);
+    		sectorOffset += len;
+    		currentOffset += len;
+    	}
+    	return len;
+    }
+
     private void checkSectorAvailable() throws IOException {
     	if (sectorOffset == sectorLength && currentOffset < maxOffset) {
     		currentSectorNumber++;
@@ -307,6 +321,56 @@ public class UmdIsoFile extends SeekableInputStream {
 		return totalLength;
 	}
 
+    /**
+     * Read directly into the PSP memory.
+     * Whole sectors are copied without an intermediate buffer
+     * when supported by the sector device.
+     * An EOFException is thrown when the file is ending before
+     * the requested length.
+     *
+     * @param address    the PSP memory address where to write
+     * @param len        the number of bytes to be read
+     * @throws IOException
+     */
+    public void readFully(int address, int len) throws IOException {
+        if (currentOffset >= maxOffset) {
+            throw new EOFException();
+        }
+
+        boolean endOfFile = false;
+        if (len > (maxOffset - currentOffset)) {
+			len = (int) (maxOffset - currentOffset);
+			endOfFile = true;
+		}
+		int firstSector = readInternal(address, Math.min(len, sectorLength - sectorOffset));
+		address += firstSector;
+		len -= firstSector;
+
+		// Read whole sectors
+		if (len >= sectorLength) {
+			int numberSectors = len / sectorLength;
+			internalReader.readSectorsToMemory(currentSectorNumber + 1, numberSectors, address);
+    		currentSectorNumber += numberSectors;
+    		sectorOffset = sectorLength;
+			int n = numberSectors * sectorLength;
+    		currentOffset += n;
+			checkSectorAvailable();
+			address += n;
+			len -= n;
+		}
+
+		if (len > 0) {
+    		checkSectorAvailable();
+    		readInternal(address, len);
+		}
+
+		if (endOfFile) {
+			// The available bytes have been read,
+			// but the requested length is going past the end of the file
+			throw new EOFException();
+		}
+    }
+
     public int getCurrentSectorNumber() {
     	return currentSectorNumber;
     }
@@ -23,18 +23,23 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 import java.util.Date;
 import java.util.HashMap;
 
 import jpcsp.Emulator;
+import jpcsp.Memory;
 import jpcsp.filesystems.umdiso.iso9660.Iso9660Directory;
 import jpcsp.filesystems.umdiso.iso9660.Iso9660File;
 import jpcsp.filesystems.umdiso.iso9660.Iso9660Handler;
 import jpcsp.settings.Settings;
+import jpcsp.util.OS;
 import jpcsp.util.Utilities;
 
 /**
+ * The sector reads are synchronized as they can also be executed
+ * in the background by the async IO reads (see IoFileMgrForUser).
  *
  * @author gigaherz, gid15
  */
@@ -74,7 +79,7 @@ public class UmdIsoReader implements IBrowser {
 	        } else if (header[0] == 0 && header[1] == 'P' && header[2] == 'B' && header[3] == 'P') {
 	        	sectorDevice = new PBPFileSectorDevice(fileReader);
 	        } else {
-	            sectorDevice = new ISOFileSectorDevice(fileReader);
+	            sectorDevice = getISOFileSectorDevice(fileReader);
 	        }
     	}
 
@@ -92,6 +97,19 @@ public class UmdIsoReader implements IBrowser {
         }
     }
 
+    private static ISectorDevice getISOFileSectorDevice(RandomAccessFile fileReader) {
+    	// Memory mapping the whole file requires a 64-bit address space
+    	if (OS.is64Bit && Settings.getInstance().readBool("emu.umdMapped")) {
+    		try {
+    			return new MappedFileSectorDevice(fileReader);
+    		} catch (IOException e) {
+    			Emulator.log.warn("Cannot map the UMD file into memory, using file access", e);
+    		}
+    	}
+
+    	return new ISOFileSectorDevice(fileReader);
+    }
+
     public UmdIsoReader(ISectorDevice sectorDevice) throws IOException {
         this.sectorDevice = sectorDevice;
         numSectors = sectorDevice.getNumSectors();
@@ -162,7 +180,7 @@ public class UmdIsoReader implements IBrowser {
      * @return the number of sectors read
      * @throws IOException
      */
-    public int readSectors(int sectorNumber, int numberSectors, byte[] buffer, int offset) throws IOException {
+    public synchronized int readSectors(int sectorNumber, int numberSectors, byte[] buffer, int offset) throws IOException {
         if (sectorNumber < 0 || (sectorNumber + numberSectors) > numSectors) {
             Arrays.fill(buffer, offset, offset + numberSectors * sectorLength, (byte) 0);
             Emulator.log.warn(String.format("Sectors start=%d, end=%d out of ISO (numSectors=%d)", sectorNumber, sectorNumber + numberSectors, numSectors));
@@ -172,6 +190,24 @@ public class UmdIsoReader implements IBrowser {
         return sectorDevice.readSectors(sectorNumber, numberSectors, buffer, offset);
     }
 
+    /**
+     * Read sequential sectors directly into the PSP memory
+     *
+     * @param sectorNumber - the first sector to be read
+     * @param numberSectors - the number of sectors to be read
+     * @param address - the PSP memory address where to write the sectors
+     * @throws IOException
+     */
+    public synchronized void readSectorsToMemory(int sectorNumber, int numberSectors, int address) throws IOException {
+        if (sectorDevice instanceof MappedFileSectorDevice && sectorNumber >= 0 && (sectorNumber + numberSectors) <= numSectors) {
+            ((MappedFileSectorDevice) sectorDevice).readSectorsToMemory(sectorNumber, numberSectors, address);
+        } else {
+            byte[] buffer = new byte[numberSectors * sectorLength];
+            readSectors(sectorNumber, numberSectors, buffer, 0);
+            Memory.getInstance().copyToMemory(address, ByteBuffer.wrap(buffer), buffer.length);
+        }
+    }
+
     /**
      * Read one sector into a byte array
      *
@@ -180,7 +216,7 @@ public class UmdIsoReader implements IBrowser {
      * @param offset - offset into the byte array where to start writing
      * @throws IOException
      */
-    public void readSector(int sectorNumber, byte[] buffer, int offset) throws IOException {
+    public synchronized void readSector(int sectorNumber, byte[] buffer, int offset) throws IOException {
         if (sectorNumber < 0 || sectorNumber >= numSectors) {
             Arrays.fill(buffer, offset, offset + sectorLength, (byte) 0);
             Emulator.log.warn(String.format("Sector number %d out of ISO (numSectors=%d)", sectorNumber, numSectors));
@@ -0,0 +1,222 @@
+/*
+This file is part of jpcsp.
+
+Jpcsp is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Jpcsp is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with Jpcsp.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package jpcsp.graphics;
+
+import static jpcsp.graphics.GeCommands.PRIM;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Compact stream of the GE commands decoded from a display list,
+ * in their execution order (i.e. after following the JUMP, CALL and RET).
+ *
+ * Each record starts with the command address and the command itself.
+ * The PRIM records are followed by the state required to draw them
+ * without parsing the list again: the vertex address, the vertex type,
+ * the index address and size and the range of the vertex indices.
+ *
+ * The stream is written by one producer thread (GeListDecoder) while being
+ * read by one consumer thread (VideoEngine): the records are only visible
+ * to the consumer once they are complete.
+ * The stream can also be saved and loaded again, e.g. for a replay or a test.
+ */
+public class GeCommandStream {
+	private static final int STREAM_MAGIC = 0x53434547; // "GECS"
+	private static final int STREAM_VERSION = 1;
+	public static final int COMMAND_LENGTH = 2;
+	public static final int PRIM_LENGTH = 9;
+	public static final int FLAG_INDEX_SEQUENCE = 0x1;
+	public static final int FLAG_INDEX_INFO = 0x2;
+	private volatile int[] data;
+	private volatile int length;
+	private volatile boolean complete;
+	private final int generation;
+
+	public GeCommandStream(int generation) {
+		this.generation = generation;
+		data = new int[1024];
+	}
+
+	/**
+	 * @return the MemoryWriteTracker generation taken before decoding the list
+	 */
+	public int getGeneration() {
+		return generation;
+	}
+
+	public int getLength() {
+		return length;
+	}
+
+	/**
+	 * @return true if the decoder will not add any more record to the stream
+	 */
+	public boolean isComplete() {
+		return complete;
+	}
+
+	public void setComplete() {
+		complete = true;
+	}
+
+	public static int getRecordLength(int instruction) {
+		return (instruction >>> 24) == PRIM ? PRIM_LENGTH : COMMAND_LENGTH;
+	}
+
+	private int[] reserve(int recordLength) {
+		int[] data = this.data;
+		if (length + recordLength > data.length) {
+			int[] newData = new int[data.length << 1];
+			System.arraycopy(data, 0, newData, 0, length);
+			data = newData;
+			this.data = data;
+		}
+
+		return data;
+	}
+
+	public void addCommand(int pc, int instruction) {
+		int[] data = reserve(COMMAND_LENGTH);
+		int offset = length;
+		data[offset] = pc;
+		data[offset + 1] = instruction;
+		// Publish the record only once it is complete
+		length = offset + COMMAND_LENGTH;
+	}
+
+	public void addPrim(int pc, int instruction, int vaddr, int vtype, int iaddr, int bytesPerIndex, int minIndex, int maxIndex, int flags) {
+		int[] data = reserve(PRIM_LENGTH);
+		int offset = length;
+		data[offset] = pc;
+		data[offset + 1] = instruction;
+		data[offset + 2] = vaddr;
+		data[offset + 3] = vtype;
+		data[offset + 4] = iaddr;
+		data[offset + 5] = bytesPerIndex;
+		data[offset + 6] = minIndex;
+		data[offset + 7] = maxIndex;
+		data[offset + 8] = flags;
+		// Publish the record only once it is complete
+		length = offset + PRIM_LENGTH;
+	}
+
+	/**
+	 * Search the record of a given command.
+	 *
+	 * @param offset         the offset where to start the search
+	 * @param maxRecords     the maximum number of records to be searched
+	 * @param pc             the address of the command
+	 * @param instruction    the command
+	 * @return               the offset of the record when it has been found,
+	 *                       or the complement (~offset) of the offset where the search stopped.
+	 */
+	public int findCommand(int offset, int maxRecords, int pc, int instruction) {
+		int length = this.length;
+		int[] data = this.data;
+		for (int i = 0; i < maxRecords && offset < length; i++) {
+			int recordInstruction = data[offset + 1];
+			if (data[offset] == pc && recordInstruction == instruction) {
+				return offset;
+			}
+			offset += getRecordLength(recordInstruction);
+		}
+
+		return ~offset;
+	}
+
+	public int getPc(int offset) {
+		return data[offset];
+	}
+
+	public int getInstruction(int offset) {
+		return data[offset + 1];
+	}
+
+	public boolean isPrim(int offset) {
+		return (getInstruction(offset) >>> 24) == PRIM;
+	}
+
+	public int getVertexAddress(int offset) {
+		return data[offset + 2];
+	}
+
+	public int getVertexType(int offset) {
+		return data[offset + 3];
+	}
+
+	public int getIndexAddress(int offset) {
+		return data[offset + 4];
+	}
+
+	public int getBytesPerIndex(int offset) {
+		return data[offset + 5];
+	}
+
+	public int getMinIndex(int offset) {
+		return data[offset + 6];
+	}
+
+	public int getMaxIndex(int offset) {
+		return data[offset + 7];
+	}
+
+	public int getFlags(int offset) {
+		return data[offset + 8];
+	}
+
+	public int getNextOffset(int offset) {
+		return offset + getRecordLength(getInstruction(offset));
+	}
+
+	public void write(DataOutput os) throws IOException {
+		int length = this.length;
+		int[] data = this.data;
+		os.writeInt(STREAM_MAGIC);
+		os.writeInt(STREAM_VERSION);
+		os.writeInt(length);
+		for (int i = 0; i < length; i++) {
+			os.writeInt(data[i]);
+		}
+	}
+
+	public static GeCommandStream read(DataInput is) throws IOException {
+		if (is.readInt() != STREAM_MAGIC || is.readInt() != STREAM_VERSION) {
+			throw new IOException("Invalid GE command stream");
+		}
+
+		// The memory content at the time of the recording is unknown,
+		// the generation 0 means that it is always considered as written.
+		GeCommandStream stream = new GeCommandStream(0);
+		int length = is.readInt();
+		int[] data = new int[Math.max(length, 1)];
+		for (int i = 0; i < length; i++) {
+			data[i] = is.readInt();
+		}
+		stream.data = data;
+		stream.length = length;
+		stream.setComplete();
+
+		return stream;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("GeCommandStream[length=%d, complete=%b]", length, complete);
+	}
+}
@@ -0,0 +1,400 @@
+/*
+This file is part of jpcsp.
+
+Jpcsp is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Jpcsp is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with Jpcsp.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package jpcsp.graphics;
+
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+import static jpcsp.graphics.GeCommands.BBOX;
+import static jpcsp.graphics.GeCommands.BASE;
+import static jpcsp.graphics.GeCommands.BEZIER;
+import static jpcsp.graphics.GeCommands.BJUMP;
+import static jpcsp.graphics.GeCommands.CALL;
+import static jpcsp.graphics.GeCommands.END;
+import static jpcsp.graphics.GeCommands.FINISH;
+import static jpcsp.graphics.GeCommands.IADDR;
+import static jpcsp.graphics.GeCommands.JUMP;
+import static jpcsp.graphics.GeCommands.OFFSET_ADDR;
+import static jpcsp.graphics.GeCommands.ORIGIN_ADDR;
+import static jpcsp.graphics.GeCommands.PRIM;
+import static jpcsp.graphics.GeCommands.RET;
+import static jpcsp.graphics.GeCommands.SIGNAL;
+import static jpcsp.graphics.GeCommands.SPLINE;
+import static jpcsp.graphics.GeCommands.VADDR;
+import static jpcsp.graphics.GeCommands.VTYPE;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import jpcsp.Memory;
+import jpcsp.HLE.kernel.types.PspGeList;
+import jpcsp.memory.IMemoryReader;
+import jpcsp.memory.MemoryReader;
+import jpcsp.memory.MemoryWriteTracker;
+import jpcsp.util.CpuDurationStatistics;
+import jpcsp.util.DurationStatistics;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Decode a GE display list ahead of its execution by the VideoEngine.
+ *
+ * The decoder thread is walking through the list, following the JUMP,
+ * CALL and RET commands and tracking the address and vertex type registers.
+ * Each decoded command is added to a GeCommandStream, the PRIM commands
+ * together with their vertex state and, for indexed PRIMs, the range
+ * of the vertex indices.
+ *
+ * The VideoEngine is consuming the stream on the GE thread (the rendering
+ * context is bound to that thread) while the decoder is running ahead,
+ * so that the list parsing and the index scanning are overlapped with
+ * the rendering.
+ * The decoder stops at the stall address and is resumed
+ * when the stall address has been updated.
+ *
+ * A list can also be decoded synchronously, e.g. for a replay or a test.
+ */
+public class GeListDecoder {
+	private static Logger log = Logger.getLogger("ge");
+	private static GeListDecoder instance;
+	// Stop decoding lists containing endless loops
+	private static final int maxCommands = 256 * 1024;
+	private static final int maxStackDepth = 32;
+	private final BlockingQueue<DecodeRequest> requests = new LinkedBlockingQueue<DecodeRequest>();
+	private final GeListDecoderThread thread;
+	private volatile DecodeRequest currentRequest;
+
+	private static class DecodeRequest {
+		public final PspGeList list;
+		public final GeCommandStream stream;
+		public final int stallAddr;
+		public final VertexInfo vinfo = new VertexInfo();
+		public int pc;
+		public int base;
+		public int baseOffset;
+		public int vaddr;
+		public int iaddr;
+		public int vtype;
+		public final int[] stack = new int[maxStackDepth * 2];
+		public int stackIndex;
+		public int commandCount;
+		public volatile boolean cancelled;
+		public volatile boolean stalled;
+
+		public DecodeRequest(PspGeList list, GeCommandStream stream, int pc, int stallAddr, int base, int baseOffset, int vaddr, int iaddr, int vtype) {
+			this.list = list;
+			this.stream = stream;
+			this.pc = pc;
+			this.stallAddr = stallAddr;
+			this.base = base;
+			this.baseOffset = baseOffset;
+			this.vaddr = vaddr;
+			this.iaddr = iaddr;
+			this.vtype = vtype;
+		}
+
+		public DecodeRequest() {
+			list = null;
+			stream = null;
+			stallAddr = 0;
+		}
+
+		public int getStallAddr() {
+			return list != null ? list.getStallAddr() : stallAddr;
+		}
+	}
+
+	private class GeListDecoderThread extends Thread {
+		private volatile boolean done = false;
+		public CpuDurationStatistics statistics = new CpuDurationStatistics("GE List Decoder Thread");
+
+		public void exit() {
+			done = true;
+			// Add a dummy entry to allow the thread to exit
+			requests.add(new DecodeRequest());
+			if (DurationStatistics.collectStatistics) {
+				log.info(statistics);
+			}
+		}
+
+		@Override
+		public void run() {
+			while (!done) {
+				try {
+					DecodeRequest request = requests.take();
+					if (request.stream != null && !done) {
+						statistics.start();
+						decode(request);
+						if (!request.stalled && !request.cancelled) {
+							request.stream.setComplete();
+						}
+						statistics.end();
+					}
+				} catch (InterruptedException e) {
+					// Ignore Exception
+				} catch (Exception e) {
+					log.error("GeListDecoder", e);
+				}
+			}
+		}
+	}
+
+	public static GeListDecoder getInstance() {
+		if (instance == null) {
+			instance = new GeListDecoder();
+		}
+
+		return instance;
+	}
+
+	private GeListDecoder() {
+		thread = new GeListDecoderThread();
+		thread.setName("GE List Decoder Thread");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	public static void exit() {
+		if (instance != null) {
+			instance.cancel();
+			instance.thread.exit();
+			instance = null;
+		}
+	}
+
+	/**
+	 * Start decoding a list from its current pc.
+	 * Any list still being decoded is cancelled.
+	 *
+	 * @param list        the list to be decoded
+	 * @param base        the current BASE value
+	 * @param baseOffset  the current base offset (OFFSET_ADDR/ORIGIN_ADDR)
+	 * @param vaddr       the current vertex address
+	 * @param iaddr       the current index address
+	 * @param vtype       the current vertex type
+	 * @return            the stream being filled by the decoder
+	 */
+	public GeCommandStream startList(PspGeList list, int base, int baseOffset, int vaddr, int iaddr, int vtype) {
+		cancel();
+
+		// The generation has to be taken before reading any memory
+		GeCommandStream stream = new GeCommandStream(MemoryWriteTracker.nextGeneration());
+		DecodeRequest request = new DecodeRequest(list, stream, list.getPc(), 0, base, baseOffset, vaddr, iaddr, vtype);
+		currentRequest = request;
+		requests.add(request);
+
+		return stream;
+	}
+
+	/**
+	 * Decode a list synchronously in the current thread,
+	 * up to its end or up to the given stall address.
+	 *
+	 * @param pc          the address of the first command
+	 * @param stallAddr   the stall address, 0 if none
+	 * @param base        the initial BASE value
+	 * @param baseOffset  the initial base offset (OFFSET_ADDR/ORIGIN_ADDR)
+	 * @param vaddr       the initial vertex address
+	 * @param iaddr       the initial index address
+	 * @param vtype       the initial vertex type
+	 * @return            the decoded stream
+	 */
+	public static GeCommandStream decodeList(int pc, int stallAddr, int base, int baseOffset, int vaddr, int iaddr, int vtype) {
+		GeCommandStream stream = new GeCommandStream(MemoryWriteTracker.nextGeneration());
+		DecodeRequest request = new DecodeRequest(null, stream, pc, stallAddr, base, baseOffset, vaddr, iaddr, vtype);
+		decode(request);
+		if (!request.stalled) {
+			stream.setComplete();
+		}
+
+		return stream;
+	}
+
+	/**
+	 * Cancel the decoding of the current list.
+	 */
+	public void cancel() {
+		DecodeRequest request = currentRequest;
+		if (request != null) {
+			request.cancelled = true;
+			currentRequest = null;
+		}
+	}
+
+	/**
+	 * Resume the decoding of the current list if it was stopped
+	 * on its stall address and the stall address has been updated since.
+	 */
+	public synchronized void resume() {
+		DecodeRequest request = currentRequest;
+		if (request != null && request.stalled && !request.cancelled) {
+			if (request.pc != request.getStallAddr()) {
+				request.stalled = false;
+				requests.add(request);
+			}
+		}
+	}
+
+	private static void decode(DecodeRequest request) {
+		int pc = request.pc;
+		IMemoryReader memoryReader = null;
+
+		while (!request.cancelled) {
+			int stallAddr = request.getStallAddr();
+			if (stallAddr != 0 && pc == stallAddr) {
+				request.pc = pc;
+				request.stalled = true;
+				// The stall address might have been updated in the meantime
+				GeListDecoder decoder = instance;
+				if (request.list != null && decoder != null && request.getStallAddr() != stallAddr) {
+					decoder.resume();
+				}
+				return;
+			}
+
+			if (request.commandCount++ >= maxCommands || !Memory.isAddressGood(pc)) {
+				break;
+			}
+
+			if (memoryReader == null) {
+				memoryReader = MemoryReader.getMemoryReader(pc, 4);
+			}
+			int instruction = memoryReader.readNext();
+			int commandPc = pc;
+			pc += 4;
+
+			int command = instruction >>> 24;
+			int argument = instruction & 0x00FFFFFF;
+			if (command == PRIM) {
+				decodePrim(request, commandPc, instruction);
+				continue;
+			}
+
+			request.stream.addCommand(commandPc, instruction);
+
+			switch (command) {
+				case VADDR:
+					request.vaddr = getAddressRelOffset(request, argument);
+					break;
+				case IADDR:
+					request.iaddr = getAddressRelOffset(request, argument);
+					break;
+				case VTYPE:
+					request.vtype = argument;
+					break;
+				case BASE:
+					request.base = (argument << 8) & 0xFF000000;
+					break;
+				case OFFSET_ADDR:
+					request.baseOffset = argument << 8;
+					break;
+				case ORIGIN_ADDR:
+					request.baseOffset = commandPc;
+					break;
+				case BBOX:
+					endRendering(request, argument & 0xFF);
+					break;
+				case BEZIER:
+				case SPLINE:
+					endRendering(request, (argument & 0xFF) * ((argument >> 8) & 0xFF));
+					break;
+				case JUMP:
+					pc = getAddressRelOffset(request, argument) & 0xFFFFFFFC;
+					memoryReader = null;
+					break;
+				case CALL:
+					if (request.stackIndex >= request.stack.length) {
+						request.pc = pc;
+						return;
+					}
+					request.stack[request.stackIndex++] = pc;
+					request.stack[request.stackIndex++] = request.baseOffset;
+					pc = getAddressRelOffset(request, argument) & 0xFFFFFFFC;
+					memoryReader = null;
+					break;
+				case RET:
+					if (request.stackIndex > 0) {
+						request.baseOffset = request.stack[--request.stackIndex];
+						pc = request.stack[--request.stackIndex];
+						memoryReader = null;
+					}
+					break;
+				case SIGNAL:
+				case FINISH:
+				case END:
+				case BJUMP:
+					// The list execution depends on the CPU from here
+					request.pc = pc;
+					return;
+			}
+		}
+
+		request.pc = pc;
+	}
+
+	private static void decodePrim(DecodeRequest request, int pc, int instruction) {
+		int numberOfVertex = instruction & 0xFFFF;
+		int index = (request.vtype >> 11) & 0x3;
+		int bytesPerIndex = VertexInfo.size_mapping[index];
+		int minIndex = 0;
+		int maxIndex = 0;
+		int flags = 0;
+		if (numberOfVertex > 0 && index != 0) {
+			int indexBufferSize = numberOfVertex * bytesPerIndex;
+			if (Memory.isAddressGood(request.iaddr) && Memory.isAddressGood(request.iaddr + indexBufferSize - 1)) {
+				// Same computation as in VideoEngine.getVertexIndexInfo()
+				maxIndex = -1;
+				minIndex = Integer.MAX_VALUE;
+				boolean sequence = true;
+				int previousIndex = -1;
+				IMemoryReader memoryReader = MemoryReader.getMemoryReader(request.iaddr, indexBufferSize, bytesPerIndex);
+				for (int i = 0; i < numberOfVertex; i++) {
+					int vertexIndex = memoryReader.readNext();
+					maxIndex = max(maxIndex, vertexIndex);
+					minIndex = min(minIndex, vertexIndex);
+					if (i > 0 && vertexIndex != previousIndex + 1) {
+						sequence = false;
+					}
+					previousIndex = vertexIndex;
+				}
+				flags = GeCommandStream.FLAG_INDEX_INFO;
+				if (sequence) {
+					flags |= GeCommandStream.FLAG_INDEX_SEQUENCE;
+				}
+			}
+		}
+		request.stream.addPrim(pc, instruction, request.vaddr, request.vtype & VertexInfo.vtypeMask, request.iaddr, bytesPerIndex, minIndex, maxIndex, flags);
+
+		if (numberOfVertex > 0) {
+			endRendering(request, numberOfVertex);
+		}
+	}
+
+	private static int getAddressRelOffset(DecodeRequest request, int argument) {
+		return Memory.normalizeAddress((request.base | argument) + request.baseOffset);
+	}
+
+	private static void endRendering(DecodeRequest request, int numberOfVertex) {
+		// Same as VideoEngine.endRendering()
+		int index = (request.vtype >> 11) & 0x3;
+		if (index == 0) {
+			VertexInfo.processType(request.vinfo, request.vtype);
+			request.vaddr += numberOfVertex * request.vinfo.vertexSize;
+		} else {
+			request.iaddr += numberOfVertex * VertexInfo.size_mapping[index];
+		}
+	}
+}
@@ -27,6 +27,7 @@ import org.apache.log4j.Logger;
 
 import jpcsp.Memory;
 import jpcsp.Allegrex.compiler.RuntimeContext;
+import jpcsp.memory.MemoryWriteTracker;
 import jpcsp.util.DurationStatistics;
 import jpcsp.util.Hash;
 import jpcsp.util.Utilities;
@@ -114,6 +115,7 @@ public class NativeCallbacks {
 		writeByteBuffer.start();
 		if (RuntimeContext.hasMemoryInt() && (address & 3) == 0 && (length & 3) == 0 && isAddressGood(address)) {
 			IntBuffer destination = IntBuffer.wrap(RuntimeContext.getMemoryInt(), (address & Memory.addressMask) >> 2, length >> 2);
+			MemoryWriteTracker.write(address, length);
 			source.order(ByteOrder.nativeOrder());
 			destination.put(source.asIntBuffer());
 		} else {
@@ -128,6 +130,7 @@ public class NativeCallbacks {
 			int length = bufferWidth * height;
 			int destinationOffset = (address & Memory.addressMask) >> 2;
 			IntBuffer destination = IntBuffer.wrap(RuntimeContext.getMemoryInt(), destinationOffset, length >> 2);
+			MemoryWriteTracker.write(address, length);
 			source.order(ByteOrder.nativeOrder());
 			IntBuffer sourceInt = source.asIntBuffer();
 			int width4 = width >> 2;
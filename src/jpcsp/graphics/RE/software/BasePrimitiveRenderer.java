@@ -669,6 +669,45 @@ public abstract class BasePrimitiveRenderer extends BaseRenderer {
         depthWriterSkipEOL = zbw - prim.destinationWidth;
 	}
 
+	/**
+	 * Restrict the rendering of the primitive to the lines [yMin..yMax].
+	 * This method can only be called after a successful prepare(),
+	 * it is used to split the rendering of one primitive across
+	 * multiple threads (see RendererExecutor).
+	 *
+	 * @param yMin   the first line to be rendered
+	 * @param yMax   the last line to be rendered
+	 * @return       true if something has to be rendered in these lines
+	 *               false if the primitive is not covering these lines
+	 */
+	public boolean clipLines(int yMin, int yMax) {
+		int deltaY = yMin - prim.pyMin;
+		if (deltaY > 0) {
+			// The texture coordinates are incremented at each line
+			if (needTextureUV && simpleTextureUV) {
+				if (swapTextureUV) {
+					prim.uStart += prim.uStep * deltaY;
+				} else {
+					prim.vStart += prim.vStep * deltaY;
+				}
+			}
+			prim.pyMin = yMin;
+		}
+		if (yMax < prim.pyMax) {
+			prim.pyMax = yMax;
+		}
+
+		if (prim.pyMin > prim.pyMax) {
+			return false;
+		}
+
+		prim.destinationHeight = prim.pyMax - prim.pyMin + 1;
+		// Each renderer needs its own writers
+		prepareWriters();
+
+		return true;
+	}
+
 	protected boolean isVisible() {
     	if (!transform2D) {
     		// Each vertex screen coordinates (without offset) has to be in the range:
@@ -15,24 +15,36 @@ along with Jpcsp.  If not, see <http://www.gnu.org/licenses/>.
  */
 package jpcsp.graphics.RE.software;
 
-import static jpcsp.util.Utilities.sleep;
-
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
 
 import jpcsp.graphics.VideoEngine;
+import jpcsp.settings.Settings;
 
 /**
  * @author gid15
  *
+ * The software rendering is performed by a pool of ThreadRenderer threads.
+ * When more than one thread is used, the screen is split into bands of
+ * lines. Each band is always rendered by the same thread, so that the
+ * primitives are rendered in their submission order inside a band
+ * (this is required e.g. for blending).
+ * A primitive covering several bands is split into one renderer per band.
  */
 public class RendererExecutor {
-	private static final int numberThreads = 1;
+	// Number of rendering threads, 0 means rendering directly in the GE thread
+	private static final String numberThreadsSettings = "emu.graphics.softwareRendererThreads";
+	private static final int defaultNumberThreads = 1;
+	private static final int bandHeightShift = 4; // Bands of 16 lines
 	private static RendererExecutor instance;
-	private final LinkedBlockingQueue<IRenderer> renderersQueue = new LinkedBlockingQueue<IRenderer>();
+	private final int numberThreads;
+	private final ThreadRenderer[] threads;
 	private volatile boolean ended;
-	private volatile int numberThreadsRendering;
-	private final Object numberThreadsRenderingLock = new Object();
+	private int numberPendingRenderers;
+	private final Object numberPendingRenderersLock = new Object();
+	// The current rendering target
+	private int fbp, fbw, psm;
+	private int zbp, zbw;
 
 	public static RendererExecutor getInstance() {
 		if (instance == null) {
@@ -43,11 +55,18 @@ public class RendererExecutor {
 	}
 
 	private RendererExecutor() {
+		numberThreads = Math.max(Settings.getInstance().readInt(numberThreadsSettings, defaultNumberThreads), 0);
+
+		threads = new ThreadRenderer[numberThreads];
 		for (int i = 0; i < numberThreads; i++) {
-			Thread thread = new ThreadRenderer();
-			thread.setName(String.format("Thread SoftwareRenderer #%d", i + 1));
-			thread.setDaemon(true);
-			thread.start();
+			threads[i] = new ThreadRenderer();
+			threads[i].setName(String.format("Thread SoftwareRenderer #%d", i + 1));
+			threads[i].setDaemon(true);
+			threads[i].start();
+		}
+
+		if (VideoEngine.log.isInfoEnabled()) {
+			VideoEngine.log.info(String.format("Using %d software rendering thread(s)", numberThreads));
 		}
 	}
 
@@ -57,30 +76,98 @@ public class RendererExecutor {
 		}
 	}
 
+	private static void renderNow(IRenderer renderer) {
+		try {
+			renderer.render();
+		} catch (Exception e) {
+			VideoEngine.log.error("Error while rendering", e);
+		}
+	}
+
+	private void queue(int band, IRenderer renderer) {
+		synchronized (numberPendingRenderersLock) {
+			numberPendingRenderers++;
+		}
+		threads[band % numberThreads].renderersQueue.add(renderer);
+	}
+
+	private void renderingCompleted() {
+		synchronized (numberPendingRenderersLock) {
+			numberPendingRenderers--;
+			if (numberPendingRenderers == 0) {
+				numberPendingRenderersLock.notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * When the rendering target is changed, the previous target might be used
+	 * as a texture by the following primitives (render to texture).
+	 * Wait for the completion of all the bands before rendering to the new target.
+	 *
+	 * @param renderer  the renderer to be queued
+	 */
+	private void checkRenderingTarget(BasePrimitiveRenderer renderer) {
+		if (renderer.fbp != fbp || renderer.fbw != fbw || renderer.psm != psm || renderer.zbp != zbp || renderer.zbw != zbw) {
+			waitForRenderingCompletion();
+			fbp = renderer.fbp;
+			fbw = renderer.fbw;
+			psm = renderer.psm;
+			zbp = renderer.zbp;
+			zbw = renderer.zbw;
+		}
+	}
+
 	public void render(IRenderer renderer) {
-		if (numberThreads > 0 && !VideoEngine.log.isTraceEnabled()) {
-			// Queue for rendering in a ThreadRenderer thread
-			renderer = renderer.duplicate();
-			renderersQueue.add(renderer);
-		} else {
+		if (numberThreads <= 0 || VideoEngine.log.isTraceEnabled()) {
 			// Threads are disabled or capture is active, render immediately
-			try {
-				renderer.render();
-			} catch (Exception e) {
-				VideoEngine.log.error("Error while rendering", e);
+			renderNow(renderer);
+		} else if (numberThreads == 1) {
+			// Queue for rendering in the only ThreadRenderer thread
+			queue(0, renderer.duplicate());
+		} else if (renderer instanceof BasePrimitiveRenderer) {
+			BasePrimitiveRenderer primitiveRenderer = (BasePrimitiveRenderer) renderer;
+			checkRenderingTarget(primitiveRenderer);
+
+			int yMin = primitiveRenderer.prim.pyMin;
+			int yMax = primitiveRenderer.prim.pyMax;
+			int firstBand = Math.max(yMin, 0) >> bandHeightShift;
+			int lastBand = Math.max(yMax, 0) >> bandHeightShift;
+			if (firstBand == lastBand) {
+				queue(firstBand, renderer.duplicate());
+			} else {
+				// Split the primitive into one renderer per band
+				for (int band = firstBand; band <= lastBand; band++) {
+					int bandMin = band == firstBand ? yMin : band << bandHeightShift;
+					int bandMax = band == lastBand ? yMax : ((band + 1) << bandHeightShift) - 1;
+					BasePrimitiveRenderer bandRenderer = (BasePrimitiveRenderer) renderer.duplicate();
+					if (bandRenderer.clipLines(bandMin, bandMax)) {
+						queue(band, bandRenderer);
+					}
+				}
 			}
+		} else {
+			// Unknown area covered by the renderer, render it after all the queued ones
+			waitForRenderingCompletion();
+			renderNow(renderer);
 		}
 	}
 
 	public void waitForRenderingCompletion() {
-		if (numberThreads > 0) {
-			while (!renderersQueue.isEmpty() || numberThreadsRendering > 0) {
-				sleep(1, 0);
+		synchronized (numberPendingRenderersLock) {
+			while (numberPendingRenderers > 0) {
+				try {
+					numberPendingRenderersLock.wait();
+				} catch (InterruptedException e) {
+					// Ignore Exception
+				}
 			}
 		}
 	}
 
 	private class ThreadRenderer extends Thread {
+		private final LinkedBlockingQueue<IRenderer> renderersQueue = new LinkedBlockingQueue<IRenderer>();
+
 		@Override
 		public void run() {
 			while (!ended) {
@@ -92,19 +179,8 @@ public class RendererExecutor {
 				}
 
 				if (renderer != null) {
-					synchronized (numberThreadsRenderingLock) {
-						numberThreadsRendering++;
-					}
-
-					try {
-						renderer.render();
-					} catch (Exception e) {
-						VideoEngine.log.error("Error while rendering", e);
-					}
-
-					synchronized (numberThreadsRenderingLock) {
-						numberThreadsRendering--;
-					}
+					renderNow(renderer);
+					renderingCompleted();
 				}
 			}
 		}
@@ -23,6 +23,7 @@ import java.util.Map;
 import java.util.Set;
 
 import jpcsp.graphics.RE.IRenderingEngine;
+import jpcsp.memory.MemoryWriteTracker;
 import jpcsp.util.CacheStatistics;
 import jpcsp.util.DurationStatistics;
 
@@ -35,6 +36,8 @@ public class VertexCache {
 	// Remember which vertex have already been checked during one display
 	// (for applications reusing the same vertex multiple times in one display)
 	private Set<Integer> vertexAlreadyChecked;
+	// Memory write generation at the start of the current display
+	private int writeGeneration;
 
 	public static VertexCache getInstance() {
 		if (instance == null) {
@@ -121,6 +124,11 @@ public class VertexCache {
 
 	public void resetVertexAlreadyChecked() {
 		vertexAlreadyChecked.clear();
+		writeGeneration = MemoryWriteTracker.nextGeneration();
+	}
+
+	public int getWriteGeneration() {
+		return writeGeneration;
 	}
 
 	public boolean vertexAlreadyChecked(VertexInfo vertexInfo) {
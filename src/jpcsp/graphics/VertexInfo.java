@@ -23,6 +23,7 @@ import jpcsp.Memory;
 import jpcsp.graphics.RE.IRenderingEngine;
 import jpcsp.memory.IMemoryReader;
 import jpcsp.memory.MemoryReader;
+import jpcsp.memory.MemoryWriteTracker;
 
 // Based on soywiz/pspemulator
 public class VertexInfo {
@@ -91,6 +92,8 @@ public class VertexInfo {
     private float[][] cachedBoneMatrix;
     private ByteBuffer cachedBuffer;
     private VertexCache vertexCache;
+    // Memory write generation when the cached vertices and indices were last checked
+    private int writeGeneration;
 
     public VertexInfo() {
     }
@@ -255,17 +258,55 @@ public class VertexInfo {
         return true;
     }
 
+    /**
+     * Check if the memory of the cached vertices and indices might
+     * have been written since they were last checked.
+     *
+     * @return false if the memory has not been written,
+     *         true if the memory has been or might have been written.
+     */
+    private boolean isMemoryWritten() {
+        if (cachedIndices == null && cachedVertices == null) {
+            return true;
+        }
+        if (cachedIndices != null) {
+            int indexSize = index == 3 ? 4 : index;
+            if (MemoryWriteTracker.isWritten(ptr_index, cachedIndices.length * indexSize, writeGeneration)) {
+                return true;
+            }
+        }
+        if (cachedVertices != null) {
+            if (MemoryWriteTracker.isWritten(ptr_vertex, cachedVertices.length << 2, writeGeneration)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
     public boolean equals(VertexInfo vertexInfo, int numberOfVertex) {
         // Do not compare the vertices and indices of the new vertex if it has already
         // been checked during this display cycle
         if (!vertexCache.vertexAlreadyChecked(vertexInfo)) {
-            vertexInfo.readForCache(numberOfVertex);
-            if (!equals(cachedVertices, vertexInfo.cachedVertices)) {
-                return false;
-            }
-            if (!equals(cachedIndices, vertexInfo.cachedIndices)) {
-                return false;
+            // Do not read the vertices and indices of the new vertex
+            // if their memory has not been written since the last check
+            if (isMemoryWritten()) {
+                vertexInfo.readForCache(numberOfVertex);
+                if (!equals(cachedVertices, vertexInfo.cachedVertices)) {
+                    return false;
+                }
+                if (!equals(cachedIndices, vertexInfo.cachedIndices)) {
+                    return false;
+                }
+            } else {
+                if (index != 0 && cachedIndices == null) {
+                    return false;
+                }
+                if (ptr_vertex != 0 && cachedVertices == null) {
+                    return false;
+                }
             }
+            writeGeneration = vertexCache.getWriteGeneration();
             vertexCache.setVertexAlreadyChecked(vertexInfo);
         } else {
             if (index != 0 && cachedIndices == null) {
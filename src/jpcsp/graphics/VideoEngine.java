@@ -88,6 +88,7 @@ import jpcsp.hardware.Screen;
 import jpcsp.memory.IMemoryReader;
 import jpcsp.memory.ImageReader;
 import jpcsp.memory.MemoryReader;
+import jpcsp.memory.MemoryWriteTracker;
 import jpcsp.settings.AbstractBoolSettingsListener;
 import jpcsp.settings.Settings;
 import jpcsp.util.CpuDurationStatistics;
@@ -183,6 +184,13 @@ public class VideoEngine {
     private boolean useTextureAnisotropicFilter = false;
     private boolean usexBRZFilter = false;
     private boolean disableOptimizedVertexInfoReading = false;
+    private GeListDecoder listDecoder;
+    private GeCommandStream commandStream;
+    private int commandStreamOffset;
+    // Offset of the record of the command being executed, -1 if none
+    private int commandStreamRecord = -1;
+    // Maximum number of records searched in the command stream for one command
+    private static final int maxCommandStreamSearch = 256;
     private boolean avoidDrawElementsWithNonZeroIndexOffset = false;
     private boolean enableTextureModding = true;
     private static GeCommands helper;
@@ -366,6 +374,14 @@ public class VideoEngine {
         }
     }
 
+    private class UsePipelinedListDecodingSettingsListerner extends AbstractBoolSettingsListener {
+
+        @Override
+        protected void settingsValueChanged(boolean value) {
+            setUsePipelinedListDecoding(value);
+        }
+    }
+
     private class UsexBRZFilterSettingsListerner extends AbstractBoolSettingsListener {
 
         @Override
@@ -558,6 +574,7 @@ public class VideoEngine {
         Settings.getInstance().registerSettingsListener(name, "emu.graphics.filters.anisotropic", new UseTextureAnisotropicFilterSettingsListerner());
         Settings.getInstance().registerSettingsListener(name, "emu.plugins.xbrz", new UsexBRZFilterSettingsListerner());
         Settings.getInstance().registerSettingsListener(name, "emu.disableoptimizedvertexinforeading", new DisableOptimizedVertexInfoReadingListener());
+        Settings.getInstance().registerSettingsListener(name, "emu.graphics.pipelinedListDecoding", new UsePipelinedListDecodingSettingsListerner());
 
         setMaxTextureSize(Settings.getInstance().readInt("maxTextureSize", 512));
         setDoubleTexture2DCoords(Settings.getInstance().readBool("doubleTexture2DCoords"));
@@ -983,6 +1000,10 @@ public class VideoEngine {
         executeHleAction();
         if (!currentList.isStallReached()) {
             currentList.status = PSP_GE_LIST_DRAWING;
+            GeListDecoder listDecoder = this.listDecoder;
+            if (listDecoder != null) {
+                listDecoder.resume();
+            }
         }
         waitStallStatistics.end();
     }
@@ -1075,6 +1096,8 @@ public class VideoEngine {
             GEProfiler.startGeList();
         }
 
+        startListDecoding();
+
         waitForSyncCount = 0;
         while (!listHasEnded && (!Emulator.pause || State.captureGeNextFrame)) {
             if (currentList.isPaused() || currentList.isEnded()) {
@@ -1085,6 +1108,9 @@ public class VideoEngine {
                 executeListStalled();
             } else {
                 int ins = currentList.readNextInstruction();
+                if (commandStream != null) {
+                    followCommandStream(ins);
+                }
                 executeCommand(ins);
             }
         }
@@ -1115,6 +1141,8 @@ public class VideoEngine {
             Modules.sceGe_userModule.hleGeListSyncDone(currentList);
         }
 
+        endListDecoding();
+
         executeHleAction();
 
         // Restore the context to the state at the beginning of the list processing (used by sceGu).
@@ -2182,7 +2210,101 @@ public class VideoEngine {
     	currentList.setPc(startPc);
     }
 
+    private void startListDecoding() {
+        if (listDecoder != null && !currentList.hasBaseMemoryReader()) {
+            commandStream = listDecoder.startList(currentList, context.base, context.baseOffset, context.vinfo.ptr_vertex, context.vinfo.ptr_index, context.vinfo.vtype);
+            commandStreamOffset = 0;
+        } else {
+            commandStream = null;
+        }
+        commandStreamRecord = -1;
+    }
+
+    private void endListDecoding() {
+        GeListDecoder listDecoder = this.listDecoder;
+        if (commandStream != null && listDecoder != null) {
+            listDecoder.cancel();
+        }
+        commandStream = null;
+        commandStreamRecord = -1;
+    }
+
+    /**
+     * Follow the GeCommandStream produced by the GeListDecoder
+     * while executing the list.
+     * The record of the command being executed is available in commandStreamRecord.
+     *
+     * @param instruction  the command being executed
+     */
+    private void followCommandStream(int instruction) {
+        int pc = currentList.getPc() - 4;
+        int offset = commandStream.findCommand(commandStreamOffset, maxCommandStreamSearch, pc, instruction);
+        if (offset >= 0) {
+            commandStreamRecord = offset;
+            commandStreamOffset = commandStream.getNextOffset(offset);
+            return;
+        }
+
+        commandStreamRecord = -1;
+        // Do not search again through the same records.
+        commandStreamOffset = ~offset;
+        if (commandStreamOffset < commandStream.getLength() || commandStream.isComplete()) {
+            // The decoder has taken another path or has already stopped:
+            // the stream is of no use for the rest of the list.
+            if (isLogDebugEnabled) {
+                log.debug(String.format("Command 0x%08X at 0x%08X not found in %s", instruction, pc, commandStream));
+            }
+            endListDecoding();
+        } else {
+            // The decoder is behind the execution
+            GeListDecoder listDecoder = this.listDecoder;
+            if (listDecoder != null) {
+                listDecoder.resume();
+            }
+        }
+    }
+
+    /**
+     * Retrieve the vertex index info of the current PRIM from its GeCommandStream record,
+     * as already computed by the GeListDecoder.
+     *
+     * @param bytesPerIndex   the size of one index
+     * @param numberOfVertex  the number of vertex of the PRIM
+     * @return                the vertex index info, or null if not available
+     */
+    private VertexIndexInfo getDecodedVertexIndexInfo(int bytesPerIndex, int numberOfVertex) {
+        GeCommandStream commandStream = this.commandStream;
+        int offset = commandStreamRecord;
+        if (commandStream == null || offset < 0 || !commandStream.isPrim(offset) || numberOfVertex != (normalArgument & 0xFFFF)) {
+            return null;
+        }
+
+        if ((commandStream.getFlags(offset) & GeCommandStream.FLAG_INDEX_INFO) == 0) {
+            return null;
+        }
+        // The decoder must have tracked the same vertex state
+        if (commandStream.getIndexAddress(offset) != context.vinfo.ptr_index || commandStream.getVertexType(offset) != context.vinfo.vtype) {
+            return null;
+        }
+        if (commandStream.getBytesPerIndex(offset) != bytesPerIndex) {
+            return null;
+        }
+        // The indices must not have been written since the decoder did read them
+        if (MemoryWriteTracker.isWritten(context.vinfo.ptr_index, numberOfVertex * bytesPerIndex, commandStream.getGeneration())) {
+            return null;
+        }
+
+        boolean sequence = (commandStream.getFlags(offset) & GeCommandStream.FLAG_INDEX_SEQUENCE) != 0;
+
+        return new VertexIndexInfo(commandStream.getMinIndex(offset), commandStream.getMaxIndex(offset), sequence);
+    }
+
     private VertexIndexInfo getVertexIndexInfo(int bytesPerIndex, int numberOfVertex) {
+        VertexIndexInfo decodedVertexIndexInfo = getDecodedVertexIndexInfo(bytesPerIndex, numberOfVertex);
+        if (decodedVertexIndexInfo != null) {
+            return decodedVertexIndexInfo;
+        }
+
         int maxIndex = -1;
         int minIndex = Integer.MAX_VALUE;
         int indexBufferSize = numberOfVertex * bytesPerIndex;
@@ -7533,6 +7655,15 @@ public class VideoEngine {
         return disableOptimizedVertexInfoReading;
     }
 
+    private void setUsePipelinedListDecoding(boolean usePipelinedListDecoding) {
+        if (usePipelinedListDecoding) {
+            listDecoder = GeListDecoder.getInstance();
+            log.info("Using pipelined GE list decoding");
+        } else {
+            listDecoder = null;
+        }
+    }
+
     private void setDisableOptimizedVertexInfoReading(boolean disableOptimizedVertexInfoReading) {
         this.disableOptimizedVertexInfoReading = disableOptimizedVertexInfoReading;
 
@@ -19,6 +19,7 @@ package jpcsp.graphics.textures;
 import jpcsp.graphics.GeCommands;
 import jpcsp.graphics.VideoEngine;
 import jpcsp.graphics.RE.IRenderingEngine;
+import jpcsp.memory.MemoryWriteTracker;
 import jpcsp.util.Hash;
 
 public class Texture {
@@ -46,6 +47,11 @@ public class Texture {
 	private int bufferLengthInBytes;
 	private int lineWidthInBytes;
 	private int hashStrideInBytes;
+	// Bookkeeping of the TextureCache
+	Texture lruPrevious;
+	Texture lruNext;
+	int hashedGeneration;
+	int writeGeneration;
 
 	public Texture(TextureCache textureCache, int addr, int lineWidth, int width, int height, int pixelStorage, int clutAddr, int clutMode, int clutStart, int clutShift, int clutMask, int clutNumBlocks, int mipmapLevels, boolean mipmapShareClut, short[] values16, int[] values32) {
 		this.textureCache = textureCache;
@@ -171,9 +177,13 @@ public class Texture {
 			if (values32 != null) {
 				return equals(values32);
 			}
-			int hashCode = hashCode(addr, bufferLengthInBytes, lineWidthInBytes, hashStrideInBytes, clutAddr, clutNumBlocks, mipmapLevels);
-			if (hashCode != hashCode()) {
-				return false;
+			// No need to compute the hashCode if the texture memory
+			// has not been written since the last check
+			if (isMemoryWritten()) {
+				int hashCode = hashCode(addr, bufferLengthInBytes, lineWidthInBytes, hashStrideInBytes, clutAddr, clutNumBlocks, mipmapLevels);
+				if (hashCode != hashCode()) {
+					return false;
+				}
 			}
 			textureCache.setTextureAlreadyHashed(addr, clutAddr, clutStart, clutMode);
 		}
@@ -265,6 +275,37 @@ public class Texture {
 		return mipmapLevels;
 	}
 
+	private boolean isMemoryWritten() {
+		if (MemoryWriteTracker.isWritten(addr, bufferLengthInBytes, writeGeneration)) {
+			return true;
+		}
+		if (clutAddr != 0 && MemoryWriteTracker.isWritten(clutAddr, clutNumBlocks * 32, writeGeneration)) {
+			return true;
+		}
+
+		return false;
+	}
+
+	public int getBufferLengthInBytes() {
+		return bufferLengthInBytes;
+	}
+
+	/**
+	 * Estimate the memory used by this texture in the rendering engine.
+	 * The textures are mostly stored as 32-bit pixels, the mipmaps
+	 * are adding at most 1/3 of the size of the first level.
+	 *
+	 * @return the estimated number of bytes used by the texture
+	 */
+	public long getHostMemorySize() {
+		long size = ((long) width) * height * 4;
+		if (mipmapLevels > 0) {
+			size += size / 3;
+		}
+
+		return size;
+	}
+
 	public boolean isInsideMemory(int fromAddr, int toAddr) {
 		if (addr >= fromAddr && addr < toAddr) {
 			return true;
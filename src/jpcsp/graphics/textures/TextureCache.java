@@ -16,13 +16,10 @@ along with Jpcsp.  If not, see <http://www.gnu.org/licenses/>.
  */
 package jpcsp.graphics.textures;
 
-import java.util.HashSet;
 import java.util.Iterator;
-import java.util.LinkedHashMap;
-import java.util.LinkedList;
-import java.util.ListIterator;
 import java.util.Map;
-import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
 
 import org.apache.log4j.Logger;
 
@@ -30,21 +27,45 @@ import jpcsp.Memory;
 import jpcsp.graphics.GeCommands;
 import jpcsp.graphics.VideoEngine;
 import jpcsp.graphics.RE.IRenderingEngine;
+import jpcsp.memory.MemoryWriteTracker;
+import jpcsp.settings.Settings;
 import jpcsp.util.CacheStatistics;
 
+/**
+ * Cache of the textures loaded into the rendering engine.
+ *
+ * The textures are stored in an open-addressing hash table indexed
+ * by an int key (no Integer boxing on lookups). The least recently
+ * used textures are evicted when the estimated memory used by the textures
+ * in the rendering engine exceeds the configured budget.
+ * The textures located in VRAM are also indexed by address so that
+ * the textures overwritten by a rendering can be found quickly.
+ */
 public class TextureCache {
-	public static final int cacheMaxSize = 1000;
-	public static final float cacheLoadFactor = 0.75f;
+	// Default budget for the textures in the rendering engine: 256MB
+	public static final int defaultCacheMaxMemoryMB = 256;
+	private static final int initialCapacity = 1024; // Must be a power of 2
 	private static Logger log = VideoEngine.log;
 	private static TextureCache instance = null;
-	private LinkedHashMap<Integer, Texture> cache;
-	public CacheStatistics statistics = new CacheStatistics("Texture", cacheMaxSize);
+	private final long cacheMaxMemory;
+	public CacheStatistics statistics;
+	// Open-addressing hash table (linear probing)
+	private int[] keys;
+	private Texture[] textures;
+	private int size;
+	// The LRU list: least recently used first
+	private Texture lruFirst;
+	private Texture lruLast;
 	// Remember which textures have already been hashed during one display
-	// (for applications reusing the same texture multiple times in one display)
-	private Set<Integer> textureAlreadyHashed;
-	// Remember which textures are located in VRAM. Only these textures have to be
-	// scanned when checking for textures updated while rendering to GE.
-	private LinkedList<Texture> vramTextures = new LinkedList<Texture>();
+	// (for applications reusing the same texture multiple times in one display).
+	// Incrementing the generation resets all the textures.
+	private int hashedGeneration = 1;
+	// Memory write generation at the start of the current display
+	private int writeGeneration;
+	// Remember which textures are located in VRAM, indexed by address. Only these textures
+	// have to be scanned when checking for textures updated while rendering to GE.
+	private TreeMap<Long, Texture> vramTextures = new TreeMap<Long, Texture>();
+	private int maxVramTextureLength;
 
 	public static TextureCache getInstance() {
 		if (instance == null) {
@@ -55,62 +76,189 @@ public class TextureCache {
 	}
 
 	private TextureCache() {
-		//
-		// Create a cache having
-		// - initial size large enough so that no rehash will occur
-		// - the LinkedList is based on access-order for LRU
-		//
-		cache = new LinkedHashMap<Integer, Texture>((int) (cacheMaxSize / cacheLoadFactor) + 1, cacheLoadFactor, true);
-		textureAlreadyHashed = new HashSet<Integer>();
+		int cacheMaxMemoryMB = Settings.getInstance().readInt("emu.graphics.textureCacheSize", defaultCacheMaxMemoryMB);
+		if (cacheMaxMemoryMB <= 0) {
+			cacheMaxMemoryMB = defaultCacheMaxMemoryMB;
+		}
+		cacheMaxMemory = cacheMaxMemoryMB * 1024L * 1024L;
+		statistics = new CacheStatistics("Texture", 0, cacheMaxMemory);
+
+		keys = new int[initialCapacity];
+		textures = new Texture[initialCapacity];
 	}
 
-	private Integer getKey(int addr, int clutAddr, int clutStart, int clutMode) {
+	private int getKey(int addr, int clutAddr, int clutStart, int clutMode) {
 		// Some games use the same texture address with different cluts.
 		// Keep a combination of both texture address and clut address in the cache.
 		// Also, use the clutStart as this parameter can be used to offset the clut address.
 		int clutEntrySize = clutMode == GeCommands.CMODE_FORMAT_32BIT_ABGR8888 ? 4 : 2;
-		return new Integer(addr + clutAddr + (clutStart << 4) * clutEntrySize);
+		return addr + clutAddr + (clutStart << 4) * clutEntrySize;
+	}
+
+	private static int hash(int key) {
+		// Spread the address bits, the lowest bits are usually 0
+		key *= 0x9E3779B9;
+		return key ^ (key >>> 16);
+	}
+
+	private int indexOf(int key) {
+		int mask = keys.length - 1;
+		for (int index = hash(key) & mask; textures[index] != null; index = (index + 1) & mask) {
+			if (keys[index] == key) {
+				return index;
+			}
+		}
+
+		return -1;
+	}
+
+	private Texture get(int key) {
+		int index = indexOf(key);
+		return index < 0 ? null : textures[index];
+	}
+
+	private void put(int key, Texture texture) {
+		if ((size + 1) * 2 > keys.length) {
+			resize(keys.length * 2);
+		}
+
+		int mask = keys.length - 1;
+		int index = hash(key) & mask;
+		while (textures[index] != null) {
+			index = (index + 1) & mask;
+		}
+		keys[index] = key;
+		textures[index] = texture;
+		size++;
+	}
+
+	private void resize(int capacity) {
+		int[] oldKeys = keys;
+		Texture[] oldTextures = textures;
+		keys = new int[capacity];
+		textures = new Texture[capacity];
+		size = 0;
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldTextures[i] != null) {
+				put(oldKeys[i], oldTextures[i]);
+			}
+		}
+	}
+
+	private void remove(int key) {
+		int index = indexOf(key);
+		if (index < 0) {
+			return;
+		}
+
+		// Backward shift deletion: move up the following entries of the same cluster
+		int mask = keys.length - 1;
+		int emptyIndex = index;
+		for (index = (index + 1) & mask; textures[index] != null; index = (index + 1) & mask) {
+			int idealIndex = hash(keys[index]) & mask;
+			// Can the entry be moved to the empty slot?
+			if (((index - idealIndex) & mask) >= ((index - emptyIndex) & mask)) {
+				keys[emptyIndex] = keys[index];
+				textures[emptyIndex] = textures[index];
+				emptyIndex = index;
+			}
+		}
+		textures[emptyIndex] = null;
+		size--;
+	}
+
+	private void lruRemove(Texture texture) {
+		if (texture.lruPrevious == null) {
+			lruFirst = texture.lruNext;
+		} else {
+			texture.lruPrevious.lruNext = texture.lruNext;
+		}
+		if (texture.lruNext == null) {
+			lruLast = texture.lruPrevious;
+		} else {
+			texture.lruNext.lruPrevious = texture.lruPrevious;
+		}
+		texture.lruPrevious = null;
+		texture.lruNext = null;
+	}
+
+	private void lruAdd(Texture texture) {
+		texture.lruPrevious = lruLast;
+		texture.lruNext = null;
+		if (lruLast == null) {
+			lruFirst = texture;
+		} else {
+			lruLast.lruNext = texture;
+		}
+		lruLast = texture;
+	}
+
+	private void lruAccess(Texture texture) {
+		if (texture != lruLast) {
+			lruRemove(texture);
+			lruAdd(texture);
+		}
+	}
+
+	private static long getVramKey(int addr, int key) {
+		return ((addr & 0xFFFFFFFFL) << 32) | (key & 0xFFFFFFFFL);
+	}
+
+	private int getKey(Texture texture) {
+		return getKey(texture.getAddr(), texture.getClutAddr(), texture.getClutStart(), texture.getClutMode());
+	}
+
+	private void removeTexture(IRenderingEngine re, Texture texture) {
+		int key = getKey(texture);
+		texture.deleteTexture(re);
+		remove(key);
+		lruRemove(texture);
+		if (isVramTexture(texture)) {
+			vramTextures.remove(getVramKey(texture.getAddr(), key));
+		}
+		statistics.memoryUsed -= texture.getHostMemorySize();
 	}
 
 	public boolean hasTexture(int addr, int clutAddr, int clutStart, int clutMode) {
-		return cache.containsKey(getKey(addr, clutAddr, clutStart, clutMode));
+		return get(getKey(addr, clutAddr, clutStart, clutMode)) != null;
 	}
 
 	private Texture getTexture(int addr, int clutAddr, int clutStart, int clutMode) {
-		return cache.get(getKey(addr, clutAddr, clutStart, clutMode));
+		Texture texture = get(getKey(addr, clutAddr, clutStart, clutMode));
+		if (texture != null) {
+			lruAccess(texture);
+		}
+
+		return texture;
 	}
 
 	public void addTexture(IRenderingEngine re, Texture texture) {
-		Integer key = getKey(texture.getAddr(), texture.getClutAddr(), texture.getClutStart(), texture.getClutMode());
-		Texture previousTexture = cache.get(key);
+		int key = getKey(texture);
+		Texture previousTexture = get(key);
 		if (previousTexture != null) {
-		    previousTexture.deleteTexture(re);
-		    vramTextures.remove(previousTexture);
-		} else {
-			// Check if the cache is not growing too large
-			if (cache.size() >= cacheMaxSize) {
-				// Remove the LRU cache entry
-				Iterator<Map.Entry<Integer, Texture>> it = cache.entrySet().iterator();
-				if (it.hasNext()) {
-					Map.Entry<Integer, Texture> entry = it.next();
-					Texture lruTexture = entry.getValue();
-					lruTexture.deleteTexture(re);
-					vramTextures.remove(lruTexture);
-					it.remove();
-
-					statistics.entriesRemoved++;
-				}
-			}
+			removeTexture(re, previousTexture);
 		}
 
-        cache.put(key, texture);
-        if (isVramTexture(texture)) {
-        	vramTextures.add(texture);
-        }
+		put(key, texture);
+		lruAdd(texture);
+		if (isVramTexture(texture)) {
+			vramTextures.put(getVramKey(texture.getAddr(), key), texture);
+			maxVramTextureLength = Math.max(maxVramTextureLength, texture.getBufferLengthInBytes());
+		}
+		statistics.memoryUsed += texture.getHostMemorySize();
+
+		// Remove the LRU cache entries until the memory budget is respected
+		while (statistics.memoryUsed > cacheMaxMemory && lruFirst != texture) {
+			removeTexture(re, lruFirst);
+			statistics.entriesRemoved++;
+		}
 
-        if (cache.size() > statistics.maxSizeUsed) {
-            statistics.maxSizeUsed = cache.size();
-        }
+		if (size > statistics.maxSizeUsed) {
+			statistics.maxSizeUsed = size;
+		}
+		if (statistics.memoryUsed > statistics.maxMemoryUsed) {
+			statistics.maxMemoryUsed = statistics.memoryUsed;
+		}
 	}
 
 	public Texture getTexture(int addr, int lineWidth, int width, int height, int pixelStorage, int clutAddr, int clutMode, int clutStart, int clutShift, int clutMask, int clutNumBlocks, int mipmapLevels, boolean mipmapShareClut, short[] values16, int[] values32) {
@@ -132,26 +280,42 @@ public class TextureCache {
 	}
 
 	public void resetTextureAlreadyHashed() {
-		textureAlreadyHashed.clear();
+		hashedGeneration++;
+		writeGeneration = MemoryWriteTracker.nextGeneration();
 	}
 
 	public boolean textureAlreadyHashed(int addr, int clutAddr, int clutStart, int clutMode) {
-		return textureAlreadyHashed.contains(getKey(addr, clutAddr, clutStart, clutMode));
+		Texture texture = get(getKey(addr, clutAddr, clutStart, clutMode));
+		return texture != null && texture.hashedGeneration == hashedGeneration;
 	}
 
 	public void setTextureAlreadyHashed(int addr, int clutAddr, int clutStart, int clutMode) {
-		textureAlreadyHashed.add(getKey(addr, clutAddr, clutStart, clutMode));
+		Texture texture = get(getKey(addr, clutAddr, clutStart, clutMode));
+		if (texture != null) {
+			texture.hashedGeneration = hashedGeneration;
+			texture.writeGeneration = writeGeneration;
+		}
 	}
 
 	public void resetTextureAlreadyHashed(int addr, int clutAddr, int clutStart, int clutMode) {
-		textureAlreadyHashed.remove(getKey(addr, clutAddr, clutStart, clutMode));
+		Texture texture = get(getKey(addr, clutAddr, clutStart, clutMode));
+		if (texture != null) {
+			texture.hashedGeneration = 0;
+		}
 	}
 
 	public void reset(IRenderingEngine re) {
-		for (Texture texture : cache.values()) {
+		for (Texture texture = lruFirst; texture != null; texture = texture.lruNext) {
 			texture.deleteTexture(re);
 		}
-		cache.clear();
+		keys = new int[initialCapacity];
+		textures = new Texture[initialCapacity];
+		size = 0;
+		lruFirst = null;
+		lruLast = null;
+		vramTextures.clear();
+		maxVramTextureLength = 0;
+		statistics.memoryUsed = 0;
 		resetTextureAlreadyHashed();
 	}
 
@@ -160,16 +324,22 @@ public class TextureCache {
 	}
 
 	public void deleteVramTextures(IRenderingEngine re, int addr, int length) {
-		for (ListIterator<Texture> lit = vramTextures.listIterator(); lit.hasNext(); ) {
-			Texture texture = lit.next();
+		// Only the textures starting at most maxVramTextureLength bytes
+		// before the address can overlap the memory area
+		long fromAddr = Math.max(0L, (addr & 0xFFFFFFFFL) - maxVramTextureLength);
+		long toAddr = (addr & 0xFFFFFFFFL) + Math.max(length, 0);
+		SortedMap<Long, Texture> candidates = vramTextures.subMap(fromAddr << 32, toAddr << 32);
+		for (Iterator<Map.Entry<Long, Texture>> it = candidates.entrySet().iterator(); it.hasNext(); ) {
+			Texture texture = it.next().getValue();
 			if (texture.isInsideMemory(addr, addr + length)) {
 				if (log.isDebugEnabled()) {
 					log.debug(String.format("Delete VRAM texture inside GE %s", texture.toString()));
 				}
+				it.remove();
 				texture.deleteTexture(re);
-				lit.remove();
-				Integer key = getKey(texture.getAddr(), texture.getClutAddr(), texture.getClutStart(), texture.getClutMode());
-				cache.remove(key);
+				remove(getKey(texture));
+				lruRemove(texture);
+				statistics.memoryUsed -= texture.getHostMemorySize();
 				statistics.entriesRemoved++;
 			}
 		}
@@ -0,0 +1,361 @@
+/*
+This file is part of jpcsp.
+
+Jpcsp is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Jpcsp is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with Jpcsp.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package jpcsp.media.codec;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import jpcsp.Memory;
+import jpcsp.settings.AbstractIntSettingsListener;
+import jpcsp.settings.Settings;
+import jpcsp.util.CacheStatistics;
+import jpcsp.util.Utilities;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Cache of the samples decoded from audio frames, e.g. for the background
+ * music looping over the same Atrac3/Atrac3+ frames.
+ *
+ * The audio decoders are keeping a state from one frame to the next one
+ * (overlapping buffer, gain control, stereo weighting), the decoded samples
+ * are thus depending on the previous frames (up to 3 frames for Atrac3+).
+ * This is why an entry is keyed by the hash of the frame together with
+ * the hashes of the 3 frames decoded before it and with the codec
+ * parameters (see DecodedFrameCache.Stream).
+ *
+ * The cache is bounded by the memory used by the decoded samples, the
+ * least recently used entries are evicted first.
+ * The budget is set in MB by "emu.atrac.decodeCacheSize", 0 disables the cache.
+ */
+public class DecodedFrameCache {
+	private static Logger log = CodecFactory.log;
+	private static DecodedFrameCache instance;
+	private static final int defaultCacheMaxMemoryMB = 16;
+	// Number of previous frames taken into account in the cache key
+	public static final int contextFrames = 3;
+	private long cacheMaxMemory;
+	// The LinkedHashMap is based on access-order for LRU
+	private final LinkedHashMap<Long, Entry> cache = new LinkedHashMap<Long, Entry>(256, 0.75f, true);
+	private CacheStatistics statistics;
+
+	public static class Entry {
+		private final byte[] frame;
+		private final byte[] samples;
+		private final int result;
+
+		private Entry(byte[] frame, int frameLength, byte[] samples, int result) {
+			this.frame = Arrays.copyOf(frame, frameLength);
+			this.samples = samples;
+			this.result = result;
+		}
+
+		private boolean isMatching(byte[] frame, int frameLength) {
+			if (this.frame.length != frameLength) {
+				return false;
+			}
+			for (int i = 0; i < frameLength; i++) {
+				if (this.frame[i] != frame[i]) {
+					return false;
+				}
+			}
+
+			return true;
+		}
+
+		private int getMemorySize() {
+			return frame.length + samples.length;
+		}
+
+		/**
+		 * @return  the value returned by ICodec.decode() for this frame.
+		 */
+		public int getResult() {
+			return result;
+		}
+
+		/**
+		 * Copy the decoded samples to memory.
+		 *
+		 * @param address  the address where to store the decoded samples
+		 */
+		public void write(int address) {
+			Memory.getInstance().copyToMemory(address, ByteBuffer.wrap(samples), samples.length);
+		}
+	}
+
+	/**
+	 * The frames last decoded by one codec instance.
+	 * This is used to build the cache keys and to bring the codec
+	 * back to a consistent state after frames have been served by the cache.
+	 */
+	public static class Stream {
+		private final byte[][] frames = new byte[contextFrames][];
+		private final int[] frameLengths = new int[contextFrames];
+		private final long[] frameHashes = new long[contextFrames];
+		private long parametersHash;
+		private byte[] frame;
+		private byte[] spareFrame;
+		private int frameLength;
+		private long frameHash;
+		private int cachedFrames;
+
+		/**
+		 * Restart the stream, to be called when the codec is initialized.
+		 *
+		 * @param parameters  the codec parameters having an impact on the decoded samples
+		 */
+		public void reset(int... parameters) {
+			parametersHash = 0L;
+			for (int parameter : parameters) {
+				parametersHash = hash(parametersHash, parameter);
+			}
+			for (int i = 0; i < contextFrames; i++) {
+				frames[i] = null;
+				frameLengths[i] = 0;
+				frameHashes[i] = 0L;
+			}
+			cachedFrames = 0;
+		}
+
+		/**
+		 * Read the frame about to be decoded.
+		 *
+		 * @param address  the address of the frame
+		 * @param length   the length of the frame
+		 * @return         the cache key for this frame
+		 */
+		public long readFrame(int address, int length) {
+			frame = spareFrame;
+			if (frame == null || frame.length < length) {
+				frame = new byte[length];
+			}
+			Utilities.readBytes(address, length, frame, 0);
+			frameLength = length;
+
+			frameHash = hash(frame, length);
+			long key = hash(parametersHash, frameHash);
+			for (int i = 0; i < contextFrames; i++) {
+				key = hash(key, frameHashes[i]);
+			}
+
+			return key;
+		}
+
+		/**
+		 * Move to the next frame, after the frame read by readFrame()
+		 * has been decoded or served by the cache.
+		 *
+		 * @param cached  true if the frame was served by the cache
+		 *                false if the frame was decoded by the codec
+		 */
+		public void nextFrame(boolean cached) {
+			// The buffer of the oldest frame can be reused by readFrame()
+			spareFrame = frames[contextFrames - 1];
+			for (int i = contextFrames - 1; i > 0; i--) {
+				frames[i] = frames[i - 1];
+				frameLengths[i] = frameLengths[i - 1];
+				frameHashes[i] = frameHashes[i - 1];
+			}
+			frames[0] = frame;
+			frameLengths[0] = frameLength;
+			frameHashes[0] = frameHash;
+			frame = null;
+
+			if (cached) {
+				cachedFrames++;
+			} else {
+				cachedFrames = 0;
+			}
+		}
+
+		/**
+		 * @return  the number of previous frames which have to be decoded again
+		 *          before decoding the current frame, because they have been
+		 *          served by the cache without going through the codec.
+		 */
+		public int getNumberFramesToReplay() {
+			int numberFrames = Math.min(cachedFrames, contextFrames);
+			// Frames before the beginning of the stream do not need to be replayed
+			while (numberFrames > 0 && frames[numberFrames - 1] == null) {
+				numberFrames--;
+			}
+
+			return numberFrames;
+		}
+
+		/**
+		 * Copy a previous frame to memory so that it can be decoded again.
+		 *
+		 * @param index    1 for the previous frame, 2 for the one before...
+		 * @param address  the address where to copy the frame
+		 * @return         the frame length
+		 */
+		public int writeFrame(int index, int address) {
+			int length = frameLengths[index - 1];
+			Utilities.writeBytes(address, length, frames[index - 1], 0);
+
+			return length;
+		}
+
+		public int getMaxFrameLength() {
+			int maxLength = 0;
+			for (int i = 0; i < contextFrames; i++) {
+				maxLength = Math.max(maxLength, frameLengths[i]);
+			}
+
+			return maxLength;
+		}
+
+		private byte[] getFrame() {
+			return frame;
+		}
+
+		private int getFrameLength() {
+			return frameLength;
+		}
+	}
+
+	private class DecodeCacheSizeSettingsListerner extends AbstractIntSettingsListener {
+		@Override
+		protected void settingsValueChanged(int value) {
+			setCacheMaxMemoryMB(value);
+		}
+	}
+
+	public static DecodedFrameCache getInstance() {
+		if (instance == null) {
+			instance = new DecodedFrameCache();
+		}
+
+		return instance;
+	}
+
+	private DecodedFrameCache() {
+		setCacheMaxMemoryMB(Settings.getInstance().readInt("emu.atrac.decodeCacheSize", defaultCacheMaxMemoryMB));
+		Settings.getInstance().registerSettingsListener("DecodedFrameCache", "emu.atrac.decodeCacheSize", new DecodeCacheSizeSettingsListerner());
+	}
+
+	private synchronized void setCacheMaxMemoryMB(int cacheMaxMemoryMB) {
+		cacheMaxMemory = Math.max(cacheMaxMemoryMB, 0) * 1024L * 1024L;
+		statistics = new CacheStatistics("Decoded frame", 0, cacheMaxMemory);
+		cache.clear();
+	}
+
+	public boolean isEnabled() {
+		return cacheMaxMemory > 0;
+	}
+
+	public static void exit() {
+		if (instance != null) {
+			instance.logStatistics();
+		}
+	}
+
+	public synchronized void logStatistics() {
+		if (statistics.totalHits > 0 && log.isInfoEnabled()) {
+			log.info(statistics);
+		}
+	}
+
+	/**
+	 * Search the cache for the frame read by Stream.readFrame().
+	 *
+	 * @param key     the key returned by Stream.readFrame()
+	 * @param stream  the stream having read the frame
+	 * @return        the cache entry for this frame,
+	 *                or null if the frame is not present in the cache.
+	 */
+	public synchronized Entry get(long key, Stream stream) {
+		statistics.totalHits++;
+		Entry entry = cache.get(key);
+		if (entry == null) {
+			statistics.notPresentHits++;
+			return null;
+		}
+
+		if (!entry.isMatching(stream.getFrame(), stream.getFrameLength())) {
+			// Hash collision
+			statistics.changedHits++;
+			return null;
+		}
+
+		statistics.successfulHits++;
+
+		return entry;
+	}
+
+	/**
+	 * Store into the cache the samples decoded from the frame
+	 * read by Stream.readFrame().
+	 *
+	 * @param key            the key returned by Stream.readFrame()
+	 * @param stream         the stream having read the frame
+	 * @param samplesAddr    the address of the decoded samples
+	 * @param samplesLength  the length in bytes of the decoded samples
+	 * @param result         the value returned by ICodec.decode()
+	 */
+	public synchronized void put(long key, Stream stream, int samplesAddr, int samplesLength, int result) {
+		byte[] samples = new byte[samplesLength];
+		Utilities.readBytes(samplesAddr, samplesLength, samples, 0);
+		Entry entry = new Entry(stream.getFrame(), stream.getFrameLength(), samples, result);
+
+		Entry previousEntry = cache.put(key, entry);
+		if (previousEntry != null) {
+			statistics.memoryUsed -= previousEntry.getMemorySize();
+		}
+		statistics.memoryUsed += entry.getMemorySize();
+
+		// Remove the LRU cache entries until the budget is respected
+		Iterator<Map.Entry<Long, Entry>> it = cache.entrySet().iterator();
+		while (statistics.memoryUsed > cacheMaxMemory && it.hasNext()) {
+			Entry lruEntry = it.next().getValue();
+			it.remove();
+			statistics.memoryUsed -= lruEntry.getMemorySize();
+			statistics.entriesRemoved++;
+		}
+
+		if (cache.size() > statistics.maxSizeUsed) {
+			statistics.maxSizeUsed = cache.size();
+		}
+		if (statistics.memoryUsed > statistics.maxMemoryUsed) {
+			statistics.maxMemoryUsed = statistics.memoryUsed;
+		}
+	}
+
+	private static long hash(long hash, long value) {
+		// FNV-1a like mixing of a 64-bit value
+		hash ^= value;
+		hash *= 0x100000001B3L;
+		hash ^= hash >>> 29;
+
+		return hash;
+	}
+
+	private static long hash(byte[] bytes, int length) {
+		long hash = 0xCBF29CE484222325L;
+		for (int i = 0; i < length; i++) {
+			hash ^= bytes[i] & 0xFF;
+			hash *= 0x100000001B3L;
+		}
+
+		return hash;
+	}
+}
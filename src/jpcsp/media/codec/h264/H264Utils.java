@@ -16,21 +16,140 @@ along with Jpcsp.  If not, see <http://www.gnu.org/licenses/>.
  */
 package jpcsp.media.codec.h264;
 
+import java.nio.IntBuffer;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import jpcsp.hardware.Screen;
+
+/**
+ * The YCbCr to RGB conversion is based on lookup tables for the red,
+ * blue and green color components and on a clamping table.
+ *
+ * The conversion can write directly into its final destination
+ * (e.g. the emulated memory) at any stride.
+ * Images of at least the PSP screen size (e.g. UMD videos or sceMp4)
+ * are converted in parallel: the rows are split into bands
+ * converted by ConvertTask's executed on a ForkJoinPool.
+ */
 public class H264Utils {
 	private static final int CLAMP_BASE = 512;
 	// Array to clamp values in range [0..255]
 	private static final int clamp[] = new int[CLAMP_BASE * 2 + 256];
 	private static final int redMap[][] = new int[256][256];
 	private static final int blueMap[][] = new int[256][256];
+	private static final int greenLuma[] = new int[256];
+	private static final int greenCb[] = new int[256];
+	private static final int greenCr[] = new int[256];
 	private static final int lumaYuvjToYuvTable[] = new int[256];
+	// Images having at least this number of pixels are converted in parallel
+	private static final int minParallelPixels = Screen.width * Screen.height;
+	// Minimum number of rows converted by one ConvertTask
+	private static final int minRowsPerTask = 32;
+	private static ForkJoinPool pool;
 
 	static {
 		initClamp();
 		initRedMap(0xFF);
 		initBlueMap();
+		initGreenMap();
 		initYuvj();
 	}
 
+	/**
+	 * Convert a band of rows of an image.
+	 */
+	private static class ConvertTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final Conversion conversion;
+		private final int startRow;
+		private final int endRow;
+
+		public ConvertTask(Conversion conversion, int startRow, int endRow) {
+			this.conversion = conversion;
+			this.startRow = startRow;
+			this.endRow = endRow;
+		}
+
+		@Override
+		protected void compute() {
+			conversion.convert(startRow, endRow);
+		}
+	}
+
+	/**
+	 * The parameters of one image conversion.
+	 * The output is either an int array or an IntBuffer.
+	 */
+	private static class Conversion {
+		private final int imageWidth;
+		private final int x;
+		private final int y;
+		private final int width;
+		private final int luma[];
+		private final int cb[];
+		private final int cr[];
+		private final int output[];
+		private final IntBuffer outputBuffer;
+		private final int outputOffset;
+		private final int outputStride;
+		private final boolean argb;
+
+		public Conversion(int imageWidth, int x, int y, int width, int luma[], int cb[], int cr[], int output[], IntBuffer outputBuffer, int outputOffset, int outputStride, boolean argb) {
+			this.imageWidth = imageWidth;
+			this.x = x;
+			this.y = y;
+			this.width = width;
+			this.luma = luma;
+			this.cb = cb;
+			this.cr = cr;
+			this.output = output;
+			this.outputBuffer = outputBuffer;
+			this.outputOffset = outputOffset;
+			this.outputStride = outputStride;
+			this.argb = argb;
+		}
+
+		public void convert(int startRow, int endRow) {
+			if (output != null) {
+				for (int row = startRow; row < endRow; row++) {
+					convertRow(row, output, outputOffset + row * outputStride);
+				}
+			} else {
+				// Convert each row into a local buffer and
+				// write it with one bulk put.
+				int rowBuffer[] = new int[width];
+				IntBuffer buffer = outputBuffer.duplicate();
+				for (int row = startRow; row < endRow; row++) {
+					convertRow(row, rowBuffer, 0);
+					buffer.position(outputOffset + row * outputStride);
+					buffer.put(rowBuffer, 0, width);
+				}
+			}
+		}
+
+		private void convertRow(int row, int output[], int offset) {
+			int lumaOffset = (y + row) * imageWidth + x;
+			int chromaOffset = ((y + row) >> 1) * (imageWidth >> 1) + (x >> 1);
+			for (int i = 0; i < width; i++) {
+				int c = luma[lumaOffset + i] & 0xFF;
+				int d = cb[chromaOffset + (i >> 1)] & 0xFF;
+				int e = cr[chromaOffset + (i >> 1)] & 0xFF;
+
+				int red = redMap[c][e];
+				int blue = blueMap[c][d];
+				int green = clamp[((greenLuma[c] + greenCb[d] + greenCr[e]) >> 8) + CLAMP_BASE];
+
+				int color = blue | (green << 8) | red;
+				if (argb) {
+					// Switch the blue and red color components
+					color = (color & 0xFF00FF00) | ((color & 0x00FF0000) >> 16) | ((color & 0x000000FF) << 16);
+				}
+				output[offset + i] = color;
+			}
+		}
+	}
+
 	/**
 	 * Initialize array to clamp values in range [0..255]
 	 */
@@ -87,57 +206,101 @@ public class H264Utils {
 		}
 	}
 
+	/**
+	 * The green color component is depending on the
+	 * luma, Cr and Cb components. Pre-computing all the
+	 * possible combinations would result in a too high memory
+	 * usage: 256*256*256*4 bytes = 64Mb.
+	 * So pre-compute each term separately, they only need to
+	 * be summed and clamped during the conversion.
+	 */
+	private static void initGreenMap() {
+		for (int i = 0; i <= 0xFF; i++) {
+			greenLuma[i] = 298 * (i - 16) + 128;
+			greenCb[i] = -100 * (i - 128);
+			greenCr[i] = -208 * (i - 128);
+		}
+	}
+
 	private static void initYuvj() {
 		for (int i = 0; i < 256; i++) {
 			lumaYuvjToYuvTable[i] = Math.round(i / 255f * 224f + 16f);
 		}
 	}
 
-	public static void YUV2ARGB(int width, int height, int luma[], int cb[], int cr[], int argb[]) {
-		// Convert YUV to ABGR
-		YUV2ABGR(width, height, luma, cb, cr, argb);
-
-		// Convert ABGR to ARGB (i.e. switch blue and red color components)
-		for (int i = 0; i < argb.length; i++) {
-			int color = argb[i];
-			color = (color & 0xFF00FF00) | ((color & 0x00FF0000) >> 16) | ((color & 0x000000FF) << 16);
-			argb[i] = color;
+	private static synchronized ForkJoinPool getPool() {
+		if (pool == null) {
+			pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
 		}
+
+		return pool;
 	}
 
-	public static void YUV2ABGR(int width, int height, int luma[], int cb[], int cr[], int abgr[]) {
-		final int width2 = width >> 1;
-
-		int offset = 0;
-		for (int y = 0; y < height; y++) {
-			int offset2 = (y >> 1) * width2;
-			for (int x = 0; x < width; x++, offset++) {
-				int c = luma[offset] & 0xFF;
-				int d = cb[offset2 + (x >> 1)] & 0xFF;
-				int e = cr[offset2 + (x >> 1)] & 0xFF;
-
-				// The red and blue color components have been already
-				// pre-computed.
-				int red = redMap[c][e];
-				int blue = blueMap[c][d];
+	private static void convert(Conversion conversion, int height) {
+		int numberTasks = 0;
+		if (conversion.width * height >= minParallelPixels) {
+			numberTasks = Math.min(Runtime.getRuntime().availableProcessors(), height / minRowsPerTask);
+		}
 
-				// The green color components is depending on the
-				// luma, Cr and Cb components. Pre-computing all the
-				// possible combinations would result in a too high memory
-				// usage: 256*256*256*4 bytes = 64Mb.
-				// So compute the green color component here.
-				c -= 16;
-				d -= 128;
-				e -= 128;
+		if (numberTasks < 2) {
+			conversion.convert(0, height);
+		} else {
+			// Split the rows into bands of an even number of rows,
+			// the first band is converted by the current thread.
+			int rowsPerTask = ((height + numberTasks - 1) / numberTasks + 1) & ~1;
+			ForkJoinPool pool = getPool();
+			ConvertTask tasks[] = new ConvertTask[numberTasks];
+			for (int i = 1; i < numberTasks; i++) {
+				int startRow = Math.min(i * rowsPerTask, height);
+				int endRow = Math.min(startRow + rowsPerTask, height);
+				tasks[i] = new ConvertTask(conversion, startRow, endRow);
+				pool.execute(tasks[i]);
+			}
 
-				int green = (298 * c - 100 * d - 208 * e + 128) >> 8;
-				green = clamp[green + CLAMP_BASE]; // clamp to [0..255]
+			conversion.convert(0, Math.min(rowsPerTask, height));
 
-				abgr[offset] = blue | (green << 8) | red;
+			for (int i = 1; i < numberTasks; i++) {
+				tasks[i].join();
 			}
 		}
 	}
 
+	public static void YUV2ARGB(int width, int height, int luma[], int cb[], int cr[], int argb[]) {
+		convert(new Conversion(width, 0, 0, width, luma, cb, cr, argb, null, 0, width, true), height);
+	}
+
+	public static void YUV2ABGR(int width, int height, int luma[], int cb[], int cr[], int abgr[]) {
+		convert(new Conversion(width, 0, 0, width, luma, cb, cr, abgr, null, 0, width, false), height);
+	}
+
+	/**
+	 * Convert an area of a YCbCr image into ABGR, directly into its destination.
+	 *
+	 * @param imageWidth    the width of the complete YCbCr image
+	 * @param x             the left of the area to be converted, must be even
+	 * @param y             the top of the area to be converted, must be even
+	 * @param width         the width of the area to be converted
+	 * @param height        the height of the area to be converted
+	 * @param luma          the luma component of the complete image
+	 * @param cb            the Cb component of the complete image
+	 * @param cr            the Cr component of the complete image
+	 * @param abgr          the destination array
+	 * @param outputOffset  the offset in the destination of the top left pixel
+	 * @param outputStride  the distance in pixels between 2 rows in the destination
+	 */
+	public static void YUV2ABGR(int imageWidth, int x, int y, int width, int height, int luma[], int cb[], int cr[], int abgr[], int outputOffset, int outputStride) {
+		convert(new Conversion(imageWidth, x, y, width, luma, cb, cr, abgr, null, outputOffset, outputStride, false), height);
+	}
+
+	/**
+	 * Same as above, but the destination is an IntBuffer,
+	 * e.g. a direct buffer returned by Memory.getBuffer().
+	 * The position of the buffer is not modified.
+	 */
+	public static void YUV2ABGR(int imageWidth, int x, int y, int width, int height, int luma[], int cb[], int cr[], IntBuffer abgr, int outputOffset, int outputStride) {
+		convert(new Conversion(imageWidth, x, y, width, luma, cb, cr, null, abgr, outputOffset, outputStride, false), height);
+	}
+
 	public static void setAlpha(int alpha) {
 		initRedMap(alpha & 0xFF);
 	}
@@ -17,23 +17,27 @@ along with Jpcsp.  If not, see <http://www.gnu.org/licenses/>.
 package jpcsp.media.codec.util;
 
 public class BitBuffer implements IBitReader {
-	// Store bits as ints for faster reading
-	private final int[] bits;
+	// Circular buffer of bytes, the bits are read starting with the most significant bit
+	private final byte[] bytes;
+	// Length of the buffer in bits
+	private final int length;
+	// Read and write positions in bits
 	private int readIndex;
 	private int writeIndex;
 	private int readCount;
 	private int writeCount;
 
 	public BitBuffer(int length) {
-		bits = new int[length];
+		bytes = new byte[length >> 3];
+		this.length = bytes.length << 3;
 	}
 
 	@Override
 	public int read1() {
 		readCount++;
-		int bit = bits[readIndex];
+		int bit = (bytes[readIndex >> 3] >> (7 - (readIndex & 7))) & 0x1;
 		readIndex++;
-		if (readIndex >= bits.length) {
+		if (readIndex >= length) {
 			readIndex = 0;
 		}
 
@@ -43,8 +47,18 @@ public class BitBuffer implements IBitReader {
 	@Override
 	public int read(int n) {
 		int value = 0;
-		for (; n > 0; n--) {
-			value = (value << 1) + read1();
+		readCount += n;
+		// Read the bits byte by byte
+		while (n > 0) {
+			int bitsInByte = 8 - (readIndex & 7);
+			int bits = Math.min(n, bitsInByte);
+			int b = (bytes[readIndex >> 3] & 0xFF) >> (bitsInByte - bits);
+			value = (value << bits) | (b & ((1 << bits) - 1));
+			n -= bits;
+			readIndex += bits;
+			if (readIndex >= length) {
+				readIndex = 0;
+			}
 		}
 
 		return value;
@@ -71,25 +85,20 @@ public class BitBuffer implements IBitReader {
 		readCount += n;
 		readIndex += n;
 		while (readIndex < 0) {
-			readIndex += bits.length;
-		}
-		while (readIndex >= bits.length) {
-			readIndex -= bits.length;
+			readIndex += length;
 		}
-	}
-
-	private void writeBit(int n) {
-		bits[writeIndex] = n;
-		writeIndex++;
-		writeCount++;
-		if (writeIndex >= bits.length) {
-			writeIndex = 0;
+		while (readIndex >= length) {
+			readIndex -= length;
 		}
 	}
 
 	public void writeByte(int n) {
-		for (int bit = 7; bit >= 0; bit--) {
-			writeBit((n >> bit) & 0x1);
+		// Only complete bytes are written, the write position is always byte aligned
+		bytes[writeIndex >> 3] = (byte) n;
+		writeIndex += 8;
+		writeCount += 8;
+		if (writeIndex >= length) {
+			writeIndex = 0;
 		}
 	}
 
@@ -17,15 +17,34 @@ along with Jpcsp.  If not, see <http://www.gnu.org/licenses/>.
 package jpcsp.media.codec.util;
 
 import jpcsp.Memory;
-
+import jpcsp.util.Utilities;
+
+/**
+ * Bit reader for the media codecs, reading from the emulated memory.
+ *
+ * The input bytes are copied in bulk from the memory into a byte window
+ * and the bits are served from a 64-bit cache, so that read(n), peek(n)
+ * and skip(n) are not accessing the memory for each byte or bit.
+ *
+ * The bytes can be read in the forward (direction=1) or in the
+ * reverse (direction=-1) order, the bits of each byte are always read
+ * starting with the most significant bit.
+ */
 public class BitReader implements IBitReader {
-	private Memory mem;
+	private static final int WINDOW_SIZE = 1024;
+	private final byte[] window = new byte[WINDOW_SIZE];
+	// Address of window[0]
+	private int windowAddr;
+	private int windowLength;
+	private final int initialAddr;
+	private final int initialSize;
+	// Address of the next byte to be loaded into the cache
 	private int addr;
-	private int initialAddr;
-	private int initialSize;
+	// Number of bytes left after addr
 	private int size;
-	private int bits;
-	private int value;
+	// The next bits to be read, aligned on the most significant bit
+	private long cache;
+	private int cacheBits;
 	private int direction;
 
 	public BitReader(int addr, int size) {
@@ -33,11 +52,73 @@ public class BitReader implements IBitReader {
 		this.size = size;
 		initialAddr = addr;
 		initialSize = size;
-		mem = Memory.getInstance();
-		bits = 0;
 		direction = 1;
 	}
 
+	private void fillWindow(int address) {
+		int start;
+		int length;
+		if (direction > 0) {
+			start = address;
+			// No need to copy more than the remaining input
+			length = Math.min(WINDOW_SIZE, Math.max(size, 0) + 8);
+		} else {
+			start = Math.max(address - WINDOW_SIZE + 1, Math.min(address, initialAddr) - 8);
+			length = address - start + 1;
+		}
+
+		// Only copy valid memory addresses
+		while (length > 1 && !Memory.isAddressGood(start)) {
+			start++;
+			length--;
+		}
+		while (length > 1 && !Memory.isAddressGood(start + length - 1)) {
+			length >>= 1;
+		}
+		if (!Memory.isAddressGood(start) || address < start || address >= start + length) {
+			windowLength = 0;
+			return;
+		}
+
+		Utilities.readBytes(start, length, window, 0);
+		windowAddr = start;
+		windowLength = length;
+	}
+
+	private int fetchByte(int address) {
+		int index = address - windowAddr;
+		if (index < 0 || index >= windowLength) {
+			fillWindow(address);
+			index = address - windowAddr;
+			if (windowLength == 0) {
+				return 0;
+			}
+		}
+
+		return window[index] & 0xFF;
+	}
+
+	private void refill() {
+		while (cacheBits <= 56) {
+			cache |= ((long) fetchByte(addr)) << (56 - cacheBits);
+			addr += direction;
+			size--;
+			cacheBits += 8;
+		}
+	}
+
+	/**
+	 * Give back to the input the bytes loaded in the cache but not yet read,
+	 * a partially read byte is discarded.
+	 */
+	private void flushCache() {
+		int bytes = cacheBits >> 3;
+		addr -= bytes * direction;
+		size += bytes;
+		cache = 0L;
+		cacheBits = 0;
+	}
+
 	@Override
 	public boolean readBool() {
 		return read1() != 0;
@@ -45,117 +126,111 @@ public class BitReader implements IBitReader {
 
 	@Override
 	public int read1() {
-		if (bits <= 0) {
-			value = mem.read8(addr);
-			addr += direction;
-			size--;
-			bits = 8;
+		if (cacheBits <= 0) {
+			refill();
 		}
-		int bit = value >> 7;
-		bits--;
-		value = (value << 1) & 0xFF;
+		int bit = (int) (cache >>> 63);
+		cache <<= 1;
+		cacheBits--;
 
 		return bit;
 	}
 
 	@Override
 	public int read(int n) {
-		int read;
-		if (n <= bits) {
-			read = value >> (8 - n);
-			bits -= n;
-			value = (value << n) & 0xFF;
-		} else {
-			read = 0;
-			for (; n > 0; n--) {
-				read = (read << 1) + read1();
-			}
+		if (n <= 0) {
+			return 0;
+		}
+		if (n > cacheBits) {
+			refill();
 		}
+		int read = (int) (cache >>> (64 - n));
+		cache <<= n;
+		cacheBits -= n;
 
 		return read;
 	}
 
 	public int readByte() {
-		if (bits == 8) {
-			bits = 0;
-			return value;
-		}
-		if (bits > 0) {
-			skip(bits);
-		}
-		int read = mem.read8(addr);
-		addr += direction;
-		size--;
-
-		return read;
+		byteAlign();
+		return read(8);
 	}
 
 	public int getBitsLeft() {
-		return (size << 3) + bits;
+		return (size << 3) + cacheBits;
 	}
 
 	public int getBytesRead() {
-		int bytesRead = addr - initialAddr;
-		if (bits == 8) {
-			bytesRead--;
-		}
-
-		return bytesRead;
+		return addr - initialAddr - (cacheBits >> 3) * direction;
 	}
 
 	public int getBitsRead() {
-		return (addr - initialAddr) * 8 - bits;
+		// The full bytes in the cache have not yet been read,
+		// the remaining bits are part of a byte already read
+		return (getBytesRead() << 3) - (cacheBits & 7);
 	}
 
 	@Override
 	public int peek(int n) {
-		int read = read(n);
-		skip(-n);
-		return read;
+		if (n <= 0) {
+			return 0;
+		}
+		if (n > cacheBits) {
+			refill();
+		}
+
+		return (int) (cache >>> (64 - n));
 	}
 
 	@Override
 	public void skip(int n) {
-		bits -= n;
 		if (n >= 0) {
-			while (bits < 0) {
-				addr += direction;
-				size--;
-				bits += 8;
+			if (n <= cacheBits) {
+				cache = n == 64 ? 0L : cache << n;
+				cacheBits -= n;
+			} else {
+				n -= cacheBits;
+				cache = 0L;
+				cacheBits = 0;
+				int bytes = n >> 3;
+				addr += bytes * direction;
+				size -= bytes;
+				read(n & 7);
 			}
 		} else {
-			while (bits > 8) {
-				addr -= direction;
-				size++;
-				bits -= 8;
-			}
-		}
-
-		if (bits > 0) {
-			value = mem.read8(addr - direction);
-			value = (value << (8 - bits)) & 0xFF;
+			// Move back to the start of the byte containing the new position
+			int bits = cacheBits - n;
+			int bytes = (bits + 7) >> 3;
+			addr -= bytes * direction;
+			size += bytes;
+			cache = 0L;
+			cacheBits = 0;
+			read((bytes << 3) - bits);
 		}
 	}
 
 	public void seek(int n) {
 		addr = initialAddr + n;
 		size = initialSize - n;
-		bits = 0;
+		cache = 0L;
+		cacheBits = 0;
 	}
 
 	public void setDirection(int direction) {
+		flushCache();
 		this.direction = direction;
-		bits = 0;
 	}
 
 	public void byteAlign() {
-		if (bits > 0 && bits < 8) {
-			skip(bits);
+		int bits = cacheBits & 7;
+		if (bits > 0) {
+			cache <<= bits;
+			cacheBits -= bits;
 		}
 	}
 
 	@Override
 	public String toString() {
-		return String.format("BitReader addr=0x%08X, bits=%d, size=0x%X, bits read %d", addr, bits, size, getBitsRead());
+		return String.format("BitReader addr=0x%08X, bits=%d, size=0x%X, bits read %d", addr, cacheBits, size, getBitsRead());
 	}
 }
@@ -164,6 +164,7 @@ public class FastMemory extends Memory {
 
 		all[address >> 2] = memData;
         Modules.sceDisplayModule.write8(address);
+        MemoryWriteTracker.write(address);
 	}
 
 	@Override
@@ -180,6 +181,7 @@ public class FastMemory extends Memory {
 
 		all[address >> 2] = memData;
         Modules.sceDisplayModule.write16(address);
+        MemoryWriteTracker.write(address);
 	}
 
 	@Override
@@ -194,6 +196,7 @@ public class FastMemory extends Memory {
 
 		all[address >> 2] = data;
 		Modules.sceDisplayModule.write32(address);
+		MemoryWriteTracker.write(address);
 	}
 
 	@Override
@@ -208,6 +211,7 @@ public class FastMemory extends Memory {
 
 		all[address >> 2] = (int) data;
 		all[(address >> 2) + 1] = (int) (data >> 32);
+		MemoryWriteTracker.write(address, 8);
 	}
 
 	@Override
@@ -223,6 +227,9 @@ public class FastMemory extends Memory {
 		buffer.position(address >> 2);
 		buffer.limit(round4(round4(address) + length) >> 2);
 
+		// The buffer can be used to write to the memory
+		MemoryWriteTracker.write(address, length);
+
 		return buffer.slice();
 	}
 
@@ -235,6 +242,7 @@ public class FastMemory extends Memory {
 		address = normalizeAddress(address);
 
         Modules.sceDisplayModule.write(address);
+        MemoryWriteTracker.write(address, length);
 
         for (; !isIntAligned(address) && length > 0; address++, length--) {
 			write8(address, data);
@@ -263,6 +271,8 @@ public class FastMemory extends Memory {
 
 	@Override
 	public void copyToMemory(int address, ByteBuffer source, int length) {
+		MemoryWriteTracker.write(address, length);
+
 		// copy in 1 byte steps until address is "int"-aligned
 		while (!isIntAligned(address) && length > 0 && source.hasRemaining()) {
 			byte b = source.get();
@@ -327,6 +337,7 @@ public class FastMemory extends Memory {
 		source = normalizeAddress(source);
 
         Modules.sceDisplayModule.write(destination);
+        MemoryWriteTracker.write(destination, length);
 
         if (isIntAligned(source) && isIntAligned(destination) && isIntAligned(length)) {
 			// Source, destination and length are "int"-aligned
@@ -321,7 +321,7 @@ public class MemoryReader {
 		private IntBuffer buffer;
 		private int address;
 
-		public MemoryReaderInt8(IntBuffer buffer, int index) {
+		public MemoryReaderInt8(IntBuffer buffer, int address) {
 			this.buffer = buffer;
 			this.address = address & ~3;
 			index = address & 0x03;
@@ -367,7 +367,7 @@ public class MemoryReader {
 		private IntBuffer buffer;
 		private int address;
 
-		public MemoryReaderInt16(IntBuffer buffer, int index) {
+		public MemoryReaderInt16(IntBuffer buffer, int address) {
 			this.buffer = buffer;
 			this.address = address & ~3;
 			this.index = (address & 0x02) >> 1;
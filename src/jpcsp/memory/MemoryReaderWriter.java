@@ -110,17 +110,20 @@ public class MemoryReaderWriter {
 
 		public MemoryReaderWriterIntArray32(int[] buffer, int addr) {
 			offset = addr >> 2;
+			MemoryWriteTracker.writeInt(offset);
 			this.buffer = buffer;
 		}
 
 		@Override
 		public void writeNext(int value) {
 			buffer[offset++] = value;
+			MemoryWriteTracker.writeIntNextPage(offset);
 		}
 
 		@Override
 		public void skip(int n) {
 			offset += n;
+			MemoryWriteTracker.writeInt(offset);
 		}
 
 		@Override
@@ -147,6 +150,7 @@ public class MemoryReaderWriter {
 		public MemoryReaderWriterIntArray16(int[] buffer, int addr) {
 			this.buffer = buffer;
 			offset = addr >> 2;
+			MemoryWriteTracker.writeInt(offset);
 			index = (addr >> 1) & 1;
 			if (index != 0) {
 				value = buffer[offset] & 0x0000FFFF;
@@ -160,6 +164,7 @@ public class MemoryReaderWriter {
 				index = 1;
 			} else {
 				buffer[offset++] = (n << 16) | value;
+				MemoryWriteTracker.writeIntNextPage(offset);
 				index = 0;
 			}
 		}
@@ -170,6 +175,7 @@ public class MemoryReaderWriter {
 				flush();
 				index += n;
 				offset += index >> 1;
+				MemoryWriteTracker.writeInt(offset);
 				index &= 1;
 				if (index != 0) {
 					value = buffer[offset] & 0x0000FFFF;
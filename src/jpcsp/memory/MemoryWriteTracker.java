@@ -0,0 +1,188 @@
+/*
+This file is part of jpcsp.
+
+Jpcsp is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Jpcsp is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with Jpcsp.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package jpcsp.memory;
+
+import java.util.Arrays;
+
+import jpcsp.Memory;
+import jpcsp.MemoryMap;
+import jpcsp.settings.AbstractBoolSettingsListener;
+import jpcsp.settings.Settings;
+
+/**
+ * Page-granular tracking of the writes to the PSP memory.
+ *
+ * Each memory page remembers the write generation of its last write.
+ * A consumer (e.g. the texture or vertex cache) takes a generation snapshot
+ * with nextGeneration() and can later check with isWritten() if any page
+ * of a memory area has been written since that snapshot,
+ * without having to read or hash the memory area.
+ *
+ * All the write paths of FastMemory, NativeMemory and OffHeapMemory,
+ * the fast memory writers and the code generated by the compiler when using memoryInt are tracked.
+ * The tracking is only applied at the next emulator reset after
+ * enabling it, so that no compiled code is missing the tracking.
+ * When the tracking is disabled or not supported by the current memory
+ * implementation, isWritten() always returns true.
+ */
+public class MemoryWriteTracker {
+	public static final int pageShift = 12;
+	private static final int pageIntMask = (1 << (pageShift - 2)) - 1;
+	private static final int[] pageGenerations = new int[(Memory.addressMask >>> pageShift) + 1];
+	private static volatile int generation = 1;
+	private static boolean enabled;
+	private static boolean enabledAtNextReset;
+
+	private static class MemoryWriteTrackingSettingsListener extends AbstractBoolSettingsListener {
+		@Override
+		protected void settingsValueChanged(boolean value) {
+			enabledAtNextReset = value;
+		}
+	}
+
+	static {
+		Settings.getInstance().registerSettingsListener("MemoryWriteTracker", "emu.memoryWriteTracking", new MemoryWriteTrackingSettingsListener());
+	}
+
+	/**
+	 * Apply the settings and mark the whole memory as written.
+	 * Has to be called when the compiled code is being discarded.
+	 */
+	public static void reset() {
+		enabled = enabledAtNextReset;
+		Arrays.fill(pageGenerations, generation);
+	}
+
+	/**
+	 * @return true if the compiled code and the memory implementation
+	 *         have to track the memory writes.
+	 */
+	public static boolean isEnabled() {
+		return enabled;
+	}
+
+	private static boolean isSupported() {
+		if (!enabled) {
+			return false;
+		}
+		Memory mem = Memory.getInstance();
+		return mem instanceof FastMemory || mem instanceof NativeMemory || mem instanceof OffHeapMemory;
+	}
+
+	/**
+	 * Record a write to the memory.
+	 * This method is called from the compiled code.
+	 *
+	 * @param address  the written address (raw or not)
+	 */
+	public static void write(int address) {
+		if (!enabled) {
+			return;
+		}
+		pageGenerations[(address & Memory.addressMask) >>> pageShift] = generation;
+	}
+
+	/**
+	 * Record a write to a memory area.
+	 *
+	 * @param address  the start address of the written area (raw or not)
+	 * @param length   the length in bytes of the written area
+	 */
+	public static void write(int address, int length) {
+		if (!enabled || length <= 0) {
+			return;
+		}
+
+		address &= Memory.addressMask;
+		int firstPage = address >>> pageShift;
+		int lastPage = Math.min((address + length - 1) >>> pageShift, pageGenerations.length - 1);
+		int currentGeneration = generation;
+		for (int page = firstPage; page <= lastPage; page++) {
+			pageGenerations[page] = currentGeneration;
+		}
+	}
+
+	/**
+	 * Record a write by one of the fast memory writers
+	 * accessing directly the memoryInt array.
+	 *
+	 * @param offset   the index into the memoryInt array
+	 */
+	public static void writeInt(int offset) {
+		if (!enabled) {
+			return;
+		}
+		pageGenerations[(offset >>> (pageShift - 2)) & (pageGenerations.length - 1)] = generation;
+	}
+
+	/**
+	 * Record a write by a fast memory writer only when the offset
+	 * is entering a new page.
+	 *
+	 * @param offset   the index into the memoryInt array
+	 */
+	public static void writeIntNextPage(int offset) {
+		if ((offset & pageIntMask) == 0) {
+			writeInt(offset);
+		}
+	}
+
+	/**
+	 * Take a generation snapshot: the writes happening after this call
+	 * will be reported by isWritten() when called with this generation.
+	 *
+	 * @return the generation snapshot
+	 */
+	public static synchronized int nextGeneration() {
+		return generation++;
+	}
+
+	/**
+	 * Check if a memory area might have been written since a generation snapshot.
+	 * The writes racing with the snapshot itself are reported as well.
+	 *
+	 * @param address     the start address of the memory area
+	 * @param length      the length in bytes of the memory area
+	 * @param generation  the generation snapshot, 0 if unknown
+	 * @return            false if the memory area has not been written since the snapshot,
+	 *                    true if the memory area has been or might have been written.
+	 */
+	public static boolean isWritten(int address, int length, int generation) {
+		if (generation == 0 || !isSupported()) {
+			return true;
+		}
+		if (length <= 0) {
+			return false;
+		}
+
+		// The GE is writing to VRAM without going through the memory implementation
+		address &= Memory.addressMask;
+		if (address <= MemoryMap.END_VRAM && address + length > MemoryMap.START_VRAM) {
+			return true;
+		}
+
+		int firstPage = address >>> pageShift;
+		int lastPage = Math.min((address + length - 1) >>> pageShift, pageGenerations.length - 1);
+		for (int page = firstPage; page <= lastPage; page++) {
+			if (pageGenerations[page] - generation >= 0) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+}
@@ -176,6 +176,7 @@ public class MemoryWriter {
 		public MemoryWriterIntArray8(int[] buffer, int addr) {
 			this.buffer = buffer;
 			offset = addr >> 2;
+			MemoryWriteTracker.writeInt(offset);
 			index = addr & 3;
 			value = buffer[offset] & mask[index];
 		}
@@ -185,6 +186,7 @@ public class MemoryWriter {
 			n &= 0xFF;
 			if (index == 4) {
 				buffer[offset++] = value;
+				MemoryWriteTracker.writeIntNextPage(offset);
 				value = n;
 				index = 1;
 			} else {
@@ -206,6 +208,7 @@ public class MemoryWriter {
 				flush();
 				index += n;
 				offset += index >> 2;
+				MemoryWriteTracker.writeInt(offset);
 				index &= 3;
 				value = buffer[offset] & mask[index];
 			}
@@ -226,6 +229,7 @@ public class MemoryWriter {
 		public MemoryWriterIntArray16(int[] buffer, int addr) {
 			this.buffer = buffer;
 			offset = addr >> 2;
+			MemoryWriteTracker.writeInt(offset);
 			index = (addr >> 1) & 1;
 			if (index != 0) {
 				value = buffer[offset] & 0x0000FFFF;
@@ -239,6 +243,7 @@ public class MemoryWriter {
 				index = 1;
 			} else {
 				buffer[offset++] = (n << 16) | value;
+				MemoryWriteTracker.writeIntNextPage(offset);
 				index = 0;
 			}
 		}
@@ -256,6 +261,7 @@ public class MemoryWriter {
 				flush();
 				index += n;
 				offset += index >> 1;
+				MemoryWriteTracker.writeInt(offset);
 				index &= 1;
 				if (index != 0) {
 					value = buffer[offset] & 0x0000FFFF;
@@ -275,12 +281,14 @@ public class MemoryWriter {
 
 		public MemoryWriterIntArray32(int[] buffer, int addr) {
 			offset = addr >> 2;
+			MemoryWriteTracker.writeInt(offset);
 			this.buffer = buffer;
 		}
 
 		@Override
 		public void writeNext(int value) {
 			buffer[offset++] = value;
+			MemoryWriteTracker.writeIntNextPage(offset);
 		}
 
 		@Override
@@ -290,6 +298,7 @@ public class MemoryWriter {
 		@Override
 		public void skip(int n) {
 			offset += n;
+			MemoryWriteTracker.writeInt(offset);
 		}
 
 		@Override
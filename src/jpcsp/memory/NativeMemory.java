@@ -80,6 +80,7 @@ public class NativeMemory extends Memory {
 		address &= addressMask;
 		NativeMemoryUtils.write8(memory, address, data);
         Modules.sceDisplayModule.write8(address);
+        MemoryWriteTracker.write(address);
 	}
 
 	@Override
@@ -87,6 +88,7 @@ public class NativeMemory extends Memory {
 		address &= addressMask;
 		NativeMemoryUtils.write16(memory, address, data);
         Modules.sceDisplayModule.write16(address);
+        MemoryWriteTracker.write(address);
 	}
 
 	@Override
@@ -94,12 +96,14 @@ public class NativeMemory extends Memory {
 		address &= addressMask;
 		NativeMemoryUtils.write32(memory, address, data);
         Modules.sceDisplayModule.write32(address);
+        MemoryWriteTracker.write(address);
 	}
 
 	@Override
 	public void memset(int address, byte data, int length) {
 		address &= addressMask;
 		NativeMemoryUtils.memset(memory, address, data, length);
+		MemoryWriteTracker.write(address, length);
 	}
 
 	@Override
@@ -111,6 +115,8 @@ public class NativeMemory extends Memory {
 	public Buffer getBuffer(int address, int length) {
 		address &= addressMask;
 		ByteBuffer buffer = NativeMemoryUtils.getBuffer(memory, address, length);
+		// The buffer can be used to write to the memory
+		MemoryWriteTracker.write(address, length);
 
 		// Set the correct byte order
 		if (NativeMemoryUtils.isLittleEndian()) {
@@ -126,6 +132,7 @@ public class NativeMemory extends Memory {
 	public void copyToMemory(int address, ByteBuffer source, int length) {
 		address &= addressMask;
 		length = Math.min(length, source.capacity());
+		MemoryWriteTracker.write(address, length);
 		if (source.isDirect()) {
 			NativeMemoryUtils.copyBufferToMemory(memory, address, source, source.position(), length);
 		} else {
@@ -144,6 +151,7 @@ public class NativeMemory extends Memory {
 		destination &= addressMask;
 		source &= addressMask;
         Modules.sceDisplayModule.write(destination);
+        MemoryWriteTracker.write(destination, length);
 
         if (!checkOverlap || source >= destination || !areOverlapping(destination, source, length)) {
         	NativeMemoryUtils.memcpy(memory, destination, memory, source, length);
@@ -0,0 +1,292 @@
+/*
+This file is part of jpcsp.
+
+Jpcsp is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Jpcsp is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with Jpcsp.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package jpcsp.memory;
+
+import java.lang.reflect.Field;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import jpcsp.Emulator;
+import jpcsp.Memory;
+import jpcsp.MemoryMap;
+import jpcsp.HLE.Modules;
+import sun.misc.Unsafe;
+
+/**
+ * A Memory implementation using a memory area allocated off-heap
+ * and accessed through sun.misc.Unsafe.
+ *
+ * This is providing the same memory layout as the NativeMemory
+ * (little-endian, contiguous), but without the JNI overhead on each access
+ * and without requiring the native "memory" library: the Unsafe accesses
+ * are intrinsified by the JIT compiler.
+ *
+ * The memory area is the content of a direct ByteBuffer so that its lifetime
+ * is managed by the JVM and getBuffer() can return zero-copy slices of it.
+ *
+ * The memory area is only covering the addresses up to MemoryMap.END_RAM:
+ * even without address checking, each access is checked against the size
+ * of the memory area, as an access outside of it would read or write
+ * the host memory.
+ */
+public class OffHeapMemory extends Memory {
+	private static final boolean isLittleEndian = ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN;
+	private static Unsafe unsafe;
+	private static long bufferAddressOffset;
+	private ByteBuffer byteBuffer;
+	private long memory;
+	private int memorySize;
+
+	private static boolean initUnsafe() {
+		if (unsafe == null) {
+			try {
+				Field f = Unsafe.class.getDeclaredField("theUnsafe");
+				f.setAccessible(true);
+				unsafe = (Unsafe) f.get(null);
+				bufferAddressOffset = unsafe.objectFieldOffset(Buffer.class.getDeclaredField("address"));
+			} catch (NoSuchFieldException e) {
+				log.error("OffHeapMemory", e);
+			} catch (SecurityException e) {
+				log.error("OffHeapMemory", e);
+			} catch (IllegalArgumentException e) {
+				log.error("OffHeapMemory", e);
+			} catch (IllegalAccessException e) {
+				log.error("OffHeapMemory", e);
+			}
+
+			if (unsafe != null && bufferAddressOffset == 0L) {
+				unsafe = null;
+			}
+		}
+
+		return unsafe != null;
+	}
+
+	private static long getBufferAddress(ByteBuffer buffer) {
+		return unsafe.getLong(buffer, bufferAddressOffset);
+	}
+
+	@Override
+	public boolean allocate() {
+		if (!initUnsafe()) {
+			return false;
+		}
+
+		memorySize = MemoryMap.END_RAM + 1;
+		try {
+			byteBuffer = ByteBuffer.allocateDirect(memorySize).order(ByteOrder.LITTLE_ENDIAN);
+		} catch (OutOfMemoryError e) {
+			// Not enough direct memory available
+			log.warn(String.format("Cannot allocate OffHeapMemory: %s", e));
+			return false;
+		}
+
+		memory = getBufferAddress(byteBuffer);
+		if (memory == 0L) {
+			byteBuffer = null;
+			return false;
+		}
+
+		log.info(String.format("Using OffHeapMemory(littleEndian=%b)", isLittleEndian));
+
+		return super.allocate();
+	}
+
+	@Override
+	public void Initialise() {
+		unsafe.setMemory(memory, memorySize, (byte) 0);
+	}
+
+	/**
+	 * @param address  the masked address
+	 * @param length   the length of the access
+	 * @return         true if the access is inside the memory area
+	 */
+	private boolean isInMemoryArea(int address, int length) {
+		return address < memorySize && length <= memorySize - address;
+	}
+
+	@Override
+	public int read8(int address) {
+		address &= addressMask;
+		if (!isInMemoryArea(address, 1)) {
+			invalidMemoryAddress(address, "read8", Emulator.EMU_STATUS_MEM_READ);
+			return 0;
+		}
+		return unsafe.getByte(memory + address) & 0xFF;
+	}
+
+	@Override
+	public int read16(int address) {
+		address &= addressMask;
+		if (!isInMemoryArea(address, 2)) {
+			invalidMemoryAddress(address, "read16", Emulator.EMU_STATUS_MEM_READ);
+			return 0;
+		}
+		short value = unsafe.getShort(memory + address);
+		if (!isLittleEndian) {
+			value = Short.reverseBytes(value);
+		}
+		return value & 0xFFFF;
+	}
+
+	@Override
+	public int read32(int address) {
+		address &= addressMask;
+		if (!isInMemoryArea(address, 4)) {
+			if (read32AllowedInvalidAddress(address)) {
+				return 0;
+			}
+			invalidMemoryAddress(address, "read32", Emulator.EMU_STATUS_MEM_READ);
+			return 0;
+		}
+		int value = unsafe.getInt(memory + address);
+		if (!isLittleEndian) {
+			value = Integer.reverseBytes(value);
+		}
+		return value;
+	}
+
+	@Override
+	public void write8(int address, byte data) {
+		address &= addressMask;
+		if (!isInMemoryArea(address, 1)) {
+			invalidMemoryAddress(address, "write8", Emulator.EMU_STATUS_MEM_WRITE);
+			return;
+		}
+		unsafe.putByte(memory + address, data);
+        Modules.sceDisplayModule.write8(address);
+        MemoryWriteTracker.write(address);
+	}
+
+	@Override
+	public void write16(int address, short data) {
+		address &= addressMask;
+		if (!isInMemoryArea(address, 2)) {
+			invalidMemoryAddress(address, "write16", Emulator.EMU_STATUS_MEM_WRITE);
+			return;
+		}
+		if (!isLittleEndian) {
+			data = Short.reverseBytes(data);
+		}
+		unsafe.putShort(memory + address, data);
+        Modules.sceDisplayModule.write16(address);
+        MemoryWriteTracker.write(address);
+	}
+
+	@Override
+	public void write32(int address, int data) {
+		address &= addressMask;
+		if (!isInMemoryArea(address, 4)) {
+			invalidMemoryAddress(address, "write32", Emulator.EMU_STATUS_MEM_WRITE);
+			return;
+		}
+		if (!isLittleEndian) {
+			data = Integer.reverseBytes(data);
+		}
+		unsafe.putInt(memory + address, data);
+        Modules.sceDisplayModule.write32(address);
+        MemoryWriteTracker.write(address);
+	}
+
+	@Override
+	public void memset(int address, byte data, int length) {
+		if (length <= 0) {
+			return;
+		}
+
+		address &= addressMask;
+		if (!isInMemoryArea(address, length)) {
+			invalidMemoryAddress(address, length, "memset", Emulator.EMU_STATUS_MEM_WRITE);
+			return;
+		}
+		unsafe.setMemory(memory + address, length, data);
+		MemoryWriteTracker.write(address, length);
+	}
+
+	@Override
+	public Buffer getMainMemoryByteBuffer() {
+		return byteBuffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	@Override
+	public Buffer getBuffer(int address, int length) {
+		address &= addressMask;
+		if (!isInMemoryArea(address, length)) {
+			invalidMemoryAddress(address, length, "getBuffer", Emulator.EMU_STATUS_MEM_READ);
+			return null;
+		}
+		// The buffer can be used to write to the memory
+		MemoryWriteTracker.write(address, length);
+
+		ByteBuffer buffer = byteBuffer.duplicate();
+		buffer.limit(address + length);
+		buffer.position(address);
+
+		return buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	@Override
+	public void copyToMemory(int address, ByteBuffer source, int length) {
+		address &= addressMask;
+		length = Math.min(length, source.capacity());
+		if (!isInMemoryArea(address, length)) {
+			invalidMemoryAddress(address, length, "copyToMemory", Emulator.EMU_STATUS_MEM_WRITE);
+			return;
+		}
+		MemoryWriteTracker.write(address, length);
+		if (source.isDirect()) {
+			long sourceAddress = getBufferAddress(source);
+			unsafe.copyMemory(sourceAddress + source.position(), memory + address, length);
+		} else {
+			for (; length > 0; address++, length--) {
+				unsafe.putByte(memory + address, source.get());
+			}
+		}
+	}
+
+	@Override
+	protected void memcpy(int destination, int source, int length, boolean checkOverlap) {
+		if (length <= 0) {
+			return;
+		}
+
+		destination &= addressMask;
+		source &= addressMask;
+		if (!isInMemoryArea(destination, length)) {
+			invalidMemoryAddress(destination, length, "memcpy", Emulator.EMU_STATUS_MEM_WRITE);
+			return;
+		}
+		if (!isInMemoryArea(source, length)) {
+			invalidMemoryAddress(source, length, "memcpy", Emulator.EMU_STATUS_MEM_READ);
+			return;
+		}
+        Modules.sceDisplayModule.write(destination);
+        MemoryWriteTracker.write(destination, length);
+
+        if (!checkOverlap || source >= destination || !areOverlapping(destination, source, length)) {
+        	unsafe.copyMemory(memory + source, memory + destination, length);
+        } else {
+        	// Source and destination are overlapping and source < destination,
+        	// copy from the tail.
+			for (int i = length - 1; i >= 0; i--) {
+				unsafe.putByte(memory + destination + i, unsafe.getByte(memory + source + i));
+			}
+        }
+	}
+}
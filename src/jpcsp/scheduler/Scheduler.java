@@ -16,10 +16,8 @@ along with Jpcsp.  If not, see <http://www.gnu.org/licenses/>.
  */
 package jpcsp.scheduler;
 
-import java.util.Iterator;
-import java.util.LinkedList;
-import java.util.List;
-import java.util.ListIterator;
+import java.util.IdentityHashMap;
+import java.util.Map;
 
 import jpcsp.Emulator;
 import jpcsp.Allegrex.compiler.RuntimeContext;
@@ -27,8 +25,22 @@ import jpcsp.HLE.kernel.types.IAction;
 
 public class Scheduler {
 	private static Scheduler instance = null;
-	private List<SchedulerAction> actions;
-	private SchedulerAction nextAction;
+	private static final long noSchedule = Long.MAX_VALUE;
+	private static final int initialCapacity = 64;
+	private static final int maxFreeActions = 256;
+	// Binary min-heap of the actions, ordered by schedule and
+	// then by insertion order (i.e. actions with the same schedule are executed FIFO).
+	private SchedulerAction[] heap = new SchedulerAction[initialCapacity];
+	private int size;
+	// The actions indexed by their IAction, to find them quickly when removing them.
+	// Actions sharing the same IAction are linked together.
+	private final Map<IAction, SchedulerAction> actionsByAction = new IdentityHashMap<IAction, SchedulerAction>();
+	// Pool of unused SchedulerAction objects
+	private SchedulerAction freeActions;
+	private int freeActionsCount;
+	private long sequence;
+	// The schedule of the next action, can be read without locking
+	private volatile long nextActionSchedule = noSchedule;
 
 	public static Scheduler getInstance() {
 		if (instance == null) {
@@ -39,18 +51,26 @@ public class Scheduler {
 	}
 
 	public synchronized void reset() {
-		actions = new LinkedList<SchedulerAction>();
-		nextAction = null;
+		for (int i = 0; i < size; i++) {
+			heap[i] = null;
+		}
+		size = 0;
+		actionsByAction.clear();
+		nextActionSchedule = noSchedule;
 	}
 
 	public void step() {
-		synchronized (this) {
-			if (nextAction == null) {
-				return;
-			}
+		// Fast path without locking: nothing to do when the next action is in the future
+		long schedule = nextActionSchedule;
+		if (schedule == noSchedule) {
+			return;
 		}
 
 		long now = getNow();
+		if (now < schedule) {
+			return;
+		}
+
 		while (true) {
 			IAction action = getAction(now);
 			if (action == null) {
@@ -60,19 +80,153 @@ public class Scheduler {
 		}
 	}
 
-	public synchronized long getNextActionDelay(long noActionDelay) {
-		if (nextAction == null) {
+	public long getNextActionDelay(long noActionDelay) {
+		long schedule = nextActionSchedule;
+		if (schedule == noSchedule) {
 			return noActionDelay;
 		}
 
 		long now = getNow();
-		return nextAction.getSchedule() - now;
+		return schedule - now;
+	}
+
+	private SchedulerAction newSchedulerAction(long schedule, IAction action) {
+		SchedulerAction schedulerAction = freeActions;
+		if (schedulerAction == null) {
+			schedulerAction = new SchedulerAction(schedule, action);
+		} else {
+			freeActions = schedulerAction.getNextSameAction();
+			freeActionsCount--;
+			schedulerAction.setSchedule(schedule);
+			schedulerAction.setAction(action);
+		}
+		schedulerAction.setSequence(sequence++);
+
+		return schedulerAction;
+	}
+
+	private void freeSchedulerAction(SchedulerAction schedulerAction) {
+		schedulerAction.setAction(null);
+		if (freeActionsCount < maxFreeActions) {
+			schedulerAction.setNextSameAction(freeActions);
+			freeActions = schedulerAction;
+			freeActionsCount++;
+		} else {
+			schedulerAction.setNextSameAction(null);
+		}
+	}
+
+	private static boolean isBefore(SchedulerAction a, SchedulerAction b) {
+		if (a.getSchedule() != b.getSchedule()) {
+			return a.getSchedule() < b.getSchedule();
+		}
+		return a.getSequence() < b.getSequence();
+	}
+
+	private void setHeap(int index, SchedulerAction schedulerAction) {
+		heap[index] = schedulerAction;
+		schedulerAction.setHeapIndex(index);
 	}
 
-	private void addSchedulerAction(SchedulerAction schedulerAction) {
-		actions.add(schedulerAction);
-		if (updateNextAction(schedulerAction)) {
-			RuntimeContext.onNextScheduleModified();
+	private void siftUp(int index) {
+		SchedulerAction schedulerAction = heap[index];
+		while (index > 0) {
+			int parentIndex = (index - 1) >> 1;
+			SchedulerAction parent = heap[parentIndex];
+			if (!isBefore(schedulerAction, parent)) {
+				break;
+			}
+			setHeap(index, parent);
+			index = parentIndex;
+		}
+		setHeap(index, schedulerAction);
+	}
+
+	private void siftDown(int index) {
+		SchedulerAction schedulerAction = heap[index];
+		while (true) {
+			int childIndex = (index << 1) + 1;
+			if (childIndex >= size) {
+				break;
+			}
+			if (childIndex + 1 < size && isBefore(heap[childIndex + 1], heap[childIndex])) {
+				childIndex++;
+			}
+			SchedulerAction child = heap[childIndex];
+			if (!isBefore(child, schedulerAction)) {
+				break;
+			}
+			setHeap(index, child);
+			index = childIndex;
+		}
+		setHeap(index, schedulerAction);
+	}
+
+	private void removeFromHeap(SchedulerAction schedulerAction) {
+		int index = schedulerAction.getHeapIndex();
+		size--;
+		SchedulerAction last = heap[size];
+		heap[size] = null;
+		if (index < size) {
+			setHeap(index, last);
+			siftDown(index);
+			if (heap[index] == last) {
+				siftUp(index);
+			}
+		}
+	}
+
+	private void removeFromActions(SchedulerAction schedulerAction) {
+		IAction action = schedulerAction.getAction();
+		SchedulerAction first = actionsByAction.get(action);
+		if (first == schedulerAction) {
+			SchedulerAction next = schedulerAction.getNextSameAction();
+			if (next == null) {
+				actionsByAction.remove(action);
+			} else {
+				actionsByAction.put(action, next);
+			}
+		} else {
+			for (SchedulerAction previous = first; previous != null; previous = previous.getNextSameAction()) {
+				if (previous.getNextSameAction() == schedulerAction) {
+					previous.setNextSameAction(schedulerAction.getNextSameAction());
+					break;
+				}
+			}
+		}
+	}
+
+	private void remove(SchedulerAction schedulerAction) {
+		removeFromHeap(schedulerAction);
+		removeFromActions(schedulerAction);
+		freeSchedulerAction(schedulerAction);
+	}
+
+	private void updateNextActionSchedule() {
+		nextActionSchedule = size > 0 ? heap[0].getSchedule() : noSchedule;
+	}
+
+	protected void onNextScheduleModified() {
+		RuntimeContext.onNextScheduleModified();
+	}
+
+	private void addSchedulerAction(long schedule, IAction action) {
+		SchedulerAction schedulerAction = newSchedulerAction(schedule, action);
+
+		if (size >= heap.length) {
+			SchedulerAction[] newHeap = new SchedulerAction[heap.length << 1];
+			System.arraycopy(heap, 0, newHeap, 0, size);
+			heap = newHeap;
+		}
+		heap[size] = schedulerAction;
+		siftUp(size);
+		size++;
+
+		schedulerAction.setNextSameAction(actionsByAction.put(action, schedulerAction));
+
+		if (heap[0] == schedulerAction) {
+			updateNextActionSchedule();
+			onNextScheduleModified();
 		}
 	}
 
@@ -83,8 +237,7 @@ public class Scheduler {
 	 * @param action	action to be executed on the defined schedule.
 	 */
 	public synchronized void addAction(IAction action) {
-		SchedulerAction schedulerAction = new SchedulerAction(0, action);
-		addSchedulerAction(schedulerAction);
+		addSchedulerAction(0, action);
 	}
 
 	/**
@@ -95,50 +248,38 @@ public class Scheduler {
 	 * @param action	action to be executed on the defined schedule.
 	 */
 	public synchronized void addAction(long schedule, IAction action) {
-		SchedulerAction schedulerAction = new SchedulerAction(schedule, action);
-		addSchedulerAction(schedulerAction);
+		addSchedulerAction(schedule, action);
 	}
 
 	public synchronized void removeAction(long schedule, IAction action) {
-		for (ListIterator<SchedulerAction> lit = actions.listIterator(); lit.hasNext(); ) {
-			SchedulerAction schedulerAction = lit.next();
-			if (schedulerAction.getSchedule() == schedule && schedulerAction.getAction() == action) {
-				lit.remove();
-				updateNextAction();
-				break;
+		// Remove the oldest action matching the schedule
+		SchedulerAction found = null;
+		for (SchedulerAction schedulerAction = actionsByAction.get(action); schedulerAction != null; schedulerAction = schedulerAction.getNextSameAction()) {
+			if (schedulerAction.getSchedule() == schedule) {
+				if (found == null || schedulerAction.getSequence() < found.getSequence()) {
+					found = schedulerAction;
+				}
 			}
 		}
-	}
-
-	private boolean updateNextAction(SchedulerAction schedulerAction) {
-		if (nextAction == null || schedulerAction.getSchedule() < nextAction.getSchedule()) {
-			nextAction = schedulerAction;
-			return true;
-		}
-
-		return false;
-	}
 
-	private void updateNextAction() {
-		nextAction = null;
-
-		for (Iterator<SchedulerAction> it = actions.iterator(); it.hasNext(); ) {
-			SchedulerAction schedulerAction = it.next();
-			updateNextAction(schedulerAction);
+		if (found != null) {
+			remove(found);
+			updateNextActionSchedule();
+			onNextScheduleModified();
 		}
-
-		RuntimeContext.onNextScheduleModified();
 	}
 
 	public synchronized IAction getAction(long now) {
-		if (nextAction == null || now < nextAction.getSchedule()) {
+		if (size == 0 || now < heap[0].getSchedule()) {
 			return null;
 		}
 
+		SchedulerAction nextAction = heap[0];
 		IAction action = nextAction.getAction();
 
-		actions.remove(nextAction);
-		updateNextAction();
+		remove(nextAction);
+		updateNextActionSchedule();
+		onNextScheduleModified();
 
 		return action;
 	}
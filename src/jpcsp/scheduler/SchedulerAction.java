@@ -21,6 +21,9 @@ import jpcsp.HLE.kernel.types.IAction;
 public class SchedulerAction {
 	private long schedule;
 	private IAction action;
+	private long sequence;
+	private int heapIndex;
+	private SchedulerAction nextSameAction;
 
 	public SchedulerAction(long schedule, IAction action) {
 		this.schedule = schedule;
@@ -42,4 +45,28 @@ public class SchedulerAction {
 	public void setAction(IAction action) {
 		this.action = action;
 	}
+
+	public long getSequence() {
+		return sequence;
+	}
+
+	public void setSequence(long sequence) {
+		this.sequence = sequence;
+	}
+
+	public int getHeapIndex() {
+		return heapIndex;
+	}
+
+	public void setHeapIndex(int heapIndex) {
+		this.heapIndex = heapIndex;
+	}
+
+	public SchedulerAction getNextSameAction() {
+		return nextSameAction;
+	}
+
+	public void setNextSameAction(SchedulerAction nextSameAction) {
+		this.nextSameAction = nextSameAction;
+	}
 }
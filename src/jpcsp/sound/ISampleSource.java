@@ -25,6 +25,16 @@ public interface ISampleSource {
 	 * @return sample in stereo (lower 16 bits = left, higher 16 bits = right)
 	 */
 	public int getNextSample();
+	/**
+	 * Read a block of samples, this is equivalent to
+	 * calling getNextSample() "length" times.
+	 *
+	 * @param samples  the buffer receiving the samples in stereo
+	 *                 (lower 16 bits = left, higher 16 bits = right)
+	 * @param offset   the offset of the first sample in the buffer
+	 * @param length   the number of samples to be read
+	 */
+	public void getNextSamples(int[] samples, int offset, int length);
 	public void resetToStart();
 	public boolean isEnded();
 }
@@ -19,12 +19,16 @@ package jpcsp.sound;
 import static java.lang.Math.min;
 import static jpcsp.HLE.kernel.types.SceKernelErrors.ERROR_ATRAC_ALL_DATA_DECODED;
 
+import java.util.Arrays;
+
 import org.apache.log4j.Logger;
 
 import jpcsp.Memory;
 import jpcsp.HLE.TPointer32;
 import jpcsp.HLE.modules.sceSasCore;
 import jpcsp.HLE.modules.sceAtrac3plus.AtracID;
+import jpcsp.memory.IMemoryReader;
+import jpcsp.memory.MemoryReader;
 
 /**
  * @author gid15
@@ -98,6 +102,34 @@ public class SampleSourceAtrac3 implements ISampleSource {
 		return sample;
 	}
 
+	@Override
+	public void getNextSamples(int[] samples, int offset, int length) {
+		int endOffset = offset + length;
+		for (int i = offset; i < endOffset; ) {
+			if (sampleIndex >= bufferedSamples) {
+				if (isEnded()) {
+					Arrays.fill(samples, i, endOffset, 0);
+					return;
+				}
+				decode();
+				if (bufferedSamples <= 0) {
+					Arrays.fill(samples, i, endOffset, 0);
+					return;
+				}
+			}
+
+			// Read the samples available in the decoded buffer
+			int n = min(bufferedSamples - sampleIndex, endOffset - i);
+			IMemoryReader memoryReader = MemoryReader.getMemoryReader(buffer + (sampleIndex << 2), n << 2, 4);
+			for (int j = 0; j < n; j++) {
+				samples[i + j] = memoryReader.readNext();
+			}
+			currentSampleIndex += n;
+			sampleIndex += n;
+			i += n;
+		}
+	}
+
 	@Override
 	public void resetToStart() {
 		currentSampleIndex = 0;
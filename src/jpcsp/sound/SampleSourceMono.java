@@ -38,6 +38,17 @@ public class SampleSourceMono implements ISampleSource {
 		return getSampleStereo(mono, mono);
 	}
 
+	@Override
+	public void getNextSamples(int[] samples, int offset, int length) {
+		sampleSource.getNextSamples(samples, offset, length);
+
+		int endOffset = offset + length;
+		for (int i = offset; i < endOffset; i++) {
+			short mono = getSampleLeft(samples[i]);
+			samples[i] = getSampleStereo(mono, mono);
+		}
+	}
+
 	@Override
 	public void resetToStart() {
 		sampleSource.resetToStart();
@@ -16,6 +16,8 @@ along with Jpcsp.  If not, see <http://www.gnu.org/licenses/>.
  */
 package jpcsp.sound;
 
+import java.util.Arrays;
+
 import jpcsp.memory.IMemoryReader;
 import jpcsp.memory.MemoryReader;
 
@@ -57,6 +59,31 @@ public class SampleSourcePCM implements ISampleSource {
 		return memoryReader.readNext();
 	}
 
+	@Override
+	public void getNextSamples(int[] samples, int offset, int length) {
+		int endOffset = offset + length;
+		for (int i = offset; i < endOffset; ) {
+			if (sampleIndex >= this.samples) {
+				if (!voice.isOn()) {
+					// Voice is off, stop playing
+					looping = false;
+					Arrays.fill(samples, i, endOffset, 0);
+					return;
+				}
+				resetToStart();
+			}
+
+			// Read the samples up to the end of the PCM data
+			// (at least one sample, as getNextSample() would do)
+			int n = Math.max(Math.min(this.samples - sampleIndex, endOffset - i), 1);
+			for (int j = 0; j < n; j++) {
+				samples[i + j] = memoryReader.readNext();
+			}
+			sampleIndex += n;
+			i += n;
+		}
+	}
+
 	@Override
 	public void resetToStart() {
 		memoryReader = MemoryReader.getMemoryReader(addr, size, 2);
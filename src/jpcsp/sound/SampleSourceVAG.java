@@ -16,6 +16,8 @@ along with Jpcsp.  If not, see <http://www.gnu.org/licenses/>.
  */
 package jpcsp.sound;
 
+import java.util.Arrays;
+
 import org.apache.log4j.Logger;
 
 import jpcsp.Memory;
@@ -184,6 +186,33 @@ public class SampleSourceVAG implements ISampleSource {
 		return sample & 0x0000FFFF;
 	}
 
+	@Override
+	public void getNextSamples(int[] samples, int offset, int length) {
+		int endOffset = offset + length;
+		for (int i = offset; i < endOffset; ) {
+			if (sampleIndex >= this.samples.length) {
+				if (!unpackNextVAGBlock()) {
+					Arrays.fill(samples, i, endOffset, 0);
+					return;
+				}
+			}
+
+			// Copy the samples available in the current VAG block
+			int n = Math.min(this.samples.length - sampleIndex, endOffset - i);
+			for (int j = 0; j < n; j++) {
+				samples[i + j] = this.samples[sampleIndex + j] & 0x0000FFFF;
+			}
+			sampleIndex += n;
+			currentSampleIndex += n;
+			i += n;
+
+			if (loopAtNextVAGBlock && sampleIndex >= this.samples.length) {
+				loopAtNextVAGBlock = false;
+				setSampleIndex(loopStartVAGBlock * 28);
+			}
+		}
+	}
+
 	private void setSampleIndex(int index) {
 		currentSampleIndex = index;
 		currentVAGBlock = index / 28;
@@ -27,6 +27,8 @@ import static jpcsp.HLE.modules.sceSasCore.PSP_SAS_ENVELOPE_HEIGHT_MAX;
 import static jpcsp.sound.SoundMixer.getSampleLeft;
 import static jpcsp.sound.SoundMixer.getSampleRight;
 
+import java.util.Arrays;
+
 import org.apache.log4j.Logger;
 
 import jpcsp.HLE.modules.sceSasCore;
@@ -42,6 +44,7 @@ public class SampleSourceWithADSR implements ISampleSource {
 	private SoundVoice voice;
 	private EnvelopeState envelopeState;
 	private final boolean tracing;
+	private int[] envelopeHeights = new int[0];
 	private static final int ATTACK_CURVE_STATE  = 0;
 	private static final int DECAY_CURVE_STATE   = 1;
 	private static final int SUSTAIN_CURVE_STATE = 2;
@@ -338,6 +341,59 @@ public class SampleSourceWithADSR implements ISampleSource {
 		return modulatedSample;
 	}
 
+	/**
+	 * Read a block of samples, modulated by the ADSR envelope.
+	 * The envelope heights are computed first for the whole block,
+	 * the source samples are then read as a block and modulated.
+	 */
+	@Override
+	public void getNextSamples(int[] samples, int offset, int length) {
+		if (tracing) {
+			// Keep the detailed tracing of each sample
+			for (int i = 0; i < length; i++) {
+				samples[offset + i] = getNextSample();
+			}
+			return;
+		}
+
+		if (!voice.isOn()) {
+			// The voice has been keyed Off, process the Release part of the wave
+			envelopeState.setKeyOff();
+		}
+
+		if (length > envelopeHeights.length) {
+			envelopeHeights = new int[length];
+		}
+
+		// Compute the envelope heights up to the end of the Release/Sustain
+		int activeLength = 0;
+		while (activeLength < length && !envelopeState.isEnded()) {
+			envelopeHeights[activeLength++] = envelopeState.getNextEnvelopeHeight();
+		}
+
+		if (activeLength > 0) {
+			sampleSource.getNextSamples(samples, offset, activeLength);
+
+			for (int i = 0; i < activeLength; i++) {
+				int sample = samples[offset + i];
+				int envelopeHeight16 = ((envelopeHeights[i] >> 14) + 1) >> 1;
+				short modulatedSampleLeft = modulate(getSampleLeft(sample), envelopeHeight16);
+				short modulatedSampleRight = modulate(getSampleRight(sample), envelopeHeight16);
+				samples[offset + i] = SoundMixer.getSampleStereo(modulatedSampleLeft, modulatedSampleRight);
+			}
+
+			// Store the current envelope height
+			// (can be retrieved by the application using __sceSasGetEnvelopeHeight)
+			voice.getEnvelope().height = envelopeHeights[activeLength - 1];
+		}
+
+		if (activeLength < length) {
+			// The Release/Sustain has ended, stop playing the voice
+			voice.setPlaying(false);
+			Arrays.fill(samples, offset + activeLength, offset + length, 0);
+		}
+	}
+
 	private short modulate(short sample, int envelopeHeight16) {
 		return (short) ((sample * envelopeHeight16 + 0x4000) >> 15);
 	}
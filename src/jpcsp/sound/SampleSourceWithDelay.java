@@ -16,6 +16,8 @@ along with Jpcsp.  If not, see <http://www.gnu.org/licenses/>.
  */
 package jpcsp.sound;
 
+import java.util.Arrays;
+
 /**
  * @author gid15
  *
@@ -44,6 +46,21 @@ public class SampleSourceWithDelay implements ISampleSource {
 		return sample;
 	}
 
+	@Override
+	public void getNextSamples(int[] samples, int offset, int length) {
+		if (sampleIndex < delay) {
+			int delaySamples = Math.min(delay - sampleIndex, length);
+			Arrays.fill(samples, offset, offset + delaySamples, 0);
+			sampleIndex += delaySamples;
+			offset += delaySamples;
+			length -= delaySamples;
+		}
+
+		if (length > 0) {
+			sampleSource.getNextSamples(samples, offset, length);
+		}
+	}
+
 	@Override
 	public void resetToStart() {
 		sampleSource.resetToStart();
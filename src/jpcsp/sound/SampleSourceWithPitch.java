@@ -27,6 +27,7 @@ public class SampleSourceWithPitch implements ISampleSource {
 	private SoundVoice voice;
 	private int pitchRest;
 	private int currentSample;
+	private int[] sourceSamples = new int[0];
 
 	public SampleSourceWithPitch(ISampleSource sampleSource, SoundVoice voice) {
 		this.sampleSource = sampleSource;
@@ -48,6 +49,39 @@ public class SampleSourceWithPitch implements ISampleSource {
 		return currentSample;
 	}
 
+	@Override
+	public void getNextSamples(int[] samples, int offset, int length) {
+		final int pitch = getPitch();
+
+		// Count how many source samples are needed for this block
+		int sourceLength = 0;
+		int rest = pitchRest;
+		for (int i = 0; i < length; i++) {
+			while (rest <= 0) {
+				sourceLength++;
+				rest += sceSasCore.PSP_SAS_PITCH_BASE;
+			}
+			rest -= pitch;
+		}
+
+		if (sourceLength > sourceSamples.length) {
+			sourceSamples = new int[sourceLength];
+		}
+		sampleSource.getNextSamples(sourceSamples, 0, sourceLength);
+
+		// Resample the source samples
+		int sourceIndex = 0;
+		int endOffset = offset + length;
+		for (int i = offset; i < endOffset; i++) {
+			while (pitchRest <= 0) {
+				currentSample = sourceSamples[sourceIndex++];
+				pitchRest += sceSasCore.PSP_SAS_PITCH_BASE;
+			}
+			pitchRest -= pitch;
+			samples[i] = currentSample;
+		}
+	}
+
 	@Override
 	public void resetToStart() {
 		sampleSource.resetToStart();
@@ -16,11 +16,8 @@ along with Jpcsp.  If not, see <http://www.gnu.org/licenses/>.
  */
 package jpcsp.sound;
 
-import static jpcsp.HLE.modules.sceSasCore.PSP_SAS_OUTPUTMODE_STEREO;
-
 import org.apache.log4j.Logger;
 
-import jpcsp.HLE.Modules;
 import jpcsp.HLE.modules.sceSasCore;
 
 public class SoftwareSynthesizer {
@@ -33,7 +30,11 @@ public class SoftwareSynthesizer {
 		this.voice = voice;
 	}
 
-	public ISampleSource getSampleSource() {
+	/**
+	 * @param isStereo  true if the sceSasCore output mode is stereo
+	 * @return          the sample source of the voice
+	 */
+	public ISampleSource getSampleSource(boolean isStereo) {
 		if (sampleSource == null || voice.isChanged()) {
 			voice.setChanged(false);
 
@@ -41,13 +42,13 @@ public class SoftwareSynthesizer {
 				sampleSource = new SampleSourceAtrac3(voice.getAtracId());
 			} else if (voice.getPcmAddress() != 0) {
 				sampleSource = new SampleSourcePCM(voice, voice.getPcmAddress(), voice.getPcmSize(), voice.getLoopMode());
-				if (Modules.sceSasCoreModule.getOutputMode() == PSP_SAS_OUTPUTMODE_STEREO) {
+				if (isStereo) {
 					// Convert mono VAG to stereo
 					sampleSource = new SampleSourceMono(sampleSource);
 				}
 			} else if (voice.getVAGAddress() != 0) {
 				sampleSource = new SampleSourceVAG(voice, voice.getVAGAddress(), voice.getVAGSize(), voice.getLoopMode() != sceSasCore.PSP_SAS_LOOP_MODE_OFF);
-				if (Modules.sceSasCoreModule.getOutputMode() == PSP_SAS_OUTPUTMODE_STEREO) {
+				if (isStereo) {
 					// Convert mono VAG to stereo
 					sampleSource = new SampleSourceMono(sampleSource);
 				}
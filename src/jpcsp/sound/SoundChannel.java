@@ -18,8 +18,6 @@ package jpcsp.sound;
 
 import java.nio.ByteBuffer;
 
-import jpcsp.HLE.modules.sceAudio;
-
 import org.apache.log4j.Logger;
 import org.lwjgl.LWJGLException;
 import org.lwjgl.openal.AL;
@@ -27,7 +25,8 @@ import org.lwjgl.openal.AL10;
 import org.lwjgl.openal.AL11;
 
 public class SoundChannel {
-	private static Logger log = sceAudio.log;
+	// Same logger as sceAudio, without having to initialize the HLE modules
+	private static Logger log = Logger.getLogger("hle.sceAudio");
 	private static volatile boolean isExit = false;
 	public static final int FORMAT_MONO = 0x10;
 	public static final int FORMAT_STEREO = 0x00;
@@ -20,6 +20,8 @@ import static jpcsp.HLE.modules.sceSasCore.PSP_SAS_OUTPUTMODE_STEREO;
 import static jpcsp.sound.SoundChannel.MAX_VOLUME;
 
 import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 import org.apache.log4j.Logger;
 
@@ -29,52 +31,209 @@ import jpcsp.memory.IMemoryReader;
 import jpcsp.memory.IMemoryWriter;
 import jpcsp.memory.MemoryReader;
 import jpcsp.memory.MemoryWriter;
-
+import jpcsp.settings.AbstractBoolSettingsListener;
+import jpcsp.settings.Settings;
+
+/**
+ * Mix the sceSasCore voices.
+ *
+ * When enough voices are playing, the voices are mixed in parallel:
+ * they are partitioned into MixTask's executed on a ForkJoinPool, each task
+ * mixing its voices into its own partial buffer. The partial buffers are
+ * then summed into the final buffer. As only integer additions are involved,
+ * the result is identical to the sequential mixing.
+ * The Atrac3 voices are always mixed by the calling thread
+ * as their decoding is using the sceAtrac3plus module.
+ */
 public class SoundMixer {
 	private static Logger log = SoftwareSynthesizer.log;
+	// Minimum number of voices mixed by one MixTask
+	private static final int minVoicesPerTask = 4;
+	private static ForkJoinPool pool;
     private SoundVoice[] voices;
     private SoftwareSynthesizer[] synthesizers;
+    private boolean parallelMixing;
+    private int maxNumberTasks = Runtime.getRuntime().availableProcessors();
+    // Buffers reused across the calls to avoid allocations
+    private int[] mixedSamples = new int[0];
+    private final int[] activeVoices;
+    private final MixTask localTask;
+    private MixTask[] tasks;
+
+    private class ParallelMixingSettingsListerner extends AbstractBoolSettingsListener {
+		@Override
+		protected void settingsValueChanged(boolean value) {
+			setParallelMixing(value);
+		}
+    }
+
+    /**
+     * Mix a set of voices into a buffer.
+     * When executed on the ForkJoinPool, the voices are mixed into
+     * the partial buffer of the task.
+     */
+    private class MixTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private int[] partialSamples = new int[0];
+    	private int[] voiceSamples = new int[0];
+    	private final int[] voiceIndexes = new int[voices.length];
+    	private int numberVoices;
+    	private int samples;
+    	private boolean isStereo;
+
+    	public void init(int samples, boolean isStereo) {
+    		this.samples = samples;
+    		this.isStereo = isStereo;
+    		numberVoices = 0;
+    	}
+
+    	public void addVoice(int index) {
+    		voiceIndexes[numberVoices++] = index;
+    	}
+
+    	public boolean hasVoices() {
+    		return numberVoices > 0;
+    	}
+
+    	public int[] getPartialSamples() {
+    		return partialSamples;
+    	}
+
+    	private int[] getVoiceSamples(ISampleSource sampleSource, int startIndex, int length) {
+        	if (startIndex == 0) {
+        		sampleSource.resetToStart();
+        	}
+
+        	if (length > voiceSamples.length) {
+        		voiceSamples = new int[length];
+        	}
+        	sampleSource.getNextSamples(voiceSamples, 0, length);
+
+        	return voiceSamples;
+        }
+
+    	private void mixStereo(int[] stereoSamples, ISampleSource sampleSource, int startIndex, int length, int leftVol, int rightVol) {
+        	int[] samples = getVoiceSamples(sampleSource, startIndex, length);
+        	for (int i = 0, j = 0; i < length; i++, j += 2) {
+        		int sample = samples[i];
+        		stereoSamples[j] += SoundChannel.adjustSample(getSampleLeft(sample), leftVol);
+        		stereoSamples[j + 1] += SoundChannel.adjustSample(getSampleRight(sample), rightVol);
+        	}
+        }
+
+    	private void mixMono(int[] monoSamples, ISampleSource sampleSource, int startIndex, int length, int monoVol) {
+        	int[] samples = getVoiceSamples(sampleSource, startIndex, length);
+        	for (int i = 0; i < length; i++) {
+        		monoSamples[i] += SoundChannel.adjustSample(getSampleLeft(samples[i]), monoVol);
+        	}
+        }
+
+    	public void mix(int[] mixedSamples) {
+    		for (int i = 0; i < numberVoices; i++) {
+    			int index = voiceIndexes[i];
+    			SoundVoice voice = voices[index];
+    			ISampleSource sampleSource = synthesizers[index].getSampleSource(isStereo);
+        		if (isStereo) {
+        			mixStereo(mixedSamples, sampleSource, voice.getPlaySample(), samples, voice.getLeftVolume(), voice.getRightVolume());
+        		} else {
+        			mixMono(mixedSamples, sampleSource, voice.getPlaySample(), samples, voice.getLeftVolume());
+        		}
+    		}
+    	}
+
+		@Override
+		protected void compute() {
+			if (samples * 2 > partialSamples.length) {
+				partialSamples = new int[samples * 2];
+			} else {
+				Arrays.fill(partialSamples, 0, samples * 2, 0);
+			}
+
+			mix(partialSamples);
+		}
+    }
 
     public SoundMixer(SoundVoice[] voices) {
+    	this(voices, createSynthesizers(voices));
+    }
+
+    SoundMixer(SoundVoice[] voices, SoftwareSynthesizer[] synthesizers) {
     	this.voices = voices;
+    	this.synthesizers = synthesizers;
+
+    	activeVoices = new int[voices.length];
+    	localTask = new MixTask();
 
-    	synthesizers = new SoftwareSynthesizer[voices.length];
+    	Settings.getInstance().registerSettingsListener("SoundMixer", "emu.sas.parallelMixing", new ParallelMixingSettingsListerner());
+    }
+
+    private static SoftwareSynthesizer[] createSynthesizers(SoundVoice[] voices) {
+    	SoftwareSynthesizer[] synthesizers = new SoftwareSynthesizer[voices.length];
     	for (int i = 0; i < voices.length; i++) {
     		synthesizers[i] = new SoftwareSynthesizer(voices[i]);
     	}
+
+    	return synthesizers;
     }
 
-    private static short clampSample(int sample) {
-    	if (sample < Short.MIN_VALUE) {
-    		return Short.MIN_VALUE;
-    	} else if (sample > Short.MAX_VALUE) {
-    		return Short.MAX_VALUE;
+    private static synchronized ForkJoinPool getPool() {
+    	if (pool == null) {
+    		pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
     	}
 
-    	return (short) sample;
+    	return pool;
+    }
+
+    public boolean isParallelMixing() {
+    	return parallelMixing;
+    }
+
+    public void setParallelMixing(boolean parallelMixing) {
+    	this.parallelMixing = parallelMixing;
+    }
+
+    /**
+     * @param maxNumberTasks  the maximum number of MixTask's used for the parallel mixing,
+     *                        by default the number of available processors.
+     */
+    void setMaxNumberTasks(int maxNumberTasks) {
+    	this.maxNumberTasks = maxNumberTasks;
     }
 
-    private void mixStereo(int[] stereoSamples, ISampleSource sampleSource, int startIndex, int length, int leftVol, int rightVol) {
-    	int endIndex = startIndex + length;
-    	if (startIndex == 0) {
-    		sampleSource.resetToStart();
+    /**
+     * @param numberVoices  the number of voices that can be mixed in parallel
+     * @return              the number of MixTask's to be used,
+     *                      or 0 if the voices have to be mixed sequentially.
+     */
+    private int getNumberTasks(int numberVoices) {
+    	if (!parallelMixing || log.isTraceEnabled()) {
+    		return 0;
     	}
-    	for (int i = startIndex, j = 0; i < endIndex; i++, j += 2) {
-    		int sample = sampleSource.getNextSample();
-    		stereoSamples[j] += SoundChannel.adjustSample(getSampleLeft(sample), leftVol);
-    		stereoSamples[j + 1] += SoundChannel.adjustSample(getSampleRight(sample), rightVol);
+
+    	int numberTasks = Math.min(maxNumberTasks, numberVoices / minVoicesPerTask);
+    	if (numberTasks < 2) {
+    		// Not worth the synchronization overhead
+    		return 0;
     	}
-    }
 
-    private void mixMono(int[] monoSamples, ISampleSource sampleSource, int startIndex, int length, int monoVol) {
-    	int endIndex = startIndex + length;
-    	if (startIndex == 0) {
-    		sampleSource.resetToStart();
+    	if (tasks == null || tasks.length < numberTasks) {
+    		tasks = new MixTask[numberTasks];
+    		for (int i = 0; i < numberTasks; i++) {
+    			tasks[i] = new MixTask();
+    		}
     	}
-    	for (int i = startIndex, j = 0; i < endIndex; i++, j++) {
-    		int sample = sampleSource.getNextSample();
-    		monoSamples[j] += SoundChannel.adjustSample(getSampleLeft(sample), monoVol);
+
+    	return numberTasks;
+    }
+
+    private static short clampSample(int sample) {
+    	if (sample < Short.MIN_VALUE) {
+    		return Short.MIN_VALUE;
+    	} else if (sample > Short.MAX_VALUE) {
+    		return Short.MAX_VALUE;
     	}
+
+    	return (short) sample;
     }
 
     private void copyStereoSamplesToMem(int[] mixedSamples, int addr, int samples, int leftVol, int rightVol, boolean writeSamples) {
@@ -90,7 +249,7 @@ public class SoundMixer {
     		}
     	}
 
-    	int lengthInBytes = mixedSamples.length << 1;
+    	int lengthInBytes = samples << 2;
     	IMemoryWriter memoryWriter = MemoryWriter.getMemoryWriter(addr, lengthInBytes, 4);
     	for (int i = 0, j = 0; i < samples; i++, j += 2) {
     		short sampleLeft  = clampSample(mixedSamples[j]);
@@ -115,7 +274,7 @@ public class SoundMixer {
     		}
     	}
 
-    	int lengthInBytes = mixedSamples.length << 1;
+    	int lengthInBytes = samples << 1;
     	IMemoryWriter memoryWriter = MemoryWriter.getMemoryWriter(addr, lengthInBytes, 2);
     	for (int i = 0, j = 0; i < samples; i++, j++) {
     		short sampleMono  = clampSample(mixedSamples[j]);
@@ -125,15 +284,23 @@ public class SoundMixer {
     	memoryWriter.flush();
     }
 
-    private void mix(int[] mixedSamples, int addr, int samples, int leftVol, int rightVol, boolean writeSamples) {
-    	boolean isStereo = Modules.sceSasCoreModule.getOutputMode() == PSP_SAS_OUTPUTMODE_STEREO;
-
+    /**
+     * Mix the playing voices into a buffer.
+     *
+     * @param mixedSamples  the buffer receiving the mixed samples
+     * @param samples       the number of samples to be mixed
+     * @param isStereo      true if the samples are mixed in stereo
+     * @return              the number of voices mixed
+     */
+    int mixVoices(int[] mixedSamples, int samples, boolean isStereo) {
+    	// Find the voices to be mixed
+    	int numberActiveVoices = 0;
+    	int numberParallelVoices = 0;
     	for (int i = 0; i < voices.length; i++) {
     		SoundVoice voice = voices[i];
 
             if (voice.isPlaying() && !voice.isPaused()) {
-            	ISampleSource sampleSource = synthesizers[i].getSampleSource();
-            	int playSample = voice.getPlaySample();
+            	ISampleSource sampleSource = synthesizers[i].getSampleSource(isStereo);
             	if (sampleSource.isEnded()) {
             		// End of voice sample reached
             		if (log.isTraceEnabled()) {
@@ -141,18 +308,72 @@ public class SoundMixer {
             		}
             		voice.setPlaying(false);
             	} else {
-            		if (isStereo) {
-            			mixStereo(mixedSamples, sampleSource, playSample, samples, voice.getLeftVolume(), voice.getRightVolume());
-            		} else {
-            			mixMono(mixedSamples, sampleSource, playSample, samples, voice.getLeftVolume());
+            		activeVoices[numberActiveVoices++] = i;
+            		if (voice.getAtracId() == null) {
+            			numberParallelVoices++;
             		}
-            		writeSamples = true;
-
-            		voice.setPlaySample(1);
             	}
             }
         }
 
+    	localTask.init(samples, isStereo);
+    	int numberTasks = getNumberTasks(numberParallelVoices);
+    	if (numberTasks == 0) {
+    		for (int i = 0; i < numberActiveVoices; i++) {
+    			localTask.addVoice(activeVoices[i]);
+    		}
+    		localTask.mix(mixedSamples);
+    	} else {
+    		for (int i = 0; i < numberTasks; i++) {
+    			tasks[i].init(samples, isStereo);
+    		}
+
+    		// Distribute the voices to the tasks,
+    		// the Atrac3 voices are mixed by the current thread.
+    		for (int i = 0, taskIndex = 0; i < numberActiveVoices; i++) {
+    			int index = activeVoices[i];
+    			if (voices[index].getAtracId() == null) {
+    				tasks[taskIndex].addVoice(index);
+    				taskIndex = (taskIndex + 1) % numberTasks;
+    			} else {
+    				localTask.addVoice(index);
+    			}
+    		}
+
+    		ForkJoinPool pool = getPool();
+    		for (int i = 0; i < numberTasks; i++) {
+    			tasks[i].reinitialize();
+    			pool.execute(tasks[i]);
+    		}
+
+    		localTask.mix(mixedSamples);
+
+    		// Sum the partial buffers
+    		final int length = samples * 2;
+    		for (int i = 0; i < numberTasks; i++) {
+    			tasks[i].join();
+    			int[] partialSamples = tasks[i].getPartialSamples();
+    			for (int j = 0; j < length; j++) {
+    				mixedSamples[j] += partialSamples[j];
+    			}
+    		}
+    	}
+
+    	for (int i = 0; i < numberActiveVoices; i++) {
+    		voices[activeVoices[i]].setPlaySample(1);
+    	}
+
+    	return numberActiveVoices;
+    }
+
+    private void mix(int[] mixedSamples, int addr, int samples, int leftVol, int rightVol, boolean writeSamples) {
+    	boolean isStereo = Modules.sceSasCoreModule.getOutputMode() == PSP_SAS_OUTPUTMODE_STEREO;
+
+    	int numberActiveVoices = mixVoices(mixedSamples, samples, isStereo);
+    	if (numberActiveVoices > 0) {
+    		writeSamples = true;
+    	}
+
     	if (isStereo) {
     		copyStereoSamplesToMem(mixedSamples, addr, samples, leftVol, rightVol, writeSamples);
     	} else {
@@ -160,14 +381,22 @@ public class SoundMixer {
     	}
     }
 
+    private int[] getMixedSamples(int samples) {
+    	if (samples * 2 > mixedSamples.length) {
+    		mixedSamples = new int[samples * 2];
+    	}
+
+    	return mixedSamples;
+    }
+
     /**
      * Synthesizing audio function.
      * @param addr Output address for the PCM data (must be 64-byte aligned).
      * @param samples Number of samples returned.
      */
     public void synthesize(int addr, int samples) {
-    	int[] mixedSamples = new int[samples * 2];
-    	Arrays.fill(mixedSamples, 0);
+    	int[] mixedSamples = getMixedSamples(samples);
+    	Arrays.fill(mixedSamples, 0, samples * 2, 0);
 
     	mix(mixedSamples, addr, samples, MAX_VOLUME, MAX_VOLUME, true);
     }
@@ -182,23 +411,23 @@ public class SoundMixer {
      *                 This volume is not affecting the currently played samples.
      */
     public void synthesizeWithMix(int addr, int samples, int leftVol, int rightVol) {
-    	int[] mixedSamples = new int[samples * 2];
+    	int[] mixedSamples = getMixedSamples(samples);
 
     	// Read the input buffer into mixedSamples.
     	// Check first for simple cases...
     	if (leftVol == 0 && rightVol == 0) {
     		// Do not mix with the input buffer
-    		Arrays.fill(mixedSamples, 0);
+    		Arrays.fill(mixedSamples, 0, samples * 2, 0);
     	} else if (leftVol == MAX_VOLUME && rightVol == MAX_VOLUME) {
     		// Mix with the input buffer with no volume change
-	    	int lengthInBytes = mixedSamples.length * 2;
+	    	int lengthInBytes = samples * 4;
 	    	IMemoryReader memoryReader = MemoryReader.getMemoryReader(addr, lengthInBytes, 2);
-	    	for (int i = 0; i < mixedSamples.length; i++) {
+	    	for (int i = 0; i < samples * 2; i++) {
 	    		mixedSamples[i] = (short) memoryReader.readNext();
 	    	}
     	} else {
     		// Mix with the input buffer with a volume adjustment
-	    	int lengthInBytes = mixedSamples.length * 2;
+	    	int lengthInBytes = samples * 4;
 	    	IMemoryReader memoryReader = MemoryReader.getMemoryReader(addr, lengthInBytes, 2);
 	    	for (int i = 0; i < samples; i++) {
 	    		short sampleLeft = (short) memoryReader.readNext();
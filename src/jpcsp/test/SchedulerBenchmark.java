@@ -0,0 +1,385 @@
+/*
+This file is part of jpcsp.
+
+Jpcsp is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Jpcsp is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with Jpcsp.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package jpcsp.test;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Random;
+
+import jpcsp.HLE.kernel.types.IAction;
+import jpcsp.scheduler.Scheduler;
+
+/**
+ * Replay a trace of scheduler operations against the Scheduler
+ * and against the previous LinkedList-based implementation,
+ * checking that both return the actions in the same order
+ * and displaying the time spent by each implementation.
+ *
+ * Usage: SchedulerBenchmark [trace file]
+ *        SchedulerBenchmark -save <trace file>
+ *
+ * The trace file is a text file with one operation per line:
+ *     A <schedule> <action>   addAction(schedule, action)
+ *     R <schedule> <action>   removeAction(schedule, action)
+ *     G <now>                 getAction(now) until no action is returned
+ * When no trace file is given, a trace is generated, simulating
+ * a number of pending actions similar to a running application
+ * (thread wait timeouts, vblank, GE and audio actions...).
+ */
+public class SchedulerBenchmark {
+	private static final int ADD = 0;
+	private static final int REMOVE = 1;
+	private static final int GET = 2;
+	private static final int numberActions = 500;
+	private static final int numberOperations = 1000000;
+	private static final int numberRuns = 10;
+	private int[] types;
+	private long[] values;
+	private int[] actionIds;
+	private int size;
+	private IAction[] actions;
+
+	private static class BenchmarkAction implements IAction {
+		private final int id;
+
+		public BenchmarkAction(int id) {
+			this.id = id;
+		}
+
+		@Override
+		public void execute() {
+		}
+
+		@Override
+		public String toString() {
+			return Integer.toString(id);
+		}
+	}
+
+	private static interface IScheduler {
+		public void addAction(long schedule, IAction action);
+		public void removeAction(long schedule, IAction action);
+		public IAction getAction(long now);
+	}
+
+	private static class HeapScheduler implements IScheduler {
+		// The RuntimeContext is not running, do not notify it
+		private final Scheduler scheduler = new Scheduler() {
+			@Override
+			protected void onNextScheduleModified() {
+			}
+		};
+
+		public HeapScheduler() {
+			scheduler.reset();
+		}
+
+		@Override
+		public void addAction(long schedule, IAction action) {
+			scheduler.addAction(schedule, action);
+		}
+
+		@Override
+		public void removeAction(long schedule, IAction action) {
+			scheduler.removeAction(schedule, action);
+		}
+
+		@Override
+		public IAction getAction(long now) {
+			return scheduler.getAction(now);
+		}
+	}
+
+	/**
+	 * The Scheduler implementation before the introduction of the binary heap.
+	 */
+	private static class LinkedListScheduler implements IScheduler {
+		private static class Entry {
+			public long schedule;
+			public IAction action;
+
+			public Entry(long schedule, IAction action) {
+				this.schedule = schedule;
+				this.action = action;
+			}
+		}
+		private final List<Entry> actions = new LinkedList<Entry>();
+		private Entry nextAction;
+
+		private void updateNextAction() {
+			nextAction = null;
+			for (Entry entry : actions) {
+				if (nextAction == null || entry.schedule < nextAction.schedule) {
+					nextAction = entry;
+				}
+			}
+		}
+
+		@Override
+		public synchronized void addAction(long schedule, IAction action) {
+			Entry entry = new Entry(schedule, action);
+			actions.add(entry);
+			if (nextAction == null || schedule < nextAction.schedule) {
+				nextAction = entry;
+				}
+		}
+
+		@Override
+		public synchronized void removeAction(long schedule, IAction action) {
+			for (Iterator<Entry> it = actions.iterator(); it.hasNext(); ) {
+				Entry entry = it.next();
+				if (entry.action == action && entry.schedule == schedule) {
+					it.remove();
+					updateNextAction();
+					break;
+				}
+			}
+		}
+
+		@Override
+		public synchronized IAction getAction(long now) {
+			if (nextAction == null || now < nextAction.schedule) {
+				return null;
+			}
+
+			IAction action = nextAction.action;
+			actions.remove(nextAction);
+			updateNextAction();
+
+			return action;
+		}
+	}
+
+	public static void main(String[] args) {
+		SchedulerBenchmark benchmark = new SchedulerBenchmark();
+		try {
+			if (args.length >= 2 && "-save".equals(args[0])) {
+				benchmark.generateTrace();
+				benchmark.saveTrace(args[1]);
+				return;
+			} else if (args.length >= 1) {
+				benchmark.loadTrace(args[0]);
+			} else {
+				benchmark.generateTrace();
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+			return;
+		}
+
+		benchmark.run();
+	}
+
+	private void addOperation(int type, long value, int actionId) {
+		if (size >= types.length) {
+			int newLength = types.length * 2;
+			int[] newTypes = new int[newLength];
+			long[] newValues = new long[newLength];
+			int[] newActionIds = new int[newLength];
+			System.arraycopy(types, 0, newTypes, 0, size);
+			System.arraycopy(values, 0, newValues, 0, size);
+			System.arraycopy(actionIds, 0, newActionIds, 0, size);
+			types = newTypes;
+			values = newValues;
+			actionIds = newActionIds;
+		}
+		types[size] = type;
+		values[size] = value;
+		actionIds[size] = actionId;
+		size++;
+	}
+
+	private void initOperations() {
+		types = new int[1024];
+		values = new long[1024];
+		actionIds = new int[1024];
+		size = 0;
+	}
+
+	private void initActions(int count) {
+		actions = new IAction[count];
+		for (int i = 0; i < count; i++) {
+			actions[i] = new BenchmarkAction(i);
+		}
+	}
+
+	private void generateTrace() {
+		initOperations();
+		initActions(numberActions);
+
+		Random random = new Random(0);
+		long now = 0;
+		List<long[]> pending = new ArrayList<long[]>();
+		for (int i = 0; i < numberOperations; i++) {
+			int operation = random.nextInt(10);
+			if (operation < 6 || pending.isEmpty()) {
+				// Most actions are scheduled in the near future
+				// (e.g. thread wait timeouts), some are further away.
+				long delay = random.nextInt(10) == 0 ? random.nextInt(1000000) : random.nextInt(20000);
+				int actionId = random.nextInt(numberActions);
+				addOperation(ADD, now + delay, actionId);
+				pending.add(new long[] { now + delay, actionId });
+			} else if (operation < 8) {
+				// Cancel a pending action (e.g. a wait ended before its timeout)
+				long[] action = pending.remove(random.nextInt(pending.size()));
+				addOperation(REMOVE, action[0], (int) action[1]);
+			} else {
+				now += random.nextInt(2000);
+				addOperation(GET, now, 0);
+				for (Iterator<long[]> it = pending.iterator(); it.hasNext(); ) {
+					if (it.next()[0] <= now) {
+						it.remove();
+					}
+				}
+			}
+		}
+	}
+
+	private void loadTrace(String fileName) throws IOException {
+		initOperations();
+		int maxActionId = 0;
+		BufferedReader reader = new BufferedReader(new FileReader(fileName));
+		try {
+			while (true) {
+				String line = reader.readLine();
+				if (line == null) {
+					break;
+				}
+				String[] parts = line.trim().split("\\s+");
+				if (parts.length == 3 && "A".equals(parts[0])) {
+					int actionId = Integer.parseInt(parts[2]);
+					addOperation(ADD, Long.parseLong(parts[1]), actionId);
+					maxActionId = Math.max(maxActionId, actionId);
+				} else if (parts.length == 3 && "R".equals(parts[0])) {
+					int actionId = Integer.parseInt(parts[2]);
+					addOperation(REMOVE, Long.parseLong(parts[1]), actionId);
+					maxActionId = Math.max(maxActionId, actionId);
+				} else if (parts.length == 2 && "G".equals(parts[0])) {
+					addOperation(GET, Long.parseLong(parts[1]), 0);
+				}
+			}
+		} finally {
+			reader.close();
+		}
+		initActions(maxActionId + 1);
+	}
+
+	private void saveTrace(String fileName) throws IOException {
+		PrintWriter writer = new PrintWriter(new FileWriter(fileName));
+		try {
+			for (int i = 0; i < size; i++) {
+				switch (types[i]) {
+					case ADD:    writer.println(String.format("A %d %d", values[i], actionIds[i])); break;
+					case REMOVE: writer.println(String.format("R %d %d", values[i], actionIds[i])); break;
+					case GET:    writer.println(String.format("G %d", values[i])); break;
+				}
+			}
+		} finally {
+			writer.close();
+		}
+	}
+
+	/**
+	 * Replay the trace.
+	 *
+	 * @param scheduler  the scheduler implementation
+	 * @param result     when not null, receives the ids of the actions
+	 *                   in the order they have been returned
+	 * @return           a checksum of the returned actions
+	 */
+	private long replay(IScheduler scheduler, List<Integer> result) {
+		long checksum = 0;
+		for (int i = 0; i < size; i++) {
+			switch (types[i]) {
+				case ADD:
+					scheduler.addAction(values[i], actions[actionIds[i]]);
+					break;
+				case REMOVE:
+					scheduler.removeAction(values[i], actions[actionIds[i]]);
+					break;
+				case GET:
+					while (true) {
+						IAction action = scheduler.getAction(values[i]);
+						if (action == null) {
+							break;
+						}
+						int id = ((BenchmarkAction) action).id;
+						checksum = checksum * 31 + id;
+						if (result != null) {
+							result.add(id);
+						}
+					}
+					break;
+			}
+		}
+
+		return checksum;
+	}
+
+	private long benchmark(String name, IScheduler[] schedulers) {
+		long checksum = 0;
+		long bestDuration = Long.MAX_VALUE;
+		for (int run = 0; run < schedulers.length; run++) {
+			long start = System.nanoTime();
+			checksum += replay(schedulers[run], null);
+			long duration = System.nanoTime() - start;
+			bestDuration = Math.min(bestDuration, duration);
+		}
+		System.out.println(String.format("%-10s: %d ms (best of %d runs)", name, bestDuration / 1000000, schedulers.length));
+
+		return checksum;
+	}
+
+	public void run() {
+		System.out.println(String.format("Replaying %d operations on %d actions", size, actions.length));
+
+		// Check first that both implementations are returning the actions in the same order
+		List<Integer> expected = new ArrayList<Integer>();
+		List<Integer> result = new ArrayList<Integer>();
+		replay(new LinkedListScheduler(), expected);
+		replay(new HeapScheduler(), result);
+		if (!expected.equals(result)) {
+			for (int i = 0; i < Math.min(expected.size(), result.size()); i++) {
+				if (!expected.get(i).equals(result.get(i))) {
+					System.out.println(String.format("FAILED: different action at index %d: expected %d, got %d", i, expected.get(i), result.get(i)));
+					return;
+				}
+			}
+			System.out.println(String.format("FAILED: expected %d actions, got %d", expected.size(), result.size()));
+			return;
+		}
+		System.out.println(String.format("SUCCESS: %d actions executed in the same order", result.size()));
+
+		IScheduler[] linkedListSchedulers = new IScheduler[numberRuns];
+		IScheduler[] heapSchedulers = new IScheduler[numberRuns];
+		for (int i = 0; i < numberRuns; i++) {
+			linkedListSchedulers[i] = new LinkedListScheduler();
+			heapSchedulers[i] = new HeapScheduler();
+		}
+		long checksum = 0;
+		checksum += benchmark("LinkedList", linkedListSchedulers);
+		checksum += benchmark("Heap", heapSchedulers);
+		System.out.println(String.format("Checksum 0x%X", checksum));
+	}
+}
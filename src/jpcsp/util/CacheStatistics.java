@@ -19,18 +19,26 @@ package jpcsp.util;
 public class CacheStatistics {
 	private String name;
 	private int cacheMaxSize;
+	private long cacheMaxMemory;
 	public long totalHits = 0;			// Number of times a vertex was searched
 	public long successfulHits = 0;		// Number of times a vertex was successfully found
 	public long notPresentHits = 0;		// Number of times a vertex was not present
 	public long changedHits = 0;		// Number of times a vertex was present but had to be discarded because it was changed
 	public long entriesRemoved = 0;		// Number of times a vertex had to be removed from the cache due to the size limit
 	public long maxSizeUsed = 0;		// Maximum size of the cache
+	public long memoryUsed = 0;			// Current memory used by the cache entries (in bytes)
+	public long maxMemoryUsed = 0;		// Maximum memory used by the cache entries (in bytes)
 
 	public CacheStatistics(String name, int cacheMaxSize) {
 		this.name = name;
 		this.cacheMaxSize = cacheMaxSize;
 	}
 
+	public CacheStatistics(String name, int cacheMaxSize, long cacheMaxMemory) {
+		this(name, cacheMaxSize);
+		this.cacheMaxMemory = cacheMaxMemory;
+	}
+
 	private String percentage(long n, long max) {
 		return String.format("%.2f%%", (n / (double) max) * 100);
 	}
@@ -46,6 +54,7 @@ public class CacheStatistics {
 		changedHits = 0;
 		entriesRemoved = 0;
 		maxSizeUsed = 0;
+		maxMemoryUsed = memoryUsed;
 	}
 
 	@Override
@@ -64,7 +73,13 @@ public class CacheStatistics {
 		    result.append("NotPresentHits=" + notPresentHits + " (" + percentage(notPresentHits) + "), ");
 		    result.append("ChangedHits=" + changedHits + " (" + percentage(changedHits) + "), ");
 		    result.append("EntriesRemoved=" + entriesRemoved + ", ");
-		    result.append("MaxSizeUsed=" + maxSizeUsed + " (" + percentage(maxSizeUsed, cacheMaxSize) + ")");
+		    result.append("MaxSizeUsed=" + maxSizeUsed);
+		    if (cacheMaxSize > 0) {
+		    	result.append(" (" + percentage(maxSizeUsed, cacheMaxSize) + ")");
+		    }
+		    if (cacheMaxMemory > 0) {
+		    	result.append(", MaxMemoryUsed=" + maxMemoryUsed + " (" + percentage(maxMemoryUsed, cacheMaxMemory) + ")");
+		    }
 		}
 		return result.toString();
 	}
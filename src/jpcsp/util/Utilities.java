@@ -67,6 +67,7 @@ import jpcsp.filesystems.umdiso.UmdIsoFile;
 import jpcsp.memory.IMemoryReader;
 import jpcsp.memory.IMemoryWriter;
 import jpcsp.memory.MemoryReader;
+import jpcsp.memory.MemoryWriteTracker;
 import jpcsp.memory.MemoryWriter;
 
 public class Utilities {
@@ -1443,6 +1444,7 @@ public class Utilities {
 		// Optimize the most common case
     	if (RuntimeContext.hasMemoryInt()) {
     		System.arraycopy(a, offset, RuntimeContext.getMemoryInt(), (address & addressMask) >> 2, length4);
+    		MemoryWriteTracker.write(address, length4 << 2);
     	} else {
 	    	IMemoryWriter memoryWriter = MemoryWriter.getMemoryWriter(address, length, 4);
 	    	for (int i = 0; i < length4; i++) {
@@ -0,0 +1,116 @@
+package jpcsp.Allegrex.compiler;
+
+import jpcsp.Allegrex.Instructions;
+import jpcsp.MemoryMap;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class CodeBlockLookupTest {
+    private static final int CALLER_ADDRESS = MemoryMap.START_USERSPACE + 0x00010000;
+    // Located several pages after the caller
+    private static final int CALLEE_ADDRESS = MemoryMap.START_USERSPACE + 0x00020000;
+    private static final int OTHER_ADDRESS = MemoryMap.START_USERSPACE + 0x00018000;
+    private CodeBlockLookup lookup;
+    private CodeBlock caller;
+    private CodeBlock other;
+
+    private static CodeBlock createCodeBlock(int address, int numberInstructions) {
+        CodeBlock codeBlock = new CodeBlock(address, 0);
+        addInstructions(codeBlock, address, numberInstructions);
+
+        return codeBlock;
+    }
+
+    private static void addInstructions(CodeBlock codeBlock, int address, int numberInstructions) {
+        for (int i = 0; i < numberInstructions; i++) {
+            codeBlock.addInstruction(address + (i << 2), 0, Instructions.NOP, false, false, 0, false);
+        }
+    }
+
+    private List<CodeBlock> getCodeBlocks(int address, int size) {
+        List<CodeBlock> codeBlocks = new ArrayList<CodeBlock>();
+        lookup.getCodeBlocks(address, address + size - 1, codeBlocks);
+
+        return codeBlocks;
+    }
+
+    private static int count(List<CodeBlock> codeBlocks, CodeBlock codeBlock) {
+        int count = 0;
+        for (CodeBlock listItem : codeBlocks) {
+            if (listItem == codeBlock) {
+                count++;
+            }
+        }
+
+        return count;
+    }
+
+    @Before
+    public void setUp() {
+        lookup = new CodeBlockLookup();
+
+        // A code block having inlined a function located in another page:
+        // its memory ranges are not contiguous
+        caller = createCodeBlock(CALLER_ADDRESS, 8);
+        addInstructions(caller, CALLEE_ADDRESS, 4);
+        caller.addInlinedCall(CALLER_ADDRESS + 8);
+        lookup.add(caller);
+
+        other = createCodeBlock(OTHER_ADDRESS, 0x100);
+        lookup.add(other);
+    }
+
+    @Test
+    public void testCalleeRange() {
+        List<CodeBlock> codeBlocks = getCodeBlocks(CALLEE_ADDRESS + 4, 4);
+        Assert.assertEquals(1, count(codeBlocks, caller));
+        Assert.assertEquals(0, count(codeBlocks, other));
+    }
+
+    @Test
+    public void testCallerRange() {
+        List<CodeBlock> codeBlocks = getCodeBlocks(CALLER_ADDRESS, 64);
+        Assert.assertEquals(1, count(codeBlocks, caller));
+        Assert.assertEquals(0, count(codeBlocks, other));
+    }
+
+    @Test
+    public void testRangeBetweenCallerAndCallee() {
+        List<CodeBlock> codeBlocks = getCodeBlocks(CALLER_ADDRESS + 0x1000, 64);
+        Assert.assertEquals(0, count(codeBlocks, caller));
+    }
+
+    @Test
+    public void testCompleteRange() {
+        // Each code block is only returned once, even if it is listed in several pages
+        List<CodeBlock> codeBlocks = getCodeBlocks(CALLER_ADDRESS, CALLEE_ADDRESS + 0x1000 - CALLER_ADDRESS);
+        Assert.assertEquals(1, count(codeBlocks, caller));
+        Assert.assertEquals(1, count(codeBlocks, other));
+        Assert.assertEquals(2, codeBlocks.size());
+
+        // And again by the next lookup
+        codeBlocks = getCodeBlocks(CALLER_ADDRESS, CALLEE_ADDRESS + 0x1000 - CALLER_ADDRESS);
+        Assert.assertEquals(2, codeBlocks.size());
+    }
+
+    @Test
+    public void testRemove() {
+        lookup.remove(caller);
+        Assert.assertEquals(0, count(getCodeBlocks(CALLEE_ADDRESS, 16), caller));
+        Assert.assertEquals(0, count(getCodeBlocks(CALLER_ADDRESS, 32), caller));
+    }
+
+    @Test
+    public void testOutsideRam() {
+        CodeBlock scratchpad = createCodeBlock(MemoryMap.START_SCRATCHPAD, 4);
+        lookup.add(scratchpad);
+        // The code blocks outside the RAM are always returned
+        Assert.assertEquals(1, count(getCodeBlocks(CALLER_ADDRESS, 4), scratchpad));
+        lookup.remove(scratchpad);
+        Assert.assertEquals(0, count(getCodeBlocks(CALLER_ADDRESS, 4), scratchpad));
+    }
+}
@@ -0,0 +1,174 @@
+package jpcsp.graphics;
+
+import jpcsp.Memory;
+import jpcsp.memory.FastMemory;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+public class GeListDecoderTest {
+    private static final int LIST_ADDRESS = 0x08900000;
+    private static final int SUB_LIST_ADDRESS = 0x08900100;
+    private static final int VERTEX_ADDRESS = 0x08900400;
+    private static final int INDEX_ADDRESS = 0x08900500;
+    // Position as float and 16-bit indices
+    private static final int VTYPE_INDEXED = 0x1180;
+    // Position as float, no indices
+    private static final int VTYPE_NOT_INDEXED = 0x0180;
+
+    // Display list recorded from a sceGu application:
+    // an indexed PRIM in a called sub-list, an indexed PRIM
+    // and a non-indexed PRIM in the main list.
+    private static final int[] list = {
+        0x10080000, // BASE 0x08000000
+        0x12000000 | VTYPE_INDEXED,
+        0x01900400, // VADDR 0x08900400
+        0x02900500, // IADDR 0x08900500
+        0x0A900100, // CALL 0x08900100
+        0x04030003, // PRIM TRIANGLES, 3 vertices
+        0x12000000 | VTYPE_NOT_INDEXED,
+        0x04030003, // PRIM TRIANGLES, 3 vertices
+        0x0F000000, // FINISH
+        0x0C000000  // END
+    };
+    private static final int[] subList = {
+        0x04030006, // PRIM TRIANGLES, 6 vertices
+        0x0B000000  // RET
+    };
+    private static final int[] indices = {
+        0, 1, 2, 3, 4, 5, // used by the PRIM of the sub-list
+        7, 2, 9           // used by the indexed PRIM of the main list
+    };
+
+    @BeforeClass
+    public static void setUp() {
+        // Use a memory without any module, the memory content is written directly
+        FastMemory memory = new FastMemory();
+        memory.allocate();
+        Memory.setInstance(memory);
+
+        int[] all = memory.getAll();
+        for (int i = 0; i < list.length; i++) {
+            all[((LIST_ADDRESS & Memory.addressMask) >> 2) + i] = list[i];
+        }
+        for (int i = 0; i < subList.length; i++) {
+            all[((SUB_LIST_ADDRESS & Memory.addressMask) >> 2) + i] = subList[i];
+        }
+        for (int i = 0; i < indices.length; i++) {
+            int offset = ((INDEX_ADDRESS & Memory.addressMask) >> 2) + (i >> 1);
+            all[offset] |= indices[i] << ((i & 1) << 4);
+        }
+    }
+
+    private static int assertCommand(GeCommandStream stream, int offset, int pc, int instruction) {
+        Assert.assertTrue("Missing record", offset < stream.getLength());
+        Assert.assertEquals(String.format("pc at offset %d", offset), pc, stream.getPc(offset));
+        Assert.assertEquals(String.format("instruction at offset %d", offset), instruction, stream.getInstruction(offset));
+
+        return stream.getNextOffset(offset);
+    }
+
+    private static int assertMainList(GeCommandStream stream, int offset, int fromIndex, int toIndex) {
+        for (int i = fromIndex; i < toIndex; i++) {
+            offset = assertCommand(stream, offset, LIST_ADDRESS + (i << 2), list[i]);
+        }
+
+        return offset;
+    }
+
+    private static int assertSubList(GeCommandStream stream, int offset) {
+        Assert.assertTrue(stream.isPrim(offset));
+        Assert.assertEquals(VERTEX_ADDRESS, stream.getVertexAddress(offset));
+        Assert.assertEquals(VTYPE_INDEXED, stream.getVertexType(offset));
+        Assert.assertEquals(INDEX_ADDRESS, stream.getIndexAddress(offset));
+        Assert.assertEquals(2, stream.getBytesPerIndex(offset));
+        Assert.assertEquals(0, stream.getMinIndex(offset));
+        Assert.assertEquals(5, stream.getMaxIndex(offset));
+        Assert.assertEquals(GeCommandStream.FLAG_INDEX_INFO | GeCommandStream.FLAG_INDEX_SEQUENCE, stream.getFlags(offset));
+        offset = assertCommand(stream, offset, SUB_LIST_ADDRESS, subList[0]);
+
+        return assertCommand(stream, offset, SUB_LIST_ADDRESS + 4, subList[1]);
+    }
+
+    private static void assertCompleteList(GeCommandStream stream) {
+        int offset = assertMainList(stream, 0, 0, 5);
+        offset = assertSubList(stream, offset);
+
+        // Indexed PRIM, using the indices following the ones of the sub-list
+        Assert.assertTrue(stream.isPrim(offset));
+        Assert.assertEquals(INDEX_ADDRESS + 12, stream.getIndexAddress(offset));
+        Assert.assertEquals(2, stream.getMinIndex(offset));
+        Assert.assertEquals(9, stream.getMaxIndex(offset));
+        Assert.assertEquals(GeCommandStream.FLAG_INDEX_INFO, stream.getFlags(offset));
+        offset = assertMainList(stream, offset, 5, 7);
+
+        // Non-indexed PRIM
+        Assert.assertTrue(stream.isPrim(offset));
+        Assert.assertEquals(VERTEX_ADDRESS, stream.getVertexAddress(offset));
+        Assert.assertEquals(VTYPE_NOT_INDEXED, stream.getVertexType(offset));
+        Assert.assertEquals(0, stream.getFlags(offset));
+        offset = assertMainList(stream, offset, 7, 9);
+
+        // The decoding stops at the FINISH command
+        Assert.assertEquals(stream.getLength(), offset);
+        Assert.assertTrue(stream.isComplete());
+    }
+
+    @Test
+    public void testDecodeList() {
+        GeCommandStream stream = GeListDecoder.decodeList(LIST_ADDRESS, 0, 0, 0, 0, 0, 0);
+        assertCompleteList(stream);
+    }
+
+    @Test
+    public void testDecodeListUpToStallAddress() {
+        GeCommandStream stream = GeListDecoder.decodeList(LIST_ADDRESS, LIST_ADDRESS + 5 * 4, 0, 0, 0, 0, 0);
+        int offset = assertMainList(stream, 0, 0, 5);
+        offset = assertSubList(stream, offset);
+
+        Assert.assertEquals(stream.getLength(), offset);
+        Assert.assertFalse(stream.isComplete());
+    }
+
+    @Test
+    public void testFindCommand() {
+        GeCommandStream stream = GeListDecoder.decodeList(LIST_ADDRESS, 0, 0, 0, 0, 0, 0);
+        int offset = stream.findCommand(0, 16, LIST_ADDRESS + 5 * 4, list[5]);
+        Assert.assertTrue(offset >= 0);
+        Assert.assertEquals(INDEX_ADDRESS + 12, stream.getIndexAddress(offset));
+
+        // Not found in the searched records
+        offset = stream.findCommand(0, 2, LIST_ADDRESS + 5 * 4, list[5]);
+        Assert.assertTrue(offset < 0);
+        Assert.assertEquals(stream.getNextOffset(stream.getNextOffset(0)), ~offset);
+
+        // Not found up to the end of the stream
+        offset = stream.findCommand(0, 16, LIST_ADDRESS + 9 * 4, list[9]);
+        Assert.assertEquals(stream.getLength(), ~offset);
+    }
+
+    @Test
+    public void testReplay() throws IOException {
+        GeCommandStream stream = GeListDecoder.decodeList(LIST_ADDRESS, 0, 0, 0, 0, 0, 0);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        stream.write(new DataOutputStream(bytes));
+        GeCommandStream replay = GeCommandStream.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+
+        Assert.assertEquals(stream.getLength(), replay.getLength());
+        // The memory content is unknown when replaying
+        Assert.assertEquals(0, replay.getGeneration());
+        assertCompleteList(replay);
+    }
+
+    @Test(expected = IOException.class)
+    public void testReadInvalidStream() throws IOException {
+        GeCommandStream.read(new DataInputStream(new ByteArrayInputStream(new byte[12])));
+    }
+}
@@ -0,0 +1,155 @@
+package jpcsp.media.codec.h264;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+public class H264UtilsTest {
+    private static final int SENTINEL = 0x12345678;
+    private final Random random = new Random(0);
+
+    private static int clamp(int value) {
+        return Math.max(0, Math.min(255, value));
+    }
+
+    /**
+     * The YCbCr to ABGR conversion of one pixel, as computed
+     * by the previous implementation.
+     */
+    private static int referenceABGR(int luma, int cb, int cr, int alpha) {
+        int c = luma - 16;
+        int d = cb - 128;
+        int e = cr - 128;
+
+        int red = clamp((298 * c + 409 * e + 128) >> 8);
+        int green = clamp((298 * c - 100 * d - 208 * e + 128) >> 8);
+        int blue = clamp((298 * c + 516 * d + 128) >> 8);
+
+        return (alpha << 24) | (blue << 16) | (green << 8) | red;
+    }
+
+    private static int referenceABGR(int imageWidth, int x, int y, int luma[], int cb[], int cr[], int alpha) {
+        int offset2 = (y >> 1) * (imageWidth >> 1) + (x >> 1);
+        return referenceABGR(luma[y * imageWidth + x], cb[offset2], cr[offset2], alpha);
+    }
+
+    private int[] randomComponent(int size) {
+        int component[] = new int[size];
+        for (int i = 0; i < size; i++) {
+            component[i] = random.nextInt(256);
+        }
+
+        return component;
+    }
+
+    @After
+    public void tearDown() {
+        H264Utils.setAlpha(0xFF);
+    }
+
+    private void testImage(int width, int height, int alpha) {
+        int luma[] = randomComponent(width * height);
+        int cb[] = randomComponent((width >> 1) * (height >> 1));
+        int cr[] = randomComponent((width >> 1) * (height >> 1));
+
+        int abgr[] = new int[width * height];
+        H264Utils.YUV2ABGR(width, height, luma, cb, cr, abgr);
+        int argb[] = new int[width * height];
+        H264Utils.YUV2ARGB(width, height, luma, cb, cr, argb);
+
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int expected = referenceABGR(width, x, y, luma, cb, cr, alpha);
+                String pixel = String.format("%dx%d image, pixel (%d,%d)", width, height, x, y);
+                Assert.assertEquals(pixel + " ABGR", expected, abgr[y * width + x]);
+                expected = (expected & 0xFF00FF00) | ((expected >> 16) & 0xFF) | ((expected & 0xFF) << 16);
+                Assert.assertEquals(pixel + " ARGB", expected, argb[y * width + x]);
+            }
+        }
+    }
+
+    @Test
+    public void testSmallImage() {
+        testImage(16, 10, 0xFF);
+    }
+
+    @Test
+    public void testParallelImage() {
+        // At least the screen size, converted in bands of rows
+        testImage(480, 272, 0xFF);
+        testImage(720, 480, 0xFF);
+    }
+
+    @Test
+    public void testAlpha() {
+        H264Utils.setAlpha(0x80);
+        testImage(16, 10, 0x80);
+    }
+
+    @Test
+    public void testAllComponentValues() {
+        // One 2x2 block for each (Cb, Cr) pair, each block using 4 different luma values
+        final int width = 256 * 2;
+        final int height = 256 * 2;
+        int luma[] = new int[width * height];
+        int cb[] = new int[(width >> 1) * (height >> 1)];
+        int cr[] = new int[(width >> 1) * (height >> 1)];
+        for (int i = 0; i < cb.length; i++) {
+            cb[i] = i & 0xFF;
+            cr[i] = i >> 8;
+        }
+        for (int i = 0; i < luma.length; i++) {
+            luma[i] = (i * 7 + (i / width) * 13) & 0xFF;
+        }
+
+        int abgr[] = new int[width * height];
+        H264Utils.YUV2ABGR(width, height, luma, cb, cr, abgr);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                Assert.assertEquals(String.format("pixel (%d,%d)", x, y), referenceABGR(width, x, y, luma, cb, cr, 0xFF), abgr[y * width + x]);
+            }
+        }
+    }
+
+    @Test
+    public void testArea() {
+        final int imageWidth = 32;
+        final int imageHeight = 24;
+        final int areaX = 4;
+        final int areaY = 6;
+        final int areaWidth = 10;
+        final int areaHeight = 8;
+        final int outputOffset = 3;
+        final int outputStride = 16;
+        int luma[] = randomComponent(imageWidth * imageHeight);
+        int cb[] = randomComponent((imageWidth >> 1) * (imageHeight >> 1));
+        int cr[] = randomComponent((imageWidth >> 1) * (imageHeight >> 1));
+
+        int output[] = new int[outputOffset + areaHeight * outputStride];
+        Arrays.fill(output, SENTINEL);
+        H264Utils.YUV2ABGR(imageWidth, areaX, areaY, areaWidth, areaHeight, luma, cb, cr, output, outputOffset, outputStride);
+
+        IntBuffer buffer = IntBuffer.allocate(output.length);
+        for (int i = 0; i < output.length; i++) {
+            buffer.put(i, SENTINEL);
+        }
+        buffer.position(1);
+        H264Utils.YUV2ABGR(imageWidth, areaX, areaY, areaWidth, areaHeight, luma, cb, cr, buffer, outputOffset, outputStride);
+        Assert.assertEquals("buffer position", 1, buffer.position());
+
+        for (int i = 0; i < output.length; i++) {
+            int expected = SENTINEL;
+            int row = (i - outputOffset) / outputStride;
+            int column = (i - outputOffset) % outputStride;
+            if (i >= outputOffset && column < areaWidth) {
+                expected = referenceABGR(imageWidth, areaX + column, areaY + row, luma, cb, cr, 0xFF);
+            }
+            Assert.assertEquals("array output " + i, expected, output[i]);
+            Assert.assertEquals("buffer output " + i, expected, buffer.get(i));
+        }
+    }
+}
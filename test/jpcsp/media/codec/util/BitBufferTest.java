@@ -0,0 +1,120 @@
+package jpcsp.media.codec.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Random;
+
+public class BitBufferTest {
+    /**
+     * The BitBuffer implementation storing one int per bit,
+     * used as the reference for the byte storage implementation.
+     */
+    private static class ReferenceBitBuffer {
+        private final int[] bits;
+        private int readIndex;
+        private int writeIndex;
+        private int readCount;
+        private int writeCount;
+
+        public ReferenceBitBuffer(int length) {
+            bits = new int[length];
+        }
+
+        public int read1() {
+            readCount++;
+            int bit = bits[readIndex];
+            readIndex++;
+            if (readIndex >= bits.length) {
+                readIndex = 0;
+            }
+
+            return bit;
+        }
+
+        public int read(int n) {
+            int value = 0;
+            for (; n > 0; n--) {
+                value = (value << 1) + read1();
+            }
+
+            return value;
+        }
+
+        public int getBitsRead() {
+            return readCount;
+        }
+
+        public int getBitsWritten() {
+            return writeCount;
+        }
+
+        public void skip(int n) {
+            readCount += n;
+            readIndex += n;
+            while (readIndex < 0) {
+                readIndex += bits.length;
+            }
+            while (readIndex >= bits.length) {
+                readIndex -= bits.length;
+            }
+        }
+
+        public void writeByte(int n) {
+            for (int bit = 7; bit >= 0; bit--) {
+                bits[writeIndex] = (n >> bit) & 0x1;
+                writeIndex++;
+                writeCount++;
+                if (writeIndex >= bits.length) {
+                    writeIndex = 0;
+                }
+            }
+        }
+
+        public int peek(int n) {
+            int read = read(n);
+            skip(-n);
+            return read;
+        }
+    }
+
+    @Test
+    public void testCircularReads() {
+        final int length = 8 * 64;
+        Random random = new Random(0);
+        ReferenceBitBuffer expected = new ReferenceBitBuffer(length);
+        BitBuffer actual = new BitBuffer(length);
+
+        for (int i = 0; i < 10000; i++) {
+            String step = "step " + i;
+            // Keep the reads behind the writes, as for the MP3 bit reservoir
+            int available = expected.getBitsWritten() - expected.getBitsRead();
+            int n = random.nextInt(32) + 1;
+            if (available < n || (available < length - 8 && random.nextInt(3) == 0)) {
+                int b = random.nextInt(256);
+                expected.writeByte(b);
+                actual.writeByte(b);
+                continue;
+            }
+
+            switch (random.nextInt(4)) {
+                case 0:
+                    Assert.assertEquals(step + ": read1", expected.read1(), actual.read1());
+                    break;
+                case 1:
+                    Assert.assertEquals(step + ": read(" + n + ")", expected.read(n), actual.read(n));
+                    break;
+                case 2:
+                    Assert.assertEquals(step + ": peek(" + n + ")", expected.peek(n), actual.peek(n));
+                    break;
+                case 3:
+                    n = random.nextInt(n + 1);
+                    expected.skip(n);
+                    actual.skip(n);
+                    break;
+            }
+            Assert.assertEquals(step + ": bits read", expected.getBitsRead(), actual.getBitsRead());
+            Assert.assertEquals(step + ": bits written", expected.getBitsWritten(), actual.getBitsWritten());
+        }
+    }
+}
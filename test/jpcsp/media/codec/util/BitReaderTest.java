@@ -0,0 +1,276 @@
+package jpcsp.media.codec.util;
+
+import jpcsp.Memory;
+import jpcsp.MemoryMap;
+import jpcsp.memory.FastMemory;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.Random;
+
+public class BitReaderTest {
+    private static final int ADDR = MemoryMap.START_USERSPACE + 0x00100000;
+    private static final int SIZE = 4096;
+    private static Memory mem;
+
+    /**
+     * The BitReader implementation reading each byte with Memory.read8(),
+     * used as the reference for the 64-bit cache implementation.
+     */
+    private static class ReferenceBitReader {
+        private int addr;
+        private int initialAddr;
+        private int initialSize;
+        private int size;
+        private int bits;
+        private int value;
+        private int direction;
+
+        public ReferenceBitReader(int addr, int size) {
+            this.addr = addr;
+            this.size = size;
+            initialAddr = addr;
+            initialSize = size;
+            bits = 0;
+            direction = 1;
+        }
+
+        public int read1() {
+            if (bits <= 0) {
+                value = mem.read8(addr);
+                addr += direction;
+                size--;
+                bits = 8;
+            }
+            int bit = value >> 7;
+            bits--;
+            value = (value << 1) & 0xFF;
+
+            return bit;
+        }
+
+        public int read(int n) {
+            int read;
+            if (n <= bits) {
+                read = value >> (8 - n);
+                bits -= n;
+                value = (value << n) & 0xFF;
+            } else {
+                read = 0;
+                for (; n > 0; n--) {
+                    read = (read << 1) + read1();
+                }
+            }
+
+            return read;
+        }
+
+        public int readByte() {
+            if (bits == 8) {
+                bits = 0;
+                return value;
+            }
+            if (bits > 0) {
+                skip(bits);
+            }
+            int read = mem.read8(addr);
+            addr += direction;
+            size--;
+
+            return read;
+        }
+
+        public int getBitsLeft() {
+            return (size << 3) + bits;
+        }
+
+        // A byte loaded without any bit read from it has not yet been read.
+        // The original code was only handling this case in the forward direction.
+        public int getBytesRead() {
+            int bytesRead = addr - initialAddr;
+            if (bits == 8) {
+                bytesRead -= direction;
+            }
+
+            return bytesRead;
+        }
+
+        public int getBitsRead() {
+            if (bits == 8) {
+                return getBytesRead() << 3;
+            }
+            return (addr - initialAddr) * 8 - bits;
+        }
+
+        public int peek(int n) {
+            int read = read(n);
+            skip(-n);
+            return read;
+        }
+
+        public void skip(int n) {
+            bits -= n;
+            if (n >= 0) {
+                while (bits < 0) {
+                    addr += direction;
+                    size--;
+                    bits += 8;
+                }
+            } else {
+                while (bits > 8) {
+                    addr -= direction;
+                    size++;
+                    bits -= 8;
+                }
+            }
+
+            if (bits > 0) {
+                value = mem.read8(addr - direction);
+                value = (value << (8 - bits)) & 0xFF;
+            }
+        }
+
+        public void seek(int n) {
+            addr = initialAddr + n;
+            size = initialSize - n;
+            bits = 0;
+        }
+
+        public void setDirection(int direction) {
+            this.direction = direction;
+            bits = 0;
+        }
+
+        public void byteAlign() {
+            if (bits > 0 && bits < 8) {
+                skip(bits);
+            }
+        }
+    }
+
+    @BeforeClass
+    public static void setUp() {
+        // Use a memory without any module, the memory content is written directly
+        FastMemory fastMemory = new FastMemory();
+        fastMemory.allocate();
+        Memory.setInstance(fastMemory);
+        mem = fastMemory;
+
+        int[] all = fastMemory.getAll();
+        Random random = new Random(0);
+        // Also fill a guard area after the input, both readers are loading bytes in advance
+        for (int i = 0; i < SIZE + 64; i++) {
+            int address = (ADDR + i) & Memory.addressMask;
+            all[address >> 2] |= random.nextInt(256) << ((address & 3) << 3);
+        }
+    }
+
+    private static void assertCounters(String step, ReferenceBitReader expected, BitReader actual) {
+        Assert.assertEquals(step + ": bits read", expected.getBitsRead(), actual.getBitsRead());
+        Assert.assertEquals(step + ": bytes read", expected.getBytesRead(), actual.getBytesRead());
+        Assert.assertEquals(step + ": bits left", expected.getBitsLeft(), actual.getBitsLeft());
+    }
+
+    @Test
+    public void testForward() {
+        Random random = new Random(1);
+        for (int run = 0; run < 100; run++) {
+            ReferenceBitReader expected = new ReferenceBitReader(ADDR, SIZE);
+            BitReader actual = new BitReader(ADDR, SIZE);
+            for (int i = 0; i < 200 && expected.getBitsLeft() > 256; i++) {
+                String step = String.format("run %d, step %d", run, i);
+                int n = random.nextInt(32) + 1;
+                switch (random.nextInt(8)) {
+                    case 0:
+                        Assert.assertEquals(step + ": read1", expected.read1(), actual.read1());
+                        break;
+                    case 1:
+                        Assert.assertEquals(step + ": read(" + n + ")", expected.read(n), actual.read(n));
+                        break;
+                    case 2:
+                        Assert.assertEquals(step + ": peek(" + n + ")", expected.peek(n), actual.peek(n));
+                        break;
+                    case 3:
+                        n = random.nextInt(65);
+                        expected.skip(n);
+                        actual.skip(n);
+                        break;
+                    case 4:
+                        n = -random.nextInt(Math.min(expected.getBitsRead(), 64) + 1);
+                        expected.skip(n);
+                        actual.skip(n);
+                        break;
+                    case 5:
+                        Assert.assertEquals(step + ": readByte", expected.readByte(), actual.readByte());
+                        break;
+                    case 6:
+                        expected.byteAlign();
+                        actual.byteAlign();
+                        break;
+                    case 7:
+                        n = random.nextInt(SIZE / 2);
+                        expected.seek(n);
+                        actual.seek(n);
+                        break;
+                }
+                assertCounters(step, expected, actual);
+            }
+        }
+    }
+
+    @Test
+    public void testReverse() {
+        Random random = new Random(2);
+        for (int run = 0; run < 100; run++) {
+            ReferenceBitReader expected = new ReferenceBitReader(ADDR, SIZE);
+            BitReader actual = new BitReader(ADDR, SIZE);
+
+            // Same sequence as the Atrac3 joint-stereo decoding:
+            // read some bits forward, then read backward from the end of the block
+            int n = random.nextInt(SIZE * 8);
+            expected.skip(n);
+            actual.skip(n);
+            int blockAlign = SIZE - random.nextInt(SIZE / 2);
+            expected.seek(blockAlign - 1);
+            actual.seek(blockAlign - 1);
+            expected.setDirection(-1);
+            actual.setDirection(-1);
+
+            for (int i = 0; i < 200 && expected.getBitsLeft() > 256; i++) {
+                String step = String.format("run %d, step %d", run, i);
+                n = random.nextInt(32) + 1;
+                switch (random.nextInt(5)) {
+                    case 0:
+                        Assert.assertEquals(step + ": read1", expected.read1(), actual.read1());
+                        break;
+                    case 1:
+                        Assert.assertEquals(step + ": read(" + n + ")", expected.read(n), actual.read(n));
+                        break;
+                    case 2:
+                        Assert.assertEquals(step + ": peek(" + n + ")", expected.peek(n), actual.peek(n));
+                        break;
+                    case 3:
+                        n = random.nextInt(65);
+                        expected.skip(n);
+                        actual.skip(n);
+                        break;
+                    case 4:
+                        expected.byteAlign();
+                        actual.byteAlign();
+                        break;
+                }
+                assertCounters(step, expected, actual);
+            }
+
+            expected.setDirection(1);
+            actual.setDirection(1);
+            expected.seek(blockAlign);
+            actual.seek(blockAlign);
+            for (int i = 0; i < 16; i++) {
+                Assert.assertEquals("run " + run + ": read after reverse", expected.read(12), actual.read(12));
+            }
+            assertCounters("run " + run, expected, actual);
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package jpcsp.sound;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Random;
+
+public class SoundMixerTest {
+    private static final int NUMBER_VOICES = 32;
+    private static final int SAMPLES = 256;
+    private static final int NUMBER_BLOCKS = 20;
+
+    /**
+     * Deterministic sample source: the same voice produces
+     * the same samples in both mixers.
+     */
+    private static class RandomSampleSource implements ISampleSource {
+        private final long seed;
+        private final int length;
+        private Random random;
+        private int position;
+
+        public RandomSampleSource(long seed, int length) {
+            this.seed = seed;
+            this.length = length;
+            resetToStart();
+        }
+
+        @Override
+        public int getNextSample() {
+            position++;
+            return random.nextInt();
+        }
+
+        @Override
+        public void getNextSamples(int[] samples, int offset, int length) {
+            for (int i = 0; i < length; i++) {
+                samples[offset + i] = getNextSample();
+            }
+        }
+
+        @Override
+        public void resetToStart() {
+            random = new Random(seed);
+            position = 0;
+        }
+
+        @Override
+        public boolean isEnded() {
+            return position >= length;
+        }
+    }
+
+    private static class TestSynthesizer extends SoftwareSynthesizer {
+        private final ISampleSource sampleSource;
+
+        public TestSynthesizer(SoundVoice voice, ISampleSource sampleSource) {
+            super(voice);
+            this.sampleSource = sampleSource;
+        }
+
+        @Override
+        public ISampleSource getSampleSource(boolean isStereo) {
+            return sampleSource;
+        }
+    }
+
+    private static SoundMixer createMixer(boolean parallelMixing) {
+        Random random = new Random(0);
+        SoundVoice[] voices = new SoundVoice[NUMBER_VOICES];
+        SoftwareSynthesizer[] synthesizers = new SoftwareSynthesizer[NUMBER_VOICES];
+        for (int i = 0; i < NUMBER_VOICES; i++) {
+            voices[i] = new SoundVoice(i);
+            voices[i].setLeftVolume(random.nextInt(SoundChannel.MAX_VOLUME + 1));
+            voices[i].setRightVolume(random.nextInt(SoundChannel.MAX_VOLUME + 1));
+            // Some voices are ending while being mixed, some are not playing
+            int length = random.nextInt(SAMPLES * NUMBER_BLOCKS * 2);
+            voices[i].setPlaying(random.nextInt(8) != 0);
+            synthesizers[i] = new TestSynthesizer(voices[i], new RandomSampleSource(i, length));
+        }
+
+        SoundMixer mixer = new SoundMixer(voices, synthesizers);
+        mixer.setParallelMixing(parallelMixing);
+        // Use several tasks, even when only one processor is available
+        mixer.setMaxNumberTasks(4);
+
+        return mixer;
+    }
+
+    private static void testMix(boolean isStereo) {
+        SoundMixer sequentialMixer = createMixer(false);
+        SoundMixer parallelMixer = createMixer(true);
+
+        int mixedVoices = 0;
+        for (int block = 0; block < NUMBER_BLOCKS; block++) {
+            int[] sequentialSamples = new int[SAMPLES * 2];
+            int[] parallelSamples = new int[SAMPLES * 2];
+            int sequentialVoices = sequentialMixer.mixVoices(sequentialSamples, SAMPLES, isStereo);
+            int parallelVoices = parallelMixer.mixVoices(parallelSamples, SAMPLES, isStereo);
+
+            Assert.assertEquals("voices mixed in block " + block, sequentialVoices, parallelVoices);
+            Assert.assertArrayEquals("samples of block " + block, sequentialSamples, parallelSamples);
+            mixedVoices += sequentialVoices;
+        }
+
+        // Check that enough voices have been mixed to use the parallel mixing
+        Assert.assertTrue(mixedVoices > NUMBER_BLOCKS * 8);
+    }
+
+    @Test
+    public void testMixStereo() {
+        testMix(true);
+    }
+
+    @Test
+    public void testMixMono() {
+        testMix(false);
+    }
+}